@@ -4,9 +4,11 @@ import java.io.InputStreamReader;
 import java.util.HashSet;
 import java.util.Set;
 
+import crawler.BestFirstCrawler;
 import crawler.BreadthFirstCrawler;
 import crawler.CrawlStrategy;
 import crawler.DepthFirstCrawler;
+import crawler.DiskBackedCrawler;
 import crawler.WebCrawler;
 import models.CrawlResult;
 import models.WebPage;
@@ -26,6 +28,19 @@ public class WebScraperBot {
     public static void main(String[] args) {
         logger.info("Starting Web Scraper Bot...");
         
+        // Optional cluster mode: --cluster-node id@host:port [--cluster-peers id@host:port,...]
+        String clusterNode = null;
+        String[] clusterPeers = new String[0];
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--cluster-node")) {
+                clusterNode = args[i + 1];
+            } else if (args[i].equals("--cluster-peers")) {
+                clusterPeers = args[i + 1].split(",");
+            } else {
+                logger.error("Unknown argument: " + args[i]);
+            }
+        }
+        
         try {
             BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
             
@@ -42,7 +57,19 @@ public class WebScraperBot {
             System.out.println("Enter maximum number of pages to crawl:");
             int maxPages = Integer.parseInt(reader.readLine().trim());
             
-            System.out.println("Select crawl strategy (1 for BFS, 2 for DFS):");
+            System.out.println("Enter number of pages to fetch concurrently (1 for sequential):");
+            int parallelism = Integer.parseInt(reader.readLine().trim());
+            
+            System.out.println("Only follow links on the starting URL's domain? (yes/no):");
+            boolean sameDomainOnly = reader.readLine().trim().toLowerCase().equals("yes");
+            
+            System.out.println("Obey robots.txt rules and Crawl-delay? (yes/no, default yes):");
+            boolean respectRobotsTxt = !reader.readLine().trim().toLowerCase().equals("no");
+            
+            System.out.println("Seed the crawl from the site's sitemaps? (yes/no):");
+            boolean sitemapDiscovery = reader.readLine().trim().toLowerCase().equals("yes");
+            
+            System.out.println("Select crawl strategy (1 for BFS, 2 for DFS, 3 for disk-backed BFS, 4 for disk-backed DFS, 5 for best-first):");
             int strategyChoice = Integer.parseInt(reader.readLine().trim());
             
             System.out.println("Enter output format (json or csv):");
@@ -54,6 +81,17 @@ public class WebScraperBot {
             System.out.println("Enter output file path:");
             String outputFilePath = reader.readLine().trim();
             
+            System.out.println("Enter page cache directory for incremental recrawls (leave empty to disable):");
+            String pageCacheDir = reader.readLine().trim();
+            
+            System.out.println("Enter checkpoint directory (leave empty to disable checkpointing):");
+            String checkpointDir = reader.readLine().trim();
+            boolean resume = false;
+            if (!checkpointDir.isEmpty()) {
+                System.out.println("Resume from existing checkpoint? (yes/no):");
+                resume = reader.readLine().trim().toLowerCase().equals("yes");
+            }
+            
             // Create crawl configuration
             CrawlConfig config = new CrawlConfig.Builder()
                     .setSeedUrl(seedUrl)
@@ -62,6 +100,15 @@ public class WebScraperBot {
                     .setEnableAiAnalysis(enableAi)
                     .setRequestDelay(1000) // 1 second delay between requests
                     .setMaxRetries(3)
+                    .setParallelism(parallelism)
+                    .setSameDomainOnly(sameDomainOnly)
+                    .setRespectRobotsTxt(respectRobotsTxt)
+                    .setSitemapDiscovery(sitemapDiscovery)
+                    .setPageCacheDir(pageCacheDir.isEmpty() ? null : pageCacheDir)
+                    .setCheckpointDir(checkpointDir.isEmpty() ? null : checkpointDir)
+                    .setResumeFromCheckpoint(resume)
+                    .setClusterNode(clusterNode)
+                    .setClusterPeers(clusterPeers)
                     .build();
             
             // Select crawl strategy
@@ -69,6 +116,15 @@ public class WebScraperBot {
             if (strategyChoice == 1) {
                 strategy = new BreadthFirstCrawler();
                 logger.info("Using Breadth-First Search strategy");
+            } else if (strategyChoice == 3) {
+                strategy = new DiskBackedCrawler(DiskBackedCrawler.Order.BREADTH_FIRST);
+                logger.info("Using disk-backed Breadth-First Search strategy");
+            } else if (strategyChoice == 5) {
+                strategy = new BestFirstCrawler(keywords);
+                logger.info("Using best-first focused strategy");
+            } else if (strategyChoice == 4) {
+                strategy = new DiskBackedCrawler(DiskBackedCrawler.Order.DEPTH_FIRST);
+                logger.info("Using disk-backed Depth-First Search strategy");
             } else {
                 strategy = new DepthFirstCrawler();
                 logger.info("Using Depth-First Search strategy");
@@ -79,7 +135,15 @@ public class WebScraperBot {
             
             // Start crawling
             System.out.println("Starting crawl process...");
-            CrawlResult result = crawler.crawl();
+            CrawlResult result;
+            try {
+                result = crawler.crawl();
+            } finally {
+                // Remove any frontier segments left on disk
+                if (strategy instanceof DiskBackedCrawler diskBacked) {
+                    diskBacked.close();
+                }
+            }
             
             // Export results
             DataExporter exporter;
@@ -93,10 +157,10 @@ public class WebScraperBot {
             
             // Print summary
             System.out.println("\n=== Crawl Summary ===");
-            System.out.println("Total pages visited: " + result.getVisitedUrls().size());
+            System.out.println("Total pages visited: " + result.getTotalVisited());
             System.out.println("Total relevant pages found: " + result.getRelevantPages().size());
             System.out.println("Results saved to: " + outputFilePath);
-            
+        
         } catch (IOException e) {
             logger.error("Error reading input: " + e.getMessage());
         } catch (Exception e) {
@@ -0,0 +1,76 @@
+package cluster;
+
+/**
+ * Identity and address of one node in a crawl cluster
+ */
+public class ClusterMember {
+    private final String id;
+    private final String host;
+    private final int port;
+    
+    /**
+     * Constructor for ClusterMember
+     * 
+     * @param id Unique node id
+     * @param host Host name or address the node listens on
+     * @param port Port the node listens on
+     */
+    public ClusterMember(String id, String host, int port) {
+        this.id = id;
+        this.host = host;
+        this.port = port;
+    }
+    
+    /**
+     * Parse a member from its {@code id@host:port} form
+     * 
+     * @param spec The member specification
+     * @return The member
+     * @throws IllegalArgumentException If the specification is malformed
+     */
+    public static ClusterMember parse(String spec) {
+        int at = spec.indexOf('@');
+        int colon = spec.lastIndexOf(':');
+        if (at <= 0 || colon < at + 2 || colon == spec.length() - 1) {
+            throw new IllegalArgumentException("Expected id@host:port but got: " + spec);
+        }
+        try {
+            return new ClusterMember(spec.substring(0, at).trim(), spec.substring(at + 1, colon).trim(),
+                                     Integer.parseInt(spec.substring(colon + 1).trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid port in: " + spec);
+        }
+    }
+    
+    /**
+     * Get the node id
+     * 
+     * @return The node id
+     */
+    public String getId() {
+        return id;
+    }
+    
+    /**
+     * Get the host the node listens on
+     * 
+     * @return The host
+     */
+    public String getHost() {
+        return host;
+    }
+    
+    /**
+     * Get the port the node listens on
+     * 
+     * @return The port
+     */
+    public int getPort() {
+        return port;
+    }
+    
+    @Override
+    public String toString() {
+        return id + "@" + host + ":" + port;
+    }
+}
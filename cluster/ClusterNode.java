@@ -0,0 +1,692 @@
+package cluster;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import crawler.FingerprintVisitedSet;
+import crawler.VisitedUrlSet;
+import storage.VisitedUrlLog;
+import util.Logger;
+import util.UrlUtils;
+
+/**
+ * One node of a crawl cluster that partitions hosts across processes.
+ * <p>
+ * Hosts are assigned to nodes with a {@link ConsistentHashRing}, so each host is
+ * crawled by exactly one node and that node alone applies its politeness delay.
+ * Links for hosts owned by another node are batched per peer and shipped over a
+ * persistent TCP connection using a line-based protocol:
+ * <pre>
+ * HELLO id@host:port       announce a (re)started node
+ * MEMBERS id@host:port ... reply to HELLO with the sender's view of the cluster
+ * LEAVE id                 a node is shutting down
+ * LEAVE-ACK id             reply to LEAVE, after the links the sender had buffered for the leaving node
+ * LINKS n                  followed by n lines, one URL each
+ * VISITED n                followed by n lines, URLs the sender already crawled
+ * </pre>
+ * A peer that cannot be reached is dropped from the ring and its unsent links are
+ * routed to the new owners. When a node joins, the others ship it the URLs they
+ * already crawled for the hosts it takes over, and a leaving node ships its own,
+ * so moved hosts are not crawled twice. A peer told that a node is leaving
+ * stops routing links to it, sends it the links still buffered for it and then
+ * acknowledges; the leaving node keeps re-forwarding the links it receives
+ * until every peer has acknowledged, so no link in transit to it is lost.
+ * Ownership is re-checked when a URL is dispatched, so URLs already queued for
+ * moved hosts are forwarded lazily.
+ */
+public class ClusterNode implements AutoCloseable {
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 200;
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    // How long a leaving node waits for peers that neither acknowledge nor drop the connection
+    private static final long LEAVE_ACK_TIMEOUT_MS = 10_000;
+    private static final String LINKS = "LINKS";
+    private static final String VISITED = "VISITED";
+    private static final String LEAVE_ACK = "LEAVE-ACK";
+    
+    /**
+     * Receives links that peers shipped to this node
+     */
+    public interface LinkReceiver {
+        void receive(String url);
+    }
+    
+    private final ClusterMember self;
+    private final ConsistentHashRing ring;
+    private final Map<String, Peer> peers;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final AtomicLong forwardedLinks;
+    private final AtomicLong receivedLinks;
+    private final VisitedUrlSet visitedElsewhere;
+    private final Set<String> pendingLeaveAcks;
+    private final Logger logger;
+    
+    private LinkReceiver receiver;
+    private VisitedUrlLog visitedLog;
+    private ServerSocket serverSocket;
+    private ScheduledExecutorService flusher;
+    private volatile long lastReceiveTime;
+    private volatile boolean leaving;
+    
+    /**
+     * Constructor for ClusterNode with default batching
+     * 
+     * @param self This node
+     * @param peers Other nodes known at startup (they need not be running yet)
+     */
+    public ClusterNode(ClusterMember self, List<ClusterMember> peers) {
+        this(self, peers, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MS);
+    }
+    
+    /**
+     * Constructor for ClusterNode
+     * 
+     * @param self This node
+     * @param peers Other nodes known at startup (they need not be running yet)
+     * @param batchSize Number of links buffered per peer before they are sent
+     * @param flushIntervalMs Maximum time a link waits in a partial batch
+     */
+    public ClusterNode(ClusterMember self, List<ClusterMember> peers, int batchSize, long flushIntervalMs) {
+        this.self = self;
+        this.ring = new ConsistentHashRing();
+        this.peers = new ConcurrentHashMap<>();
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.forwardedLinks = new AtomicLong();
+        this.receivedLinks = new AtomicLong();
+        this.visitedElsewhere = new FingerprintVisitedSet(0);
+        this.pendingLeaveAcks = ConcurrentHashMap.newKeySet();
+        this.logger = new Logger(ClusterNode.class.getSimpleName());
+        
+        ring.add(self.getId());
+        for (ClusterMember peer : peers) {
+            if (!peer.getId().equals(self.getId())) {
+                addMember(peer);
+            }
+        }
+    }
+    
+    /**
+     * Start listening for peers and announce this node to the known peers
+     * 
+     * @param receiver Callback for links shipped to this node
+     * @param visitedLog Log of URLs crawled by this node, shipped to new owners when hosts move
+     * @throws IOException If the listening socket cannot be bound
+     */
+    public void start(LinkReceiver receiver, VisitedUrlLog visitedLog) throws IOException {
+        this.receiver = receiver;
+        this.visitedLog = visitedLog;
+        this.lastReceiveTime = System.currentTimeMillis();
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(self.getHost(), self.getPort()));
+        
+        Thread acceptor = new Thread(this::acceptLoop, "cluster-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushAll, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        
+        logger.info("Cluster node " + self + " started with " + peers.size() + " known peers");
+        for (Peer peer : new ArrayList<>(peers.values())) {
+            if (!peer.sendLine("HELLO " + self)) {
+                removeMember(peer.member.getId(), "unreachable");
+            }
+        }
+    }
+    
+    /**
+     * Check whether this node currently owns the host of a URL
+     * 
+     * @param url The URL
+     * @return true if the URL should be crawled here
+     */
+    public boolean isLocal(String url) {
+        String owner = ring.ownerOf(hostKey(url));
+        return owner == null || owner.equals(self.getId());
+    }
+    
+    /**
+     * Check whether a URL was crawled by another node before its host moved here
+     * 
+     * @param url The URL
+     * @return true if the URL should not be crawled again
+     */
+    public boolean isVisitedElsewhere(String url) {
+        return visitedElsewhere.contains(url);
+    }
+    
+    /**
+     * Route a URL to the node owning its host. URLs owned by this node go to the
+     * local receiver; while leaving, URLs without any other owner are dropped.
+     * 
+     * @param url The URL
+     */
+    public void forward(String url) {
+        Peer peer = ownerPeer(url);
+        if (peer == null) {
+            if (!leaving && !visitedElsewhere.contains(url)) {
+                receiver.receive(url);
+            }
+            return;
+        }
+        
+        if (!peer.links.add(url)) {
+            // The peer left after it was looked up, so the ring no longer routes to it
+            forward(url);
+            return;
+        }
+        forwardedLinks.incrementAndGet();
+        if (peer.links.isFull()) {
+            flush(peer, LINKS);
+        }
+    }
+    
+    /**
+     * Leave the cluster: stop owning any hosts, tell the peers and ship them the
+     * URLs this node crawled, so URLs forwarded from now on (including this
+     * node's remaining frontier) go to the surviving nodes. Links the peers
+     * still send are re-forwarded until {@link #close()} has seen every
+     * acknowledgement.
+     */
+    public void leave() {
+        leaving = true;
+        ring.remove(self.getId());
+        for (Peer peer : new ArrayList<>(peers.values())) {
+            pendingLeaveAcks.add(peer.member.getId());
+            if (!peer.sendLine("LEAVE " + self.getId())) {
+                pendingLeaveAcks.remove(peer.member.getId());
+            }
+        }
+        logger.info("Cluster node " + self.getId() + " left the cluster");
+        shipVisited(null);
+    }
+    
+    /**
+     * Get the time links were last received from a peer
+     * 
+     * @return The time in milliseconds since the epoch
+     */
+    public long getLastReceiveTime() {
+        return lastReceiveTime;
+    }
+    
+    /**
+     * Get the number of links shipped to other nodes
+     * 
+     * @return The forwarded link count
+     */
+    public long getForwardedLinks() {
+        return forwardedLinks.get();
+    }
+    
+    /**
+     * Get the number of links received from other nodes
+     * 
+     * @return The received link count
+     */
+    public long getReceivedLinks() {
+        return receivedLinks.get();
+    }
+    
+    /**
+     * Get the number of nodes currently on the ring, including this one unless it has left
+     * 
+     * @return The node count
+     */
+    public int getNodeCount() {
+        return ring.getNodes().size();
+    }
+    
+    /**
+     * Send all buffered links and close every connection. After {@link #leave()}
+     * it first waits for every peer to acknowledge, forwarding the links that
+     * arrive meanwhile.
+     */
+    @Override
+    public void close() {
+        if (leaving) {
+            awaitLeaveAcks();
+        }
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        flushAll();
+        for (Peer peer : peers.values()) {
+            peer.disconnect();
+        }
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            logger.debug("Error closing cluster socket: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Wait until every peer told about the leave has acknowledged it, dropped
+     * out of the cluster, or the timeout has passed
+     */
+    private void awaitLeaveAcks() {
+        long deadline = System.currentTimeMillis() + LEAVE_ACK_TIMEOUT_MS;
+        synchronized (pendingLeaveAcks) {
+            try {
+                long remaining;
+                while (!pendingLeaveAcks.isEmpty() && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    pendingLeaveAcks.wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!pendingLeaveAcks.isEmpty()) {
+                logger.error("Cluster nodes " + pendingLeaveAcks + " did not acknowledge the leave; "
+                             + "links they still send are lost");
+            }
+        }
+    }
+    
+    private void leaveAcknowledged(String nodeId) {
+        synchronized (pendingLeaveAcks) {
+            pendingLeaveAcks.remove(nodeId);
+            pendingLeaveAcks.notifyAll();
+        }
+    }
+    
+    /**
+     * Ship the URLs this node crawled to the current owners of their hosts
+     * 
+     * @param nodeId Only ship URLs owned by this node, or null for all foreign hosts
+     */
+    private void shipVisited(String nodeId) {
+        long[] shipped = {0};
+        try {
+            visitedLog.forEach(url -> {
+                Peer peer = ownerPeer(url);
+                if (peer != null && (nodeId == null || peer.member.getId().equals(nodeId))
+                        && peer.visited.add(url)) {
+                    if (peer.visited.isFull()) {
+                        flush(peer, VISITED);
+                    }
+                    shipped[0]++;
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Error reading visited URLs to hand off: " + e.getMessage());
+        }
+        flushAll();
+        if (shipped[0] > 0) {
+            logger.info("Handed off " + shipped[0] + " visited URLs" + (nodeId != null ? " to " + nodeId : ""));
+        }
+    }
+    
+    private void flushAll() {
+        for (Peer peer : new ArrayList<>(peers.values())) {
+            flush(peer, LINKS);
+            flush(peer, VISITED);
+        }
+    }
+    
+    /**
+     * Send a peer's buffered links or visited URLs, dropping the peer if it
+     * cannot be reached
+     * 
+     * @param peer The peer
+     * @param command LINKS or VISITED
+     */
+    private void flush(Peer peer, String command) {
+        List<String> unsent = peer.flush(command.equals(LINKS) ? peer.links : peer.visited, command);
+        if (unsent != null) {
+            removeMember(peer.member.getId(), "unreachable");
+            // Hand the batch, and anything buffered since, to the new owners
+            if (command.equals(LINKS)) {
+                rerouteLinks(unsent, peer);
+            }
+        }
+    }
+    
+    /**
+     * Forward links that could not be sent to a peer no longer on the ring,
+     * along with anything still buffered for it; its batch is closed, so links
+     * routed to it from now on are forwarded again as well
+     * 
+     * @param urls The unsent links
+     * @param peer The peer
+     */
+    private void rerouteLinks(List<String> urls, Peer peer) {
+        urls.addAll(peer.links.close());
+        for (String url : urls) {
+            forward(url);
+        }
+    }
+    
+    private Peer ownerPeer(String url) {
+        String owner = ring.ownerOf(hostKey(url));
+        return owner != null ? peers.get(owner) : null;
+    }
+    
+    private synchronized boolean addMember(ClusterMember member) {
+        Peer existing = peers.get(member.getId());
+        if (existing != null) {
+            // The node restarted, so the old connection is stale; keep its buffered links
+            existing.disconnect();
+        } else {
+            peers.put(member.getId(), new Peer(member));
+        }
+        return ring.add(member.getId());
+    }
+    
+    private synchronized void removeMember(String nodeId, String reason) {
+        if (peers.remove(nodeId) != null) {
+            ring.remove(nodeId);
+            logger.info("Cluster node " + nodeId + " removed (" + reason + "), " + ring.getNodes().size() +
+                        " nodes remain");
+            // A node that is gone will not acknowledge this node's leave
+            leaveAcknowledged(nodeId);
+        }
+    }
+    
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofVirtual().name("cluster-reader").start(() -> readLoop(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.error("Error accepting cluster connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Handle the messages of one inbound connection until the peer closes it
+     */
+    private void readLoop(Socket socket) {
+        try (socket; BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("LINKS ")) {
+                    int count = Integer.parseInt(line.substring(6).trim());
+                    for (int i = 0; i < count && (line = in.readLine()) != null; i++) {
+                        receiveLink(line);
+                    }
+                    lastReceiveTime = System.currentTimeMillis();
+                } else if (line.startsWith("VISITED ")) {
+                    int count = Integer.parseInt(line.substring(8).trim());
+                    for (int i = 0; i < count && (line = in.readLine()) != null; i++) {
+                        visitedElsewhere.add(line);
+                    }
+                } else if (line.startsWith("HELLO ")) {
+                    handleHello(ClusterMember.parse(line.substring(6).trim()));
+                } else if (line.startsWith("MEMBERS ")) {
+                    handleMembers(line.substring(8).trim().split(" "));
+                } else if (line.startsWith("LEAVE ")) {
+                    handleLeave(line.substring(6).trim());
+                } else if (line.startsWith(LEAVE_ACK + " ")) {
+                    leaveAcknowledged(line.substring(LEAVE_ACK.length() + 1).trim());
+                } else {
+                    logger.debug("Ignoring unknown cluster message: " + line);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.debug("Cluster connection closed: " + e.getMessage());
+        }
+    }
+    
+    private void receiveLink(String url) {
+        receivedLinks.incrementAndGet();
+        if (leaving) {
+            forward(url);
+        } else {
+            receiver.receive(url);
+        }
+    }
+    
+    /**
+     * Stop routing links to a leaving node, then send it the links still
+     * buffered for it followed by the acknowledgement. Both go over the same
+     * connection as every earlier batch, so the acknowledgement tells the
+     * leaving node that it has received every link this node will send it.
+     * 
+     * @param nodeId The leaving node
+     */
+    private void handleLeave(String nodeId) {
+        Peer peer = peers.get(nodeId);
+        removeMember(nodeId, "left");
+        if (peer != null) {
+            List<String> unsent = peer.acknowledgeLeave(self.getId());
+            if (unsent != null) {
+                rerouteLinks(unsent, peer);
+            }
+        }
+    }
+    
+    private void handleHello(ClusterMember member) {
+        if (leaving || member.getId().equals(self.getId())) {
+            return;
+        }
+        if (addMember(member)) {
+            logger.info("Cluster node " + member + " joined, " + ring.getNodes().size() + " nodes in the ring");
+            handOffTo(member.getId());
+        }
+        
+        StringBuilder members = new StringBuilder("MEMBERS ").append(self);
+        for (Peer peer : peers.values()) {
+            members.append(' ').append(peer.member);
+        }
+        Peer peer = peers.get(member.getId());
+        if (peer != null && !peer.sendLine(members.toString())) {
+            removeMember(member.getId(), "unreachable");
+        }
+    }
+    
+    private void handleMembers(String[] specs) {
+        for (String spec : specs) {
+            ClusterMember member = ClusterMember.parse(spec);
+            if (leaving || member.getId().equals(self.getId()) || peers.containsKey(member.getId())) {
+                continue;
+            }
+            addMember(member);
+            logger.info("Discovered cluster node " + member);
+            Peer peer = peers.get(member.getId());
+            if (peer != null && !peer.sendLine("HELLO " + self)) {
+                removeMember(member.getId(), "unreachable");
+            } else {
+                handOffTo(member.getId());
+            }
+        }
+    }
+    
+    /**
+     * Ship a newly joined node the URLs this node crawled for hosts it now owns
+     * 
+     * @param nodeId The new node
+     */
+    private void handOffTo(String nodeId) {
+        if (visitedLog != null) {
+            Thread.ofVirtual().name("cluster-handoff").start(() -> shipVisited(nodeId));
+        }
+    }
+    
+    /**
+     * Get the partitioning key for a URL
+     * 
+     * @param url The URL
+     * @return The lowercase host, or an empty string if it cannot be determined
+     */
+    private static String hostKey(String url) {
+        String host = UrlUtils.getDomain(url);
+        return host != null ? host.toLowerCase() : "";
+    }
+    
+    /**
+     * URLs buffered for one peer until a batch is full or the flush interval
+     * passes. Once the peer has left the batch is closed and takes no more URLs.
+     */
+    private class Batch {
+        private List<String> urls = new ArrayList<>();
+        private boolean closed;
+        
+        /**
+         * Buffer a URL, unless the batch is closed
+         */
+        synchronized boolean add(String url) {
+            if (closed) {
+                return false;
+            }
+            urls.add(url);
+            return true;
+        }
+        
+        synchronized boolean isFull() {
+            return urls.size() >= batchSize;
+        }
+        
+        synchronized List<String> drain() {
+            List<String> drained = urls;
+            urls = new ArrayList<>();
+            return drained;
+        }
+        
+        /**
+         * Close the batch, returning the URLs still buffered
+         */
+        synchronized List<String> close() {
+            closed = true;
+            return drain();
+        }
+    }
+    
+    /**
+     * Outbound connection and batches for one peer
+     */
+    private class Peer {
+        private final ClusterMember member;
+        private final Batch links = new Batch();
+        private final Batch visited = new Batch();
+        private final Object writeLock = new Object();
+        private Socket socket;
+        private BufferedWriter writer;
+        
+        Peer(ClusterMember member) {
+            this.member = member;
+        }
+        
+        /**
+         * Send what a batch holds. Draining and sending happen under the write
+         * lock, so a batch can never be sent after a later message.
+         * 
+         * @return The URLs that could not be sent, or null
+         */
+        List<String> flush(Batch batch, String command) {
+            synchronized (writeLock) {
+                List<String> urls = batch.drain();
+                return urls.isEmpty() || sendBatch(command, urls) ? null : urls;
+            }
+        }
+        
+        /**
+         * Close the link batch of a peer that is leaving, send it the links
+         * still buffered and acknowledge the leave, then disconnect. A peer
+         * that cannot be reached gets no acknowledgement and stops waiting
+         * for it once its timeout passes.
+         * 
+         * @param selfId The id of this node
+         * @return The links that could not be sent, or null
+         */
+        List<String> acknowledgeLeave(String selfId) {
+            synchronized (writeLock) {
+                List<String> urls = links.close();
+                boolean sent = urls.isEmpty() || sendBatch(LINKS, urls);
+                if (sent) {
+                    sendLine(LEAVE_ACK + " " + selfId);
+                }
+                disconnect();
+                return sent ? null : urls;
+            }
+        }
+        
+        boolean sendBatch(String command, List<String> urls) {
+            StringBuilder message = new StringBuilder(urls.size() * 64);
+            message.append(command).append(' ').append(urls.size()).append('\n');
+            for (String url : urls) {
+                message.append(url).append('\n');
+            }
+            return send(message.toString());
+        }
+        
+        boolean sendLine(String line) {
+            return send(line + "\n");
+        }
+        
+        /**
+         * Write a message, reconnecting once in case the connection went stale
+         */
+        private boolean send(String message) {
+            synchronized (writeLock) {
+                for (int attempt = 0; attempt < 2; attempt++) {
+                    try {
+                        if (writer == null) {
+                            connect();
+                        }
+                        writer.write(message);
+                        writer.flush();
+                        return true;
+                    } catch (IOException e) {
+                        logger.debug("Error sending to cluster node " + member + " - " + e.getMessage());
+                        disconnect();
+                    }
+                }
+                return false;
+            }
+        }
+        
+        private void connect() throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(member.getHost(), member.getPort()), CONNECT_TIMEOUT_MS);
+            writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8),
+                                        1 << 16);
+        }
+        
+        void disconnect() {
+            synchronized (writeLock) {
+                try {
+                    if (writer != null) {
+                        writer.close();
+                    } else if (socket != null) {
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    logger.debug("Error closing connection to " + member + " - " + e.getMessage());
+                }
+                writer = null;
+                socket = null;
+            }
+        }
+    }
+}
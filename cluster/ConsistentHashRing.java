@@ -0,0 +1,98 @@
+package cluster;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import util.UrlFingerprint;
+
+/**
+ * Consistent hash ring assigning keys (host names) to cluster nodes.
+ * <p>
+ * Every node is placed on the ring at many virtual positions so keys spread
+ * evenly, and adding or removing a node only moves the keys adjacent to its
+ * positions: roughly 1/N of all hosts change owner. Lookups read an immutable
+ * snapshot of the ring and never block; membership changes copy it.
+ */
+public class ConsistentHashRing {
+    private static final int DEFAULT_VIRTUAL_NODES = 160;
+    
+    private final int virtualNodes;
+    private volatile TreeMap<Long, String> ring;
+    
+    /**
+     * Constructor for ConsistentHashRing with the default number of virtual nodes
+     */
+    public ConsistentHashRing() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+    
+    /**
+     * Constructor for ConsistentHashRing
+     * 
+     * @param virtualNodes Number of ring positions per node
+     */
+    public ConsistentHashRing(int virtualNodes) {
+        this.virtualNodes = Math.max(1, virtualNodes);
+        this.ring = new TreeMap<>();
+    }
+    
+    /**
+     * Add a node to the ring
+     * 
+     * @param nodeId The node id
+     * @return true if the node was not on the ring yet
+     */
+    public synchronized boolean add(String nodeId) {
+        if (ring.containsValue(nodeId)) {
+            return false;
+        }
+        TreeMap<Long, String> updated = new TreeMap<>(ring);
+        for (int i = 0; i < virtualNodes; i++) {
+            updated.put(UrlFingerprint.of(nodeId + "#" + i), nodeId);
+        }
+        ring = updated;
+        return true;
+    }
+    
+    /**
+     * Remove a node from the ring
+     * 
+     * @param nodeId The node id
+     * @return true if the node was on the ring
+     */
+    public synchronized boolean remove(String nodeId) {
+        TreeMap<Long, String> updated = new TreeMap<>(ring);
+        if (!updated.values().removeIf(nodeId::equals)) {
+            return false;
+        }
+        ring = updated;
+        return true;
+    }
+    
+    /**
+     * Get the node that owns a key
+     * 
+     * @param key The key, e.g. a host name
+     * @return The owning node id, or null if the ring is empty
+     */
+    public String ownerOf(String key) {
+        TreeMap<Long, String> current = ring;
+        if (current.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = current.ceilingEntry(UrlFingerprint.of(key));
+        return (entry != null ? entry : current.firstEntry()).getValue();
+    }
+    
+    /**
+     * Get the ids of all nodes on the ring
+     * 
+     * @return The node ids
+     */
+    public Set<String> getNodes() {
+        return Collections.unmodifiableSet(new HashSet<>(ring.values()));
+    }
+}
@@ -10,6 +10,58 @@ public class CrawlConfig {
     private final boolean enableAiAnalysis;
     private final long requestDelay;
     private final int maxRetries;
+    private final int parallelism;
+    private final long expectedVisitedUrls;
+    private final boolean visitedSetOffHeap;
+    private final boolean visitedBloomFilter;
+    private final String visitedLogPath;
+    private final String checkpointDir;
+    private final boolean resumeFromCheckpoint;
+    private final int checkpointInterval;
+    private final String clusterNode;
+    private final String[] clusterPeers;
+    private final long clusterIdleTimeout;
+    private final String[] allowedDomains;
+    private final String[] deniedDomains;
+    private final boolean sameDomainOnly;
+    private final boolean registrableDomainScope;
+    private final String[] skippedExtensions;
+    private final String[] includedPathPrefixes;
+    private final String[] excludedPathPrefixes;
+    private final String[] includedUrlPatterns;
+    private final String[] excludedUrlPatterns;
+    private final String pageCacheDir;
+    private final boolean respectRobotsTxt;
+    private final String[] sitemapUrls;
+    private final boolean sitemapDiscovery;
+    private final boolean detectNearDuplicates;
+    private final boolean sortQueryParameters;
+    private final String[] strippedQueryParameters;
+    private final boolean detectCrawlerTraps;
+    private final int maxUrlsPerHost;
+    private final int maxUrlsPerPathPattern;
+    private final int maxUrlDepth;
+    private final int maxRepeatedPathSegments;
+    private final int maxConnectionsPerHost;
+    private final int maxBodyBytes;
+    private final long dnsCacheTtl;
+    private final long dnsNegativeCacheTtl;
+    private final long retryBaseDelay;
+    private final long retryMaxDelay;
+    private final int maxRedirects;
+    private final int circuitBreakerThreshold;
+    private final long circuitBreakerOpenTime;
+    private final long redirectCacheTtl;
+    private final boolean adaptiveRequestDelay;
+    private final long minRequestDelay;
+    private final long maxRequestDelay;
+    private final long maxBufferedBytes;
+    private final double heapPressureThreshold;
+    private final String archiveDir;
+    private final long archiveMaxFileBytes;
+    private final boolean replayFromArchive;
+    private final int parseThreads;
+    private final int analysisThreads;
     
     /**
      * Private constructor used by the Builder
@@ -21,6 +73,59 @@ public class CrawlConfig {
         this.enableAiAnalysis = builder.enableAiAnalysis;
         this.requestDelay = builder.requestDelay;
         this.maxRetries = builder.maxRetries;
+        this.parallelism = builder.parallelism;
+        this.expectedVisitedUrls = builder.expectedVisitedUrls;
+        this.visitedSetOffHeap = builder.visitedSetOffHeap;
+        this.visitedBloomFilter = builder.visitedBloomFilter;
+        this.visitedLogPath = builder.visitedLogPath;
+        this.checkpointDir = builder.checkpointDir;
+        this.resumeFromCheckpoint = builder.resumeFromCheckpoint;
+        this.checkpointInterval = builder.checkpointInterval;
+        this.clusterNode = builder.clusterNode;
+        this.clusterPeers = builder.clusterPeers;
+        this.clusterIdleTimeout = builder.clusterIdleTimeout;
+        this.allowedDomains = builder.allowedDomains;
+        this.deniedDomains = builder.deniedDomains;
+        this.sameDomainOnly = builder.sameDomainOnly;
+        this.registrableDomainScope = builder.registrableDomainScope;
+        this.skippedExtensions = builder.skippedExtensions;
+        this.includedPathPrefixes = builder.includedPathPrefixes;
+        this.excludedPathPrefixes = builder.excludedPathPrefixes;
+        this.includedUrlPatterns = builder.includedUrlPatterns;
+        this.excludedUrlPatterns = builder.excludedUrlPatterns;
+        this.pageCacheDir = builder.pageCacheDir;
+        this.respectRobotsTxt = builder.respectRobotsTxt;
+        this.sitemapUrls = builder.sitemapUrls;
+        this.sitemapDiscovery = builder.sitemapDiscovery;
+        this.detectNearDuplicates = builder.detectNearDuplicates;
+        this.sortQueryParameters = builder.sortQueryParameters;
+        this.strippedQueryParameters = builder.strippedQueryParameters;
+        this.detectCrawlerTraps = builder.detectCrawlerTraps;
+        this.maxUrlsPerHost = builder.maxUrlsPerHost;
+        this.maxUrlsPerPathPattern = builder.maxUrlsPerPathPattern;
+        this.maxUrlDepth = builder.maxUrlDepth;
+        this.maxRepeatedPathSegments = builder.maxRepeatedPathSegments;
+        this.maxConnectionsPerHost = builder.maxConnectionsPerHost;
+        this.maxBodyBytes = builder.maxBodyBytes;
+        this.dnsCacheTtl = builder.dnsCacheTtl;
+        this.dnsNegativeCacheTtl = builder.dnsNegativeCacheTtl;
+        this.retryBaseDelay = builder.retryBaseDelay;
+        this.retryMaxDelay = builder.retryMaxDelay;
+        this.maxRedirects = builder.maxRedirects;
+        this.circuitBreakerThreshold = builder.circuitBreakerThreshold;
+        this.circuitBreakerOpenTime = builder.circuitBreakerOpenTime;
+        this.redirectCacheTtl = builder.redirectCacheTtl;
+        this.adaptiveRequestDelay = builder.adaptiveRequestDelay;
+        // Unless set lower on purpose, adapting never undercuts the configured politeness delay
+        this.minRequestDelay = builder.minRequestDelay >= 0 ? builder.minRequestDelay : builder.requestDelay;
+        this.maxRequestDelay = builder.maxRequestDelay;
+        this.maxBufferedBytes = builder.maxBufferedBytes;
+        this.heapPressureThreshold = builder.heapPressureThreshold;
+        this.archiveDir = builder.archiveDir;
+        this.archiveMaxFileBytes = builder.archiveMaxFileBytes;
+        this.replayFromArchive = builder.replayFromArchive;
+        this.parseThreads = builder.parseThreads;
+        this.analysisThreads = builder.analysisThreads;
     }
     
     /**
@@ -77,6 +182,476 @@ public class CrawlConfig {
         return maxRetries;
     }
     
+    /**
+     * Get the maximum number of pages fetched concurrently.
+     * A value of 1 crawls sequentially on the calling thread.
+     * 
+     * @return The number of in-flight requests allowed
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+    
+    /**
+     * Get the number of visited URLs the visited set is initially sized for
+     * 
+     * @return The expected number of visited URLs
+     */
+    public long getExpectedVisitedUrls() {
+        return expectedVisitedUrls;
+    }
+    
+    /**
+     * Check if the visited set's tables are allocated off-heap
+     * 
+     * @return true if direct memory is used
+     */
+    public boolean isVisitedSetOffHeap() {
+        return visitedSetOffHeap;
+    }
+    
+    /**
+     * Check if a Bloom filter is consulted before the visited set's tables
+     * 
+     * @return true if the Bloom filter is enabled
+     */
+    public boolean isVisitedBloomFilter() {
+        return visitedBloomFilter;
+    }
+    
+    /**
+     * Get the file visited URLs are streamed to for export
+     * 
+     * @return The log file path, or null to use a temporary file
+     */
+    public String getVisitedLogPath() {
+        return visitedLogPath;
+    }
+    
+    /**
+     * Get the directory the crawl is checkpointed to
+     * 
+     * @return The checkpoint directory, or null if checkpointing is disabled
+     */
+    public String getCheckpointDir() {
+        return checkpointDir;
+    }
+    
+    /**
+     * Check whether the crawl resumes from an existing checkpoint
+     * 
+     * @return true to resume, false to start a fresh crawl
+     */
+    public boolean isResumeFromCheckpoint() {
+        return resumeFromCheckpoint;
+    }
+    
+    /**
+     * Get the number of checkpoint journal records between compacted snapshots
+     * 
+     * @return The snapshot interval
+     */
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+    
+    /**
+     * Get this node's identity in a crawl cluster
+     * 
+     * @return The node as id@host:port, or null to crawl standalone
+     */
+    public String getClusterNode() {
+        return clusterNode;
+    }
+    
+    /**
+     * Get the other nodes of the crawl cluster known at startup
+     * 
+     * @return The peers as id@host:port
+     */
+    public String[] getClusterPeers() {
+        return clusterPeers;
+    }
+    
+    /**
+     * Get how long a cluster node waits without local work or links from peers before finishing
+     * 
+     * @return The idle timeout in milliseconds
+     */
+    public long getClusterIdleTimeout() {
+        return clusterIdleTimeout;
+    }
+    
+    /**
+     * Get the domains the crawl is restricted to
+     * 
+     * @return The allowed domains, including their subdomains (empty allows any)
+     */
+    public String[] getAllowedDomains() {
+        return allowedDomains;
+    }
+    
+    /**
+     * Get the domains that are never crawled
+     * 
+     * @return The denied domains, including their subdomains
+     */
+    public String[] getDeniedDomains() {
+        return deniedDomains;
+    }
+    
+    /**
+     * Check whether the crawl stays on the seed URL's host
+     * 
+     * @return true to only follow links to the seed host and its subdomains
+     */
+    public boolean isSameDomainOnly() {
+        return sameDomainOnly;
+    }
+    
+    /**
+     * Check whether a same-domain crawl covers the seed's whole registrable domain
+     * 
+     * @return true if sibling subdomains of the seed host are followed too
+     */
+    public boolean isRegistrableDomainScope() {
+        return registrableDomainScope;
+    }
+    
+    /**
+     * Get the file extensions whose URLs are never fetched
+     * 
+     * @return The extensions, or null for the default list of images, documents, media and assets
+     */
+    public String[] getSkippedExtensions() {
+        return skippedExtensions;
+    }
+    
+    /**
+     * Get the path prefixes the crawl is restricted to
+     * 
+     * @return The path prefixes (empty allows any path)
+     */
+    public String[] getIncludedPathPrefixes() {
+        return includedPathPrefixes;
+    }
+    
+    /**
+     * Get the path prefixes that are never crawled
+     * 
+     * @return The path prefixes
+     */
+    public String[] getExcludedPathPrefixes() {
+        return excludedPathPrefixes;
+    }
+    
+    /**
+     * Get the regular expressions a URL must match to be crawled
+     * 
+     * @return The regular expressions (empty allows any URL)
+     */
+    public String[] getIncludedUrlPatterns() {
+        return includedUrlPatterns;
+    }
+    
+    /**
+     * Get the regular expressions of URLs that are never crawled
+     * 
+     * @return The regular expressions
+     */
+    public String[] getExcludedUrlPatterns() {
+        return excludedUrlPatterns;
+    }
+    
+    /**
+     * Get the directory of the persistent page cache used for incremental recrawls
+     * 
+     * @return The cache directory, or null if incremental recrawling is disabled
+     */
+    public String getPageCacheDir() {
+        return pageCacheDir;
+    }
+    
+    /**
+     * Check whether robots.txt rules are obeyed. This is on by default, so
+     * callers that crawled disallowed URLs before must turn it off explicitly.
+     * 
+     * @return true if disallowed URLs are skipped and Crawl-delay is honoured
+     */
+    public boolean isRespectRobotsTxt() {
+        return respectRobotsTxt;
+    }
+    
+    /**
+     * Get the sitemaps whose URLs seed the frontier
+     * 
+     * @return The sitemap or sitemap index URLs, empty if none are configured
+     */
+    public String[] getSitemapUrls() {
+        return sitemapUrls;
+    }
+    
+    /**
+     * Check whether the seed host's sitemaps are discovered and used to seed the frontier
+     * 
+     * @return true if sitemaps listed in robots.txt, or /sitemap.xml, are read
+     */
+    public boolean isSitemapDiscovery() {
+        return sitemapDiscovery;
+    }
+    
+    /**
+     * Check whether near-duplicate pages are detected
+     * 
+     * @return true if pages whose text nearly duplicates an earlier page are not expanded, analyzed or exported
+     */
+    public boolean isDetectNearDuplicates() {
+        return detectNearDuplicates;
+    }
+    
+    /**
+     * Check whether query parameters are sorted when URLs are canonicalized
+     * 
+     * @return true if URLs differing only in parameter order are treated as one
+     */
+    public boolean isSortQueryParameters() {
+        return sortQueryParameters;
+    }
+    
+    /**
+     * Get the query parameters removed from URLs when they are canonicalized
+     * 
+     * @return The parameter names ("utm_*" matches a prefix), or null for the default tracking parameters
+     */
+    public String[] getStrippedQueryParameters() {
+        return strippedQueryParameters;
+    }
+    
+    /**
+     * Check whether crawler trap detection is enabled
+     * 
+     * @return true if URLs are checked against path depth, repeated segments and per-host budgets before they are queued
+     */
+    public boolean isDetectCrawlerTraps() {
+        return detectCrawlerTraps;
+    }
+    
+    /**
+     * Get the number of URLs crawled per host before its remaining URLs are demoted
+     * 
+     * @return The per-host budget, or 0 for no limit
+     */
+    public int getMaxUrlsPerHost() {
+        return maxUrlsPerHost;
+    }
+    
+    /**
+     * Get the number of URLs crawled per host and path pattern (digits and ids collapsed) before the rest are demoted
+     * 
+     * @return The per-pattern budget, or 0 for no limit
+     */
+    public int getMaxUrlsPerPathPattern() {
+        return maxUrlsPerPathPattern;
+    }
+    
+    /**
+     * Get the maximum number of path segments of a crawled URL
+     * 
+     * @return The depth limit, or 0 for no limit
+     */
+    public int getMaxUrlDepth() {
+        return maxUrlDepth;
+    }
+    
+    /**
+     * Get how often one segment may occur in a crawled URL's path
+     * 
+     * @return The repeat limit, or 0 for no limit
+     */
+    public int getMaxRepeatedPathSegments() {
+        return maxRepeatedPathSegments;
+    }
+    
+    /**
+     * Get the maximum number of concurrent requests per host
+     * 
+     * @return The per-host connection limit, or 0 for no limit
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+    
+    /**
+     * Get the maximum number of bytes read from a response body
+     * 
+     * @return The body size limit in bytes
+     */
+    public int getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+    
+    /**
+     * Get how long resolved host names are cached in milliseconds
+     * 
+     * @return The DNS cache TTL
+     */
+    public long getDnsCacheTtl() {
+        return dnsCacheTtl;
+    }
+    
+    /**
+     * Get how long failed host name lookups are cached in milliseconds
+     * 
+     * @return The negative DNS cache TTL
+     */
+    public long getDnsNegativeCacheTtl() {
+        return dnsNegativeCacheTtl;
+    }
+    
+    /**
+     * Get the delay before the first retry of a failed request in milliseconds
+     * 
+     * @return The base retry delay
+     */
+    public long getRetryBaseDelay() {
+        return retryBaseDelay;
+    }
+    
+    /**
+     * Get the maximum delay before a retry in milliseconds
+     * 
+     * @return The maximum retry delay
+     */
+    public long getRetryMaxDelay() {
+        return retryMaxDelay;
+    }
+    
+    /**
+     * Get the maximum number of redirects followed for a single request
+     * 
+     * @return The redirect limit
+     */
+    public int getMaxRedirects() {
+        return maxRedirects;
+    }
+    
+    /**
+     * Get the number of consecutive failures after which a host is parked
+     * 
+     * @return The failure threshold, or 0 if circuit breakers are disabled
+     */
+    public int getCircuitBreakerThreshold() {
+        return circuitBreakerThreshold;
+    }
+    
+    /**
+     * Get how long a failing host is parked the first time in milliseconds
+     * 
+     * @return The park time
+     */
+    public long getCircuitBreakerOpenTime() {
+        return circuitBreakerOpenTime;
+    }
+    
+    /**
+     * Get how long temporary redirects (302, 303, 307) are remembered in milliseconds
+     * 
+     * @return The temporary redirect TTL
+     */
+    public long getRedirectCacheTtl() {
+        return redirectCacheTtl;
+    }
+    
+    /**
+     * Check whether the delay between requests to a host adapts to how the host responds
+     * 
+     * @return true if each host's delay is adjusted by additive increase, multiplicative decrease
+     */
+    public boolean isAdaptiveRequestDelay() {
+        return adaptiveRequestDelay;
+    }
+    
+    /**
+     * Get the floor of the adaptive request delay in milliseconds
+     * 
+     * @return The minimum delay between requests to a host; the request delay unless set explicitly
+     */
+    public long getMinRequestDelay() {
+        return minRequestDelay;
+    }
+    
+    /**
+     * Get the ceiling of the adaptive request delay in milliseconds
+     * 
+     * @return The maximum delay between requests to a host
+     */
+    public long getMaxRequestDelay() {
+        return maxRequestDelay;
+    }
+    
+    /**
+     * Get the response bytes in flight above which no new fetches start
+     * 
+     * @return The byte budget, or 0 for no limit
+     */
+    public long getMaxBufferedBytes() {
+        return maxBufferedBytes;
+    }
+    
+    /**
+     * Get the fraction of the maximum heap in use after garbage collection above which no new fetches start
+     * 
+     * @return The heap threshold, or 0 if heap usage is ignored
+     */
+    public double getHeapPressureThreshold() {
+        return heapPressureThreshold;
+    }
+    
+    /**
+     * Get the directory of the raw response archive
+     * 
+     * @return The archive directory, or null if responses are not archived
+     */
+    public String getArchiveDir() {
+        return archiveDir;
+    }
+    
+    /**
+     * Get the size above which a new archive file is started
+     * 
+     * @return The file size limit in bytes
+     */
+    public long getArchiveMaxFileBytes() {
+        return archiveMaxFileBytes;
+    }
+    
+    /**
+     * Check whether responses are replayed from the archive instead of fetched
+     * 
+     * @return true if the crawl runs offline from the archive
+     */
+    public boolean isReplayFromArchive() {
+        return replayFromArchive;
+    }
+    
+    /**
+     * Get the number of threads parsing fetched pages
+     * 
+     * @return The thread count, or 0 for one per processor
+     */
+    public int getParseThreads() {
+        return parseThreads;
+    }
+    
+    /**
+     * Get the number of AI analyses run at once
+     * 
+     * @return The thread count
+     */
+    public int getAnalysisThreads() {
+        return analysisThreads;
+    }
+    
     /**
      * Builder class for CrawlConfig
      */
@@ -87,70 +662,709 @@ public class CrawlConfig {
         private boolean enableAiAnalysis = false;
         private long requestDelay = 1000; // Default 1 second
         private int maxRetries = 3;
+        private int parallelism = 1;
+        private long expectedVisitedUrls = 0;
+        private boolean visitedSetOffHeap = false;
+        private boolean visitedBloomFilter = false;
+        private String visitedLogPath;
+        private String checkpointDir;
+        private boolean resumeFromCheckpoint = false;
+        private int checkpointInterval = 100_000;
+        private String clusterNode;
+        private String[] clusterPeers = new String[0];
+        private long clusterIdleTimeout = 10_000;
+        private String[] allowedDomains = new String[0];
+        private String[] deniedDomains = new String[0];
+        private boolean sameDomainOnly = false;
+        private boolean registrableDomainScope = false;
+        private String[] skippedExtensions;
+        private String[] includedPathPrefixes = new String[0];
+        private String[] excludedPathPrefixes = new String[0];
+        private String[] includedUrlPatterns = new String[0];
+        private String[] excludedUrlPatterns = new String[0];
+        private String pageCacheDir;
+        private boolean respectRobotsTxt = true;
+        private String[] sitemapUrls = new String[0];
+        private boolean sitemapDiscovery = false;
+        private boolean detectNearDuplicates = false;
+        private boolean sortQueryParameters = false;
+        private String[] strippedQueryParameters;
+        private boolean detectCrawlerTraps = false;
+        private int maxUrlsPerHost = 0;
+        private int maxUrlsPerPathPattern = 250;
+        private int maxUrlDepth = 16;
+        private int maxRepeatedPathSegments = 2;
+        private int maxConnectionsPerHost = 6;
+        private int maxBodyBytes = 10 * 1024 * 1024;
+        private long dnsCacheTtl = 300_000;
+        private long dnsNegativeCacheTtl = 30_000;
+        private long retryBaseDelay = 1000;
+        private long retryMaxDelay = 60_000;
+        private int maxRedirects = 5;
+        private int circuitBreakerThreshold = 5;
+        private long circuitBreakerOpenTime = 30_000;
+        private long redirectCacheTtl = 3_600_000;
+        private boolean adaptiveRequestDelay = false;
+        private long minRequestDelay = -1;
+        private long maxRequestDelay = 30_000;
+        private long maxBufferedBytes = 64L * 1024 * 1024;
+        private double heapPressureThreshold = 0.85;
+        private String archiveDir;
+        private long archiveMaxFileBytes = 1024L * 1024 * 1024;
+        private boolean replayFromArchive = false;
+        private int parseThreads = 0;
+        private int analysisThreads = 4;
+        
+        /**
+         * Set the seed URL
+         * 
+         * @param seedUrl The seed URL
+         * @return The Builder instance
+         */
+        public Builder setSeedUrl(String seedUrl) {
+            this.seedUrl = seedUrl;
+            return this;
+        }
+        
+        /**
+         * Set the search keywords
+         * 
+         * @param keywords Array of keywords
+         * @return The Builder instance
+         */
+        public Builder setKeywords(String[] keywords) {
+            this.keywords = keywords;
+            return this;
+        }
+        
+        /**
+         * Set the maximum number of pages to crawl
+         * 
+         * @param maxPages The maximum number of pages
+         * @return The Builder instance
+         */
+        public Builder setMaxPages(int maxPages) {
+            this.maxPages = maxPages;
+            return this;
+        }
+        
+        /**
+         * Set whether AI analysis is enabled
+         * 
+         * @param enableAiAnalysis true to enable AI analysis
+         * @return The Builder instance
+         */
+        public Builder setEnableAiAnalysis(boolean enableAiAnalysis) {
+            this.enableAiAnalysis = enableAiAnalysis;
+            return this;
+        }
+        
+        /**
+         * Set the delay between requests in milliseconds
+         * 
+         * @param requestDelay The request delay
+         * @return The Builder instance
+         */
+        public Builder setRequestDelay(long requestDelay) {
+            this.requestDelay = requestDelay;
+            return this;
+        }
+        
+        /**
+         * Set the maximum number of retries for failed requests
+         * 
+         * @param maxRetries The maximum number of retries
+         * @return The Builder instance
+         */
+        public Builder setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+        
+        /**
+         * Set the maximum number of pages fetched concurrently
+         * 
+         * @param parallelism The number of in-flight requests allowed (minimum 1)
+         * @return The Builder instance
+         */
+        public Builder setParallelism(int parallelism) {
+            this.parallelism = Math.max(1, parallelism);
+            return this;
+        }
+        
+        /**
+         * Set the number of visited URLs the visited set is initially sized for.
+         * Defaults to maxPages; the set grows if the estimate is exceeded.
+         * 
+         * @param expectedVisitedUrls The expected number of visited URLs
+         * @return The Builder instance
+         */
+        public Builder setExpectedVisitedUrls(long expectedVisitedUrls) {
+            this.expectedVisitedUrls = expectedVisitedUrls;
+            return this;
+        }
+        
+        /**
+         * Set whether the visited set's tables are allocated off-heap
+         * 
+         * @param visitedSetOffHeap true to use direct memory
+         * @return The Builder instance
+         */
+        public Builder setVisitedSetOffHeap(boolean visitedSetOffHeap) {
+            this.visitedSetOffHeap = visitedSetOffHeap;
+            return this;
+        }
+        
+        /**
+         * Set whether a Bloom filter is consulted before the visited set's tables
+         * 
+         * @param visitedBloomFilter true to enable the Bloom filter
+         * @return The Builder instance
+         */
+        public Builder setVisitedBloomFilter(boolean visitedBloomFilter) {
+            this.visitedBloomFilter = visitedBloomFilter;
+            return this;
+        }
+        
+        /**
+         * Set the file visited URLs are streamed to for export
+         * 
+         * @param visitedLogPath The log file path (a temporary file is used if not set)
+         * @return The Builder instance
+         */
+        public Builder setVisitedLogPath(String visitedLogPath) {
+            this.visitedLogPath = visitedLogPath;
+            return this;
+        }
+        
+        /**
+         * Set the directory the crawl is checkpointed to
+         * 
+         * @param checkpointDir The checkpoint directory (checkpointing is disabled if not set)
+         * @return The Builder instance
+         */
+        public Builder setCheckpointDir(String checkpointDir) {
+            this.checkpointDir = checkpointDir;
+            return this;
+        }
+        
+        /**
+         * Set whether to resume from the checkpoint in the checkpoint directory
+         * 
+         * @param resumeFromCheckpoint true to resume, false to discard any existing checkpoint
+         * @return The Builder instance
+         */
+        public Builder setResumeFromCheckpoint(boolean resumeFromCheckpoint) {
+            this.resumeFromCheckpoint = resumeFromCheckpoint;
+            return this;
+        }
+        
+        /**
+         * Set the number of checkpoint journal records between compacted snapshots
+         * 
+         * @param checkpointInterval The snapshot interval
+         * @return The Builder instance
+         */
+        public Builder setCheckpointInterval(int checkpointInterval) {
+            this.checkpointInterval = Math.max(1, checkpointInterval);
+            return this;
+        }
+        
+        /**
+         * Set this node's identity to crawl as part of a cluster
+         * 
+         * @param clusterNode The node as id@host:port (standalone if not set)
+         * @return The Builder instance
+         */
+        public Builder setClusterNode(String clusterNode) {
+            this.clusterNode = clusterNode;
+            return this;
+        }
+        
+        /**
+         * Set the other nodes of the crawl cluster known at startup
+         * 
+         * @param clusterPeers The peers as id@host:port
+         * @return The Builder instance
+         */
+        public Builder setClusterPeers(String[] clusterPeers) {
+            this.clusterPeers = clusterPeers;
+            return this;
+        }
+        
+        /**
+         * Set how long a cluster node waits without local work or links from peers before finishing
+         * 
+         * @param clusterIdleTimeout The idle timeout in milliseconds
+         * @return The Builder instance
+         */
+        public Builder setClusterIdleTimeout(long clusterIdleTimeout) {
+            this.clusterIdleTimeout = clusterIdleTimeout;
+            return this;
+        }
+        
+        /**
+         * Restrict the crawl to these domains and their subdomains
+         * 
+         * @param allowedDomains The allowed domains
+         * @return The Builder instance
+         */
+        public Builder setAllowedDomains(String[] allowedDomains) {
+            this.allowedDomains = allowedDomains;
+            return this;
+        }
+        
+        /**
+         * Set domains that are never crawled, including their subdomains
+         * 
+         * @param deniedDomains The denied domains
+         * @return The Builder instance
+         */
+        public Builder setDeniedDomains(String[] deniedDomains) {
+            this.deniedDomains = deniedDomains;
+            return this;
+        }
         
         /**
-         * Set the seed URL
+         * Set whether the crawl stays on the seed URL's host and its subdomains
          * 
-         * @param seedUrl The seed URL
+         * @param sameDomainOnly true to stay on the seed host
          * @return The Builder instance
          */
-        public Builder setSeedUrl(String seedUrl) {
-            this.seedUrl = seedUrl;
+        public Builder setSameDomainOnly(boolean sameDomainOnly) {
+            this.sameDomainOnly = sameDomainOnly;
             return this;
         }
         
         /**
-         * Set the search keywords
+         * Set whether a same-domain crawl covers the seed's whole registrable
+         * domain (see {@link util.UrlUtils#getRegistrableDomain(String)}), so
+         * that a crawl seeded on www.example.com also follows example.com and
+         * its other subdomains
          * 
-         * @param keywords Array of keywords
+         * @param registrableDomainScope true to widen the same-domain scope to the registrable domain
          * @return The Builder instance
          */
-        public Builder setKeywords(String[] keywords) {
-            this.keywords = keywords;
+        public Builder setRegistrableDomainScope(boolean registrableDomainScope) {
+            this.registrableDomainScope = registrableDomainScope;
             return this;
         }
         
         /**
-         * Set the maximum number of pages to crawl
+         * Set the file extensions whose URLs are never fetched
          * 
-         * @param maxPages The maximum number of pages
+         * @param skippedExtensions The extensions (null for the default list, empty to fetch everything)
          * @return The Builder instance
          */
-        public Builder setMaxPages(int maxPages) {
-            this.maxPages = maxPages;
+        public Builder setSkippedExtensions(String[] skippedExtensions) {
+            this.skippedExtensions = skippedExtensions;
             return this;
         }
         
         /**
-         * Set whether AI analysis is enabled
+         * Restrict the crawl to URLs whose path starts with one of these prefixes
          * 
-         * @param enableAiAnalysis true to enable AI analysis
+         * @param includedPathPrefixes The path prefixes, e.g. "/docs/"
          * @return The Builder instance
          */
-        public Builder setEnableAiAnalysis(boolean enableAiAnalysis) {
-            this.enableAiAnalysis = enableAiAnalysis;
+        public Builder setIncludedPathPrefixes(String[] includedPathPrefixes) {
+            this.includedPathPrefixes = includedPathPrefixes;
             return this;
         }
         
         /**
-         * Set the delay between requests in milliseconds
+         * Set path prefixes that are never crawled
          * 
-         * @param requestDelay The request delay
+         * @param excludedPathPrefixes The path prefixes, e.g. "/login"
          * @return The Builder instance
          */
-        public Builder setRequestDelay(long requestDelay) {
-            this.requestDelay = requestDelay;
+        public Builder setExcludedPathPrefixes(String[] excludedPathPrefixes) {
+            this.excludedPathPrefixes = excludedPathPrefixes;
             return this;
         }
         
         /**
-         * Set the maximum number of retries for failed requests
+         * Restrict the crawl to URLs matching one of these regular expressions
          * 
-         * @param maxRetries The maximum number of retries
+         * @param includedUrlPatterns The regular expressions
          * @return The Builder instance
          */
-        public Builder setMaxRetries(int maxRetries) {
-            this.maxRetries = maxRetries;
+        public Builder setIncludedUrlPatterns(String[] includedUrlPatterns) {
+            this.includedUrlPatterns = includedUrlPatterns;
+            return this;
+        }
+        
+        /**
+         * Set regular expressions of URLs that are never crawled
+         * 
+         * @param excludedUrlPatterns The regular expressions
+         * @return The Builder instance
+         */
+        public Builder setExcludedUrlPatterns(String[] excludedUrlPatterns) {
+            this.excludedUrlPatterns = excludedUrlPatterns;
+            return this;
+        }
+        
+        /**
+         * Enable incremental recrawling with a persistent page cache in this directory
+         * 
+         * @param pageCacheDir The cache directory
+         * @return The Builder instance
+         */
+        public Builder setPageCacheDir(String pageCacheDir) {
+            this.pageCacheDir = pageCacheDir;
+            return this;
+        }
+        
+        /**
+         * Set whether robots.txt rules are obeyed (default true)
+         * 
+         * @param respectRobotsTxt true to skip disallowed URLs and honour Crawl-delay
+         * @return The Builder instance
+         */
+        public Builder setRespectRobotsTxt(boolean respectRobotsTxt) {
+            this.respectRobotsTxt = respectRobotsTxt;
+            return this;
+        }
+        
+        /**
+         * Set sitemaps whose URLs seed the frontier
+         * 
+         * @param sitemapUrls The sitemap or sitemap index URLs
+         * @return The Builder instance
+         */
+        public Builder setSitemapUrls(String[] sitemapUrls) {
+            this.sitemapUrls = sitemapUrls;
+            return this;
+        }
+        
+        /**
+         * Set whether the seed host's sitemaps are discovered and used to seed the frontier
+         * 
+         * @param sitemapDiscovery true to read the sitemaps listed in robots.txt, or /sitemap.xml
+         * @return The Builder instance
+         */
+        public Builder setSitemapDiscovery(boolean sitemapDiscovery) {
+            this.sitemapDiscovery = sitemapDiscovery;
+            return this;
+        }
+        
+        /**
+         * Set whether near-duplicate pages are detected (default false)
+         * 
+         * @param detectNearDuplicates true to skip link expansion, AI analysis and export for near-duplicate pages
+         * @return The Builder instance
+         */
+        public Builder setDetectNearDuplicates(boolean detectNearDuplicates) {
+            this.detectNearDuplicates = detectNearDuplicates;
+            return this;
+        }
+        
+        /**
+         * Set whether query parameters are sorted when URLs are canonicalized
+         * 
+         * @param sortQueryParameters true to treat URLs differing only in parameter order as one
+         * @return The Builder instance
+         */
+        public Builder setSortQueryParameters(boolean sortQueryParameters) {
+            this.sortQueryParameters = sortQueryParameters;
+            return this;
+        }
+        
+        /**
+         * Set the query parameters removed from URLs when they are canonicalized
+         * 
+         * @param strippedQueryParameters The parameter names ("utm_*" matches a prefix), null for the default tracking parameters, empty to keep all
+         * @return The Builder instance
+         */
+        public Builder setStrippedQueryParameters(String[] strippedQueryParameters) {
+            this.strippedQueryParameters = strippedQueryParameters;
+            return this;
+        }
+        
+        /**
+         * Set whether crawler trap detection is enabled (default false). The
+         * limits below only apply when it is.
+         * 
+         * @param detectCrawlerTraps true to demote or drop URLs that look like crawler traps
+         * @return The Builder instance
+         */
+        public Builder setDetectCrawlerTraps(boolean detectCrawlerTraps) {
+            this.detectCrawlerTraps = detectCrawlerTraps;
+            return this;
+        }
+        
+        /**
+         * Set the number of URLs crawled per host before its remaining URLs are demoted
+         * 
+         * @param maxUrlsPerHost The per-host budget, or 0 for no limit
+         * @return The Builder instance
+         */
+        public Builder setMaxUrlsPerHost(int maxUrlsPerHost) {
+            this.maxUrlsPerHost = maxUrlsPerHost;
+            return this;
+        }
+        
+        /**
+         * Set the number of URLs crawled per host and path pattern (digits and ids collapsed) before the rest are demoted
+         * 
+         * @param maxUrlsPerPathPattern The per-pattern budget, or 0 for no limit
+         * @return The Builder instance
+         */
+        public Builder setMaxUrlsPerPathPattern(int maxUrlsPerPathPattern) {
+            this.maxUrlsPerPathPattern = maxUrlsPerPathPattern;
+            return this;
+        }
+        
+        /**
+         * Set the maximum number of path segments of a crawled URL; deeper URLs are dropped as traps
+         * 
+         * @param maxUrlDepth The depth limit, or 0 for no limit
+         * @return The Builder instance
+         */
+        public Builder setMaxUrlDepth(int maxUrlDepth) {
+            this.maxUrlDepth = maxUrlDepth;
+            return this;
+        }
+        
+        /**
+         * Set how often one segment may occur in a crawled URL's path; URLs repeating a segment more often are dropped as traps
+         * 
+         * @param maxRepeatedPathSegments The repeat limit, or 0 for no limit
+         * @return The Builder instance
+         */
+        public Builder setMaxRepeatedPathSegments(int maxRepeatedPathSegments) {
+            this.maxRepeatedPathSegments = maxRepeatedPathSegments;
+            return this;
+        }
+        
+        /**
+         * Set the maximum number of concurrent requests per host; over HTTP/2 they share one connection
+         * 
+         * @param maxConnectionsPerHost The per-host connection limit, or 0 for no limit
+         * @return The Builder instance
+         */
+        public Builder setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            return this;
+        }
+        
+        /**
+         * Set the maximum number of bytes read from a response body, both as
+         * received and after decompression; larger bodies are cut off and
+         * parsed as far as they go
+         * 
+         * @param maxBodyBytes The body size limit in bytes
+         * @return The Builder instance
+         */
+        public Builder setMaxBodyBytes(int maxBodyBytes) {
+            this.maxBodyBytes = maxBodyBytes;
+            return this;
+        }
+        
+        /**
+         * Set how long resolved host names are cached in milliseconds; 0 disables the DNS cache and prefetching
+         * 
+         * @param dnsCacheTtl The DNS cache TTL
+         * @return The Builder instance
+         */
+        public Builder setDnsCacheTtl(long dnsCacheTtl) {
+            this.dnsCacheTtl = dnsCacheTtl;
+            return this;
+        }
+        
+        /**
+         * Set how long failed host name lookups are cached in milliseconds
+         * 
+         * @param dnsNegativeCacheTtl The negative DNS cache TTL, or 0 to retry failed lookups every time
+         * @return The Builder instance
+         */
+        public Builder setDnsNegativeCacheTtl(long dnsNegativeCacheTtl) {
+            this.dnsNegativeCacheTtl = dnsNegativeCacheTtl;
+            return this;
+        }
+        
+        /**
+         * Set the delay before the first retry of a failed request in milliseconds; it doubles with every further retry and half of it is randomized
+         * 
+         * @param retryBaseDelay The base retry delay
+         * @return The Builder instance
+         */
+        public Builder setRetryBaseDelay(long retryBaseDelay) {
+            this.retryBaseDelay = retryBaseDelay;
+            return this;
+        }
+        
+        /**
+         * Set the maximum delay before a retry in milliseconds; a request whose Retry-After asks for longer is not retried
+         * 
+         * @param retryMaxDelay The maximum retry delay
+         * @return The Builder instance
+         */
+        public Builder setRetryMaxDelay(long retryMaxDelay) {
+            this.retryMaxDelay = retryMaxDelay;
+            return this;
+        }
+        
+        /**
+         * Set the maximum number of redirects followed for a single request
+         * 
+         * @param maxRedirects The redirect limit
+         * @return The Builder instance
+         */
+        public Builder setMaxRedirects(int maxRedirects) {
+            this.maxRedirects = maxRedirects;
+            return this;
+        }
+        
+        /**
+         * Set the number of consecutive failures (network errors, 5xx or 429) after which a host is parked
+         * 
+         * @param circuitBreakerThreshold The failure threshold, or 0 to disable circuit breakers
+         * @return The Builder instance
+         */
+        public Builder setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+            this.circuitBreakerThreshold = circuitBreakerThreshold;
+            return this;
+        }
+        
+        /**
+         * Set how long a failing host is parked the first time in milliseconds; it doubles each time the host fails again right after
+         * 
+         * @param circuitBreakerOpenTime The park time
+         * @return The Builder instance
+         */
+        public Builder setCircuitBreakerOpenTime(long circuitBreakerOpenTime) {
+            this.circuitBreakerOpenTime = circuitBreakerOpenTime;
+            return this;
+        }
+        
+        /**
+         * Set how long temporary redirects (302, 303, 307) are remembered in milliseconds; permanent ones are kept for the whole crawl, and across crawls in the page cache directory
+         * 
+         * @param redirectCacheTtl The temporary redirect TTL, or 0 to not remember temporary redirects
+         * @return The Builder instance
+         */
+        public Builder setRedirectCacheTtl(long redirectCacheTtl) {
+            this.redirectCacheTtl = redirectCacheTtl;
+            return this;
+        }
+        
+        /**
+         * Set whether the delay between requests to a host adapts to how the host
+         * responds, starting from the request delay: it grows on 429/503 responses,
+         * slow responses or frequent errors and shrinks back while the host answers
+         * quickly. It never goes below the floor, which is the request delay unless
+         * {@link #setMinRequestDelay} lowers it, so by default adapting only
+         * lengthens the configured delay.
+         * 
+         * @param adaptiveRequestDelay Whether to adapt the delay
+         * @return The Builder instance
+         */
+        public Builder setAdaptiveRequestDelay(boolean adaptiveRequestDelay) {
+            this.adaptiveRequestDelay = adaptiveRequestDelay;
+            return this;
+        }
+        
+        /**
+         * Set the floor of the adaptive request delay in milliseconds. Defaults to
+         * the request delay; a lower floor lets fast hosts be crawled faster than
+         * the request delay.
+         * 
+         * @param minRequestDelay The minimum delay between requests to a host
+         * @return The Builder instance
+         */
+        public Builder setMinRequestDelay(long minRequestDelay) {
+            this.minRequestDelay = minRequestDelay;
+            return this;
+        }
+        
+        /**
+         * Set the ceiling of the adaptive request delay in milliseconds
+         * 
+         * @param maxRequestDelay The maximum delay between requests to a host
+         * @return The Builder instance
+         */
+        public Builder setMaxRequestDelay(long maxRequestDelay) {
+            this.maxRequestDelay = maxRequestDelay;
+            return this;
+        }
+        
+        /**
+         * Set the response bytes in flight above which no new fetches start until pages in progress finish
+         * 
+         * @param maxBufferedBytes The byte budget, or 0 for no limit
+         * @return The Builder instance
+         */
+        public Builder setMaxBufferedBytes(long maxBufferedBytes) {
+            this.maxBufferedBytes = maxBufferedBytes;
+            return this;
+        }
+        
+        /**
+         * Set the fraction of the maximum heap in use after garbage collection above
+         * which no new fetches start until usage drops again
+         * 
+         * @param heapPressureThreshold The heap threshold between 0 and 1, or 0 to ignore heap usage
+         * @return The Builder instance
+         */
+        public Builder setHeapPressureThreshold(double heapPressureThreshold) {
+            this.heapPressureThreshold = heapPressureThreshold;
+            return this;
+        }
+        
+        /**
+         * Set the directory to archive raw responses in, or to replay them from
+         * 
+         * @param archiveDir The archive directory, or null to not archive responses
+         * @return The Builder instance
+         */
+        public Builder setArchiveDir(String archiveDir) {
+            this.archiveDir = archiveDir;
+            return this;
+        }
+        
+        /**
+         * Set the size above which a new archive file is started
+         * 
+         * @param archiveMaxFileBytes The file size limit in bytes
+         * @return The Builder instance
+         */
+        public Builder setArchiveMaxFileBytes(long archiveMaxFileBytes) {
+            this.archiveMaxFileBytes = archiveMaxFileBytes;
+            return this;
+        }
+        
+        /**
+         * Set whether to replay responses from the archive instead of fetching them
+         * 
+         * @param replayFromArchive true to crawl offline from the archive
+         * @return The Builder instance
+         */
+        public Builder setReplayFromArchive(boolean replayFromArchive) {
+            this.replayFromArchive = replayFromArchive;
+            return this;
+        }
+        
+        /**
+         * Set the number of threads parsing fetched pages when crawling in parallel
+         * 
+         * @param parseThreads The thread count, or 0 for one per processor
+         * @return The Builder instance
+         */
+        public Builder setParseThreads(int parseThreads) {
+            this.parseThreads = parseThreads;
+            return this;
+        }
+        
+        /**
+         * Set the number of AI analyses run at once when crawling in parallel
+         * 
+         * @param analysisThreads The thread count
+         * @return The Builder instance
+         */
+        public Builder setAnalysisThreads(int analysisThreads) {
+            this.analysisThreads = analysisThreads;
             return this;
         }
         
@@ -160,6 +1374,9 @@ public class CrawlConfig {
          * @return The CrawlConfig instance
          */
         public CrawlConfig build() {
+            if (expectedVisitedUrls <= 0) {
+                expectedVisitedUrls = maxPages;
+            }
             return new CrawlConfig(this);
         }
     }
@@ -0,0 +1,156 @@
+package crawler;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import models.PageLink;
+import util.Logger;
+
+/**
+ * Implements a focused best-first crawl strategy.
+ * <p>
+ * Every discovered link is scored by a {@link LinkScorer} and the frontier is
+ * kept in a bounded priority order, so the most promising URL is always
+ * handed out next. When the frontier is full the lowest-scoring URL is
+ * dropped. A URL found again with a better score is promoted.
+ */
+public class BestFirstCrawler implements CrawlStrategy {
+    private static final int DEFAULT_MAX_FRONTIER_SIZE = 100_000;
+    private static final double SEED_SCORE = Double.MAX_VALUE;
+    
+    private final LinkScorer scorer;
+    private final int maxFrontierSize;
+    private final Logger logger;
+    
+    // Ordered by descending score, then discovery order
+    private final TreeSet<Entry> frontier;
+    private final Map<String, Entry> index;
+    private long sequence;
+    private long dropped;
+    
+    private VisitedUrlSet visitedUrls;
+    private int maxPages;
+    
+    /**
+     * Constructor for BestFirstCrawler with the default frontier bound
+     * 
+     * @param keywords The crawl keywords links are scored against
+     */
+    public BestFirstCrawler(String[] keywords) {
+        this(keywords, DEFAULT_MAX_FRONTIER_SIZE);
+    }
+    
+    /**
+     * Constructor for BestFirstCrawler
+     * 
+     * @param keywords The crawl keywords links are scored against
+     * @param maxFrontierSize Maximum number of URLs kept in the frontier
+     */
+    public BestFirstCrawler(String[] keywords, int maxFrontierSize) {
+        this.scorer = new LinkScorer(keywords);
+        this.maxFrontierSize = Math.max(1, maxFrontierSize);
+        this.logger = new Logger(BestFirstCrawler.class.getSimpleName());
+        this.frontier = new TreeSet<>(Comparator.comparingDouble((Entry entry) -> -entry.score)
+                .thenComparingLong(entry -> entry.sequence));
+        this.index = new HashMap<>();
+    }
+    
+    @Override
+    public synchronized void initialize(Set<String> seeds, VisitedUrlSet visitedUrls, int maxPages) {
+        this.visitedUrls = visitedUrls;
+        this.maxPages = maxPages;
+        for (String url : seeds) {
+            offer(url, SEED_SCORE);
+        }
+        logger.info("Initialized best-first crawler with " + seeds.size() + " seed URLs");
+    }
+    
+    @Override
+    public synchronized String next() {
+        Entry entry = frontier.pollFirst();
+        if (entry == null) {
+            return null;
+        }
+        index.remove(entry.url);
+        return entry.url;
+    }
+    
+    @Override
+    public synchronized boolean hasNext() {
+        return !frontier.isEmpty() && visitedUrls.size() < maxPages;
+    }
+    
+    @Override
+    public void addUrl(String url) {
+        double score = scorer.scoreUrl(url);
+        synchronized (this) {
+            offer(url, score);
+        }
+    }
+    
+    @Override
+    public void addLink(PageLink link, double parentRelevance) {
+        double score = scorer.scoreLink(link, parentRelevance);
+        synchronized (this) {
+            offer(link.getUrl(), score);
+        }
+    }
+    
+    /**
+     * Get the number of URLs dropped because the frontier was full
+     * 
+     * @return The number of dropped URLs
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+    
+    private void offer(String url, double score) {
+        if (visitedUrls.contains(url)) {
+            return;
+        }
+        
+        Entry existing = index.get(url);
+        if (existing != null) {
+            if (score > existing.score) {
+                frontier.remove(existing);
+                existing.score = score;
+                frontier.add(existing);
+            }
+            return;
+        }
+        
+        if (frontier.size() >= maxFrontierSize) {
+            Entry worst = frontier.last();
+            if (worst.score >= score) {
+                dropped++;
+                return;
+            }
+            frontier.pollLast();
+            index.remove(worst.url);
+            dropped++;
+        }
+        
+        Entry entry = new Entry(url, score, sequence++);
+        frontier.add(entry);
+        index.put(url, entry);
+    }
+    
+    /**
+     * A scored frontier URL
+     */
+    private static class Entry {
+        private final String url;
+        private final long sequence;
+        private double score;
+        
+        Entry(String url, double score, long sequence) {
+            this.url = url;
+            this.score = score;
+            this.sequence = sequence;
+        }
+    }
+}
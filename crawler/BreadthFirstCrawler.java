@@ -1,17 +1,21 @@
 package crawler;
 
-import java.util.LinkedList;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import util.Logger;
 
 /**
- * Implements breadth-first search (BFS) crawl strategy
+ * Implements breadth-first search (BFS) crawl strategy.
+ * Safe for use by concurrent crawl workers; URLs are handed out in FIFO order.
+ * A hashed index of queued URLs keeps addUrl, next and membership checks O(1).
  */
 public class BreadthFirstCrawler implements CrawlStrategy {
     private Queue<String> urlQueue;
-    private Set<String> visitedUrls;
+    private Set<String> queuedUrls;
+    private VisitedUrlSet visitedUrls;
     private int maxPages;
     private final Logger logger;
     
@@ -20,8 +24,14 @@ public class BreadthFirstCrawler implements CrawlStrategy {
     }
     
     @Override
-    public void initialize(Set<String> frontier, Set<String> visitedUrls, int maxPages) {
-        this.urlQueue = new LinkedList<>(frontier);
+    public void initialize(Set<String> frontier, VisitedUrlSet visitedUrls, int maxPages) {
+        this.urlQueue = new ConcurrentLinkedQueue<>();
+        this.queuedUrls = ConcurrentHashMap.newKeySet();
+        for (String url : frontier) {
+            if (queuedUrls.add(url)) {
+                urlQueue.add(url);
+            }
+        }
         this.visitedUrls = visitedUrls;
         this.maxPages = maxPages;
         logger.info("Initialized BFS crawler with " + frontier.size() + " seed URLs");
@@ -29,10 +39,11 @@ public class BreadthFirstCrawler implements CrawlStrategy {
     
     @Override
     public String next() {
-        if (urlQueue.isEmpty()) {
-            return null;
+        String url = urlQueue.poll();
+        if (url != null) {
+            queuedUrls.remove(url);
         }
-        return urlQueue.poll();
+        return url;
     }
     
     @Override
@@ -42,7 +53,9 @@ public class BreadthFirstCrawler implements CrawlStrategy {
     
     @Override
     public void addUrl(String url) {
-        if (!visitedUrls.contains(url) && !urlQueue.contains(url)) {
+        // Set.add doubles as the membership check, so concurrent callers
+        // cannot queue the same URL twice
+        if (!visitedUrls.contains(url) && queuedUrls.add(url)) {
             urlQueue.add(url);
         }
     }
@@ -2,8 +2,12 @@ package crawler;
 
 import java.util.Set;
 
+import models.PageLink;
+
 /**
- * Interface for different crawling strategies (BFS, DFS)
+ * Interface for different crawling strategies (BFS, DFS).
+ * Implementations must be thread-safe: with parallelism above 1, WebCrawler
+ * calls next() from its dispatcher while workers call addUrl() concurrently.
  */
 public interface CrawlStrategy {
     
@@ -11,15 +15,15 @@ public interface CrawlStrategy {
      * Initialize the crawl strategy with initial data
      * 
      * @param frontier Set of URLs to crawl
-     * @param visitedUrls Set of already visited URLs
+     * @param visitedUrls Set of already visited URLs, shared with WebCrawler
      * @param maxPages Maximum number of pages to visit
      */
-    void initialize(Set<String> frontier, Set<String> visitedUrls, int maxPages);
+    void initialize(Set<String> frontier, VisitedUrlSet visitedUrls, int maxPages);
     
     /**
      * Get the next URL to crawl
      * 
-     * @return The next URL to crawl
+     * @return The next URL to crawl, or null if the frontier is empty
      */
     String next();
     
@@ -36,4 +40,16 @@ public interface CrawlStrategy {
      * @param url The URL to add
      */
     void addUrl(String url);
+    
+    /**
+     * Add a link discovered on a crawled page to the frontier. Strategies that
+     * prioritize URLs can use the link's text and the parent page's relevance;
+     * the default simply adds the URL.
+     * 
+     * @param link The discovered link
+     * @param parentRelevance Relevance of the page the link was found on (0 to 1)
+     */
+    default void addLink(PageLink link, double parentRelevance) {
+        addUrl(link.getUrl());
+    }
 }
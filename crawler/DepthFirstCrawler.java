@@ -1,16 +1,21 @@
 package crawler;
 
+import java.util.Deque;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 import util.Logger;
 
 /**
- * Implements depth-first search (DFS) crawl strategy
+ * Implements depth-first search (DFS) crawl strategy.
+ * Safe for use by concurrent crawl workers; URLs are handed out in LIFO order.
+ * A hashed index of queued URLs keeps addUrl, next and membership checks O(1).
  */
 public class DepthFirstCrawler implements CrawlStrategy {
-    private Stack<String> urlStack;
-    private Set<String> visitedUrls;
+    private Deque<String> urlStack;
+    private Set<String> queuedUrls;
+    private VisitedUrlSet visitedUrls;
     private int maxPages;
     private final Logger logger;
     
@@ -19,10 +24,13 @@ public class DepthFirstCrawler implements CrawlStrategy {
     }
     
     @Override
-    public void initialize(Set<String> frontier, Set<String> visitedUrls, int maxPages) {
-        this.urlStack = new Stack<>();
+    public void initialize(Set<String> frontier, VisitedUrlSet visitedUrls, int maxPages) {
+        this.urlStack = new ConcurrentLinkedDeque<>();
+        this.queuedUrls = ConcurrentHashMap.newKeySet();
         for (String url : frontier) {
-            this.urlStack.push(url);
+            if (queuedUrls.add(url)) {
+                urlStack.addFirst(url);
+            }
         }
         this.visitedUrls = visitedUrls;
         this.maxPages = maxPages;
@@ -31,10 +39,11 @@ public class DepthFirstCrawler implements CrawlStrategy {
     
     @Override
     public String next() {
-        if (urlStack.isEmpty()) {
-            return null;
+        String url = urlStack.pollFirst();
+        if (url != null) {
+            queuedUrls.remove(url);
         }
-        return urlStack.pop();
+        return url;
     }
     
     @Override
@@ -44,8 +53,10 @@ public class DepthFirstCrawler implements CrawlStrategy {
     
     @Override
     public void addUrl(String url) {
-        if (!visitedUrls.contains(url) && !urlStack.contains(url)) {
-            urlStack.push(url);
+        // Set.add doubles as the membership check, so concurrent callers
+        // cannot queue the same URL twice
+        if (!visitedUrls.contains(url) && queuedUrls.add(url)) {
+            urlStack.addFirst(url);
         }
     }
 }
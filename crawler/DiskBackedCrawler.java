@@ -0,0 +1,281 @@
+package crawler;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Set;
+
+import util.Logger;
+
+/**
+ * Crawl strategy whose frontier spills to disk so it can grow far beyond the heap.
+ * <p>
+ * At most {@code headCapacity} URLs are held on heap. Everything else lives in
+ * append-only segment files of length-prefixed UTF-8 records, which are read
+ * back through memory-mapped I/O and deleted once consumed. Both BFS (FIFO)
+ * and DFS (LIFO) ordering are supported. {@link #close()} deletes any segments
+ * left over, and the directory too if this crawler created it.
+ * <p>
+ * To keep the heap budget fixed there is no index of queued URLs: addUrl only
+ * skips URLs that are already visited, and a URL queued twice is discarded
+ * when WebCrawler dispatches it and finds it already claimed.
+ */
+public class DiskBackedCrawler implements CrawlStrategy, AutoCloseable {
+    private static final int DEFAULT_HEAD_CAPACITY = 100_000;
+    
+    /**
+     * Order in which URLs are handed out
+     */
+    public enum Order {
+        BREADTH_FIRST,
+        DEPTH_FIRST
+    }
+    
+    private final Order order;
+    private final Path directory;
+    private final boolean ownsDirectory;
+    private final int headCapacity;
+    private final int segmentSize;
+    private final Logger logger;
+    
+    // BFS: head holds the oldest URLs, then the segment being read, then the
+    // queued segments, then tail. DFS: head is the top of the stack and
+    // segments hold older, spilled parts of it (most recent last).
+    private final ArrayDeque<String> head;
+    private final ArrayDeque<String> tail;
+    private final ArrayDeque<Path> segments;
+    private MappedByteBuffer readBuffer;
+    private Path readSegment;
+    private long segmentCounter;
+    private long size;
+    
+    private VisitedUrlSet visitedUrls;
+    private int maxPages;
+    
+    /**
+     * Constructor for DiskBackedCrawler using a temporary directory and the default heap budget
+     * 
+     * @param order BFS or DFS ordering
+     * @throws IOException If the temporary directory cannot be created
+     */
+    public DiskBackedCrawler(Order order) throws IOException {
+        this(order, Files.createTempDirectory("crawl-frontier"), DEFAULT_HEAD_CAPACITY, true);
+    }
+    
+    /**
+     * Constructor for DiskBackedCrawler
+     * 
+     * @param order BFS or DFS ordering
+     * @param directory Directory for segment files
+     * @param headCapacity Maximum number of URLs held on heap
+     */
+    public DiskBackedCrawler(Order order, Path directory, int headCapacity) {
+        this(order, directory, headCapacity, false);
+    }
+    
+    private DiskBackedCrawler(Order order, Path directory, int headCapacity, boolean ownsDirectory) {
+        this.order = order;
+        this.directory = directory;
+        this.ownsDirectory = ownsDirectory;
+        this.headCapacity = Math.max(2, headCapacity);
+        this.segmentSize = this.headCapacity / 2;
+        this.logger = new Logger(DiskBackedCrawler.class.getSimpleName());
+        this.head = new ArrayDeque<>();
+        this.tail = new ArrayDeque<>();
+        this.segments = new ArrayDeque<>();
+    }
+    
+    @Override
+    public synchronized void initialize(Set<String> frontier, VisitedUrlSet visitedUrls, int maxPages) {
+        this.visitedUrls = visitedUrls;
+        this.maxPages = maxPages;
+        for (String url : frontier) {
+            push(url);
+        }
+        logger.info("Initialized disk-backed " + order + " crawler with " + frontier.size() +
+                    " seed URLs, spilling to " + directory);
+    }
+    
+    @Override
+    public synchronized String next() {
+        if (head.isEmpty()) {
+            refill();
+        }
+        String url = head.pollFirst();
+        if (url != null) {
+            size--;
+        } else {
+            // Only reachable if an unreadable segment was dropped
+            size = 0;
+        }
+        return url;
+    }
+    
+    @Override
+    public synchronized boolean hasNext() {
+        return size > 0 && visitedUrls.size() < maxPages;
+    }
+    
+    @Override
+    public synchronized void addUrl(String url) {
+        if (!visitedUrls.contains(url)) {
+            push(url);
+        }
+    }
+    
+    /**
+     * Get the number of queued URLs, including those on disk
+     * 
+     * @return The frontier size
+     */
+    public synchronized long size() {
+        return size;
+    }
+    
+    /**
+     * Delete the segment files still on disk and, if this crawler created its
+     * directory, the directory itself. The frontier is empty afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if (readSegment != null) {
+            delete(readSegment);
+        }
+        for (Path segment : segments) {
+            delete(segment);
+        }
+        readBuffer = null;
+        readSegment = null;
+        segments.clear();
+        head.clear();
+        tail.clear();
+        size = 0;
+        
+        if (ownsDirectory) {
+            try {
+                Files.deleteIfExists(directory);
+            } catch (IOException e) {
+                logger.error("Error removing frontier directory " + directory + " - " + e.getMessage());
+            }
+        }
+    }
+    
+    private void push(String url) {
+        size++;
+        if (order == Order.DEPTH_FIRST) {
+            head.addFirst(url);
+            if (head.size() > headCapacity) {
+                // Spill the oldest half of the stack, oldest record first
+                ArrayDeque<String> bottom = new ArrayDeque<>(segmentSize);
+                while (bottom.size() < segmentSize) {
+                    bottom.addLast(head.pollLast());
+                }
+                spill(bottom);
+            }
+        } else if (segments.isEmpty() && readBuffer == null && tail.isEmpty() && head.size() < segmentSize) {
+            head.addLast(url);
+        } else {
+            tail.addLast(url);
+            if (tail.size() >= segmentSize) {
+                spill(tail);
+            }
+        }
+    }
+    
+    private void refill() {
+        if (order == Order.DEPTH_FIRST) {
+            while (head.isEmpty() && !segments.isEmpty()) {
+                Path segment = segments.pollLast();
+                // Records were written oldest first, so pushing them back in
+                // order leaves the most recent one on top
+                MappedByteBuffer buffer = map(segment);
+                while (buffer != null && buffer.hasRemaining()) {
+                    head.addFirst(readRecord(buffer));
+                }
+                delete(segment);
+            }
+            return;
+        }
+        
+        while (head.size() < segmentSize) {
+            if (readBuffer != null && readBuffer.hasRemaining()) {
+                head.addLast(readRecord(readBuffer));
+            } else if (readBuffer != null) {
+                delete(readSegment);
+                readBuffer = null;
+                readSegment = null;
+            } else if (!segments.isEmpty()) {
+                readSegment = segments.pollFirst();
+                readBuffer = map(readSegment);
+                if (readBuffer == null) {
+                    readSegment = null;
+                }
+            } else if (!tail.isEmpty()) {
+                head.addLast(tail.pollFirst());
+            } else {
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Write URLs to a new segment file and clear them from memory.
+     * If the write fails the URLs stay on heap so nothing is lost.
+     */
+    private void spill(ArrayDeque<String> urls) {
+        Path segment = directory.resolve(String.format("segment-%08d.dat", segmentCounter++));
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.APPEND), 1 << 16))) {
+            for (String url : urls) {
+                byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            logger.error("Error spilling frontier segment " + segment + " - " + e.getMessage());
+            delete(segment);
+            if (order == Order.DEPTH_FIRST) {
+                // Put the spilled URLs back underneath the stack
+                while (!urls.isEmpty()) {
+                    head.addLast(urls.pollLast());
+                }
+            }
+            return;
+        }
+        
+        segments.addLast(segment);
+        urls.clear();
+        logger.debug("Spilled frontier segment " + segment + " (" + segments.size() + " on disk)");
+    }
+    
+    private MappedByteBuffer map(Path segment) {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            logger.error("Error reading frontier segment " + segment + " - " + e.getMessage());
+            delete(segment);
+            return null;
+        }
+    }
+    
+    private static String readRecord(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private void delete(Path segment) {
+        try {
+            Files.deleteIfExists(segment);
+        } catch (IOException e) {
+            logger.debug("Could not delete frontier segment " + segment + " - " + e.getMessage());
+        }
+    }
+}
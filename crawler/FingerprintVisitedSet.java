@@ -0,0 +1,173 @@
+package crawler;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import util.BloomFilter;
+import util.UrlFingerprint;
+
+/**
+ * Compact visited set that stores 64-bit URL fingerprints instead of strings.
+ * <p>
+ * Fingerprints live in open-addressing tables of primitive longs (linear
+ * probing, at most 70% full), split into independently locked segments so
+ * concurrent workers rarely contend and a resize only copies one segment.
+ * At about 12 bytes per URL, 100 million URLs need roughly 1.2 GB. Tables can
+ * be allocated off-heap, and an optional Bloom filter answers most negative
+ * lookups without touching the tables.
+ * <p>
+ * Two different URLs with the same fingerprint are treated as one; see
+ * {@link UrlFingerprint} for the odds.
+ */
+public class FingerprintVisitedSet implements VisitedUrlSet {
+    private static final int SEGMENT_BITS = 6;
+    private static final int MIN_SEGMENT_CAPACITY = 1024;
+    // Largest table a direct ByteBuffer can hold (1 GB per segment)
+    private static final int MAX_SEGMENT_CAPACITY = 1 << 27;
+    
+    private final Segment[] segments;
+    private final BloomFilter bloomFilter;
+    private final AtomicLong size;
+    
+    /**
+     * Constructor for an on-heap FingerprintVisitedSet without a Bloom filter
+     * 
+     * @param expectedUrls Number of URLs to size the tables for
+     */
+    public FingerprintVisitedSet(long expectedUrls) {
+        this(expectedUrls, false, false);
+    }
+    
+    /**
+     * Constructor for FingerprintVisitedSet
+     * 
+     * @param expectedUrls Number of URLs to size the tables for (they grow if exceeded)
+     * @param offHeap true to allocate the tables in direct memory
+     * @param useBloomFilter true to check a Bloom filter before probing the tables
+     */
+    public FingerprintVisitedSet(long expectedUrls, boolean offHeap, boolean useBloomFilter) {
+        int segmentCount = 1 << SEGMENT_BITS;
+        long perSegment = Math.max(1, expectedUrls / segmentCount);
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(capacityFor(perSegment), offHeap);
+        }
+        this.bloomFilter = useBloomFilter ? new BloomFilter(expectedUrls, 0.01) : null;
+        this.size = new AtomicLong();
+    }
+    
+    @Override
+    public boolean add(String url) {
+        long fingerprint = normalize(UrlFingerprint.of(url));
+        if (segmentFor(fingerprint).add(fingerprint)) {
+            if (bloomFilter != null) {
+                bloomFilter.put(fingerprint);
+            }
+            size.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+    
+    @Override
+    public boolean contains(String url) {
+        long fingerprint = normalize(UrlFingerprint.of(url));
+        if (bloomFilter != null && !bloomFilter.mightContain(fingerprint)) {
+            return false;
+        }
+        return segmentFor(fingerprint).contains(fingerprint);
+    }
+    
+    @Override
+    public long size() {
+        return size.get();
+    }
+    
+    private Segment segmentFor(long fingerprint) {
+        return segments[(int) (fingerprint >>> (64 - SEGMENT_BITS))];
+    }
+    
+    /**
+     * Zero marks an empty slot, so remap the one fingerprint that collides with it
+     */
+    private static long normalize(long fingerprint) {
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+    
+    private static int capacityFor(long entries) {
+        long needed = (long) Math.ceil(entries / Segment.MAX_LOAD);
+        long capacity = Long.highestOneBit(Math.max(MIN_SEGMENT_CAPACITY, needed - 1)) << 1;
+        return (int) Math.min(capacity, MAX_SEGMENT_CAPACITY);
+    }
+    
+    /**
+     * One open-addressing table of fingerprints
+     */
+    private static class Segment {
+        private static final double MAX_LOAD = 0.7;
+        
+        private final boolean offHeap;
+        private LongBuffer table;
+        private int mask;
+        private int count;
+        
+        Segment(int capacity, boolean offHeap) {
+            this.offHeap = offHeap;
+            this.table = allocate(capacity);
+            this.mask = capacity - 1;
+        }
+        
+        synchronized boolean add(long fingerprint) {
+            int slot = indexOf(fingerprint);
+            if (table.get(slot) == fingerprint) {
+                return false;
+            }
+            if (count + 1 >= mask + 1) {
+                throw new IllegalStateException("Visited set segment is full");
+            }
+            table.put(slot, fingerprint);
+            if (++count > (mask + 1) * MAX_LOAD && mask + 1 < MAX_SEGMENT_CAPACITY) {
+                resize();
+            }
+            return true;
+        }
+        
+        synchronized boolean contains(long fingerprint) {
+            return table.get(indexOf(fingerprint)) == fingerprint;
+        }
+        
+        /**
+         * Find the slot holding the fingerprint, or the empty slot where it belongs
+         */
+        private int indexOf(long fingerprint) {
+            // The top bits chose the segment, so index with the low bits
+            int slot = (int) fingerprint & mask;
+            long current;
+            while ((current = table.get(slot)) != 0 && current != fingerprint) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+        
+        private void resize() {
+            LongBuffer old = table;
+            int oldCapacity = mask + 1;
+            table = allocate(oldCapacity << 1);
+            mask = (oldCapacity << 1) - 1;
+            for (int i = 0; i < oldCapacity; i++) {
+                long fingerprint = old.get(i);
+                if (fingerprint != 0) {
+                    table.put(indexOf(fingerprint), fingerprint);
+                }
+            }
+        }
+        
+        private LongBuffer allocate(int capacity) {
+            if (offHeap) {
+                return ByteBuffer.allocateDirect(capacity * Long.BYTES).asLongBuffer();
+            }
+            return LongBuffer.wrap(new long[capacity]);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package crawler;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import models.PageLink;
+
+/**
+ * Scores pages and discovered links against the crawl keywords.
+ * <p>
+ * A link's score combines keyword hits in its anchor text, the text around it,
+ * the tokens of its URL and the relevance of the page it was found on. Scores
+ * are only meaningful relative to each other.
+ */
+public class LinkScorer {
+    private static final double ANCHOR_WEIGHT = 3.0;
+    private static final double URL_WEIGHT = 2.0;
+    private static final double CONTEXT_WEIGHT = 1.0;
+    private static final double PARENT_WEIGHT = 1.5;
+    
+    private final String[] keywords;
+    
+    /**
+     * Constructor for LinkScorer
+     * 
+     * @param keywords The crawl keywords; blank ones are ignored, so a blank
+     *                 keyword prompt matches every page as no keywords do
+     */
+    public LinkScorer(String[] keywords) {
+        this.keywords = keywords == null ? new String[0] : Arrays.stream(keywords)
+                .filter(keyword -> keyword != null && !keyword.isBlank())
+                .map(keyword -> keyword.trim().toLowerCase(Locale.ROOT))
+                .toArray(String[]::new);
+    }
+    
+    /**
+     * Score a page by the fraction of keywords that appear in it
+     * 
+     * @param title The page title
+     * @param text The page text
+     * @return A relevance between 0 and 1; 1 if no keywords are configured
+     */
+    public double scorePage(String title, String text) {
+        if (keywords.length == 0) {
+            return 1.0;
+        }
+        String content = ((title != null ? title : "") + " " + (text != null ? text : "")).toLowerCase(Locale.ROOT);
+        return fractionMatched(content);
+    }
+    
+    /**
+     * Score a discovered link
+     * 
+     * @param link The link with its anchor text and context
+     * @param parentRelevance Relevance of the page the link was found on (0 to 1)
+     * @return The link score; higher is more promising
+     */
+    public double scoreLink(PageLink link, double parentRelevance) {
+        double score = PARENT_WEIGHT * parentRelevance;
+        if (keywords.length == 0) {
+            return score;
+        }
+        score += ANCHOR_WEIGHT * fractionMatched(link.getAnchorText().toLowerCase(Locale.ROOT));
+        score += CONTEXT_WEIGHT * fractionMatched(link.getContext().toLowerCase(Locale.ROOT));
+        score += URL_WEIGHT * scoreUrl(link.getUrl());
+        return score;
+    }
+    
+    /**
+     * Score a URL by the fraction of keywords found among its tokens
+     * 
+     * @param url The URL
+     * @return A value between 0 and 1
+     */
+    public double scoreUrl(String url) {
+        if (keywords.length == 0) {
+            return 0.0;
+        }
+        // Treat URL punctuation as word separators so "java-crawler" matches "java crawler"
+        String tokens = url.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ");
+        return fractionMatched(tokens);
+    }
+    
+    private double fractionMatched(String lowerCaseText) {
+        if (lowerCaseText.isEmpty()) {
+            return 0.0;
+        }
+        int matched = 0;
+        for (String keyword : keywords) {
+            if (lowerCaseText.contains(keyword)) {
+                matched++;
+            }
+        }
+        return (double) matched / keywords.length;
+    }
+}
@@ -0,0 +1,108 @@
+package crawler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import util.SimHash;
+
+/**
+ * Finds pages whose text nearly duplicates a page crawled earlier.
+ * <p>
+ * Each page's SimHash is split into five 12-bit bands (the top four bits are
+ * not indexed) and the page is filed under each band value. Two fingerprints
+ * within Hamming distance 4 must agree on at least one whole band, so only the
+ * pages sharing a band value with the new page need to be compared. Pages are
+ * stored as int ids in per-band buckets, costing about 30 bytes per page plus
+ * its URL.
+ */
+public class NearDuplicateIndex {
+    private static final int BANDS = 5;
+    private static final int BAND_BITS = 12;
+    private static final int MAX_DISTANCE = BANDS - 1;
+    // Very short texts (error pages, stubs) share too few words to compare reliably
+    private static final int MIN_TEXT_LENGTH = 200;
+    
+    private final int[][][] buckets;
+    private final int[][] bucketSizes;
+    private final List<String> urls;
+    private long[] fingerprints;
+    
+    /**
+     * Constructor for NearDuplicateIndex
+     */
+    public NearDuplicateIndex() {
+        this.buckets = new int[BANDS][1 << BAND_BITS][];
+        this.bucketSizes = new int[BANDS][1 << BAND_BITS];
+        this.urls = new ArrayList<>();
+        this.fingerprints = new long[1024];
+    }
+    
+    /**
+     * Look for an earlier near-duplicate of a page, and index the page if there is none
+     * 
+     * @param url The page URL
+     * @param text The extracted text of the page
+     * @return The URL of the earlier page this one duplicates, or null if it is new
+     *         or too short to compare
+     */
+    public String findOrAdd(String url, CharSequence text) {
+        if (text == null || text.length() < MIN_TEXT_LENGTH) {
+            return null;
+        }
+        return findOrAdd(url, SimHash.of(text));
+    }
+    
+    /**
+     * Look for an earlier near-duplicate of a fingerprint, and index it if there is none
+     * 
+     * @param url The page URL
+     * @param fingerprint The SimHash of the page's text
+     * @return The URL of the earlier page this one duplicates, or null if it is new
+     */
+    public synchronized String findOrAdd(String url, long fingerprint) {
+        for (int band = 0; band < BANDS; band++) {
+            int key = bandValue(fingerprint, band);
+            int[] ids = buckets[band][key];
+            for (int i = 0; i < bucketSizes[band][key]; i++) {
+                if (SimHash.distance(fingerprints[ids[i]], fingerprint) <= MAX_DISTANCE) {
+                    return urls.get(ids[i]);
+                }
+            }
+        }
+        
+        int id = urls.size();
+        urls.add(url);
+        if (id == fingerprints.length) {
+            fingerprints = Arrays.copyOf(fingerprints, id * 2);
+        }
+        fingerprints[id] = fingerprint;
+        for (int band = 0; band < BANDS; band++) {
+            int key = bandValue(fingerprint, band);
+            int[] ids = buckets[band][key];
+            int size = bucketSizes[band][key];
+            if (ids == null) {
+                ids = new int[2];
+            } else if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size] = id;
+            buckets[band][key] = ids;
+            bucketSizes[band][key] = size + 1;
+        }
+        return null;
+    }
+    
+    /**
+     * Get the number of indexed pages
+     * 
+     * @return The page count
+     */
+    public synchronized int size() {
+        return urls.size();
+    }
+    
+    private static int bandValue(long fingerprint, int band) {
+        return (int) (fingerprint >>> (band * BAND_BITS)) & ((1 << BAND_BITS) - 1);
+    }
+}
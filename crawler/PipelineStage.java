@@ -0,0 +1,195 @@
+package crawler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import util.Logger;
+
+/**
+ * One stage of the page pipeline: a fixed set of workers taking tasks from a
+ * bounded queue.
+ * <p>
+ * Submitting to a full queue blocks, so a slow stage holds back the stages
+ * feeding it instead of piling up work. Workers are platform threads for
+ * CPU-bound stages and virtual threads for stages that mostly wait on IO. A
+ * stage without workers runs each task on the submitting thread. The queue
+ * depth, the throughput and the share of time the workers were busy show
+ * which stage limits the crawl.
+ */
+public class PipelineStage implements AutoCloseable {
+    // Tells a worker to exit; queued after all real tasks on close
+    private static final Runnable STOP = () -> { };
+    // Time spent in tasks run on the submitting thread from within the current
+    // task, which belongs to the stage that ran them rather than this one
+    private static final ThreadLocal<long[]> NESTED_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+    
+    private final String name;
+    private final BlockingQueue<Runnable> queue;
+    private final List<Thread> workers;
+    private final AtomicInteger peakQueueDepth;
+    private final LongAdder completed;
+    private final LongAdder busyNanos;
+    private final Logger logger;
+    private volatile long startedAt;
+    private volatile long closedAt;
+    
+    /**
+     * Constructor for PipelineStage. Starts the workers.
+     * 
+     * @param name Name of the stage, used for its threads and in the summary
+     * @param workerCount Number of workers, or 0 to run tasks on the submitting thread
+     * @param capacity Number of tasks that may wait in the queue
+     * @param virtualThreads Whether the workers are virtual threads
+     */
+    public PipelineStage(String name, int workerCount, int capacity, boolean virtualThreads) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.workers = new ArrayList<>(workerCount);
+        this.peakQueueDepth = new AtomicInteger();
+        this.completed = new LongAdder();
+        this.busyNanos = new LongAdder();
+        this.logger = new Logger(PipelineStage.class.getSimpleName());
+        Thread.Builder builder = virtualThreads ? Thread.ofVirtual().name(name + "-", 1)
+                                                : Thread.ofPlatform().name(name + "-", 1).daemon(true);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(builder.start(this::work));
+        }
+    }
+    
+    /**
+     * Hand a task to the stage, waiting while its queue is full
+     * 
+     * @param task The task
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    public void submit(Runnable task) throws InterruptedException {
+        if (startedAt == 0) {
+            startedAt = System.nanoTime();
+        }
+        if (workers.isEmpty()) {
+            run(task);
+            return;
+        }
+        queue.put(task);
+        peakQueueDepth.accumulateAndGet(queue.size(), Math::max);
+    }
+    
+    /**
+     * Get the number of tasks waiting for a worker
+     * 
+     * @return The queue depth
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+    
+    /**
+     * Get the number of tasks completed
+     * 
+     * @return The task count
+     */
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+    
+    /**
+     * Get the rate at which the stage completed tasks since the first was submitted
+     * 
+     * @return Tasks per second
+     */
+    public double getThroughput() {
+        long elapsed = elapsedNanos();
+        return elapsed > 0 ? completed.sum() * 1e9 / elapsed : 0;
+    }
+    
+    /**
+     * Get the share of time the workers spent running tasks; a stage close to
+     * 1 is the bottleneck
+     * 
+     * @return The utilization between 0 and 1
+     */
+    public double getUtilization() {
+        long capacity = elapsedNanos() * Math.max(1, workers.size());
+        return capacity > 0 ? Math.min(1, (double) busyNanos.sum() / capacity) : 0;
+    }
+    
+    /**
+     * Get a one-line summary of the stage for logging
+     * 
+     * @return The summary
+     */
+    public String getSummary() {
+        return String.format("%s: %d workers, %d done (%.1f/s), %.0f%% busy, queue %d (peak %d)",
+                             name, workers.size(), completed.sum(), getThroughput(), getUtilization() * 100,
+                             queue.size(), peakQueueDepth.get());
+    }
+    
+    /**
+     * Let the workers finish the queued tasks, then stop them. Stages must be
+     * closed in order, so that no task is submitted to a closed stage.
+     */
+    @Override
+    public void close() {
+        try {
+            for (int i = 0; i < workers.size(); i++) {
+                queue.put(STOP);
+            }
+            for (Thread worker : workers) {
+                while (!worker.join(Duration.ofMinutes(1))) {
+                    logger.info("Waiting for the " + name + " stage to finish...");
+                }
+            }
+        } catch (InterruptedException e) {
+            workers.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+        }
+        if (closedAt == 0) {
+            closedAt = System.nanoTime();
+        }
+    }
+    
+    private void work() {
+        try {
+            while (true) {
+                Runnable task = queue.take();
+                if (task == STOP) {
+                    return;
+                }
+                run(task);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void run(Runnable task) {
+        long[] nested = NESTED_NANOS.get();
+        long outerNested = nested[0];
+        nested[0] = 0;
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            logger.error("Error in " + name + " stage: " + e.getMessage());
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            busyNanos.add(elapsed - nested[0]);
+            nested[0] = outerNested + elapsed;
+            completed.increment();
+        }
+    }
+    
+    private long elapsedNanos() {
+        long start = startedAt;
+        if (start == 0) {
+            return 0;
+        }
+        long end = closedAt != 0 ? closedAt : System.nanoTime();
+        return end - start;
+    }
+}
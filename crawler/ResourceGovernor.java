@@ -0,0 +1,265 @@
+package crawler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import util.Logger;
+
+/**
+ * Admission control for page fetches, bounding the memory a crawl holds at once.
+ * <p>
+ * A page is admitted before its fetch starts and released once it has been
+ * parsed, analyzed and its links queued, so the pages in flight bound the
+ * response bodies, parse results and AI analyses held together. Each admitted
+ * page also reserves bytes from a budget: the expected body size until its body
+ * arrives, then the actual size until the body has been parsed. The expected
+ * size starts at the largest body allowed and follows the bodies seen, so a
+ * crawl of large pages keeps fewer of them in flight.
+ * <p>
+ * New pages are also held back while the heap is short of memory: the JVM
+ * reports when the heap still exceeds a threshold after a garbage collection,
+ * and fetches resume once usage has dropped back below the threshold by a
+ * margin. One page is always admitted when none is in flight, so a crawl
+ * slows down but never stalls.
+ */
+public class ResourceGovernor implements AutoCloseable {
+    // Heap usage must fall this far below the threshold before fetches resume
+    private static final double HEAP_RESUME_MARGIN = 0.1;
+    // How often a held-back dispatcher rechecks the heap
+    private static final long HEAP_POLL_MS = 100;
+    // Weight of each new body in the expected body size, once enough bodies
+    // have been seen; before that the expected size is their mean
+    private static final double BODY_SIZE_SMOOTHING = 0.1;
+    
+    private final int maxInFlight;
+    private final long maxBufferedBytes;
+    private final double heapThreshold;
+    private final List<MemoryPoolMXBean> heapPools;
+    private final NotificationListener heapListener;
+    private final Logger logger;
+    private double expectedBodyBytes;
+    private long bodiesSeen;
+    private int inFlight;
+    private long bufferedBytes;
+    private long peakBufferedBytes;
+    private long throttledNanos;
+    private int heapPressureEvents;
+    private boolean heapPressure;
+    
+    /**
+     * Constructor for ResourceGovernor
+     * 
+     * @param maxInFlight Maximum number of pages in flight
+     * @param maxBufferedBytes Budget for the response bytes of the pages in flight, or 0 for no limit
+     * @param maxBodyBytes Largest response body that is read
+     * @param heapThreshold Fraction of the maximum heap in use after a garbage collection
+     *                      above which new pages wait, or 0 to ignore the heap
+     */
+    public ResourceGovernor(int maxInFlight, long maxBufferedBytes, long maxBodyBytes, double heapThreshold) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.heapThreshold = heapThreshold;
+        this.heapPools = new ArrayList<>();
+        this.logger = new Logger(ResourceGovernor.class.getSimpleName());
+        this.expectedBodyBytes = maxBodyBytes;
+        this.heapListener = (notification, handback) -> {
+            if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                onHeapPressure();
+            }
+        };
+        if (heapThreshold > 0 && heapThreshold < 1) {
+            watchHeap();
+        }
+    }
+    
+    /**
+     * Wait until a page may be fetched and admit it
+     * 
+     * @return The permit of the page, to be closed once the page is done
+     * @throws InterruptedException If the calling thread is interrupted
+     */
+    public synchronized Permit acquire() throws InterruptedException {
+        long reservation = maxBufferedBytes > 0 ? (long) expectedBodyBytes : 0;
+        long throttledSince = 0;
+        while (inFlight >= maxInFlight || (inFlight > 0 && isShortOfMemory(reservation))) {
+            if (throttledSince == 0 && inFlight < maxInFlight) {
+                throttledSince = System.nanoTime();
+            }
+            wait(HEAP_POLL_MS);
+            reservation = maxBufferedBytes > 0 ? (long) expectedBodyBytes : 0;
+        }
+        if (throttledSince != 0) {
+            throttledNanos += System.nanoTime() - throttledSince;
+        }
+        inFlight++;
+        reserve(reservation);
+        return new Permit(reservation);
+    }
+    
+    /**
+     * Check whether no page is in flight
+     * 
+     * @return true if every permit has been closed
+     */
+    public synchronized boolean isIdle() {
+        return inFlight == 0;
+    }
+    
+    /**
+     * Get a one-line summary of the backpressure applied for logging
+     * 
+     * @return The summary
+     */
+    public synchronized String getSummary() {
+        return String.format("peak %,d response bytes reserved; fetches held back for %d ms, "
+                             + "%d times by heap usage above %.0f%%",
+                             peakBufferedBytes, TimeUnit.NANOSECONDS.toMillis(throttledNanos),
+                             heapPressureEvents, heapThreshold * 100);
+    }
+    
+    /**
+     * Stop watching the heap
+     */
+    @Override
+    public void close() {
+        if (heapPools.isEmpty()) {
+            return;
+        }
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(heapListener);
+        } catch (Exception e) {
+            logger.error("Error removing heap listener: " + e.getMessage());
+        }
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.setCollectionUsageThreshold(0);
+        }
+    }
+    
+    /**
+     * Ask the JVM to report heap pools still above the threshold after a collection
+     */
+    private void watchHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && max > 0) {
+                pool.setCollectionUsageThreshold((long) (max * heapThreshold));
+                heapPools.add(pool);
+            }
+        }
+        if (heapPools.isEmpty()) {
+            logger.info("No heap pool reports usage after garbage collection; heap backpressure disabled");
+            return;
+        }
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(heapListener, null, null);
+    }
+    
+    private synchronized void onHeapPressure() {
+        if (!heapPressure) {
+            heapPressure = true;
+            heapPressureEvents++;
+            logger.info(String.format("Heap above %.0f%% after garbage collection, holding back fetches",
+                                      heapThreshold * 100));
+        }
+    }
+    
+    /**
+     * Check the byte budget and the heap
+     * 
+     * @param reservation The bytes a new page would reserve
+     * @return true if no more pages should be fetched for now
+     */
+    private boolean isShortOfMemory(long reservation) {
+        if (maxBufferedBytes > 0 && bufferedBytes + reservation > maxBufferedBytes) {
+            return true;
+        }
+        if (!heapPressure) {
+            return false;
+        }
+        for (MemoryPoolMXBean pool : heapPools) {
+            if (usedFraction(pool.getUsage()) >= heapThreshold - HEAP_RESUME_MARGIN
+                    && usedFraction(pool.getCollectionUsage()) >= heapThreshold - HEAP_RESUME_MARGIN) {
+                return true;
+            }
+        }
+        heapPressure = false;
+        logger.info("Heap usage back to normal, resuming fetches");
+        return false;
+    }
+    
+    private void reserve(long bytes) {
+        bufferedBytes += bytes;
+        peakBufferedBytes = Math.max(peakBufferedBytes, bufferedBytes);
+        if (bytes < 0) {
+            notifyAll();
+        }
+    }
+    
+    private static double usedFraction(MemoryUsage usage) {
+        return usage != null && usage.getMax() > 0 ? (double) usage.getUsed() / usage.getMax() : 0;
+    }
+    
+    /**
+     * Admission of one page, holding its share of the byte budget
+     */
+    public class Permit implements AutoCloseable {
+        private long reservedBytes;
+        private boolean closed;
+        
+        private Permit(long reservedBytes) {
+            this.reservedBytes = reservedBytes;
+        }
+        
+        /**
+         * Replace the expected body size by the size of the body received
+         * 
+         * @param bytes The size of the body
+         */
+        public void holdBody(long bytes) {
+            synchronized (ResourceGovernor.this) {
+                bodiesSeen++;
+                double weight = Math.max(BODY_SIZE_SMOOTHING, 1.0 / bodiesSeen);
+                expectedBodyBytes += weight * (bytes - expectedBodyBytes);
+                resize(maxBufferedBytes > 0 ? bytes : 0);
+            }
+        }
+        
+        /**
+         * Give back the bytes of a body that has been parsed
+         */
+        public void releaseBody() {
+            synchronized (ResourceGovernor.this) {
+                resize(0);
+            }
+        }
+        
+        /**
+         * Release the page and what it still holds of the byte budget
+         */
+        @Override
+        public void close() {
+            synchronized (ResourceGovernor.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                resize(0);
+                inFlight--;
+                ResourceGovernor.this.notifyAll();
+            }
+        }
+        
+        private void resize(long bytes) {
+            reserve(bytes - reservedBytes);
+            reservedBytes = bytes;
+        }
+    }
+}
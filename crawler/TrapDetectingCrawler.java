@@ -0,0 +1,464 @@
+package crawler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import models.PageLink;
+import util.Logger;
+import util.UrlCanonicalizer;
+
+/**
+ * Crawl strategy decorator that keeps crawler traps from eating the page budget.
+ * <p>
+ * Calendars, faceted search and relative links that resolve one level deeper on
+ * every page produce endless unique URLs from a single host. Two kinds of check
+ * run on every URL before it reaches the wrapped strategy:
+ * <ul>
+ *   <li>Structural: a path deeper than the depth limit, or one that repeats a
+ *       segment more often than allowed ({@code /a/b/a/b/a/b}), is dropped.</li>
+ *   <li>Budgets: every URL handed out is counted against its host and against
+ *       its path pattern, the path with digit runs collapsed to {@code {n}},
+ *       hex ids to {@code {id}} and query values removed
+ *       ({@code /calendar/2024/05?view} becomes {@code /calendar/{n}/{n}?view}).
+ *       Once a host or pattern has used up its budget, further URLs for it are
+ *       demoted to a bounded overflow queue that is only served when the wrapped
+ *       strategy runs dry; when that queue is full they are dropped.</li>
+ * </ul>
+ * Counts are kept per host, and {@link #getSummary(int)} reports the hosts where
+ * traps were suspected.
+ */
+public class TrapDetectingCrawler implements CrawlStrategy {
+    public static final int DEFAULT_MAX_URLS_PER_PATTERN = 250;
+    public static final int DEFAULT_MAX_URL_DEPTH = 16;
+    public static final int DEFAULT_MAX_REPEATED_SEGMENTS = 2;
+    private static final int MAX_DEMOTED_URLS = 10_000;
+    // Patterns beyond this many per host are not budgeted, bounding memory on hosts with random paths
+    private static final int MAX_PATTERNS_PER_HOST = 10_000;
+    private static final int MIN_ID_LENGTH = 8;
+    
+    private final CrawlStrategy delegate;
+    private final int maxUrlsPerHost;
+    private final int maxUrlsPerPattern;
+    private final int maxDepth;
+    private final int maxRepeatedSegments;
+    private final Map<String, HostStats> hosts;
+    private final Queue<String> demoted;
+    private final Set<String> demotedUrls;
+    private final AtomicInteger demotedSize;
+    private final LongAdder demotedCount;
+    private final LongAdder droppedCount;
+    private final Logger logger;
+    
+    private VisitedUrlSet visitedUrls;
+    private int maxPages;
+    
+    /**
+     * Constructor for TrapDetectingCrawler with the default limits and no per-host budget
+     * 
+     * @param delegate The strategy that orders the URLs that pass the checks
+     */
+    public TrapDetectingCrawler(CrawlStrategy delegate) {
+        this(delegate, 0, DEFAULT_MAX_URLS_PER_PATTERN, DEFAULT_MAX_URL_DEPTH, DEFAULT_MAX_REPEATED_SEGMENTS);
+    }
+    
+    /**
+     * Constructor for TrapDetectingCrawler
+     * 
+     * @param delegate The strategy that orders the URLs that pass the checks
+     * @param maxUrlsPerHost URLs handed out per host before the rest are demoted, or 0 for no limit
+     * @param maxUrlsPerPattern URLs handed out per host and path pattern before the rest are demoted,
+     *                          or 0 for no limit
+     * @param maxDepth Maximum number of path segments, or 0 for no limit
+     * @param maxRepeatedSegments Maximum number of times one path segment may occur, or 0 for no limit
+     */
+    public TrapDetectingCrawler(CrawlStrategy delegate, int maxUrlsPerHost, int maxUrlsPerPattern,
+                                int maxDepth, int maxRepeatedSegments) {
+        this.delegate = delegate;
+        this.maxUrlsPerHost = maxUrlsPerHost;
+        this.maxUrlsPerPattern = maxUrlsPerPattern;
+        this.maxDepth = maxDepth;
+        this.maxRepeatedSegments = maxRepeatedSegments;
+        this.hosts = new ConcurrentHashMap<>();
+        this.demoted = new ConcurrentLinkedQueue<>();
+        this.demotedUrls = ConcurrentHashMap.newKeySet();
+        this.demotedSize = new AtomicInteger();
+        this.demotedCount = new LongAdder();
+        this.droppedCount = new LongAdder();
+        this.logger = new Logger(TrapDetectingCrawler.class.getSimpleName());
+    }
+    
+    @Override
+    public void initialize(Set<String> frontier, VisitedUrlSet visitedUrls, int maxPages) {
+        this.visitedUrls = visitedUrls;
+        this.maxPages = maxPages;
+        delegate.initialize(frontier, visitedUrls, maxPages);
+    }
+    
+    @Override
+    public String next() {
+        String url;
+        while ((url = delegate.next()) != null) {
+            // The budget may have run out while the URL waited in the frontier
+            if (claim(url, true)) {
+                return url;
+            }
+            demote(url, hostOf(url));
+        }
+        while ((url = demoted.poll()) != null) {
+            demotedSize.decrementAndGet();
+            demotedUrls.remove(url);
+            if (!visitedUrls.contains(url)) {
+                claim(url, false);
+                return url;
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public boolean hasNext() {
+        return delegate.hasNext() || (!demoted.isEmpty() && visitedUrls.size() < maxPages);
+    }
+    
+    @Override
+    public void addUrl(String url) {
+        if (admit(url)) {
+            delegate.addUrl(url);
+        }
+    }
+    
+    @Override
+    public void addLink(PageLink link, double parentRelevance) {
+        if (admit(link.getUrl())) {
+            delegate.addLink(link, parentRelevance);
+        }
+    }
+    
+    /**
+     * Get the number of URLs moved to the overflow queue
+     * 
+     * @return The number of demotions
+     */
+    public long getDemotedCount() {
+        return demotedCount.sum();
+    }
+    
+    /**
+     * Get the number of URLs dropped as traps or because the overflow queue was full
+     * 
+     * @return The number of dropped URLs
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+    
+    /**
+     * Check whether any URL has been demoted or dropped
+     * 
+     * @return true if a trap was suspected on some host
+     */
+    public boolean hasSuspects() {
+        return demotedCount.sum() > 0 || droppedCount.sum() > 0;
+    }
+    
+    /**
+     * Summarize the trap counts, listing the hosts with the most demoted and dropped URLs
+     * 
+     * @param maxHosts Maximum number of hosts to list
+     * @return A one-line summary
+     */
+    public String getSummary(int maxHosts) {
+        List<Map.Entry<String, HostStats>> suspects = new ArrayList<>();
+        for (Map.Entry<String, HostStats> entry : hosts.entrySet()) {
+            if (entry.getValue().suspects() > 0) {
+                suspects.add(entry);
+            }
+        }
+        suspects.sort(Comparator.comparingLong((Map.Entry<String, HostStats> entry) -> -entry.getValue().suspects()));
+        
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("demoted %,d and dropped %,d URLs on %d hosts",
+                demotedCount.sum(), droppedCount.sum(), suspects.size()));
+        for (int i = 0; i < Math.min(maxHosts, suspects.size()); i++) {
+            summary.append("; ").append(suspects.get(i).getKey()).append(": ")
+                   .append(suspects.get(i).getValue().describe());
+        }
+        return summary.toString();
+    }
+    
+    /**
+     * Decide whether a newly found URL may enter the wrapped strategy, demoting or dropping it otherwise
+     * 
+     * @param url The URL
+     * @return true if the URL should be passed on
+     */
+    private boolean admit(String url) {
+        String host = hostOf(url);
+        int pathStart = pathStart(url);
+        String structuralTrap = structuralTrap(url, pathStart);
+        if (structuralTrap != null) {
+            drop(url, host, structuralTrap);
+            return false;
+        }
+        HostStats stats = hosts.get(host);
+        if (stats != null && stats.isOverBudget(pathPattern(url, pathStart))) {
+            demote(url, host);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Count a URL that is about to be handed out against its host and pattern budgets
+     * 
+     * @param url The URL
+     * @param enforce true to refuse the URL if a budget is used up
+     * @return true if the URL was counted, false if it is over budget
+     */
+    private boolean claim(String url, boolean enforce) {
+        String pattern = pathPattern(url, pathStart(url));
+        HostStats stats = hosts.computeIfAbsent(hostOf(url), host -> new HostStats());
+        return stats.claim(pattern, enforce);
+    }
+    
+    private void demote(String url, String host) {
+        if (!demotedUrls.add(url)) {
+            return;
+        }
+        if (demotedSize.incrementAndGet() > MAX_DEMOTED_URLS) {
+            demotedSize.decrementAndGet();
+            demotedUrls.remove(url);
+            drop(url, host, null);
+            return;
+        }
+        demoted.add(url);
+        demotedCount.increment();
+        hosts.computeIfAbsent(host, key -> new HostStats()).demoted.increment();
+    }
+    
+    private void drop(String url, String host, String reason) {
+        droppedCount.increment();
+        hosts.computeIfAbsent(host, key -> new HostStats()).dropped.increment();
+        if (reason != null) {
+            logger.debug("Dropped likely crawler trap (" + reason + "): " + url);
+        }
+    }
+    
+    /**
+     * Check the path for excessive depth and repeated segments
+     * 
+     * @param url The URL
+     * @param pathStart Index of the path in the URL
+     * @return The reason the URL looks like a trap, or null if it does not
+     */
+    private String structuralTrap(String url, int pathStart) {
+        if (pathStart < 0) {
+            return null;
+        }
+        int pathEnd = pathEnd(url, pathStart);
+        int[] starts = new int[8];
+        int[] ends = new int[8];
+        int segments = 0;
+        int start = pathStart + 1;
+        while (start <= pathEnd) {
+            int end = url.indexOf('/', start);
+            if (end < 0 || end > pathEnd) {
+                end = pathEnd;
+            }
+            if (end > start) {
+                if (maxDepth > 0 && segments == maxDepth) {
+                    return "more than " + maxDepth + " path segments";
+                }
+                if (segments == starts.length) {
+                    starts = Arrays.copyOf(starts, segments * 2);
+                    ends = Arrays.copyOf(ends, segments * 2);
+                }
+                starts[segments] = start;
+                ends[segments] = end;
+                segments++;
+            }
+            start = end + 1;
+        }
+        
+        if (maxRepeatedSegments <= 0) {
+            return null;
+        }
+        for (int i = 0; i < segments; i++) {
+            int length = ends[i] - starts[i];
+            int occurrences = 1;
+            for (int j = i + 1; j < segments; j++) {
+                if (ends[j] - starts[j] == length && url.regionMatches(starts[i], url, starts[j], length)) {
+                    occurrences++;
+                }
+            }
+            if (occurrences > maxRepeatedSegments) {
+                return "segment \"" + url.substring(starts[i], ends[i]) + "\" repeated " + occurrences + " times";
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Get the path pattern of a URL: digit runs in the path become {n}, hex ids
+     * become {id}, and the query is reduced to its sorted parameter names
+     * 
+     * @param url The URL
+     * @param pathStart Index of the path in the URL
+     * @return The pattern
+     */
+    static String pathPattern(String url, int pathStart) {
+        if (pathStart < 0) {
+            return "/";
+        }
+        int pathEnd = pathEnd(url, pathStart);
+        StringBuilder pattern = new StringBuilder(pathEnd - pathStart + 16);
+        int start = pathStart;
+        while (start < pathEnd) {
+            // Each segment including its leading "/"
+            int end = url.indexOf('/', start + 1);
+            if (end < 0 || end > pathEnd) {
+                end = pathEnd;
+            }
+            appendSegmentPattern(pattern, url, start, end);
+            start = end;
+        }
+        
+        if (pathEnd < url.length() && url.charAt(pathEnd) == '?') {
+            List<String> names = new ArrayList<>();
+            int queryEnd = url.indexOf('#', pathEnd);
+            queryEnd = queryEnd < 0 ? url.length() : queryEnd;
+            int paramStart = pathEnd + 1;
+            while (paramStart < queryEnd) {
+                int paramEnd = url.indexOf('&', paramStart);
+                if (paramEnd < 0 || paramEnd > queryEnd) {
+                    paramEnd = queryEnd;
+                }
+                int equals = url.indexOf('=', paramStart);
+                int nameEnd = equals >= 0 && equals < paramEnd ? equals : paramEnd;
+                if (nameEnd > paramStart) {
+                    names.add(url.substring(paramStart, nameEnd));
+                }
+                paramStart = paramEnd + 1;
+            }
+            names.sort(null);
+            pattern.append('?').append(String.join("&", names));
+        }
+        return pattern.toString();
+    }
+    
+    private static void appendSegmentPattern(StringBuilder pattern, String url, int start, int end) {
+        int digits = 0;
+        boolean hex = true;
+        for (int i = start + 1; i < end; i++) {
+            char c = url.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (!((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == '-')) {
+                hex = false;
+            }
+        }
+        if (digits == 0) {
+            pattern.append(url, start, end);
+            return;
+        }
+        if (hex && end - start - 1 >= MIN_ID_LENGTH) {
+            pattern.append(url.charAt(start)).append("{id}");
+            return;
+        }
+        boolean inDigits = false;
+        for (int i = start; i < end; i++) {
+            char c = url.charAt(i);
+            boolean digit = c >= '0' && c <= '9';
+            if (!digit) {
+                pattern.append(c);
+            } else if (!inDigits) {
+                pattern.append("{n}");
+            }
+            inDigits = digit;
+        }
+    }
+    
+    private static String hostOf(String url) {
+        String host = UrlCanonicalizer.getHost(url);
+        return host != null ? host : "";
+    }
+    
+    private static int pathStart(String url) {
+        int authority = url.indexOf("://");
+        if (authority < 0) {
+            return -1;
+        }
+        return url.indexOf('/', authority + 3);
+    }
+    
+    private static int pathEnd(String url, int pathStart) {
+        for (int i = pathStart; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '#') {
+                return i;
+            }
+        }
+        return url.length();
+    }
+    
+    /**
+     * Budgets and trap counts of one host
+     */
+    private class HostStats {
+        private final Map<String, int[]> patternCounts = new HashMap<>();
+        private final LongAdder demoted = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private int claimed;
+        
+        synchronized boolean isOverBudget(String pattern) {
+            if (maxUrlsPerHost > 0 && claimed >= maxUrlsPerHost) {
+                return true;
+            }
+            int[] count = patternCounts.get(pattern);
+            return maxUrlsPerPattern > 0 && count != null && count[0] >= maxUrlsPerPattern;
+        }
+        
+        synchronized boolean claim(String pattern, boolean enforce) {
+            if (enforce && isOverBudget(pattern)) {
+                return false;
+            }
+            claimed++;
+            int[] count = patternCounts.get(pattern);
+            if (count == null && patternCounts.size() < MAX_PATTERNS_PER_HOST) {
+                count = new int[1];
+                patternCounts.put(pattern, count);
+            }
+            if (count != null) {
+                count[0]++;
+            }
+            return true;
+        }
+        
+        long suspects() {
+            return demoted.sum() + dropped.sum();
+        }
+        
+        synchronized String describe() {
+            String busiest = null;
+            int busiestCount = 0;
+            for (Map.Entry<String, int[]> entry : patternCounts.entrySet()) {
+                if (entry.getValue()[0] > busiestCount) {
+                    busiest = entry.getKey();
+                    busiestCount = entry.getValue()[0];
+                }
+            }
+            return String.format("%,d crawled, %,d demoted, %,d dropped", claimed, demoted.sum(), dropped.sum())
+                   + (busiest != null ? String.format(", busiest pattern %s (%,d)", busiest, busiestCount) : "");
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package crawler;
+
+/**
+ * Set of URLs that have been claimed for crawling.
+ * Implementations must be thread-safe and need not be able to list their contents.
+ */
+public interface VisitedUrlSet {
+    
+    /**
+     * Mark a URL as visited
+     * 
+     * @param url The URL to add
+     * @return true if the URL was not visited before
+     */
+    boolean add(String url);
+    
+    /**
+     * Check whether a URL has been visited
+     * 
+     * @param url The URL to check
+     * @return true if the URL was visited
+     */
+    boolean contains(String url);
+    
+    /**
+     * Get the number of visited URLs
+     * 
+     * @return The number of URLs added
+     */
+    long size();
+}
@@ -1,33 +1,136 @@
 package crawler;
 
+import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import ai.AiContentAnalyzer;
+import cluster.ClusterMember;
+import cluster.ClusterNode;
 import config.CrawlConfig;
+import filter.UrlFilterChain;
+import http.FetchResult;
+import http.HostScheduler;
 import http.HttpRequester;
-import http.RateLimiter;
 import models.CrawlResult;
+import models.PageLink;
 import models.WebPage;
 import parser.ContentExtractor;
 import parser.HtmlParser;
+import parser.HtmlTokenizer;
+import robots.RobotsCache;
+import robots.RobotsRules;
+import sitemap.SitemapSeeder;
+import storage.CrawlCheckpoint;
+import storage.PageCache;
+import storage.PageCache.CachedPage;
+import storage.ResponseArchive;
+import storage.VisitedUrlLog;
 import util.Logger;
+import util.UrlCanonicalizer;
+import util.UrlFingerprint;
 import util.UrlUtils;
 
 /**
  * Main class responsible for orchestrating the web crawling process.
+ * <p>
+ * Each page passes through four {@link PipelineStage}s: fetch, parse (parsing,
+ * text extraction, relevance scoring and link filtering), analyze (AI analysis
+ * of relevant pages, if enabled) and a sink that records the page and adds its
+ * links to the frontier. With a parallelism of 1 pages go through the stages
+ * one at a time on the calling thread. With a higher parallelism the calling
+ * thread acts as a dispatcher: fetches run on virtual threads, parsing on a
+ * thread per core, AI analysis on a small pool of its own and the sink on a
+ * single thread, connected by bounded queues. At most {@code parallelism}
+ * pages are in flight across all stages, so a slow stage holds back the
+ * fetches. Fewer are started while the pages in flight hold more response
+ * bytes than the configured budget or the heap is nearly full after garbage
+ * collection; see {@link ResourceGovernor}.
+ * In both modes:
+ * <ul>
+ *   <li>A URL counts towards maxPages as soon as it is dispatched, so the number
+ *       of visited pages never exceeds maxPages.</li>
+ *   <li>URLs are taken from the strategy in its order (FIFO for BFS, LIFO for DFS)
+ *       into a bounded window of the {@link HostScheduler}, in which a host with a
+ *       delay counts once, so one host waiting out its delay does not keep other
+ *       hosts' URLs out. URLs for the same host keep that order; across hosts,
+ *       whichever host is allowed to be contacted first goes first. Pages may complete out of order, so links discovered by
+ *       a page are only ordered relative to pages dispatched after it completes.</li>
+ *   <li>A page reached through redirects also claims its final URL, and URLs
+ *       known to redirect to a claimed URL are skipped, so every alias of a page
+ *       collapses into a single fetch. The final URL only keeps the page from
+ *       being fetched again: it is neither logged as visited nor counted
+ *       towards maxPages.</li>
+ * </ul>
+ * In cluster mode each node only crawls the hosts it owns: links and queued URLs
+ * for other hosts are forwarded to their owner, maxPages applies per node, and a
+ * node finishes once it has been idle with no links arriving for the cluster idle
+ * timeout, handing any remaining frontier to the surviving nodes.
+ * <p>
+ * Responses can be recorded to a {@link ResponseArchive} and a crawl replayed
+ * from it offline, with request delays ignored, to rerun parsing, relevance
+ * rules and exports without contacting any site.
  */
 public class WebCrawler {
     private final CrawlStrategy strategy;
+    private final TrapDetectingCrawler trapDetector;
     private final CrawlConfig config;
     private final HttpRequester httpRequester;
+    private final UrlCanonicalizer canonicalizer;
+    private final String seedUrl;
     private final HtmlParser htmlParser;
     private final ContentExtractor contentExtractor;
-    private final RateLimiter rateLimiter;
+    private final HtmlTokenizer htmlTokenizer;
+    private final HostScheduler hostScheduler;
+    private final LinkScorer linkScorer;
+    private final UrlFilterChain urlFilters;
     private final AiContentAnalyzer aiAnalyzer;
+    private final ClusterNode cluster;
+    private final RobotsCache robotsCache;
+    private final NearDuplicateIndex nearDuplicates;
+    private final Map<String, String> duplicatePages;
     private final Logger logger;
+    private final LongAdder robotsDisallowed;
+    private final LongAdder duplicateLinksSkipped;
+    private final LongAdder duplicateAnalysesSkipped;
+    private final LongAdder duplicateExportsSkipped;
+    private final LongAdder pagesNotModified;
+    private final LongAdder pagesUnchanged;
+    private final LongAdder bytesSaved;
+    private final LongAdder parseNanosSaved;
+    private final LongAdder redirectAliasesSkipped;
+    private VisitedUrlLog visitedLog;
+    private CrawlCheckpoint checkpoint;
+    private PageCache pageCache;
+    private ResourceGovernor governor;
+    private PipelineStage fetchStage;
+    private PipelineStage parseStage;
+    private PipelineStage analysisStage;
+    private PipelineStage sinkStage;
+    
+    // URLs moved from the strategy into the host scheduler per worker. A wider
+    // window lets more hosts compete for a free worker, a narrower one keeps
+    // prioritizing strategies in charge of what is fetched next. A host with a
+    // delay counts once towards the window however many URLs it has queued, so
+    // one slow host cannot fill it; the lookahead bounds the URLs queued in total
+    private static final int SCHEDULER_WINDOW_PER_WORKER = 2;
+    private static final int MIN_SCHEDULER_WINDOW = 4;
+    private static final int SCHEDULER_LOOKAHEAD_PER_WORKER = 16;
+    private static final long CLUSTER_IDLE_POLL_MS = 500;
+    // Upper bound on a robots.txt Crawl-delay, so one host cannot park a worker for hours
+    private static final long MAX_CRAWL_DELAY_MS = 60_000;
+    private static final int MAX_TRAP_HOSTS_REPORTED = 5;
+    private static final String REDIRECT_CACHE_FILE = "redirects.log";
     
     /**
      * Constructor for WebCrawler
@@ -36,14 +139,42 @@ public class WebCrawler {
      * @param config The configuration for the crawl
      */
     public WebCrawler(CrawlStrategy strategy, CrawlConfig config) {
-        this.strategy = strategy;
+        this.trapDetector = config.isDetectCrawlerTraps()
+                ? new TrapDetectingCrawler(strategy, config.getMaxUrlsPerHost(), config.getMaxUrlsPerPathPattern(),
+                                           config.getMaxUrlDepth(), config.getMaxRepeatedPathSegments())
+                : null;
+        this.strategy = trapDetector != null ? trapDetector : strategy;
         this.config = config;
         this.httpRequester = new HttpRequester(config);
-        this.htmlParser = new HtmlParser();
+        this.canonicalizer = new UrlCanonicalizer(config.isSortQueryParameters(),
+                config.getStrippedQueryParameters() != null
+                        ? config.getStrippedQueryParameters() : UrlCanonicalizer.DEFAULT_STRIPPED_PARAMETERS);
+        this.seedUrl = canonicalSeedUrl();
+        this.htmlParser = new HtmlParser(canonicalizer);
         this.contentExtractor = new ContentExtractor();
-        this.rateLimiter = new RateLimiter(config.getRequestDelay());
+        this.htmlTokenizer = new HtmlTokenizer();
+        // Replayed responses come from disk, so no host needs sparing
+        this.hostScheduler = new HostScheduler(config.isReplayFromArchive() ? 0 : config.getRequestDelay());
+        if (httpRequester.getCircuitBreaker() != null) {
+            this.hostScheduler.setHostBlocker(this::getParkedUntil);
+        }
+        this.linkScorer = new LinkScorer(config.getKeywords());
+        this.urlFilters = UrlFilterChain.fromConfig(config);
         this.aiAnalyzer = new AiContentAnalyzer();
         this.logger = new Logger(WebCrawler.class.getSimpleName());
+        this.cluster = config.getClusterNode() != null ? createClusterNode() : null;
+        this.robotsCache = config.isRespectRobotsTxt() ? new RobotsCache(httpRequester) : null;
+        this.robotsDisallowed = new LongAdder();
+        this.nearDuplicates = config.isDetectNearDuplicates() ? new NearDuplicateIndex() : null;
+        this.duplicatePages = new ConcurrentHashMap<>();
+        this.duplicateLinksSkipped = new LongAdder();
+        this.duplicateAnalysesSkipped = new LongAdder();
+        this.duplicateExportsSkipped = new LongAdder();
+        this.pagesNotModified = new LongAdder();
+        this.pagesUnchanged = new LongAdder();
+        this.bytesSaved = new LongAdder();
+        this.parseNanosSaved = new LongAdder();
+        this.redirectAliasesSkipped = new LongAdder();
     }
     
     /**
@@ -52,98 +183,975 @@ public class WebCrawler {
      * @return CrawlResult containing the crawled data
      */
     public CrawlResult crawl() {
-        Set<String> visitedUrls = new HashSet<>();
-        Set<WebPage> relevantPages = new HashSet<>();
+        visitedLog = openVisitedLog();
+        VisitedUrlSet visitedUrls = new VisitedPageSet(new FingerprintVisitedSet(config.getExpectedVisitedUrls(),
+                config.isVisitedSetOffHeap(), config.isVisitedBloomFilter()), visitedLog);
+        Set<WebPage> relevantPages = ConcurrentHashMap.newKeySet();
+        checkpoint = openCheckpoint(visitedUrls, visitedLog, relevantPages);
+        pageCache = openPageCache();
+        openRedirectCache();
+        openResponseArchive();
+        // A redirect to a claimed page, or to one a link to it would not have
+        // been followed to, ends the fetch before the page is downloaded
+        httpRequester.setRedirectFilter(target -> isAdmittedRedirect(canonicalOrSame(target), visitedUrls));
         Set<String> frontier = new HashSet<>();
         
         // Add seed URL to frontier
-        frontier.add(config.getSeedUrl());
+        frontier.add(seedUrl);
         
-        logger.info("Starting crawl from seed URL: " + config.getSeedUrl());
+        logger.info("Starting crawl from seed URL: " + seedUrl +
+                    " (parallelism " + config.getParallelism() + ")");
         
         // Execute the crawl using the selected strategy
         strategy.initialize(frontier, visitedUrls, config.getMaxPages());
+        if (checkpoint != null) {
+            startCheckpoint(visitedUrls);
+        }
+        if (cluster != null) {
+            startCluster(visitedUrls, visitedLog);
+        }
+        // A resumed frontier already holds the URLs seeded by the first run
+        if (!config.isResumeFromCheckpoint()) {
+            seedFromSitemaps(visitedUrls);
+        }
         
-        while (strategy.hasNext() && visitedUrls.size() < config.getMaxPages()) {
-            String currentUrl = strategy.next();
-            
-            if (visitedUrls.contains(currentUrl)) {
-                continue;
-            }
-            
-            // Rate limiting
-            rateLimiter.limitRequest();
-            
-            logger.info("Crawling URL: " + currentUrl + " [" + visitedUrls.size() + "/" + config.getMaxPages() + "]");
-            
-            try {
-                // Fetch page content
-                String htmlContent = httpRequester.fetchUrl(currentUrl);
+        int parallelism = config.getParallelism();
+        governor = new ResourceGovernor(parallelism, config.getMaxBufferedBytes(), config.getMaxBodyBytes(),
+                                        config.getHeapPressureThreshold());
+        startStages(parallelism);
+        
+        int window = Math.max(MIN_SCHEDULER_WINDOW, parallelism * SCHEDULER_WINDOW_PER_WORKER);
+        int lookahead = Math.max(window, parallelism * SCHEDULER_LOOKAHEAD_PER_WORKER);
+        long idleSince = 0;
+        
+        try {
+            while (true) {
+                // Move URLs from the strategy into the scheduler, claiming them as
+                // they go; a claimed URL counts towards maxPages
+                while (hostScheduler.getWindowCount() < window && hostScheduler.getPendingCount() < lookahead
+                        && strategy.hasNext() && visitedUrls.size() < config.getMaxPages()) {
+                    String url = strategy.next();
+                    if (url == null) {
+                        break;
+                    }
+                    // The host may have moved to another node since the URL was queued
+                    if (cluster != null && !cluster.isLocal(url)) {
+                        cluster.forward(url);
+                        continue;
+                    }
+                    if (cluster != null && cluster.isVisitedElsewhere(url)) {
+                        continue;
+                    }
+                    // Rules may have been loaded since the URL was queued
+                    if (robotsCache != null && !robotsCache.isAllowedIfKnown(url)) {
+                        robotsDisallowed.increment();
+                        continue;
+                    }
+                    // A redirect learned since the URL was queued may lead to a page already crawled
+                    if (isVisitedAlias(url, visitedUrls)) {
+                        redirectAliasesSkipped.increment();
+                        continue;
+                    }
+                    if (visitedUrls.add(url)) {
+                        visitedLog.append(url);
+                        hostScheduler.submit(url);
+                    }
+                }
                 
-                if (htmlContent != null && !htmlContent.isEmpty()) {
-                    // Parse the HTML content
-                    Set<String> extractedLinks = htmlParser.extractLinks(htmlContent, currentUrl);
-                    String title = htmlParser.extractTitle(htmlContent);
-                    String text = contentExtractor.extractText(htmlContent);
-                    
-                    // Create a WebPage object
-                    WebPage page = new WebPage(currentUrl, title, text);
-                    
-                    // Check if the page is relevant based on keywords
-                    boolean isRelevant = isPageRelevant(page);
-                    
-                    // If relevant, perform AI analysis if enabled
-                    if (isRelevant) {
-                        if (config.isEnableAiAnalysis()) {
-                            String aiAnalysis = aiAnalyzer.analyzeContent(text, config.getKeywords());
-                            page.setAiAnalysis(aiAnalysis);
-                        }
-                        relevantPages.add(page);
-                        logger.info("Found relevant page: " + title);
+                // Workers release their permit before signalling and only after adding
+                // their links, so an idle pool plus an empty frontier means we are done
+                if (hostScheduler.getPendingCount() == 0 && governor.isIdle()
+                        && (!strategy.hasNext() || visitedUrls.size() >= config.getMaxPages())) {
+                    if (cluster == null || visitedUrls.size() >= config.getMaxPages()) {
+                        break;
                     }
-                    
-                    // Add new URLs to the frontier
-                    for (String link : extractedLinks) {
-                        if (!visitedUrls.contains(link)) {
-                            strategy.addUrl(link);
-                        }
+                    // Peers may still ship links to this node, so only stop once
+                    // nothing has arrived for the idle timeout
+                    long now = System.currentTimeMillis();
+                    idleSince = idleSince == 0 ? now : idleSince;
+                    if (now - Math.max(idleSince, cluster.getLastReceiveTime()) >= config.getClusterIdleTimeout()) {
+                        break;
                     }
+                    hostScheduler.poll(CLUSTER_IDLE_POLL_MS);
+                    continue;
                 }
+                idleSince = 0;
                 
-                // Mark URL as visited
-                visitedUrls.add(currentUrl);
+                // Blocks while the pages in flight hold too much memory
+                ResourceGovernor.Permit permit = governor.acquire();
+                // Blocks until some host is eligible or a worker signals completion
+                String currentUrl = hostScheduler.take();
+                if (currentUrl == null) {
+                    permit.close();
+                    continue;
+                }
                 
-            } catch (Exception e) {
-                logger.error("Error crawling URL: " + currentUrl + " - " + e.getMessage());
+                PageWork work = new PageWork(currentUrl, permit);
+                fetchStage.submit(() -> fetchPage(work, visitedUrls, relevantPages));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Crawl interrupted");
+        } finally {
+            closeStages();
+            if (cluster != null) {
+                leaveCluster(visitedUrls);
+            }
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+            if (pageCache != null) {
+                pageCache.close();
             }
+            closeRedirectCache();
+            if (httpRequester.getArchive() != null) {
+                httpRequester.getArchive().close();
+            }
+            httpRequester.close();
+            governor.close();
+            closeVisitedLog(visitedLog);
         }
         
-        logger.info("Crawling complete. Visited " + visitedUrls.size() + " pages, found " + 
+        logger.info("Crawling complete. Visited " + visitedUrls.size() + " pages, found " +
                     relevantPages.size() + " relevant pages.");
+        if (visitedUrls.size() > 0) {
+            logger.info(String.format("Harvest rate: %.1f relevant pages per 1,000 fetches",
+                        relevantPages.size() * 1000.0 / visitedUrls.size()));
+        }
+        if (pageCache != null) {
+            logger.info(String.format("Incremental recrawl: %d pages not modified, %d unchanged; " +
+                        "saved %,d bytes of downloads and %d ms of parsing",
+                        pagesNotModified.sum(), pagesUnchanged.sum(), bytesSaved.sum(),
+                        TimeUnit.NANOSECONDS.toMillis(parseNanosSaved.sum())));
+        }
+        if (!urlFilters.isEmpty()) {
+            logger.info("URL filters: " + urlFilters.getSummary());
+        }
+        if (!duplicatePages.isEmpty()) {
+            logger.info("Near-duplicates: " + duplicatePages.size() + " pages; skipped " +
+                        duplicateLinksSkipped.sum() + " unvisited links, " + duplicateAnalysesSkipped.sum() +
+                        " AI analyses and " + duplicateExportsSkipped.sum() + " exports");
+        }
+        if (trapDetector != null && trapDetector.hasSuspects()) {
+            logger.info("Crawler traps: " + trapDetector.getSummary(MAX_TRAP_HOSTS_REPORTED));
+        }
+        logger.info("HTTP: " + httpRequester.getStats().getSummary());
+        logger.info("Pipeline: " + fetchStage.getSummary() + "; " + parseStage.getSummary() + "; "
+                    + analysisStage.getSummary() + "; " + sinkStage.getSummary());
+        logger.info("Backpressure: " + governor.getSummary());
+        if (httpRequester.getArchive() != null) {
+            logger.info("Response archive: " + httpRequester.getArchive().getSummary());
+        }
+        if (httpRequester.getRedirectCache().size() > 0) {
+            logger.info("Redirects: " + httpRequester.getRedirectCache().size() + " known, "
+                        + httpRequester.getRedirectCache().getHitCount() + " cache hits, "
+                        + redirectAliasesSkipped.sum() + " aliases of crawled pages skipped");
+        }
+        if (httpRequester.getCircuitBreaker() != null && httpRequester.getCircuitBreaker().getTripCount() > 0) {
+            logger.info("Circuit breakers: " + httpRequester.getCircuitBreaker().getTripCount() + " trips, "
+                        + httpRequester.getCircuitBreaker().getOpenCount() + " hosts still parked");
+        }
+        if (httpRequester.getRateController() != null) {
+            logger.info("Adaptive delays: " + httpRequester.getRateController().getSummary());
+        }
+        if (httpRequester.getDnsCache() != null) {
+            logger.info("DNS: " + httpRequester.getDnsCache().getSummary());
+        }
+        if (robotsCache != null) {
+            logger.info("robots.txt: loaded rules for " + robotsCache.size() + " hosts, skipped " +
+                        robotsDisallowed.sum() + " disallowed URLs");
+        }
+        
+        return new CrawlResult(visitedLog, relevantPages, duplicatePages);
+    }
+    
+    /**
+     * Fetch stage: check robots.txt and fetch a page, handing its body to the
+     * parse stage
+     * 
+     * @param work The page (already claimed in visitedUrls)
+     * @param visitedUrls Set of claimed URLs
+     * @param relevantPages Set collecting relevant pages
+     */
+    private void fetchPage(PageWork work, VisitedUrlSet visitedUrls, Set<WebPage> relevantPages) {
+        String currentUrl = work.url;
+        logger.info("Crawling URL: " + currentUrl + " [" + visitedUrls.size() + "/" + config.getMaxPages() + "]");
         
-        return new CrawlResult(visitedUrls, relevantPages);
+        try {
+            if (!isAllowedByRobots(currentUrl)) {
+                logger.debug("Disallowed by robots.txt: " + currentUrl);
+                robotsDisallowed.increment();
+                finishPage(work);
+                return;
+            }
+            
+            boolean fetched = fetch(work, visitedUrls);
+            applyAdaptiveDelay(currentUrl);
+            if (!fetched) {
+                finishPage(work);
+                return;
+            }
+            parseStage.submit(() -> parsePage(work, visitedUrls, relevantPages));
+        } catch (Exception e) {
+            logger.error("Error crawling URL: " + currentUrl + " - " + e.getMessage());
+            finishPage(work);
+        }
+    }
+    
+    /**
+     * Parse stage: parse a fetched page, or reuse its cached parse, score its
+     * relevance and filter its links, then hand it to the analysis stage if it
+     * is relevant and AI analysis is enabled, or to the sink otherwise
+     * 
+     * @param work The fetched page
+     * @param visitedUrls Set of claimed URLs
+     * @param relevantPages Set collecting relevant pages
+     */
+    private void parsePage(PageWork work, VisitedUrlSet visitedUrls, Set<WebPage> relevantPages) {
+        String currentUrl = work.url;
+        try {
+            CachedPage parsedPage = parse(work);
+            List<PageLink> extractedLinks = parsedPage.getLinks();
+            String title = parsedPage.getTitle();
+            String text = parsedPage.getText();
+            
+            // Create a WebPage object
+            work.page = new WebPage(currentUrl, work.finalUrl, title, text);
+            
+            // Check if the page is relevant based on keywords
+            work.relevance = linkScorer.scorePage(title, text);
+            boolean isRelevant = work.relevance > 0;
+            
+            // A near-duplicate adds nothing new, so its links, analysis and export are skipped
+            String original = nearDuplicates != null ? nearDuplicates.findOrAdd(currentUrl, text) : null;
+            if (original != null) {
+                recordDuplicate(currentUrl, original, isRelevant, extractedLinks, visitedUrls);
+                finishPage(work);
+                return;
+            }
+            
+            work.links = new ArrayList<>(extractedLinks.size());
+            for (PageLink link : extractedLinks) {
+                if (!urlFilters.accept(link.getUrl())) {
+                    continue;
+                }
+                // Hosts whose robots.txt is not loaded yet are checked when fetched
+                if (robotsCache != null && !robotsCache.isAllowedIfKnown(link.getUrl())) {
+                    robotsDisallowed.increment();
+                    continue;
+                }
+                work.links.add(link);
+            }
+            
+            // If relevant, perform AI analysis if enabled
+            if (isRelevant && config.isEnableAiAnalysis()) {
+                analysisStage.submit(() -> analyzePage(work, visitedUrls, relevantPages));
+            } else {
+                sinkStage.submit(() -> storePage(work, visitedUrls, relevantPages));
+            }
+        } catch (Exception e) {
+            logger.error("Error crawling URL: " + currentUrl + " - " + e.getMessage());
+            finishPage(work);
+        }
+    }
+    
+    /**
+     * Analysis stage: run the AI analysis of a relevant page, then hand it to the sink
+     * 
+     * @param work The parsed page
+     * @param visitedUrls Set of claimed URLs
+     * @param relevantPages Set collecting relevant pages
+     */
+    private void analyzePage(PageWork work, VisitedUrlSet visitedUrls, Set<WebPage> relevantPages) {
+        try {
+            String aiAnalysis = aiAnalyzer.analyzeContent(work.page.getContent(), config.getKeywords());
+            work.page.setAiAnalysis(aiAnalysis);
+            sinkStage.submit(() -> storePage(work, visitedUrls, relevantPages));
+        } catch (Exception e) {
+            logger.error("Error crawling URL: " + work.url + " - " + e.getMessage());
+            finishPage(work);
+        }
+    }
+    
+    /**
+     * Sink stage: record a relevant page and add the page's links to the frontier
+     * 
+     * @param work The parsed page
+     * @param visitedUrls Set of claimed URLs
+     * @param relevantPages Set collecting relevant pages
+     */
+    private void storePage(PageWork work, VisitedUrlSet visitedUrls, Set<WebPage> relevantPages) {
+        try {
+            if (work.relevance > 0) {
+                relevantPages.add(work.page);
+                if (checkpoint != null) {
+                    checkpoint.recordRelevantPage(work.page);
+                }
+                logger.info("Found relevant page: " + work.page.getTitle());
+            }
+            
+            // Add new URLs to the frontier
+            for (PageLink link : work.links) {
+                if (cluster != null && !cluster.isLocal(link.getUrl())) {
+                    cluster.forward(link.getUrl());
+                } else if (isVisitedAlias(link.getUrl(), visitedUrls)) {
+                    redirectAliasesSkipped.increment();
+                } else if (!visitedUrls.contains(link.getUrl())) {
+                    strategy.addLink(link, work.relevance);
+                    httpRequester.prefetchDns(link.getUrl());
+                    if (checkpoint != null) {
+                        checkpoint.recordEnqueued(link.getUrl());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error crawling URL: " + work.url + " - " + e.getMessage());
+        } finally {
+            finishPage(work);
+        }
+    }
+    
+    /**
+     * Mark a page as done, in whichever stage its processing ended, freeing its
+     * slot for the dispatcher
+     * 
+     * @param work The page
+     */
+    private void finishPage(PageWork work) {
+        // Only a fully processed page is checkpointed as visited, so pages
+        // that were in flight when the crawl died are fetched again on resume
+        if (checkpoint != null) {
+            checkpoint.recordVisited(work.url);
+            // The final URL of a redirected page was claimed as well
+            if (work.finalUrl != null && !work.finalUrl.equals(work.url)) {
+                checkpoint.recordRedirectTarget(work.finalUrl);
+            }
+        }
+        work.permit.close();
+        if (config.getParallelism() > 1) {
+            hostScheduler.signal();
+        }
+    }
+    
+    /**
+     * Record a near-duplicate page and the work skipped because of it
+     * 
+     * @param url The duplicate page
+     * @param original The earlier page it duplicates
+     * @param isRelevant Whether the page matched the keywords
+     * @param links The links found on the page
+     * @param visitedUrls Set of claimed URLs
+     */
+    private void recordDuplicate(String url, String original, boolean isRelevant, List<PageLink> links,
+                                 VisitedUrlSet visitedUrls) {
+        logger.debug("Near-duplicate of " + original + ": " + url);
+        duplicatePages.put(url, original);
+        for (PageLink link : links) {
+            if (!visitedUrls.contains(link.getUrl())) {
+                duplicateLinksSkipped.increment();
+            }
+        }
+        if (isRelevant) {
+            duplicateExportsSkipped.increment();
+            if (config.isEnableAiAnalysis()) {
+                duplicateAnalysesSkipped.increment();
+            }
+        }
+    }
+    
+    /**
+     * Check a URL against its host's robots.txt, loading the file on first contact
+     * with the host and applying its Crawl-delay to the host scheduler
+     * 
+     * @param url The URL about to be fetched
+     * @return true if the URL may be fetched
+     */
+    private boolean isAllowedByRobots(String url) {
+        if (robotsCache == null) {
+            return true;
+        }
+        RobotsRules rules = robotsCache.getRules(url);
+        long crawlDelay = Math.min(rules.getCrawlDelayMs(), MAX_CRAWL_DELAY_MS);
+        String host = UrlUtils.getDomain(url);
+        if (crawlDelay > config.getRequestDelay() && host != null && !config.isReplayFromArchive()) {
+            hostScheduler.setDelay(host, crawlDelay);
+        }
+        return robotsCache.isAllowed(url);
+    }
+    
+    /**
+     * Pass the delay the rate controller learned for a host on to the host
+     * scheduler, never going below the host's robots.txt Crawl-delay
+     * 
+     * @param url The URL that was just fetched
+     */
+    private void applyAdaptiveDelay(String url) {
+        long delay = httpRequester.getAdaptiveDelay(url);
+        String host = UrlUtils.getDomain(url);
+        if (delay < 0 || host == null || config.isReplayFromArchive()) {
+            return;
+        }
+        if (robotsCache != null) {
+            delay = Math.max(delay, Math.min(robotsCache.getRules(url).getCrawlDelayMs(), MAX_CRAWL_DELAY_MS));
+        }
+        hostScheduler.setDelay(host, delay);
     }
     
     /**
-     * Check if a page is relevant based on the configured keywords
+     * Get the time until which the URLs of a parked host wait in the scheduler.
+     * A URL waits out a park no longer than a retry would wait; the URLs of a
+     * host parked for longer are handed out and fail at once at its breaker,
+     * so a host that stays down cannot keep the crawl from finishing.
      * 
-     * @param page The WebPage to check
-     * @return true if the page is relevant, false otherwise
+     * @param host The lowercase host name
+     * @return The time in milliseconds since the epoch, or 0 if the URLs are handed out
      */
-    private boolean isPageRelevant(WebPage page) {
-        if (config.getKeywords() == null || config.getKeywords().length == 0) {
+    private long getParkedUntil(String host) {
+        long blockedUntil = httpRequester.getCircuitBreaker().getBlockedUntil(host);
+        return blockedUntil - System.currentTimeMillis() <= config.getRetryMaxDelay() ? blockedUntil : 0;
+    }
+    
+    /**
+     * Fetch a page. With a page cache the request is conditional, and the cached
+     * parse results are reused if the server answers 304 Not Modified.
+     * 
+     * @param work The page, receiving the fetch result, its final URL and any cached copy
+     * @param visitedUrls Set of claimed URLs, receiving the final URL of a redirected page
+     * @return true if the page has a body or cached parse to process, false if it could
+     *         not be fetched, is empty, or was redirected to a page that is already claimed
+     */
+    private boolean fetch(PageWork work, VisitedUrlSet visitedUrls) {
+        String url = work.url;
+        CachedPage cached = pageCache != null ? pageCache.get(url) : null;
+        FetchResult result = cached != null
+                ? httpRequester.fetch(url, cached.getEtag(), cached.getLastModified())
+                : httpRequester.fetch(url, null, null);
+        if (result == null) {
+            return false;
+        }
+        
+        String finalUrl = canonicalFinalUrl(url, result);
+        if (result.isRedirect()) {
+            skipRedirect(url, finalUrl, visitedUrls);
+            return false;
+        }
+        if (!finalUrl.equals(url)) {
+            // Rules for the target's host may have been unknown while following the redirect
+            if (!isAllowedByRobots(finalUrl)) {
+                logger.debug("Redirected to a page disallowed by robots.txt: " + url + " -> " + finalUrl);
+                robotsDisallowed.increment();
+                return false;
+            }
+            // Claim the page under its final URL too; losing the claim means
+            // another alias of the page was or is being crawled. The page is
+            // already logged and counted under the URL it was dispatched as
+            if (!visitedUrls.add(finalUrl)) {
+                logger.debug("Redirected to an already crawled page: " + url + " -> " + finalUrl);
+                redirectAliasesSkipped.increment();
+                return false;
+            }
+        }
+        work.finalUrl = finalUrl;
+        work.cached = cached;
+        work.result = result;
+        
+        if (result.isNotModified()) {
+            if (cached == null) {
+                return false;
+            }
+            pagesNotModified.increment();
+            bytesSaved.add(cached.getBodyBytes());
+            parseNanosSaved.add(cached.getParseNanos());
+            work.parsed = cached;
             return true;
         }
         
-        String content = page.getTitle() + " " + page.getContent();
-        content = content.toLowerCase();
+        CharSequence htmlContent = result.getBody();
+        if (htmlContent == null || htmlContent.isEmpty()) {
+            return false;
+        }
+        // The body counts against the byte budget until it has been parsed
+        work.permit.holdBody(result.getBodyBytes());
+        return true;
+    }
+    
+    /**
+     * Check whether a redirect may be followed: its target must pass the same
+     * checks as a discovered link and must not be claimed yet
+     * 
+     * @param target The canonical redirect target
+     * @param visitedUrls Set of claimed URLs
+     * @return true if the redirect may be followed
+     */
+    private boolean isAdmittedRedirect(String target, VisitedUrlSet visitedUrls) {
+        if (!urlFilters.accept(target)) {
+            return false;
+        }
+        // Rules not loaded yet are checked once the fetch has ended at the target
+        if (robotsCache != null && !robotsCache.isAllowedIfKnown(target)) {
+            return false;
+        }
+        if (cluster != null && !cluster.isLocal(target)) {
+            return false;
+        }
+        return !visitedUrls.contains(target);
+    }
+    
+    /**
+     * Account for a fetch that ended at a redirect the redirect filter did not
+     * follow, handing the target to its owner if another node crawls its host
+     * 
+     * @param url The URL that was fetched
+     * @param target The canonical redirect target
+     * @param visitedUrls Set of claimed URLs
+     */
+    private void skipRedirect(String url, String target, VisitedUrlSet visitedUrls) {
+        if (cluster != null && !cluster.isLocal(target)) {
+            cluster.forward(target);
+        } else if (visitedUrls.contains(target)) {
+            logger.debug("Redirected to an already crawled page: " + url + " -> " + target);
+            redirectAliasesSkipped.increment();
+        } else {
+            logger.debug("Not following redirect to a URL excluded from the crawl: " + url + " -> " + target);
+        }
+    }
+    
+    /**
+     * Parse a fetched page, reusing the cached parse results if the body is
+     * identical to the cached one
+     * 
+     * @param work The fetched page
+     * @return The parsed page
+     */
+    private CachedPage parse(PageWork work) {
+        if (work.parsed != null) {
+            return work.parsed;
+        }
+        FetchResult result = work.result;
+        CachedPage cached = work.cached;
+        CharSequence htmlContent = result.getBody();
+        try {
+            long contentHash = pageCache != null ? UrlFingerprint.of(htmlContent) : 0;
+            if (cached != null && cached.getContentHash() == contentHash) {
+                // The server ignored or lacks validators but the page did not change
+                pagesUnchanged.increment();
+                parseNanosSaved.add(cached.getParseNanos());
+                if (Objects.equals(cached.getEtag(), result.getEtag())
+                        && Objects.equals(cached.getLastModified(), result.getLastModified())) {
+                    return cached;
+                }
+                CachedPage refreshed = cached.withValidators(result.getEtag(), result.getLastModified(),
+                                                             result.getBytesRead());
+                pageCache.put(refreshed);
+                return refreshed;
+            }
+            
+            // Parse the HTML content
+            long parseStart = System.nanoTime();
+            // One pass over the HTML collects links and text alike; relative
+            // links resolve against the URL the body was served from
+            HtmlParser.LinkCollector links = htmlParser.newLinkCollector(work.finalUrl);
+            ContentExtractor.TextCollector text = contentExtractor.newTextCollector();
+            htmlTokenizer.tokenize(htmlContent, links, text);
+            CachedPage parsedPage = new CachedPage(work.url, result.getEtag(), result.getLastModified(), contentHash,
+                    result.getBytesRead(), System.nanoTime() - parseStart, text.getTitle(), text.getText(),
+                    links.getLinks());
+            if (pageCache != null) {
+                pageCache.put(parsedPage);
+            }
+            return parsedPage;
+        } finally {
+            // The body is not needed past parsing
+            work.result = null;
+            work.permit.releaseBody();
+        }
+    }
+    
+    /**
+     * Get the canonical form of the URL a fetch ended at
+     * 
+     * @param url The URL that was requested
+     * @param result The fetch result
+     * @return The canonical final URL, or the requested URL if there was no redirect
+     */
+    private String canonicalFinalUrl(String url, FetchResult result) {
+        String finalUrl = result.getFinalUrl();
+        return finalUrl == null || finalUrl.equals(url) ? url : canonicalOrSame(finalUrl);
+    }
+    
+    /**
+     * Canonicalize a URL that did not come through the HTML parser, such as a redirect target
+     * 
+     * @param url The absolute URL
+     * @return The canonical URL, or the URL itself if it cannot be canonicalized
+     */
+    private String canonicalOrSame(String url) {
+        String canonical = canonicalizer.canonicalize(url);
+        return canonical != null ? canonical : url;
+    }
+    
+    /**
+     * Check whether a URL is known to redirect to a page that is already claimed
+     * 
+     * @param url The URL
+     * @param visitedUrls Set of claimed URLs
+     * @return true if fetching the URL would only reach a claimed page again
+     */
+    private boolean isVisitedAlias(String url, VisitedUrlSet visitedUrls) {
+        String target = httpRequester.getRedirectCache().resolve(url);
+        return target != null && visitedUrls.contains(canonicalOrSame(target));
+    }
+    
+    /**
+     * Attach the redirect cache to a file in the page cache directory, so
+     * permanent redirects learned by one crawl are known to the next
+     */
+    private void openRedirectCache() {
+        if (config.getPageCacheDir() == null) {
+            return;
+        }
+        try {
+            httpRequester.getRedirectCache().open(Paths.get(config.getPageCacheDir()).resolve(REDIRECT_CACHE_FILE));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open redirect cache: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Attach the response archive if one is configured, to record the crawl or
+     * to replay a recorded one
+     */
+    private void openResponseArchive() {
+        if (config.getArchiveDir() == null) {
+            if (config.isReplayFromArchive()) {
+                throw new IllegalStateException("Replaying responses requires an archive directory");
+            }
+            return;
+        }
+        try {
+            httpRequester.setArchive(new ResponseArchive(Paths.get(config.getArchiveDir()),
+                                                         config.getArchiveMaxFileBytes()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open response archive: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Close the redirect cache file, logging any failure
+     */
+    private void closeRedirectCache() {
+        try {
+            httpRequester.getRedirectCache().close();
+        } catch (IOException e) {
+            logger.error("Error closing redirect cache: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Open the persistent page cache if incremental recrawling is enabled
+     * 
+     * @return The page cache, or null if it is disabled
+     */
+    private PageCache openPageCache() {
+        if (config.getPageCacheDir() == null) {
+            return null;
+        }
+        try {
+            return new PageCache(Paths.get(config.getPageCacheDir()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open page cache: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Open the crawl checkpoint if one is configured, restoring visited URLs and
+     * relevant pages from it when resuming
+     * 
+     * @param visitedUrls Set receiving the restored visited URLs
+     * @param visitedLog Log receiving the restored visited URLs
+     * @param relevantPages Set receiving the restored relevant pages
+     * @return The checkpoint, or null if checkpointing is disabled
+     */
+    private CrawlCheckpoint openCheckpoint(VisitedUrlSet visitedUrls, VisitedUrlLog visitedLog,
+                                           Set<WebPage> relevantPages) {
+        if (config.getCheckpointDir() == null) {
+            return null;
+        }
+        
+        try {
+            CrawlCheckpoint crawlCheckpoint = new CrawlCheckpoint(Paths.get(config.getCheckpointDir()),
+                    config.getCheckpointInterval());
+            if (config.isResumeFromCheckpoint()) {
+                long startTime = System.currentTimeMillis();
+                long restored = crawlCheckpoint.restoreVisited(visitedUrls, visitedLog, relevantPages);
+                logger.info("Restored " + restored + " visited URLs and " + relevantPages.size() +
+                            " relevant pages from checkpoint in " + (System.currentTimeMillis() - startTime) + "ms");
+            } else {
+                crawlCheckpoint.clear();
+            }
+            return crawlCheckpoint;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open crawl checkpoint: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Refill the initialized strategy from the checkpoint when resuming and start
+     * recording the crawl
+     * 
+     * @param visitedUrls Set of visited URLs
+     */
+    private void startCheckpoint(VisitedUrlSet visitedUrls) {
+        try {
+            if (config.isResumeFromCheckpoint()) {
+                long startTime = System.currentTimeMillis();
+                long restored = checkpoint.restoreFrontier(strategy, visitedUrls);
+                logger.info("Restored " + restored + " frontier URLs from checkpoint in " +
+                            (System.currentTimeMillis() - startTime) + "ms");
+            }
+            checkpoint.start();
+            checkpoint.recordEnqueued(seedUrl);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot start crawl checkpoint: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Get the seed URL in the canonical form used for every other URL, so that
+     * links back to the seed page are recognized as visited
+     * 
+     * @return The canonical seed URL, or the configured one if it cannot be canonicalized
+     */
+    private String canonicalSeedUrl() {
+        String seed = config.getSeedUrl();
+        String canonical = seed != null ? canonicalizer.canonicalize(seed) : null;
+        return canonical != null ? canonical : seed;
+    }
+    
+    /**
+     * Queue the page URLs of the configured or discovered sitemaps, most
+     * recently modified first, up to maxPages of them
+     * 
+     * @param visitedUrls Set of visited URLs
+     */
+    private void seedFromSitemaps(VisitedUrlSet visitedUrls) {
+        List<String> sitemapUrls = new ArrayList<>(Arrays.asList(config.getSitemapUrls()));
+        if (config.isSitemapDiscovery()) {
+            sitemapUrls.addAll(discoverSitemaps());
+        }
+        if (sitemapUrls.isEmpty()) {
+            return;
+        }
         
-        for (String keyword : config.getKeywords()) {
-            if (content.contains(keyword.toLowerCase())) {
+        long startTime = System.currentTimeMillis();
+        long queued = new SitemapSeeder(httpRequester).seed(sitemapUrls, sitemapUrl -> {
+            String url = canonicalizer.canonicalize(sitemapUrl);
+            if (url == null || !urlFilters.accept(url)) {
+                return false;
+            }
+            if (robotsCache != null && !robotsCache.isAllowedIfKnown(url)) {
+                robotsDisallowed.increment();
+                return false;
+            }
+            if (cluster != null && !cluster.isLocal(url)) {
+                cluster.forward(url);
                 return true;
             }
+            if (visitedUrls.contains(url)) {
+                return false;
+            }
+            strategy.addUrl(url);
+            httpRequester.prefetchDns(url);
+            if (checkpoint != null) {
+                checkpoint.recordEnqueued(url);
+            }
+            return true;
+        }, config.getMaxPages());
+        logger.info("Seeded " + queued + " URLs from sitemaps in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+    
+    /**
+     * Find the seed host's sitemaps: those listed in its robots.txt, or /sitemap.xml if there are none
+     * 
+     * @return The sitemap URLs
+     */
+    private List<String> discoverSitemaps() {
+        if (robotsCache != null) {
+            List<String> listed = robotsCache.getRules(seedUrl).getSitemaps();
+            if (!listed.isEmpty()) {
+                return listed;
+            }
+        }
+        try {
+            return List.of(URI.create(seedUrl).resolve("/sitemap.xml").toString());
+        } catch (IllegalArgumentException e) {
+            logger.error("Cannot derive sitemap URL from seed URL: " + seedUrl);
+            return List.of();
+        }
+    }
+    
+    /**
+     * Create this node's cluster membership from the configuration
+     * 
+     * @return The cluster node
+     */
+    private ClusterNode createClusterNode() {
+        List<ClusterMember> peers = new ArrayList<>();
+        for (String peer : config.getClusterPeers()) {
+            if (!peer.isBlank()) {
+                peers.add(ClusterMember.parse(peer.trim()));
+            }
+        }
+        return new ClusterNode(ClusterMember.parse(config.getClusterNode()), peers);
+    }
+    
+    /**
+     * Join the cluster, queueing links shipped by peers into the local strategy
+     * 
+     * @param visitedUrls Set of visited URLs
+     * @param visitedLog Log of visited URLs, handed to new owners when hosts move
+     */
+    private void startCluster(VisitedUrlSet visitedUrls, VisitedUrlLog visitedLog) {
+        try {
+            cluster.start(url -> {
+                if (!visitedUrls.contains(url)) {
+                    strategy.addUrl(url);
+                    httpRequester.prefetchDns(url);
+                    if (checkpoint != null) {
+                        checkpoint.recordEnqueued(url);
+                    }
+                    hostScheduler.signal();
+                }
+            }, visitedLog);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot start cluster node: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Leave the cluster, handing URLs still in the frontier to the surviving nodes
+     * 
+     * @param visitedUrls Set of visited URLs
+     */
+    private void leaveCluster(VisitedUrlSet visitedUrls) {
+        cluster.leave();
+        long handedOff = 0;
+        String url;
+        while ((url = strategy.next()) != null) {
+            if (!visitedUrls.contains(url)) {
+                cluster.forward(url);
+                handedOff++;
+            }
+        }
+        cluster.close();
+        logger.info("Cluster: forwarded " + cluster.getForwardedLinks() + " links, received " +
+                    cluster.getReceivedLinks() + ", handed off " + handedOff + " frontier URLs");
+    }
+    
+    /**
+     * Open the log that visited URLs are streamed to for export
+     * 
+     * @return The visited URL log
+     */
+    private VisitedUrlLog openVisitedLog() {
+        try {
+            if (config.getVisitedLogPath() != null) {
+                return new VisitedUrlLog(Paths.get(config.getVisitedLogPath()));
+            }
+            return VisitedUrlLog.createTemporary();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create visited URL log: " + e.getMessage(), e);
+        }
+    }
+    
+    private void closeVisitedLog(VisitedUrlLog visitedLog) {
+        try {
+            visitedLog.close();
+        } catch (IOException e) {
+            logger.error("Error closing visited URL log: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Start the pipeline stages. With a parallelism of 1 every stage runs on the
+     * dispatcher thread, one page at a time.
+     * 
+     * @param parallelism The number of pages in flight
+     */
+    private void startStages(int parallelism) {
+        boolean staged = parallelism > 1;
+        int parseThreads = config.getParseThreads() > 0
+                ? config.getParseThreads() : Runtime.getRuntime().availableProcessors();
+        // Fetches wait on the network, so each gets a virtual thread; parsing is
+        // CPU-bound and gets a thread per core; AI calls wait on a remote API
+        // that only takes so many at once
+        fetchStage = new PipelineStage("fetch", staged ? parallelism : 0, parallelism, true);
+        parseStage = new PipelineStage("parse", staged ? parseThreads : 0, parallelism, false);
+        analysisStage = new PipelineStage("analyze", staged ? config.getAnalysisThreads() : 0, parallelism, true);
+        sinkStage = new PipelineStage("sink", staged ? 1 : 0, parallelism, false);
+    }
+    
+    /**
+     * Wait for in-flight pages to finish, closing the stages in pipeline order
+     * so each drains before the stage after it
+     */
+    private void closeStages() {
+        fetchStage.close();
+        parseStage.close();
+        analysisStage.close();
+        sinkStage.close();
+    }
+    
+    /**
+     * The claimed URLs, sized by the visited log: the final URLs that
+     * redirected pages also claim are members but are not counted, so the
+     * dispatcher and the strategy stop at maxPages pages rather than URLs
+     */
+    private static class VisitedPageSet implements VisitedUrlSet {
+        private final VisitedUrlSet claimed;
+        private final VisitedUrlLog visitedLog;
+        
+        VisitedPageSet(VisitedUrlSet claimed, VisitedUrlLog visitedLog) {
+            this.claimed = claimed;
+            this.visitedLog = visitedLog;
+        }
+        
+        @Override
+        public boolean add(String url) {
+            return claimed.add(url);
         }
         
-        return false;
+        @Override
+        public boolean contains(String url) {
+            return claimed.contains(url);
+        }
+        
+        @Override
+        public long size() {
+            return visitedLog.size();
+        }
+    }
+    
+    /**
+     * A page on its way through the pipeline stages, filled in by each stage
+     * and handed to the next through its queue
+     */
+    private static class PageWork {
+        private final String url;
+        private final ResourceGovernor.Permit permit;
+        // Set by the fetch stage; parsed only for a page not modified
+        private String finalUrl;
+        private FetchResult result;
+        private CachedPage cached;
+        private CachedPage parsed;
+        // Set by the parse stage
+        private WebPage page;
+        private double relevance;
+        private List<PageLink> links;
+        
+        PageWork(String url, ResourceGovernor.Permit permit) {
+            this.url = url;
+            this.permit = permit;
+        }
     }
 }
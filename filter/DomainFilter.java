@@ -0,0 +1,34 @@
+package filter;
+
+/**
+ * Keeps URLs whose host is on the allow list (if one is given) and not on the deny list
+ */
+public class DomainFilter implements UrlFilter {
+    private final HostTrie allowed;
+    private final HostTrie denied;
+    
+    /**
+     * Constructor for DomainFilter
+     * 
+     * @param allowed Domains to crawl, including subdomains (empty to allow any)
+     * @param denied Domains never to crawl, including subdomains
+     */
+    public DomainFilter(HostTrie allowed, HostTrie denied) {
+        this.allowed = allowed;
+        this.denied = denied;
+    }
+    
+    @Override
+    public boolean accept(String url) {
+        String host = UrlParts.host(url);
+        if (host == null || denied.matches(host)) {
+            return false;
+        }
+        return allowed.size() == 0 || allowed.matches(host);
+    }
+    
+    @Override
+    public String getName() {
+        return "domain";
+    }
+}
@@ -0,0 +1,51 @@
+package filter;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Rejects URLs whose path ends in a file extension that is not worth fetching
+ */
+public class ExtensionFilter implements UrlFilter {
+    /**
+     * Images, documents, media, archives and page assets: everything UrlUtils
+     * recognizes as image, document or media, plus common assets
+     */
+    public static final String[] DEFAULT_EXTENSIONS = {
+        "jpg", "jpeg", "png", "gif", "bmp", "svg", "webp", "ico", "tif", "tiff",
+        "pdf", "doc", "docx", "xls", "xlsx", "ppt", "pptx", "odt", "rtf",
+        "zip", "rar", "gz", "tgz", "tar", "7z", "bz2", "exe", "msi", "dmg", "iso", "apk", "jar",
+        "mp3", "mp4", "avi", "mov", "wav", "ogg", "webm", "mkv", "flv", "wmv", "m4a",
+        "css", "js", "woff", "woff2", "ttf", "eot"
+    };
+    
+    private final Set<String> extensions;
+    
+    /**
+     * Constructor for ExtensionFilter
+     * 
+     * @param extensions Extensions to reject, with or without the leading dot
+     */
+    public ExtensionFilter(String[] extensions) {
+        this.extensions = new HashSet<>();
+        for (String extension : extensions) {
+            String normalized = extension.trim().toLowerCase();
+            this.extensions.add(normalized.startsWith(".") ? normalized.substring(1) : normalized);
+        }
+    }
+    
+    @Override
+    public boolean accept(String url) {
+        String path = UrlParts.path(url);
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || dot < path.lastIndexOf('/')) {
+            return true;
+        }
+        return !extensions.contains(path.substring(dot + 1).toLowerCase());
+    }
+    
+    @Override
+    public String getName() {
+        return "extension";
+    }
+}
@@ -0,0 +1,86 @@
+package filter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Set of domains stored as a trie of reversed host labels.
+ * <p>
+ * "blog.example.com" is stored as com -> example -> blog, so checking whether a
+ * host equals or is a subdomain of any listed domain walks at most one node
+ * per label of the host, independent of how many domains are listed.
+ */
+public class HostTrie {
+    private final Node root = new Node();
+    private int size;
+    
+    /**
+     * Add a domain; it matches itself and all of its subdomains
+     * 
+     * @param domain The domain, e.g. "example.com" (a leading "*." or "." is ignored)
+     */
+    public void add(String domain) {
+        String normalized = domain.trim().toLowerCase();
+        if (normalized.startsWith("*.")) {
+            normalized = normalized.substring(2);
+        } else if (normalized.startsWith(".")) {
+            normalized = normalized.substring(1);
+        }
+        if (normalized.isEmpty()) {
+            return;
+        }
+        
+        Node node = root;
+        int end = normalized.length();
+        while (end > 0) {
+            int dot = normalized.lastIndexOf('.', end - 1);
+            String label = normalized.substring(dot + 1, end);
+            node = node.children.computeIfAbsent(label, key -> new Node());
+            end = dot < 0 ? 0 : dot;
+        }
+        if (!node.terminal) {
+            node.terminal = true;
+            size++;
+        }
+    }
+    
+    /**
+     * Check whether a host equals or is a subdomain of a listed domain
+     * 
+     * @param host The lowercase host
+     * @return true if the host is covered
+     */
+    public boolean matches(String host) {
+        if (host == null || host.isEmpty()) {
+            return false;
+        }
+        Node node = root;
+        int end = host.length();
+        while (end > 0) {
+            int dot = host.lastIndexOf('.', end - 1);
+            node = node.children.get(host.substring(dot + 1, end));
+            if (node == null) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+            end = dot < 0 ? 0 : dot;
+        }
+        return false;
+    }
+    
+    /**
+     * Get the number of listed domains
+     * 
+     * @return The domain count
+     */
+    public int size() {
+        return size;
+    }
+    
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>(4);
+        private boolean terminal;
+    }
+}
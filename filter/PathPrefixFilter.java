@@ -0,0 +1,36 @@
+package filter;
+
+/**
+ * Keeps or rejects URLs by the prefix of their path
+ */
+public class PathPrefixFilter implements UrlFilter {
+    private final String[] prefixes;
+    private final boolean include;
+    
+    /**
+     * Constructor for PathPrefixFilter
+     * 
+     * @param prefixes Path prefixes such as "/docs/"
+     * @param include true to keep only matching URLs, false to reject matching URLs
+     */
+    public PathPrefixFilter(String[] prefixes, boolean include) {
+        this.prefixes = prefixes.clone();
+        this.include = include;
+    }
+    
+    @Override
+    public boolean accept(String url) {
+        String path = UrlParts.path(url);
+        for (String prefix : prefixes) {
+            if (path.startsWith(prefix)) {
+                return include;
+            }
+        }
+        return !include;
+    }
+    
+    @Override
+    public String getName() {
+        return include ? "path-include" : "path-exclude";
+    }
+}
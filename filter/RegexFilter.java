@@ -0,0 +1,42 @@
+package filter;
+
+import java.util.regex.Pattern;
+
+/**
+ * Keeps or rejects URLs matching any of a set of regular expressions.
+ * The expressions are compiled once into a single alternation, so each URL
+ * is scanned in one pass however many rules are configured.
+ */
+public class RegexFilter implements UrlFilter {
+    private final Pattern pattern;
+    private final boolean include;
+    
+    /**
+     * Constructor for RegexFilter
+     * 
+     * @param regexes Regular expressions, found anywhere in the URL
+     * @param include true to keep only matching URLs, false to reject matching URLs
+     * @throws java.util.regex.PatternSyntaxException If an expression is invalid
+     */
+    public RegexFilter(String[] regexes, boolean include) {
+        StringBuilder alternation = new StringBuilder();
+        for (String regex : regexes) {
+            if (alternation.length() > 0) {
+                alternation.append('|');
+            }
+            alternation.append("(?:").append(regex).append(')');
+        }
+        this.pattern = Pattern.compile(alternation.toString());
+        this.include = include;
+    }
+    
+    @Override
+    public boolean accept(String url) {
+        return pattern.matcher(url).find() == include;
+    }
+    
+    @Override
+    public String getName() {
+        return include ? "regex-include" : "regex-exclude";
+    }
+}
@@ -0,0 +1,22 @@
+package filter;
+
+/**
+ * A rule deciding whether a discovered URL may enter the frontier
+ */
+public interface UrlFilter {
+    
+    /**
+     * Check whether a URL passes this rule
+     * 
+     * @param url The absolute URL
+     * @return true to keep the URL, false to reject it
+     */
+    boolean accept(String url);
+    
+    /**
+     * Get the name this rule is reported under
+     * 
+     * @return The rule name
+     */
+    String getName();
+}
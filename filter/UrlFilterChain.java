@@ -0,0 +1,158 @@
+package filter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import config.CrawlConfig;
+import crawler.FingerprintVisitedSet;
+import crawler.VisitedUrlSet;
+import util.UrlUtils;
+
+/**
+ * Ordered list of URL filters applied to every discovered link before it is
+ * added to the frontier.
+ * <p>
+ * A link is rejected by the first rule it fails. For each rule the chain counts
+ * the rejected links and the distinct rejected URLs; the latter is the number of
+ * fetches the rule saved. Counting is lock-free so the chain can be shared by
+ * all crawl threads.
+ */
+public class UrlFilterChain {
+    private final List<UrlFilter> filters;
+    private final List<LongAdder> rejectedLinks;
+    private final List<LongAdder> rejectedUrls;
+    private final VisitedUrlSet seenRejections;
+    private final LongAdder acceptedLinks;
+    
+    /**
+     * Constructor for an empty UrlFilterChain that accepts everything
+     */
+    public UrlFilterChain() {
+        this.filters = new ArrayList<>();
+        this.rejectedLinks = new ArrayList<>();
+        this.rejectedUrls = new ArrayList<>();
+        this.seenRejections = new FingerprintVisitedSet(0);
+        this.acceptedLinks = new LongAdder();
+    }
+    
+    /**
+     * Build the filter chain described by a crawl configuration. Cheap rules run
+     * first: domain, extension, path prefixes, then regular expressions.
+     * 
+     * @param config The crawl configuration
+     * @return The filter chain
+     */
+    public static UrlFilterChain fromConfig(CrawlConfig config) {
+        UrlFilterChain chain = new UrlFilterChain();
+        
+        HostTrie allowed = new HostTrie();
+        HostTrie denied = new HostTrie();
+        for (String domain : config.getAllowedDomains()) {
+            allowed.add(domain);
+        }
+        for (String domain : config.getDeniedDomains()) {
+            denied.add(domain);
+        }
+        if (config.isSameDomainOnly() && config.getSeedUrl() != null) {
+            String seedHost = UrlUtils.getDomain(config.getSeedUrl());
+            if (seedHost != null) {
+                allowed.add(config.isRegistrableDomainScope() ? UrlUtils.getRegistrableDomain(seedHost) : seedHost);
+            }
+        }
+        if (allowed.size() > 0 || denied.size() > 0) {
+            chain.add(new DomainFilter(allowed, denied));
+        }
+        
+        String[] extensions = config.getSkippedExtensions() != null
+                ? config.getSkippedExtensions() : ExtensionFilter.DEFAULT_EXTENSIONS;
+        if (extensions.length > 0) {
+            chain.add(new ExtensionFilter(extensions));
+        }
+        if (config.getIncludedPathPrefixes().length > 0) {
+            chain.add(new PathPrefixFilter(config.getIncludedPathPrefixes(), true));
+        }
+        if (config.getExcludedPathPrefixes().length > 0) {
+            chain.add(new PathPrefixFilter(config.getExcludedPathPrefixes(), false));
+        }
+        if (config.getIncludedUrlPatterns().length > 0) {
+            chain.add(new RegexFilter(config.getIncludedUrlPatterns(), true));
+        }
+        if (config.getExcludedUrlPatterns().length > 0) {
+            chain.add(new RegexFilter(config.getExcludedUrlPatterns(), false));
+        }
+        return chain;
+    }
+    
+    /**
+     * Append a rule to the chain. Not thread-safe; build the chain before crawling.
+     * 
+     * @param filter The rule
+     * @return This chain
+     */
+    public UrlFilterChain add(UrlFilter filter) {
+        filters.add(filter);
+        rejectedLinks.add(new LongAdder());
+        rejectedUrls.add(new LongAdder());
+        return this;
+    }
+    
+    /**
+     * Check a URL against every rule, counting the rule that rejects it
+     * 
+     * @param url The absolute URL
+     * @return true if the URL passes all rules
+     */
+    public boolean accept(String url) {
+        for (int i = 0; i < filters.size(); i++) {
+            if (!filters.get(i).accept(url)) {
+                rejectedLinks.get(i).increment();
+                if (seenRejections.add(url)) {
+                    rejectedUrls.get(i).increment();
+                }
+                return false;
+            }
+        }
+        acceptedLinks.increment();
+        return true;
+    }
+    
+    /**
+     * Get the number of distinct URLs each rule rejected, i.e. the fetches it saved
+     * 
+     * @return Rule name to distinct rejected URLs, in chain order
+     */
+    public Map<String, Long> getRejectedUrlCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < filters.size(); i++) {
+            counts.merge(filters.get(i).getName(), rejectedUrls.get(i).sum(), Long::sum);
+        }
+        return counts;
+    }
+    
+    /**
+     * Get a one-line summary of accepted and rejected links per rule
+     * 
+     * @return The summary
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("accepted %,d links", acceptedLinks.sum()));
+        for (int i = 0; i < filters.size(); i++) {
+            summary.append(String.format("; %s rejected %,d links (%,d distinct URLs)",
+                    filters.get(i).getName(), rejectedLinks.get(i).sum(), rejectedUrls.get(i).sum()));
+        }
+        return summary.toString();
+    }
+    
+    /**
+     * Check whether the chain has any rules
+     * 
+     * @return true if no rules are configured
+     */
+    public boolean isEmpty() {
+        return filters.isEmpty();
+    }
+}
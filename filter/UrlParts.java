@@ -0,0 +1,77 @@
+package filter;
+
+/**
+ * Allocation-light extraction of URL components for filters.
+ * <p>
+ * Filters run on every discovered link, so they avoid building a java.net.URI
+ * and only slice the parts of the string they need.
+ */
+final class UrlParts {
+    
+    private UrlParts() {
+    }
+    
+    /**
+     * Get the lowercase host of an absolute URL
+     * 
+     * @param url The URL
+     * @return The host without user info or port, or null if there is none
+     */
+    static String host(String url) {
+        int start = authorityStart(url);
+        if (start < 0) {
+            return null;
+        }
+        int end = authorityEnd(url, start);
+        int at = url.lastIndexOf('@', end - 1);
+        if (at >= start) {
+            start = at + 1;
+        }
+        int hostEnd = end;
+        if (start < end && url.charAt(start) == '[') {
+            int bracket = url.indexOf(']', start);
+            hostEnd = bracket > 0 && bracket < end ? bracket + 1 : end;
+        } else {
+            int colon = url.indexOf(':', start);
+            if (colon >= 0 && colon < end) {
+                hostEnd = colon;
+            }
+        }
+        return hostEnd > start ? url.substring(start, hostEnd).toLowerCase() : null;
+    }
+    
+    /**
+     * Get the path of an absolute URL, without query or fragment
+     * 
+     * @param url The URL
+     * @return The path, "/" if it is empty
+     */
+    static String path(String url) {
+        int start = authorityStart(url);
+        start = start < 0 ? 0 : authorityEnd(url, start);
+        int end = url.length();
+        for (int i = start; i < end; i++) {
+            char ch = url.charAt(i);
+            if (ch == '?' || ch == '#') {
+                end = i;
+                break;
+            }
+        }
+        return end > start ? url.substring(start, end) : "/";
+    }
+    
+    private static int authorityStart(String url) {
+        int scheme = url.indexOf("://");
+        return scheme < 0 ? -1 : scheme + 3;
+    }
+    
+    private static int authorityEnd(String url, int start) {
+        for (int i = start; i < url.length(); i++) {
+            char ch = url.charAt(i);
+            if (ch == '/' || ch == '?' || ch == '#') {
+                return i;
+            }
+        }
+        return url.length();
+    }
+}
@@ -0,0 +1,230 @@
+package http;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import util.Logger;
+
+/**
+ * Per-host request rate control by additive increase, multiplicative decrease
+ * (AIMD), the way TCP finds the capacity of a link.
+ * <p>
+ * Each host has a request rate, starting at the configured request delay. Every
+ * successful, timely response raises the rate by a small step, adding about
+ * {@link #ADDITIVE_INCREASE} requests per second for each second of traffic.
+ * A sign of overload halves the rate: a 429 or 503 response, a high share of
+ * failed requests, or a response time well above the host's normal one, which
+ * starts as the fastest seen. Responses to requests sent before the last
+ * halving are ignored, so a queue that built up at the server counts as one
+ * sign of overload. A response time that stays high once requests are spaced
+ * further apart than it, so that they no longer overlap, cannot be caused by
+ * the crawler: the host got slower and that response time becomes its normal
+ * one. The rate is converted to the delay between requests, kept between a
+ * floor and a ceiling.
+ * <p>
+ * State is kept for the most recently used hosts only; a host that was evicted
+ * starts again from the configured request delay.
+ */
+public class AdaptiveRateController {
+    // Requests per second added for each second of successful traffic
+    public static final double ADDITIVE_INCREASE = 4.0;
+    public static final double MULTIPLICATIVE_DECREASE = 0.5;
+    // Upper bound on the growth of the rate from one response, so a host
+    // backed off to a slow rate is probed back up gradually
+    private static final double MAX_GROWTH_PER_RESPONSE = 0.25;
+    // A host is slow when its smoothed response time exceeds this multiple of
+    // its fastest, plus the slack that absorbs jitter on very fast hosts
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final long LATENCY_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final double LATENCY_SMOOTHING = 0.3;
+    // Responses at a new rate needed before its response time is judged
+    private static final int MIN_LATENCY_SAMPLES = 3;
+    // Share of failed requests, smoothed over about ten responses, above which a host backs off
+    private static final double ERROR_RATE_THRESHOLD = 0.3;
+    private static final double ERROR_SMOOTHING = 0.1;
+    private static final double MAX_RATE = 1000.0;
+    private static final int MAX_HOSTS = 100_000;
+    
+    private final long initialDelayMs;
+    private final long minDelayMs;
+    private final long maxDelayMs;
+    private final Map<String, HostRate> hosts;
+    private final LongAdder throttledBackoffs;
+    private final LongAdder slowBackoffs;
+    private final LongAdder failingBackoffs;
+    private final Logger logger;
+    
+    /**
+     * Constructor for AdaptiveRateController
+     * 
+     * @param initialDelayMs Delay between requests to a host before anything is known about it
+     * @param minDelayMs Floor of the delay in milliseconds
+     * @param maxDelayMs Ceiling of the delay in milliseconds
+     */
+    public AdaptiveRateController(long initialDelayMs, long minDelayMs, long maxDelayMs) {
+        this.minDelayMs = Math.max(0, minDelayMs);
+        this.maxDelayMs = Math.max(this.minDelayMs, maxDelayMs);
+        this.initialDelayMs = Math.max(this.minDelayMs, Math.min(this.maxDelayMs, initialDelayMs));
+        this.hosts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, HostRate> eldest) {
+                return size() > MAX_HOSTS;
+            }
+        };
+        this.throttledBackoffs = new LongAdder();
+        this.slowBackoffs = new LongAdder();
+        this.failingBackoffs = new LongAdder();
+        this.logger = new Logger(AdaptiveRateController.class.getSimpleName());
+    }
+    
+    /**
+     * Adjust the rate of a host after a response
+     * 
+     * @param host The host name
+     * @param statusCode The response status, or -1 if the request failed without one
+     * @param latencyNanos Time from sending the request to receiving the response headers
+     */
+    public void recordResponse(String host, int statusCode, long latencyNanos) {
+        HostRate rate;
+        synchronized (hosts) {
+            rate = hosts.computeIfAbsent(host, key -> new HostRate(toRate(initialDelayMs)));
+        }
+        synchronized (rate) {
+            long now = System.nanoTime();
+            boolean failed = statusCode < 0 || statusCode >= 500;
+            rate.errorRate += ERROR_SMOOTHING * ((failed ? 1 : 0) - rate.errorRate);
+            // A request sent before the last cut tells nothing about the new rate
+            if (rate.lastBackoffAt != 0 && now - latencyNanos - rate.lastBackoffAt < 0) {
+                return;
+            }
+            if (statusCode == 429 || statusCode == 503) {
+                backOff(host, rate, now, throttledBackoffs, "throttled with " + statusCode);
+                return;
+            }
+            if (failed) {
+                if (rate.errorRate > ERROR_RATE_THRESHOLD) {
+                    backOff(host, rate, now, failingBackoffs,
+                            String.format("%.0f%% of requests failing", rate.errorRate * 100));
+                }
+                return;
+            }
+            
+            rate.normalLatencyNanos = rate.normalLatencyNanos == 0 ? latencyNanos
+                    : Math.min(rate.normalLatencyNanos, latencyNanos);
+            rate.latencyNanos = rate.latencySamples == 0 ? latencyNanos
+                    : rate.latencyNanos + LATENCY_SMOOTHING * (latencyNanos - rate.latencyNanos);
+            rate.latencySamples++;
+            if (rate.latencySamples >= MIN_LATENCY_SAMPLES
+                    && rate.latencyNanos > rate.normalLatencyNanos * LATENCY_TOLERANCE + LATENCY_SLACK_NANOS) {
+                if (TimeUnit.MILLISECONDS.toNanos(toDelay(rate.requestsPerSecond)) >= rate.latencyNanos) {
+                    logger.debug(String.format("Response time of %s stays at %.0fms without overlapping "
+                                 + "requests, taking it as normal", host, rate.latencyNanos / 1e6));
+                    rate.normalLatencyNanos = (long) rate.latencyNanos;
+                } else {
+                    backOff(host, rate, now, slowBackoffs, String.format("response time %.0fms, normal %.0fms",
+                            rate.latencyNanos / 1e6, rate.normalLatencyNanos / 1e6));
+                    return;
+                }
+            }
+            rate.requestsPerSecond += Math.min(ADDITIVE_INCREASE / rate.requestsPerSecond,
+                                               rate.requestsPerSecond * MAX_GROWTH_PER_RESPONSE);
+            rate.requestsPerSecond = clamp(rate.requestsPerSecond);
+        }
+    }
+    
+    /**
+     * Get the current delay between requests to a host
+     * 
+     * @param host The host name
+     * @return The delay in milliseconds, between the floor and the ceiling
+     */
+    public long getDelay(String host) {
+        HostRate rate;
+        synchronized (hosts) {
+            rate = hosts.get(host);
+        }
+        if (rate == null) {
+            return initialDelayMs;
+        }
+        synchronized (rate) {
+            return toDelay(rate.requestsPerSecond);
+        }
+    }
+    
+    /**
+     * Get the number of times a host's rate was cut
+     * 
+     * @return The backoff count
+     */
+    public long getBackoffCount() {
+        return throttledBackoffs.sum() + slowBackoffs.sum() + failingBackoffs.sum();
+    }
+    
+    /**
+     * Get a one-line summary of the rate control for logging
+     * 
+     * @return The summary
+     */
+    public String getSummary() {
+        List<HostRate> rates;
+        synchronized (hosts) {
+            rates = new ArrayList<>(hosts.values());
+        }
+        long minDelay = Long.MAX_VALUE;
+        long maxDelay = 0;
+        for (HostRate rate : rates) {
+            long delay;
+            synchronized (rate) {
+                delay = toDelay(rate.requestsPerSecond);
+            }
+            minDelay = Math.min(minDelay, delay);
+            maxDelay = Math.max(maxDelay, delay);
+        }
+        return String.format("%d hosts, delays %d-%d ms; %d backoffs (%d throttled, %d slow, %d failing)",
+                             rates.size(), rates.isEmpty() ? initialDelayMs : minDelay,
+                             rates.isEmpty() ? initialDelayMs : maxDelay, getBackoffCount(),
+                             throttledBackoffs.sum(), slowBackoffs.sum(), failingBackoffs.sum());
+    }
+    
+    private void backOff(String host, HostRate rate, long now, LongAdder counter, String reason) {
+        rate.lastBackoffAt = now;
+        rate.latencySamples = 0;
+        rate.requestsPerSecond = clamp(rate.requestsPerSecond * MULTIPLICATIVE_DECREASE);
+        counter.increment();
+        logger.debug("Slowing down " + host + " (" + reason + "), delay now "
+                     + toDelay(rate.requestsPerSecond) + "ms");
+    }
+    
+    private double clamp(double requestsPerSecond) {
+        double fastest = minDelayMs > 0 ? toRate(minDelayMs) : MAX_RATE;
+        return Math.max(toRate(maxDelayMs), Math.min(fastest, requestsPerSecond));
+    }
+    
+    private long toDelay(double requestsPerSecond) {
+        return Math.max(minDelayMs, Math.min(maxDelayMs, Math.round(1000.0 / requestsPerSecond)));
+    }
+    
+    private static double toRate(long delayMs) {
+        return delayMs > 0 ? Math.min(MAX_RATE, 1000.0 / delayMs) : MAX_RATE;
+    }
+    
+    /**
+     * Rate control state of one host
+     */
+    private static class HostRate {
+        private double requestsPerSecond;
+        private double latencyNanos;
+        private int latencySamples;
+        private long normalLatencyNanos;
+        private double errorRate;
+        private long lastBackoffAt;
+        
+        HostRate(double requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+        }
+    }
+}
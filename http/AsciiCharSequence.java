@@ -0,0 +1,55 @@
+package http;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only character sequence over 7-bit ASCII bytes.
+ * <p>
+ * Most pages are pure ASCII, and viewing their bytes as characters directly
+ * skips decoding and keeps one byte per character, where a char array would
+ * need two.
+ */
+final class AsciiCharSequence implements CharSequence {
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    
+    /**
+     * Constructor for AsciiCharSequence
+     * 
+     * @param bytes The bytes, all below 0x80; the array is not copied
+     * @param offset Index of the first byte
+     * @param length Number of bytes
+     */
+    AsciiCharSequence(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+    
+    @Override
+    public int length() {
+        return length;
+    }
+    
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return (char) bytes[offset + index];
+    }
+    
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        return new AsciiCharSequence(bytes, offset + start, end - start);
+    }
+    
+    @Override
+    public String toString() {
+        return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,72 @@
+package http;
+
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Reads a response body into a {@link ChunkedBody}, copying each received
+ * buffer straight into pooled chunks. Once the size limit is reached the
+ * subscription is cancelled, so the rest of an oversized body is never
+ * downloaded, and the body completes as truncated.
+ */
+public class BodyCollector implements BodySubscriber<ChunkedBody> {
+    private final ChunkedBody body;
+    private final CompletableFuture<ChunkedBody> result;
+    private Flow.Subscription subscription;
+    
+    /**
+     * Constructor for BodyCollector
+     * 
+     * @param pool The pool chunks are taken from
+     * @param maxBytes Maximum number of body bytes to read
+     */
+    public BodyCollector(BufferPool pool, long maxBytes) {
+        this.body = new ChunkedBody(pool, maxBytes);
+        this.result = new CompletableFuture<>();
+    }
+    
+    @Override
+    public CompletionStage<ChunkedBody> getBody() {
+        return result;
+    }
+    
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+    
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        if (result.isDone()) {
+            return;
+        }
+        for (ByteBuffer buffer : buffers) {
+            if (!body.append(buffer)) {
+                subscription.cancel();
+                result.complete(body);
+                return;
+            }
+        }
+        subscription.request(1);
+    }
+    
+    @Override
+    public void onError(Throwable error) {
+        // Errors after a truncated body was handed out are the cancellation itself
+        if (result.isDone()) {
+            return;
+        }
+        body.release();
+        result.completeExceptionally(error);
+    }
+    
+    @Override
+    public void onComplete() {
+        result.complete(body);
+    }
+}
@@ -0,0 +1,275 @@
+package http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Turns a downloaded body into text: undoes a gzip or deflate
+ * Content-Encoding, detects the charset and decodes the bytes.
+ * <p>
+ * The charset is taken from a byte order mark, then the Content-Type charset
+ * parameter, then a {@code <meta charset>} or {@code http-equiv} declaration
+ * in the first 1024 bytes, and defaults to UTF-8. As browsers do, Latin-1 and
+ * ASCII labels are read as windows-1252. Pure ASCII bodies in an
+ * ASCII-compatible charset are not decoded at all but viewed as characters in
+ * place.
+ */
+public class BodyDecoder {
+    private static final int META_PRESCAN_BYTES = 1024;
+    // Charsets whose bytes below 0x80 are the ASCII characters
+    private static final List<String> ASCII_COMPATIBLE_PREFIXES = List.of("ISO-8859-", "windows-125");
+    private static final Set<String> WINDOWS_1252_LABELS = Set.of(
+            "iso-8859-1", "iso8859-1", "latin1", "l1", "us-ascii", "ascii", "windows-1252", "cp1252");
+    private static final Charset WINDOWS_1252 = Charset.isSupported("windows-1252")
+            ? Charset.forName("windows-1252") : StandardCharsets.ISO_8859_1;
+    
+    private final BufferPool pool;
+    private final long maxBytes;
+    
+    /**
+     * Constructor for BodyDecoder
+     * 
+     * @param pool The pool chunks are taken from
+     * @param maxBytes Maximum number of decompressed bytes to keep
+     */
+    public BodyDecoder(BufferPool pool, long maxBytes) {
+        this.pool = pool;
+        this.maxBytes = maxBytes;
+    }
+    
+    /**
+     * Undo a gzip or deflate Content-Encoding. A truncated compressed body is
+     * decompressed as far as it goes.
+     * 
+     * @param raw The body as received; released if a new body is returned
+     * @param contentEncoding The Content-Encoding header, or null
+     * @return The decompressed body, or {@code raw} itself if it is not compressed
+     * @throws IOException If the compressed data is corrupt
+     */
+    public ChunkedBody decompress(ChunkedBody raw, String contentEncoding) throws IOException {
+        String encoding = contentEncoding != null ? contentEncoding.trim().toLowerCase(Locale.ROOT) : "";
+        boolean gzip = encoding.equals("gzip") || encoding.equals("x-gzip");
+        if (!gzip && !encoding.equals("deflate")) {
+            return raw;
+        }
+        
+        // "deflate" should be zlib-wrapped, but some servers send a raw deflate stream
+        Inflater inflater = gzip ? null : new Inflater(!hasZlibHeader(raw));
+        ChunkedBody decoded = new ChunkedBody(pool, maxBytes);
+        byte[] buffer = pool.take();
+        try (InputStream in = gzip ? new GZIPInputStream(raw.inputStream(), BufferPool.CHUNK_SIZE)
+                                   : new InflaterInputStream(raw.inputStream(), inflater, BufferPool.CHUNK_SIZE)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                if (!decoded.append(buffer, 0, n)) {
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            if (!raw.isTruncated()) {
+                decoded.release();
+                throw e;
+            }
+        } catch (IOException e) {
+            decoded.release();
+            throw e;
+        } finally {
+            pool.give(buffer);
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+        if (raw.isTruncated()) {
+            decoded.markTruncated();
+        }
+        raw.release();
+        return decoded;
+    }
+    
+    /**
+     * Detect the charset of an HTML body
+     * 
+     * @param contentType The Content-Type header, or null
+     * @param body The decompressed body
+     * @return The charset
+     */
+    public Charset detectCharset(String contentType, ChunkedBody body) {
+        Charset charset = bomCharset(body);
+        if (charset == null) {
+            charset = charsetForLabel(charsetParameter(contentType, 0), false);
+        }
+        if (charset == null) {
+            charset = charsetForLabel(metaCharset(body), true);
+        }
+        return charset != null ? charset : StandardCharsets.UTF_8;
+    }
+    
+    /**
+     * Decode a body, skipping any byte order mark
+     * 
+     * @param body The decompressed body
+     * @param charset The charset to decode with; malformed input is replaced
+     * @return The text
+     * @throws IOException If the body cannot be read
+     */
+    public CharSequence decode(ChunkedBody body, Charset charset) throws IOException {
+        int bom = bomLength(body);
+        long length = body.length() - bom;
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Body too large to decode: " + length + " bytes");
+        }
+        if (isAsciiCompatible(charset) && body.isAscii(bom)) {
+            byte[] bytes = new byte[(int) length];
+            body.copyTo(bom, bytes, 0, bytes.length);
+            return new AsciiCharSequence(bytes, 0, bytes.length);
+        }
+        
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        char[] chars = new char[(int) Math.min(Integer.MAX_VALUE - 8, (long) Math.ceil(length * decoder.maxCharsPerByte()))];
+        int count = 0;
+        InputStream in = body.inputStream();
+        in.skipNBytes(bom);
+        try (Reader reader = new InputStreamReader(in, decoder)) {
+            int n;
+            while (count < chars.length && (n = reader.read(chars, count, chars.length - count)) > 0) {
+                count += n;
+            }
+        }
+        // Multi-byte text needs far fewer chars than the upper bound
+        if (count < chars.length / 4 * 3) {
+            chars = Arrays.copyOf(chars, count);
+        }
+        return CharBuffer.wrap(chars, 0, count);
+    }
+    
+    /**
+     * Get the charset parameter of a Content-Type header
+     * 
+     * @param contentType The header value, or null
+     * @param from Index to start looking at
+     * @return The charset label without quotes, or null if there is none
+     */
+    static String charsetParameter(String contentType, int from) {
+        if (contentType == null) {
+            return null;
+        }
+        int index = contentType.toLowerCase(Locale.ROOT).indexOf("charset", from);
+        if (index < 0) {
+            return null;
+        }
+        int start = index + "charset".length();
+        while (start < contentType.length() && (contentType.charAt(start) == ' ' || contentType.charAt(start) == '=')) {
+            start++;
+        }
+        if (start < contentType.length() && (contentType.charAt(start) == '"' || contentType.charAt(start) == '\'')) {
+            start++;
+        }
+        int end = start;
+        while (end < contentType.length() && "\"'; >/".indexOf(contentType.charAt(end)) < 0) {
+            end++;
+        }
+        return end > start ? contentType.substring(start, end) : null;
+    }
+    
+    private static Charset charsetForLabel(String label, boolean fromMeta) {
+        if (label == null) {
+            return null;
+        }
+        String normalized = label.trim().toLowerCase(Locale.ROOT);
+        if (WINDOWS_1252_LABELS.contains(normalized)) {
+            return WINDOWS_1252;
+        }
+        // A document that could declare its charset in ASCII is not UTF-16
+        if (fromMeta && normalized.startsWith("utf-16")) {
+            return StandardCharsets.UTF_8;
+        }
+        try {
+            return Charset.forName(normalized);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Find a charset declared in a meta tag near the start of the document
+     * 
+     * @param body The body
+     * @return The declared charset label, or null
+     */
+    private static String metaCharset(ChunkedBody body) {
+        int length = (int) Math.min(META_PRESCAN_BYTES, body.length());
+        byte[] head = new byte[length];
+        body.copyTo(0, head, 0, length);
+        String prefix = new String(head, StandardCharsets.ISO_8859_1);
+        String lower = prefix.toLowerCase(Locale.ROOT);
+        int meta = lower.indexOf("<meta");
+        while (meta >= 0) {
+            int end = lower.indexOf('>', meta);
+            if (end < 0) {
+                end = lower.length();
+            }
+            int charset = lower.indexOf("charset", meta);
+            if (charset >= 0 && charset < end) {
+                return charsetParameter(prefix.substring(0, end), charset);
+            }
+            meta = lower.indexOf("<meta", end);
+        }
+        return null;
+    }
+    
+    private static Charset bomCharset(ChunkedBody body) {
+        if (body.length() >= 3 && body.get(0) == (byte) 0xEF && body.get(1) == (byte) 0xBB && body.get(2) == (byte) 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (body.length() >= 2 && body.get(0) == (byte) 0xFE && body.get(1) == (byte) 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (body.length() >= 2 && body.get(0) == (byte) 0xFF && body.get(1) == (byte) 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        return null;
+    }
+    
+    private static int bomLength(ChunkedBody body) {
+        Charset bom = bomCharset(body);
+        return bom == null ? 0 : bom.equals(StandardCharsets.UTF_8) ? 3 : 2;
+    }
+    
+    private static boolean isAsciiCompatible(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)) {
+            return true;
+        }
+        for (String prefix : ASCII_COMPATIBLE_PREFIXES) {
+            if (charset.name().startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean hasZlibHeader(ChunkedBody body) {
+        if (body.length() < 2) {
+            return true;
+        }
+        int first = body.get(0) & 0xFF;
+        int second = body.get(1) & 0xFF;
+        return (first & 0x0F) == 8 && ((first << 8) | second) % 31 == 0;
+    }
+}
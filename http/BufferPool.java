@@ -0,0 +1,58 @@
+package http;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of fixed-size byte chunks for response bodies.
+ * <p>
+ * Bodies are read into chunks rather than one growing array, so a large page
+ * is never copied to grow its buffer, and the chunks go back to the pool once
+ * the body has been decoded. At most {@code maxPooled} idle chunks are kept;
+ * beyond that released chunks are left to the garbage collector.
+ */
+public class BufferPool {
+    public static final int CHUNK_SIZE = 64 * 1024;
+    
+    private final ConcurrentLinkedQueue<byte[]> chunks;
+    private final AtomicInteger pooled;
+    private final int maxPooled;
+    
+    /**
+     * Constructor for BufferPool
+     * 
+     * @param maxPooled Maximum number of idle chunks kept for reuse
+     */
+    public BufferPool(int maxPooled) {
+        this.chunks = new ConcurrentLinkedQueue<>();
+        this.pooled = new AtomicInteger();
+        this.maxPooled = maxPooled;
+    }
+    
+    /**
+     * Take a chunk from the pool, allocating one if the pool is empty
+     * 
+     * @return A chunk of {@link #CHUNK_SIZE} bytes with undefined contents
+     */
+    public byte[] take() {
+        byte[] chunk = chunks.poll();
+        if (chunk == null) {
+            return new byte[CHUNK_SIZE];
+        }
+        pooled.decrementAndGet();
+        return chunk;
+    }
+    
+    /**
+     * Return a chunk to the pool
+     * 
+     * @param chunk A chunk obtained from {@link #take()}
+     */
+    public void give(byte[] chunk) {
+        if (pooled.incrementAndGet() <= maxPooled) {
+            chunks.offer(chunk);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.net.spi.InetAddressResolver;
+import java.net.spi.InetAddressResolverProvider;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.stream.Stream;
+
+/**
+ * Resolver provider that routes the host name lookups of the whole JVM,
+ * including those of the HTTP client, through the installed {@link DnsCache}.
+ * <p>
+ * Registered in {@code META-INF/services/java.net.spi.InetAddressResolverProvider}.
+ * Until a cache is installed, and when the provider is not on the class path at
+ * all, lookups use the built-in resolver. The JDK still keeps its own short-lived
+ * cache in front of this one ({@code networkaddress.cache.ttl}).
+ * <p>
+ * Only one cache serves the JVM at a time. When several are installed, the
+ * most recent one is used, and once it is uninstalled the one before it takes
+ * over again.
+ */
+public class CachingResolverProvider extends InetAddressResolverProvider {
+    private static volatile InetAddressResolver builtinResolver;
+    private static volatile DnsCache installedCache;
+    private static final Deque<DnsCache> installedCaches = new ArrayDeque<>();
+    
+    @Override
+    public InetAddressResolver get(Configuration configuration) {
+        InetAddressResolver builtin = configuration.builtinResolver();
+        builtinResolver = builtin;
+        return new InetAddressResolver() {
+            @Override
+            public Stream<InetAddress> lookupByName(String host, LookupPolicy lookupPolicy)
+                    throws UnknownHostException {
+                DnsCache cache = installedCache;
+                return cache != null ? cache.lookupByName(host, lookupPolicy) : builtin.lookupByName(host, lookupPolicy);
+            }
+            
+            @Override
+            public String lookupByAddress(byte[] address) throws UnknownHostException {
+                return builtin.lookupByAddress(address);
+            }
+        };
+    }
+    
+    @Override
+    public String name() {
+        return "crawler-dns-cache";
+    }
+    
+    /**
+     * Route the lookups of the JVM through a cache, replacing any cache installed before
+     * 
+     * @param cache The cache, created with {@link #systemResolver()} as its delegate
+     */
+    public static void install(DnsCache cache) {
+        // Load the provider before the cache is live, so the first lookup
+        // through systemResolver() cannot re-enter the cache
+        try {
+            InetAddress.getAllByName("localhost");
+        } catch (UnknownHostException e) {
+            // Only the side effect matters
+        }
+        synchronized (installedCaches) {
+            installedCaches.addLast(cache);
+            installedCache = cache;
+        }
+    }
+    
+    /**
+     * Stop routing lookups through a cache, falling back to the cache installed
+     * before it, or to the built-in resolver if there is none
+     * 
+     * @param cache The cache passed to {@link #install(DnsCache)}
+     */
+    public static void uninstall(DnsCache cache) {
+        synchronized (installedCaches) {
+            installedCaches.removeLastOccurrence(cache);
+            installedCache = installedCaches.peekLast();
+        }
+    }
+    
+    /**
+     * Get a resolver that performs real lookups, bypassing any installed cache
+     * 
+     * @return The built-in resolver, or one based on {@link InetAddress} if this provider is not in use
+     */
+    public static InetAddressResolver systemResolver() {
+        return new InetAddressResolver() {
+            @Override
+            public Stream<InetAddress> lookupByName(String host, LookupPolicy lookupPolicy)
+                    throws UnknownHostException {
+                InetAddressResolver builtin = builtinResolver;
+                return builtin != null ? builtin.lookupByName(host, lookupPolicy)
+                                       : Arrays.stream(InetAddress.getAllByName(host));
+            }
+            
+            @Override
+            public String lookupByAddress(byte[] address) throws UnknownHostException {
+                InetAddressResolver builtin = builtinResolver;
+                return builtin != null ? builtin.lookupByAddress(address)
+                                       : InetAddress.getByAddress(address).getHostName();
+            }
+        };
+    }
+}
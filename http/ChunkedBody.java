@@ -0,0 +1,212 @@
+package http;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A response body held in pooled chunks, up to a size limit.
+ * <p>
+ * Bytes beyond the limit are not stored and mark the body as truncated, so
+ * the reader can stop downloading. Not thread-safe; a body is filled by one
+ * subscriber and then read by one decoder, after which {@link #release()}
+ * returns the chunks to the pool.
+ */
+public class ChunkedBody {
+    private final BufferPool pool;
+    private final long maxBytes;
+    private final List<byte[]> chunks;
+    private long length;
+    private boolean truncated;
+    
+    /**
+     * Constructor for ChunkedBody
+     * 
+     * @param pool The pool chunks are taken from and returned to
+     * @param maxBytes Maximum number of bytes to store
+     */
+    public ChunkedBody(BufferPool pool, long maxBytes) {
+        this.pool = pool;
+        this.maxBytes = maxBytes;
+        this.chunks = new ArrayList<>();
+    }
+    
+    /**
+     * Append the remaining bytes of a buffer
+     * 
+     * @param buffer The bytes to append; its position is advanced past them
+     * @return false if the size limit was reached and bytes were discarded
+     */
+    public boolean append(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            int count = reserve(buffer.remaining());
+            if (count == 0) {
+                return false;
+            }
+            buffer.get(currentChunk(), offsetInChunk(), count);
+            length += count;
+        }
+        return true;
+    }
+    
+    /**
+     * Append bytes from an array
+     * 
+     * @param bytes The source array
+     * @param offset Offset of the first byte to append
+     * @param count Number of bytes to append
+     * @return false if the size limit was reached and bytes were discarded
+     */
+    public boolean append(byte[] bytes, int offset, int count) {
+        while (count > 0) {
+            int n = reserve(count);
+            if (n == 0) {
+                return false;
+            }
+            System.arraycopy(bytes, offset, currentChunk(), offsetInChunk(), n);
+            length += n;
+            offset += n;
+            count -= n;
+        }
+        return true;
+    }
+    
+    /**
+     * Get the byte at an index
+     * 
+     * @param index The index, below {@link #length()}
+     * @return The byte
+     */
+    public byte get(long index) {
+        return chunks.get((int) (index / BufferPool.CHUNK_SIZE))[(int) (index % BufferPool.CHUNK_SIZE)];
+    }
+    
+    /**
+     * Copy a range of the body into an array
+     * 
+     * @param from Index of the first byte to copy
+     * @param target The target array
+     * @param offset Offset in the target array
+     * @param count Number of bytes to copy
+     */
+    public void copyTo(long from, byte[] target, int offset, int count) {
+        while (count > 0) {
+            int chunkOffset = (int) (from % BufferPool.CHUNK_SIZE);
+            int n = Math.min(count, BufferPool.CHUNK_SIZE - chunkOffset);
+            System.arraycopy(chunks.get((int) (from / BufferPool.CHUNK_SIZE)), chunkOffset, target, offset, n);
+            from += n;
+            offset += n;
+            count -= n;
+        }
+    }
+    
+    /**
+     * Check whether every byte from an index on is 7-bit ASCII
+     * 
+     * @param from Index of the first byte to check
+     * @return true if no byte has its high bit set
+     */
+    public boolean isAscii(long from) {
+        for (int c = (int) (from / BufferPool.CHUNK_SIZE); c < chunks.size(); c++) {
+            byte[] chunk = chunks.get(c);
+            int start = c == from / BufferPool.CHUNK_SIZE ? (int) (from % BufferPool.CHUNK_SIZE) : 0;
+            int end = (int) Math.min(BufferPool.CHUNK_SIZE, length - (long) c * BufferPool.CHUNK_SIZE);
+            for (int i = start; i < end; i++) {
+                if (chunk[i] < 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Open a stream over the stored bytes
+     * 
+     * @return The stream
+     */
+    public InputStream inputStream() {
+        return new InputStream() {
+            private long position;
+            
+            @Override
+            public int read() {
+                return position < length ? get(position++) & 0xFF : -1;
+            }
+            
+            @Override
+            public int read(byte[] target, int offset, int count) {
+                if (position >= length) {
+                    return -1;
+                }
+                int n = (int) Math.min(count, length - position);
+                copyTo(position, target, offset, n);
+                position += n;
+                return n;
+            }
+        };
+    }
+    
+    /**
+     * Get the number of bytes stored
+     * 
+     * @return The length
+     */
+    public long length() {
+        return length;
+    }
+    
+    /**
+     * Check whether bytes were discarded because of the size limit
+     * 
+     * @return true if the body is incomplete
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+    
+    /**
+     * Mark the body as incomplete, e.g. because it was decompressed from a truncated body
+     */
+    void markTruncated() {
+        truncated = true;
+    }
+    
+    /**
+     * Return the chunks to the pool; the body must not be used afterwards
+     */
+    public void release() {
+        for (byte[] chunk : chunks) {
+            pool.give(chunk);
+        }
+        chunks.clear();
+        length = 0;
+    }
+    
+    /**
+     * Make room for up to {@code wanted} bytes in the current chunk
+     * 
+     * @param wanted Number of bytes to append
+     * @return Number of bytes that may be written at the current position
+     */
+    private int reserve(int wanted) {
+        long allowed = Math.min(wanted, maxBytes - length);
+        if (allowed <= 0) {
+            truncated = true;
+            return 0;
+        }
+        if (offsetInChunk() == 0 && length / BufferPool.CHUNK_SIZE == chunks.size()) {
+            chunks.add(pool.take());
+        }
+        return (int) Math.min(allowed, BufferPool.CHUNK_SIZE - offsetInChunk());
+    }
+    
+    private byte[] currentChunk() {
+        return chunks.get((int) (length / BufferPool.CHUNK_SIZE));
+    }
+    
+    private int offsetInChunk() {
+        return (int) (length % BufferPool.CHUNK_SIZE);
+    }
+}
@@ -0,0 +1,195 @@
+package http;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import util.Logger;
+
+/**
+ * Per-host circuit breakers that park a failing host instead of hammering it.
+ * <p>
+ * After {@code failureThreshold} consecutive failures (network errors, 5xx or
+ * 429 responses) a host's breaker opens and no requests are sent to it for the
+ * open time, which doubles each time the breaker trips again in a row, up to
+ * {@link #MAX_OPEN_FACTOR} times the base. Once the open time has passed one
+ * trial request is let through: its success closes the breaker, its failure
+ * opens it again. A Retry-After header can also open a breaker directly.
+ * Only hosts with recent failures have state.
+ */
+public class CircuitBreaker {
+    public static final int MAX_OPEN_FACTOR = 16;
+    
+    private final int failureThreshold;
+    private final long openMs;
+    private final Map<String, HostState> hosts;
+    private final LongAdder trips;
+    private final Logger logger;
+    
+    /**
+     * Constructor for CircuitBreaker
+     * 
+     * @param failureThreshold Consecutive failures that open a host's breaker
+     * @param openMs How long a breaker stays open the first time it trips
+     */
+    public CircuitBreaker(int failureThreshold, long openMs) {
+        this.failureThreshold = failureThreshold;
+        this.openMs = openMs;
+        this.hosts = new ConcurrentHashMap<>();
+        this.trips = new LongAdder();
+        this.logger = new Logger(CircuitBreaker.class.getSimpleName());
+    }
+    
+    /**
+     * Ask to send a request to a host. When the open time has passed, the first
+     * caller gets the trial request and the others are refused until it completes.
+     * 
+     * @param host The host name
+     * @return true if the request may be sent
+     */
+    public boolean tryAcquire(String host) {
+        HostState state = hosts.get(host);
+        if (state == null) {
+            return true;
+        }
+        synchronized (state) {
+            long now = System.currentTimeMillis();
+            if (state.openUntil == 0) {
+                return true;
+            }
+            if (now < state.openUntil || now < state.trialStartedAt + openMs) {
+                return false;
+            }
+            state.trialStartedAt = now;
+            return true;
+        }
+    }
+    
+    /**
+     * Get the time until which a host is parked
+     * 
+     * @param host The host name
+     * @return The time in milliseconds since the epoch, or 0 if requests may be sent
+     */
+    public long getBlockedUntil(String host) {
+        HostState state = hosts.get(host);
+        if (state == null) {
+            return 0;
+        }
+        synchronized (state) {
+            if (state.openUntil == 0) {
+                return 0;
+            }
+            long blockedUntil = Math.max(state.openUntil, state.trialStartedAt + openMs);
+            return blockedUntil > System.currentTimeMillis() ? blockedUntil : 0;
+        }
+    }
+    
+    /**
+     * Record a successful request, closing the host's breaker
+     * 
+     * @param host The host name
+     */
+    public void recordSuccess(String host) {
+        HostState state = hosts.get(host);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            if (state.openUntil != 0) {
+                logger.info("Circuit closed for " + host);
+            }
+            hosts.remove(host, state);
+            state.removed = true;
+        }
+    }
+    
+    /**
+     * Record a failed request, opening the host's breaker once failures pile up
+     * 
+     * @param host The host name
+     */
+    public void recordFailure(String host) {
+        while (true) {
+            HostState state = hosts.computeIfAbsent(host, key -> new HostState());
+            synchronized (state) {
+                if (state.removed) {
+                    continue;
+                }
+                state.failures++;
+                boolean trialFailed = state.openUntil != 0 && state.trialStartedAt != 0;
+                if (trialFailed || (state.openUntil == 0 && state.failures >= failureThreshold)) {
+                    open(host, state, openMs * Math.min(MAX_OPEN_FACTOR, 1L << Math.min(state.trips, 30)));
+                }
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Park a host for a time the server asked for, e.g. with Retry-After
+     * 
+     * @param host The host name
+     * @param delayMs How long to send no requests to the host
+     */
+    public void openFor(String host, long delayMs) {
+        while (true) {
+            HostState state = hosts.computeIfAbsent(host, key -> new HostState());
+            synchronized (state) {
+                if (state.removed) {
+                    continue;
+                }
+                long until = System.currentTimeMillis() + delayMs;
+                if (until > state.openUntil) {
+                    state.openUntil = until;
+                    state.trialStartedAt = 0;
+                }
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Get the number of times a breaker opened after failures
+     * 
+     * @return The trip count
+     */
+    public long getTripCount() {
+        return trips.sum();
+    }
+    
+    /**
+     * Get the number of hosts currently parked
+     * 
+     * @return The number of hosts with an open breaker
+     */
+    public int getOpenCount() {
+        int open = 0;
+        for (String host : hosts.keySet()) {
+            if (getBlockedUntil(host) > 0) {
+                open++;
+            }
+        }
+        return open;
+    }
+    
+    private void open(String host, HostState state, long durationMs) {
+        state.trips++;
+        state.openUntil = System.currentTimeMillis() + durationMs;
+        state.trialStartedAt = 0;
+        trips.increment();
+        logger.info("Circuit opened for " + host + " after " + state.failures + " failures, parked for "
+                    + durationMs + "ms");
+    }
+    
+    /**
+     * Failure state of one host
+     */
+    private static class HostState {
+        private int failures;
+        private int trips;
+        private long openUntil;
+        private long trialStartedAt;
+        private boolean removed;
+    }
+}
@@ -0,0 +1,271 @@
+package http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.net.spi.InetAddressResolver;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import util.Logger;
+
+/**
+ * Caching resolver for host names, with prefetching.
+ * <p>
+ * Successful lookups are kept for the positive TTL and failed ones for the
+ * negative TTL, so an unresolvable host fails fast instead of costing a lookup
+ * per URL. Concurrent lookups of the same host share one query. Hosts can be
+ * prefetched when their URLs enter the frontier, so the name is usually
+ * resolved by the time a worker fetches the page.
+ * <p>
+ * Lookups go to the given delegate resolver on a small pool of platform
+ * threads, since the system resolver blocks in native code. Installed through
+ * {@link CachingResolverProvider}, the cache also serves the lookups of the
+ * HTTP client itself. Closing the cache stops its lookup threads; lookups
+ * after that run on the calling thread.
+ */
+public class DnsCache implements InetAddressResolver, AutoCloseable {
+    private static final int LOOKUP_THREADS = 8;
+    // Prefetches are skipped while this many lookups are queued, so a page full of new hosts cannot flood the resolver
+    private static final int MAX_PENDING_PREFETCHES = 64;
+    private static final int MAX_HOSTS = 100_000;
+    private static final LookupPolicy ANY_ADDRESS = LookupPolicy.of(LookupPolicy.IPV4 | LookupPolicy.IPV6);
+    
+    private final InetAddressResolver delegate;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final Map<String, Entry> entries;
+    private final Map<String, CompletableFuture<List<InetAddress>>> inFlight;
+    private final ExecutorService lookupExecutor;
+    private final AtomicInteger pendingLookups;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder failures;
+    private final LongAdder prefetches;
+    private final LongAdder lookupNanos;
+    private final Logger logger;
+    
+    /**
+     * Constructor for DnsCache
+     * 
+     * @param delegate The resolver that performs the actual lookups
+     * @param ttlMillis How long resolved addresses are kept
+     * @param negativeTtlMillis How long a failed lookup is remembered, or 0 to not cache failures
+     */
+    public DnsCache(InetAddressResolver delegate, long ttlMillis, long negativeTtlMillis) {
+        this.delegate = delegate;
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.entries = new ConcurrentHashMap<>();
+        this.inFlight = new ConcurrentHashMap<>();
+        this.lookupExecutor = Executors.newFixedThreadPool(LOOKUP_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "dns-lookup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pendingLookups = new AtomicInteger();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.failures = new LongAdder();
+        this.prefetches = new LongAdder();
+        this.lookupNanos = new LongAdder();
+        this.logger = new Logger(DnsCache.class.getSimpleName());
+    }
+    
+    /**
+     * Resolve a host name without blocking
+     * 
+     * @param host The host name
+     * @return A future for the addresses of the host; it completes exceptionally
+     *         with an {@link UnknownHostException} if the host cannot be resolved
+     */
+    public CompletableFuture<List<InetAddress>> resolveAsync(String host) {
+        Entry entry = entries.get(host);
+        if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+            hits.increment();
+            return entry.error != null
+                    ? CompletableFuture.failedFuture(entry.error) : CompletableFuture.completedFuture(entry.addresses);
+        }
+        return lookup(host, false);
+    }
+    
+    /**
+     * Start resolving a host in the background unless it is already cached
+     * 
+     * @param host The host name
+     */
+    public void prefetch(String host) {
+        Entry entry = entries.get(host);
+        if ((entry != null && entry.expiresAt > System.currentTimeMillis()) || inFlight.containsKey(host)
+                || pendingLookups.get() >= MAX_PENDING_PREFETCHES) {
+            return;
+        }
+        lookup(host, true);
+    }
+    
+    @Override
+    public Stream<InetAddress> lookupByName(String host, LookupPolicy lookupPolicy) throws UnknownHostException {
+        List<InetAddress> addresses;
+        try {
+            addresses = resolveAsync(host).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UnknownHostException unknownHost) {
+                throw unknownHost;
+            }
+            throw e;
+        }
+        int characteristics = lookupPolicy.characteristics();
+        boolean ipv4 = (characteristics & LookupPolicy.IPV4) != 0;
+        boolean ipv6 = (characteristics & LookupPolicy.IPV6) != 0;
+        List<InetAddress> matching = new ArrayList<>(addresses.size());
+        for (InetAddress address : addresses) {
+            if (address.getAddress().length == 4 ? ipv4 : ipv6) {
+                matching.add(address);
+            }
+        }
+        if (matching.isEmpty()) {
+            throw new UnknownHostException(host);
+        }
+        if ((characteristics & LookupPolicy.IPV6_FIRST) != 0) {
+            matching.sort((a, b) -> Integer.compare(b.getAddress().length, a.getAddress().length));
+        } else if ((characteristics & LookupPolicy.IPV4_FIRST) != 0) {
+            matching.sort((a, b) -> Integer.compare(a.getAddress().length, b.getAddress().length));
+        }
+        return matching.stream();
+    }
+    
+    @Override
+    public String lookupByAddress(byte[] address) throws UnknownHostException {
+        return delegate.lookupByAddress(address);
+    }
+    
+    /**
+     * Get the number of lookups answered from the cache
+     * 
+     * @return The hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+    
+    /**
+     * Get the number of lookups sent to the delegate resolver, including prefetches
+     * 
+     * @return The miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+    
+    /**
+     * Get a one-line summary of the cache activity
+     * 
+     * @return The summary
+     */
+    public String getSummary() {
+        long lookups = misses.sum();
+        return String.format("%,d hosts resolved (%,d prefetched, %,d failed), %,d cache hits, %.1f ms per lookup",
+                lookups, prefetches.sum(), failures.sum(), hits.sum(),
+                lookups > 0 ? lookupNanos.sum() / 1e6 / lookups : 0.0);
+    }
+    
+    /**
+     * Stop the lookup threads once the lookups already queued have finished
+     */
+    @Override
+    public void close() {
+        lookupExecutor.shutdown();
+    }
+    
+    /**
+     * Resolve a host on the lookup threads and cache the outcome, joining a
+     * lookup of the same host that is already running
+     * 
+     * @param host The host name
+     * @param prefetch true if nobody is waiting for the result yet
+     * @return A future for the addresses
+     */
+    private CompletableFuture<List<InetAddress>> lookup(String host, boolean prefetch) {
+        CompletableFuture<List<InetAddress>> future = new CompletableFuture<>();
+        CompletableFuture<List<InetAddress>> running = inFlight.putIfAbsent(host, future);
+        if (running != null) {
+            return running;
+        }
+        misses.increment();
+        if (prefetch) {
+            prefetches.increment();
+        }
+        pendingLookups.incrementAndGet();
+        Runnable task = () -> {
+            pendingLookups.decrementAndGet();
+            long startTime = System.nanoTime();
+            Entry entry;
+            try {
+                List<InetAddress> addresses = delegate.lookupByName(host, ANY_ADDRESS).toList();
+                entry = new Entry(addresses, null, System.currentTimeMillis() + ttlMillis);
+            } catch (UnknownHostException e) {
+                failures.increment();
+                entry = new Entry(null, e, System.currentTimeMillis() + negativeTtlMillis);
+            } catch (RuntimeException e) {
+                failures.increment();
+                logger.debug("DNS lookup failed for " + host + " - " + e.getMessage());
+                UnknownHostException error = new UnknownHostException(host);
+                error.initCause(e);
+                entry = new Entry(null, error, System.currentTimeMillis());
+            }
+            lookupNanos.add(System.nanoTime() - startTime);
+            store(host, entry);
+            inFlight.remove(host, future);
+            if (entry.error != null) {
+                future.completeExceptionally(entry.error);
+            } else {
+                future.complete(entry.addresses);
+            }
+        };
+        try {
+            lookupExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Closed
+            task.run();
+        }
+        return future;
+    }
+    
+    private void store(String host, Entry entry) {
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(host);
+            return;
+        }
+        if (entries.size() >= MAX_HOSTS) {
+            evictExpired();
+        }
+        entries.put(host, entry);
+    }
+    
+    /**
+     * Remove expired entries, and if the cache is still full, an arbitrary
+     * tenth of the remaining ones
+     */
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+        Iterator<String> hosts = entries.keySet().iterator();
+        for (int i = entries.size() - MAX_HOSTS * 9 / 10; i > 0 && hosts.hasNext(); i--) {
+            hosts.next();
+            hosts.remove();
+        }
+    }
+    
+    private record Entry(List<InetAddress> addresses, UnknownHostException error, long expiresAt) {
+    }
+}
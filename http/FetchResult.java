@@ -0,0 +1,118 @@
+package http;
+
+/**
+ * Outcome of a single HTTP fetch, including the validators needed for a
+ * conditional request on the next crawl
+ */
+public class FetchResult {
+    private final int statusCode;
+    private final CharSequence body;
+    private final String etag;
+    private final String lastModified;
+    private final String finalUrl;
+    private final long bytesRead;
+    private final long bodyBytes;
+    
+    /**
+     * Constructor for FetchResult
+     * 
+     * @param statusCode The HTTP status code of the final response
+     * @param body The decoded HTML body, or null if there is none
+     * @param etag The ETag response header, or null
+     * @param lastModified The Last-Modified response header, or null
+     * @param finalUrl The URL the body was fetched from, after redirects
+     * @param bytesRead Number of bytes received on the wire for the body
+     * @param bodyBytes Number of bytes of the body once decompressed, before it was decoded
+     */
+    public FetchResult(int statusCode, CharSequence body, String etag, String lastModified,
+                       String finalUrl, long bytesRead, long bodyBytes) {
+        this.statusCode = statusCode;
+        this.body = body;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.finalUrl = finalUrl;
+        this.bytesRead = bytesRead;
+        this.bodyBytes = bodyBytes;
+    }
+    
+    /**
+     * Get the HTTP status code of the final response
+     * 
+     * @return The status code
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+    
+    /**
+     * Get the decoded HTML body
+     * 
+     * @return The body, or null for a 304 response or a redirect that was not followed
+     */
+    public CharSequence getBody() {
+        return body;
+    }
+    
+    /**
+     * Get the ETag response header
+     * 
+     * @return The ETag, or null if the server sent none
+     */
+    public String getEtag() {
+        return etag;
+    }
+    
+    /**
+     * Get the Last-Modified response header
+     * 
+     * @return The Last-Modified value, or null if the server sent none
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+    
+    /**
+     * Get the URL the response came from, after redirects
+     * 
+     * @return The final URL, or the target of a redirect that was not followed
+     */
+    public String getFinalUrl() {
+        return finalUrl;
+    }
+    
+    /**
+     * Get the number of body bytes received on the wire (compressed if the server compressed them)
+     * 
+     * @return The byte count
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+    
+    /**
+     * Get the number of body bytes once decompressed, before they were decoded to text
+     * 
+     * @return The byte count, or 0 if there is no body
+     */
+    public long getBodyBytes() {
+        return bodyBytes;
+    }
+    
+    /**
+     * Check whether the server confirmed that the cached copy is still current
+     * 
+     * @return true for a 304 Not Modified response
+     */
+    public boolean isNotModified() {
+        return statusCode == 304;
+    }
+    
+    /**
+     * Check whether the fetch stopped at a redirect the redirect filter did not follow
+     * 
+     * @return true for a redirect response, whose final URL is the redirect target
+     */
+    public boolean isRedirect() {
+        return statusCode >= 300 && statusCode < 400 && statusCode != 304;
+    }
+}
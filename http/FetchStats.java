@@ -0,0 +1,194 @@
+package http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counts and a latency histogram for the HTTP fetch layer.
+ * <p>
+ * Latencies are recorded in microseconds into log-linear buckets: each power
+ * of two is split into 16 sub-buckets, so a percentile is accurate to about 6%
+ * while recording is a single atomic increment with no allocation.
+ */
+public class FetchStats {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Covers up to 2^40 microseconds, far beyond any request timeout
+    private static final int MAX_EXPONENT = 40;
+    
+    private final AtomicLongArray buckets;
+    private final LongAdder requests;
+    private final LongAdder failures;
+    private final LongAdder bytesRead;
+    private final LongAdder truncated;
+    private final LongAdder retries;
+    private final LongAdder dnsWaits;
+    private final LongAdder dnsNanos;
+    
+    /**
+     * Constructor for FetchStats
+     */
+    public FetchStats() {
+        this.buckets = new AtomicLongArray((MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS);
+        this.requests = new LongAdder();
+        this.failures = new LongAdder();
+        this.bytesRead = new LongAdder();
+        this.truncated = new LongAdder();
+        this.retries = new LongAdder();
+        this.dnsWaits = new LongAdder();
+        this.dnsNanos = new LongAdder();
+    }
+    
+    /**
+     * Record a completed request
+     * 
+     * @param nanos Time from sending the request to receiving the whole body
+     * @param bytes Number of body bytes received on the wire
+     * @param failed true if the request failed with an error instead of a response
+     */
+    public void record(long nanos, long bytes, boolean failed) {
+        requests.increment();
+        bytesRead.add(bytes);
+        if (failed) {
+            failures.increment();
+            return;
+        }
+        buckets.incrementAndGet(bucketIndex(TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+    
+    /**
+     * Record a body that was cut off at the size limit
+     */
+    public void recordTruncated() {
+        truncated.increment();
+    }
+    
+    /**
+     * Record a retry scheduled after a failed attempt
+     */
+    public void recordRetry() {
+        retries.increment();
+    }
+    
+    /**
+     * Get the number of retries scheduled after failed attempts
+     * 
+     * @return The retry count
+     */
+    public long getRetryCount() {
+        return retries.sum();
+    }
+    
+    /**
+     * Record the time a request waited for its host name to be resolved
+     * 
+     * @param nanos The wait, 0 or close to it for a cached name
+     */
+    public void recordDns(long nanos) {
+        dnsWaits.increment();
+        dnsNanos.add(nanos);
+    }
+    
+    /**
+     * Get the average time a request waited for DNS
+     * 
+     * @return The average wait in milliseconds
+     */
+    public double getAverageDnsMs() {
+        long waits = dnsWaits.sum();
+        return waits > 0 ? dnsNanos.sum() / 1e6 / waits : 0;
+    }
+    
+    /**
+     * Get the number of requests sent, including failed ones
+     * 
+     * @return The request count
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+    
+    /**
+     * Get the number of requests that failed without a response
+     * 
+     * @return The failure count
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+    
+    /**
+     * Get the number of body bytes received on the wire
+     * 
+     * @return The byte count
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+    
+    /**
+     * Get the number of bodies cut off at the size limit
+     * 
+     * @return The truncated body count
+     */
+    public long getTruncatedCount() {
+        return truncated.sum();
+    }
+    
+    /**
+     * Get a latency percentile of the successful requests
+     * 
+     * @param percentile The percentile, from 0 to 100
+     * @return The latency in milliseconds, or 0 if nothing was recorded
+     */
+    public double getLatencyPercentileMs(double percentile) {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return bucketMidpoint(i) / 1000.0;
+            }
+        }
+        return bucketMidpoint(buckets.length() - 1) / 1000.0;
+    }
+    
+    /**
+     * Summarize the counts and the median and tail latency
+     * 
+     * @return A one-line summary
+     */
+    public String getSummary() {
+        return String.format("%,d requests (%,d failed, %,d retries), %,d bytes (%,d bodies truncated); "
+                + "DNS wait %.2f ms per request; latency p50 %.1f ms, p99 %.1f ms",
+                getRequestCount(), getFailureCount(), getRetryCount(), getBytesRead(), getTruncatedCount(), getAverageDnsMs(),
+                getLatencyPercentileMs(50), getLatencyPercentileMs(99));
+    }
+    
+    private static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+    
+    private static double bucketMidpoint(int index) {
+        if (index < SUB_BUCKETS) {
+            return index + 0.5;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (1L << exponent) + (index % SUB_BUCKETS) * width;
+        return lower + width / 2.0;
+    }
+}
@@ -0,0 +1,84 @@
+package http;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Caps the number of requests in flight to each host.
+ * <p>
+ * Works like a per-host semaphore whose acquire returns a future instead of
+ * blocking, so asynchronous fetches queue for a connection without holding a
+ * thread. A released permit is handed straight to the oldest waiter.
+ */
+public class HostConnectionLimiter {
+    private final int maxPerHost;
+    private final Map<String, HostPermits> hosts;
+    
+    /**
+     * Constructor for HostConnectionLimiter
+     * 
+     * @param maxPerHost Maximum number of concurrent requests per host, or 0 for no limit
+     */
+    public HostConnectionLimiter(int maxPerHost) {
+        this.maxPerHost = maxPerHost;
+        this.hosts = new HashMap<>();
+    }
+    
+    /**
+     * Acquire a permit for a host
+     * 
+     * @param host The host name
+     * @return A future that completes once the permit is granted
+     */
+    public CompletableFuture<Void> acquire(String host) {
+        if (maxPerHost <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        synchronized (this) {
+            HostPermits permits = hosts.computeIfAbsent(host, key -> new HostPermits());
+            if (permits.active < maxPerHost) {
+                permits.active++;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            permits.waiters.addLast(waiter);
+            return waiter;
+        }
+    }
+    
+    /**
+     * Release a permit acquired with {@link #acquire(String)}
+     * 
+     * @param host The host name
+     */
+    public void release(String host) {
+        if (maxPerHost <= 0) {
+            return;
+        }
+        CompletableFuture<Void> next;
+        synchronized (this) {
+            HostPermits permits = hosts.get(host);
+            if (permits == null) {
+                return;
+            }
+            next = permits.waiters.pollFirst();
+            if (next == null && --permits.active == 0) {
+                hosts.remove(host);
+            }
+        }
+        // Completed outside the lock since the waiter's continuation runs here
+        if (next != null) {
+            next.complete(null);
+        }
+    }
+    
+    /**
+     * Permits in use and requests waiting for one host
+     */
+    private static class HostPermits {
+        private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+        private int active;
+    }
+}
@@ -0,0 +1,277 @@
+package http;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.ToLongFunction;
+
+import util.Logger;
+import util.UrlUtils;
+
+/**
+ * Host-aware politeness scheduler.
+ * <p>
+ * Each host has its own FIFO queue and minimum delay between requests. Hosts
+ * that have queued URLs sit in a ready-queue ordered by the time they may next
+ * be contacted, and {@link #poll(long)} hands out a URL from whichever host
+ * becomes eligible first. Aggregate throughput therefore grows with the number
+ * of distinct hosts while every single host still sees the configured delay.
+ * A host blocker, such as the circuit breakers, can hold a host back further:
+ * its URLs stay queued until the block ends instead of being handed out.
+ * <p>
+ * Callers that keep a bounded window of URLs queued should size it with
+ * {@link #getWindowCount()}, which counts a host with a delay once however
+ * many URLs it has queued: its later URLs cannot be handed out before the
+ * delay passes, so they should not keep URLs for other hosts out.
+ * <p>
+ * A host is only tracked while it has queued URLs or its delay has not yet
+ * passed; idle hosts are dropped after that, so a broad crawl does not keep
+ * state for every host it has ever contacted. Per-host delays set through
+ * {@link #setDelay(String, long)} are kept apart, for the most recently used
+ * hosts only.
+ */
+public class HostScheduler {
+    private static final int MAX_DELAY_OVERRIDES = 100_000;
+    
+    private final long defaultDelayMs;
+    private final Map<String, HostQueue> hosts;
+    private final Map<String, Long> delayOverrides;
+    private final PriorityQueue<HostQueue> readyQueue;
+    private final PriorityQueue<IdleHost> idleHosts;
+    private final Logger logger;
+    private ToLongFunction<String> hostBlocker;
+    private int pendingCount;
+    private int windowCount;
+    private boolean signalled;
+    
+    /**
+     * Constructor for HostScheduler
+     * 
+     * @param defaultDelayMs Minimum delay between requests to the same host in milliseconds
+     */
+    public HostScheduler(long defaultDelayMs) {
+        this.defaultDelayMs = defaultDelayMs;
+        this.hosts = new HashMap<>();
+        this.delayOverrides = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > MAX_DELAY_OVERRIDES;
+            }
+        };
+        this.readyQueue = new PriorityQueue<>(Comparator.comparingLong(host -> host.nextEligibleTime));
+        this.idleHosts = new PriorityQueue<>(Comparator.comparingLong(IdleHost::evictAt));
+        this.logger = new Logger(HostScheduler.class.getSimpleName());
+    }
+    
+    /**
+     * Queue a URL behind any other URLs waiting for the same host
+     * 
+     * @param url The URL to schedule
+     */
+    public synchronized void submit(String url) {
+        evictIdleHosts(System.currentTimeMillis());
+        HostQueue host = getOrCreateHost(hostKey(url));
+        boolean wasIdle = host.urls.isEmpty();
+        windowCount -= host.windowWeight();
+        host.urls.addLast(url);
+        windowCount += host.windowWeight();
+        pendingCount++;
+        
+        if (wasIdle) {
+            readyQueue.add(host);
+        }
+        notifyAll();
+    }
+    
+    /**
+     * Take the next URL whose host may be contacted now, waiting for a host to
+     * become eligible if necessary. The host's delay starts counting from the
+     * moment the URL is handed out.
+     * 
+     * @param maxWaitMs Maximum time to wait in milliseconds
+     * @return The URL to fetch, or null if none became eligible in time or
+     *         {@link #signal()} was called while waiting
+     * @throws InterruptedException If the calling thread is interrupted
+     */
+    public synchronized String poll(long maxWaitMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + maxWaitMs;
+        
+        while (true) {
+            if (signalled) {
+                signalled = false;
+                return null;
+            }
+            
+            long now = System.currentTimeMillis();
+            evictIdleHosts(now);
+            HostQueue head = readyQueue.peek();
+            if (head != null && head.nextEligibleTime <= now) {
+                readyQueue.poll();
+                long blockedUntil = hostBlocker != null ? hostBlocker.applyAsLong(head.host) : 0;
+                if (blockedUntil > now) {
+                    head.nextEligibleTime = blockedUntil;
+                    readyQueue.add(head);
+                    continue;
+                }
+                windowCount -= head.windowWeight();
+                String url = head.urls.pollFirst();
+                windowCount += head.windowWeight();
+                pendingCount--;
+                head.nextEligibleTime = now + head.delayMs;
+                if (!head.urls.isEmpty()) {
+                    readyQueue.add(head);
+                } else {
+                    idleHosts.add(new IdleHost(head, head.nextEligibleTime));
+                }
+                return url;
+            }
+            
+            long waitUntil = head != null ? Math.min(head.nextEligibleTime, deadline) : deadline;
+            if (now >= deadline) {
+                return null;
+            }
+            wait(Math.max(1, waitUntil - now));
+        }
+    }
+    
+    /**
+     * Take the next URL whose host may be contacted now, waiting as long as
+     * necessary for a host to become eligible
+     * 
+     * @return The URL to fetch, or null if {@link #signal()} was called while waiting
+     * @throws InterruptedException If the calling thread is interrupted
+     */
+    public String take() throws InterruptedException {
+        return poll(Long.MAX_VALUE / 2);
+    }
+    
+    /**
+     * Wake up a thread blocked in {@link #poll(long)} or {@link #take()}, e.g.
+     * because a page finished and the caller may have new URLs to submit
+     */
+    public synchronized void signal() {
+        signalled = true;
+        notifyAll();
+    }
+    
+    /**
+     * Set the minimum delay between requests for a single host.
+     * The new delay applies from the next request to that host.
+     * 
+     * @param host The host name
+     * @param delayMs Minimum delay between requests in milliseconds
+     */
+    public synchronized void setDelay(String host, long delayMs) {
+        String key = host.toLowerCase();
+        Long previous = delayOverrides.put(key, delayMs);
+        if (previous == null || previous != delayMs) {
+            logger.debug("Changing delay for " + host + " from " + (previous != null ? previous : defaultDelayMs)
+                         + "ms to " + delayMs + "ms");
+        }
+        HostQueue hostQueue = hosts.get(key);
+        if (hostQueue != null) {
+            windowCount -= hostQueue.windowWeight();
+            hostQueue.delayMs = delayMs;
+            windowCount += hostQueue.windowWeight();
+        }
+    }
+    
+    /**
+     * Set the source of host blocks consulted before a URL is handed out
+     * 
+     * @param hostBlocker Maps a lowercase host name to the time in milliseconds
+     *                    since the epoch until which it is blocked, or 0
+     */
+    public synchronized void setHostBlocker(ToLongFunction<String> hostBlocker) {
+        this.hostBlocker = hostBlocker;
+    }
+    
+    /**
+     * Get the number of URLs waiting across all hosts
+     * 
+     * @return The number of queued URLs
+     */
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+    
+    /**
+     * Get the number of queued URLs that count towards a dispatch window: all
+     * URLs of hosts without a delay, but only one per host with a delay
+     * 
+     * @return The number of queued URLs that can be handed out without waiting on each other
+     */
+    public synchronized int getWindowCount() {
+        return windowCount;
+    }
+    
+    /**
+     * Get the scheduling key for a URL
+     * 
+     * @param url The URL
+     * @return The lowercase host, or an empty string if it cannot be determined
+     */
+    private static String hostKey(String url) {
+        String host = UrlUtils.getDomain(url);
+        return host != null ? host.toLowerCase() : "";
+    }
+    
+    private HostQueue getOrCreateHost(String host) {
+        HostQueue hostQueue = hosts.get(host);
+        if (hostQueue == null) {
+            hostQueue = new HostQueue(host, delayOverrides.getOrDefault(host, defaultDelayMs));
+            hosts.put(host, hostQueue);
+        }
+        return hostQueue;
+    }
+    
+    /**
+     * Drop hosts that have no queued URLs and may already be contacted again;
+     * a host that comes back later simply starts with a fresh queue
+     * 
+     * @param now The current time in milliseconds
+     */
+    private void evictIdleHosts(long now) {
+        IdleHost idle;
+        while ((idle = idleHosts.peek()) != null && idle.evictAt() <= now) {
+            idleHosts.poll();
+            HostQueue hostQueue = idle.hostQueue();
+            if (!hostQueue.urls.isEmpty() || hosts.get(hostQueue.host) != hostQueue) {
+                // Busy again; it is re-registered when it next runs dry
+                continue;
+            }
+            hosts.remove(hostQueue.host);
+        }
+    }
+    
+    /**
+     * Per-host queue and politeness state
+     */
+    private static class HostQueue {
+        private final String host;
+        private final ArrayDeque<String> urls = new ArrayDeque<>();
+        private long delayMs;
+        private long nextEligibleTime;
+        
+        HostQueue(String host, long delayMs) {
+            this.host = host;
+            this.delayMs = delayMs;
+        }
+        
+        /**
+         * Number of this host's queued URLs that count towards the window
+         */
+        int windowWeight() {
+            return delayMs > 0 ? Math.min(urls.size(), 1) : urls.size();
+        }
+    }
+    
+    /**
+     * A host without queued URLs, due for eviction once its delay has passed
+     */
+    private record IdleHost(HostQueue hostQueue, long evictAt) {
+    }
+}
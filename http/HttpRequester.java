@@ -1,28 +1,126 @@
 package http;
 
-import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.net.ssl.SSLSession;
 
 import config.CrawlConfig;
+import storage.ResponseArchive;
+import storage.ResponseArchive.ArchivedResponse;
 import util.Logger;
+import util.UrlCanonicalizer;
 
 /**
- * Handles HTTP requests with retry logic and response handling
+ * Handles HTTP requests with retry logic and response handling.
+ * <p>
+ * All requests go through one shared {@link HttpClient}, which keeps
+ * connections alive between requests and negotiates HTTP/2 where the server
+ * supports it, multiplexing concurrent requests to a host over a single
+ * connection. A {@link HostConnectionLimiter} caps the requests in flight per
+ * host. {@link #fetchAsync} never blocks a thread, including while waiting for
+ * a connection or between retries; the blocking methods simply wait for it.
+ * <p>
+ * Failed page fetches are retried as the {@link RetryPolicy} allows, on a
+ * delay rather than a sleeping thread. Redirects are followed by hand, up to
+ * the configured limit and within the retry budget of the original request. A
+ * {@link CircuitBreaker} parks hosts that keep failing or send Retry-After;
+ * a fetch from a parked host fails at once rather than waiting for it.
+ * Redirects are remembered in a {@link RedirectCache}, and an optional redirect
+ * filter stops a page fetch before it follows a redirect to an unwanted URL.
+ * With adaptive request delays, an {@link AdaptiveRateController} learns from
+ * every response how fast each host may be crawled.
+ * <p>
+ * With a {@link ResponseArchive} attached, every response to a page or text
+ * fetch is archived as received. In replay mode those fetches are answered from
+ * the archive instead, going through the same redirect, status and decoding
+ * logic but never touching the network: no DNS, connection limits, retries or
+ * rate control. Streamed resources such as sitemaps are not archived and are
+ * not available when replaying.
+ * <p>
+ * Close the requester once the crawl is done to shut down the client and its
+ * threads.
  */
-public class HttpRequester {
+public class HttpRequester implements AutoCloseable {
     private static final String USER_AGENT = "Mozilla/5.0 (compatible; JavaWebCrawlerBot/1.0)";
     private static final int CONNECTION_TIMEOUT = 10000; // 10 seconds
     private static final int READ_TIMEOUT = 30000; // 30 seconds
+    // Idle body chunks kept for reuse (16 MB)
+    private static final int MAX_POOLED_CHUNKS = 256;
     
     private final CrawlConfig config;
+    private final ExecutorService clientExecutor;
+    private final HttpClient client;
+    private final HostConnectionLimiter connectionLimiter;
+    private final BufferPool bufferPool;
+    private final BodyDecoder bodyDecoder;
+    private final DnsCache dnsCache;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final RedirectCache redirectCache;
+    private final AdaptiveRateController rateController;
+    private final FetchStats stats;
     private final Logger logger;
+    private volatile Predicate<String> redirectFilter;
+    private volatile ResponseArchive archive;
     
     public HttpRequester(CrawlConfig config) {
         this.config = config;
+        this.clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofMillis(CONNECTION_TIMEOUT))
+                .executor(clientExecutor)
+                .build();
+        this.connectionLimiter = new HostConnectionLimiter(config.getMaxConnectionsPerHost());
+        this.bufferPool = new BufferPool(MAX_POOLED_CHUNKS);
+        this.bodyDecoder = new BodyDecoder(bufferPool, config.getMaxBodyBytes());
+        this.dnsCache = config.getDnsCacheTtl() > 0
+                ? new DnsCache(CachingResolverProvider.systemResolver(), config.getDnsCacheTtl(),
+                               config.getDnsNegativeCacheTtl())
+                : null;
+        if (dnsCache != null) {
+            CachingResolverProvider.install(dnsCache);
+        }
+        this.retryPolicy = new RetryPolicy(config.getMaxRetries(), config.getRetryBaseDelay(),
+                                           config.getRetryMaxDelay());
+        this.circuitBreaker = config.getCircuitBreakerThreshold() > 0
+                ? new CircuitBreaker(config.getCircuitBreakerThreshold(), config.getCircuitBreakerOpenTime())
+                : null;
+        this.redirectCache = new RedirectCache(config.getRedirectCacheTtl());
+        this.rateController = config.isAdaptiveRequestDelay()
+                ? new AdaptiveRateController(config.getRequestDelay(), config.getMinRequestDelay(),
+                                             config.getMaxRequestDelay())
+                : null;
+        this.stats = new FetchStats();
         this.logger = new Logger(HttpRequester.class.getSimpleName());
     }
     
@@ -33,86 +131,769 @@ public class HttpRequester {
      * @return The HTML content as a String, or null if failed
      */
     public String fetchUrl(String urlString) {
-        int retries = 0;
-        
-        while (retries < config.getMaxRetries()) {
-            HttpURLConnection connection = null;
-            try {
-                URL url = new URL(urlString);
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("GET");
-                connection.setRequestProperty("User-Agent", USER_AGENT);
-                connection.setRequestProperty("Accept", "text/html,application/xhtml+xml,application/xml");
-                connection.setRequestProperty("Accept-Language", "en-US,en;q=0.9");
-                connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
-                connection.setConnectTimeout(CONNECTION_TIMEOUT);
-                connection.setReadTimeout(READ_TIMEOUT);
-                connection.setInstanceFollowRedirects(true);
-                
-                int responseCode = connection.getResponseCode();
-                
-                // Handle redirects manually if needed
-                if (responseCode == HttpURLConnection.HTTP_MOVED_PERM || 
-                    responseCode == HttpURLConnection.HTTP_MOVED_TEMP || 
-                    responseCode == HttpURLConnection.HTTP_SEE_OTHER) {
-                    String newUrl = connection.getHeaderField("Location");
-                    logger.debug("Redirecting to: " + newUrl);
-                    return fetchUrl(newUrl);
+        FetchResult result = fetch(urlString, null, null);
+        return result != null && result.getBody() != null ? result.getBody().toString() : null;
+    }
+    
+    /**
+     * Fetch a URL with retry logic, sending a conditional request when validators
+     * from a previous crawl are given
+     * 
+     * @param urlString The URL to fetch
+     * @param etag ETag from the previous response, or null
+     * @param lastModified Last-Modified from the previous response, or null
+     * @return The fetch result (a 304 result has no body, nor has a redirect stopped
+     *         by the redirect filter), or null if the page could not be fetched or is not HTML
+     */
+    public FetchResult fetch(String urlString, String etag, String lastModified) {
+        return fetchAsync(urlString, etag, lastModified).join();
+    }
+    
+    /**
+     * Fetch a URL asynchronously with retry logic, sending a conditional request
+     * when validators from a previous crawl are given
+     * 
+     * @param urlString The URL to fetch
+     * @param etag ETag from the previous response, or null
+     * @param lastModified Last-Modified from the previous response, or null
+     * @return A future for the fetch result (a 304 result has no body, nor has a
+     *         redirect stopped by the redirect filter); it completes with null if the
+     *         page could not be fetched, its host is parked or it is not HTML, and
+     *         never completes exceptionally. A page is always tried once, even if
+     *         no retries are configured.
+     */
+    public CompletableFuture<FetchResult> fetchAsync(String urlString, String etag, String lastModified) {
+        // Skip the hops of redirects seen before
+        String target = redirectCache.resolve(urlString);
+        if (target != null && !isRedirectAllowed(target)) {
+            return CompletableFuture.completedFuture(new FetchResult(301, null, null, null, target, 0, 0));
+        }
+        return attempt(target != null ? target : urlString, etag, lastModified, 1, 0);
+    }
+    
+    /**
+     * Fetch a small plain-text resource such as robots.txt in a single attempt.
+     * Any content type is accepted and redirects are followed.
+     * 
+     * @param urlString The URL to fetch
+     * @param maxBytes Maximum number of body bytes to read; the rest is ignored
+     * @return The fetch result (only a 200 result has a body), or null if the
+     *         server could not be reached, its host is parked or there were
+     *         more redirects than allowed
+     */
+    public FetchResult fetchText(String urlString, int maxBytes) {
+        try {
+            HttpResponse<ChunkedBody> response = null;
+            String target = urlString;
+            for (int redirects = 0; target != null && redirects <= config.getMaxRedirects(); redirects++) {
+                if (isParked(target)) {
+                    logger.debug("Host is parked, not fetching " + target);
+                    return null;
                 }
+                response = exchange(newRequest(target).build(),
+                        info -> info.statusCode() == 200
+                                ? new BodyCollector(bufferPool, maxBytes) : BodySubscribers.replacing(null)).join();
+                target = redirectTarget(response);
+            }
+            if (target != null) {
+                logger.error("Too many redirects for URL: " + urlString);
+                return null;
+            }
+            if (response.statusCode() != 200) {
+                return new FetchResult(response.statusCode(), null, null, null, response.uri().toString(), 0, 0);
+            }
+            long bytesRead = response.body().length();
+            ChunkedBody body = bodyDecoder.decompress(response.body(), header(response, "Content-Encoding"));
+            try {
+                String content = bodyDecoder.decode(body, StandardCharsets.UTF_8).toString();
+                return new FetchResult(response.statusCode(),
+                                       content.length() > maxBytes ? content.substring(0, maxBytes) : content,
+                                       header(response, "ETag"), header(response, "Last-Modified"),
+                                       response.uri().toString(), bytesRead, body.length());
+            } finally {
+                body.release();
+            }
+        } catch (IllegalArgumentException | IOException | CompletionException e) {
+            logger.debug("Error fetching " + urlString + " - " + rootMessage(e));
+            return null;
+        }
+    }
+    
+    /**
+     * Open a large resource such as a sitemap for streaming in a single attempt.
+     * Any content type is accepted, redirects are followed and a gzip
+     * Content-Encoding is undone; gzip files served as-is are left to the caller.
+     * The host's connection permit is held until the stream is closed.
+     * 
+     * @param urlString The URL to fetch
+     * @return The response body, which the caller must close, or null if the
+     *         request failed or did not return 200
+     */
+    public InputStream openStream(String urlString) {
+        if (isReplaying()) {
+            logger.debug("Streamed resources are not archived, skipping " + urlString);
+            return null;
+        }
+        String target = urlString;
+        for (int redirects = 0; redirects <= config.getMaxRedirects(); redirects++) {
+            HttpResponse<InputStream> response = openResponse(target);
+            if (response == null) {
+                return null;
+            }
+            String location;
+            try {
+                location = redirectTarget(response);
+            } catch (IllegalArgumentException e) {
+                location = null;
+            }
+            if (location == null) {
+                return wrapStream(target, response);
+            }
+            closeQuietly(response.body());
+            connectionLimiter.release(hostOf(response.request().uri()));
+            target = location;
+        }
+        logger.error("Too many redirects for URL: " + urlString);
+        return null;
+    }
+    
+    /**
+     * Send a request for a stream in a single attempt, holding the host's
+     * connection permit if a response arrives
+     * 
+     * @param urlString The URL to fetch
+     * @return The response, or null if the request failed
+     */
+    private HttpResponse<InputStream> openResponse(String urlString) {
+        String host;
+        HttpRequest request;
+        try {
+            request = newRequest(urlString).build();
+            host = hostOf(request.uri());
+        } catch (IllegalArgumentException e) {
+            logger.error("Error fetching URL: " + urlString + " - " + e.getMessage());
+            return null;
+        }
+        if (circuitBreaker != null && circuitBreaker.getBlockedUntil(host) > 0) {
+            logger.debug("Host is parked, not fetching " + urlString);
+            return null;
+        }
+        
+        connectionLimiter.acquire(host).join();
+        long startTime = System.nanoTime();
+        try {
+            HttpResponse<InputStream> response = client.send(request, BodyHandlers.ofInputStream());
+            long latency = System.nanoTime() - startTime;
+            stats.record(latency, 0, false);
+            recordOutcome(host, response.statusCode(), latency);
+            return response;
+        } catch (IOException e) {
+            long latency = System.nanoTime() - startTime;
+            stats.record(latency, 0, true);
+            recordOutcome(host, -1, latency);
+            connectionLimiter.release(host);
+            logger.error("Error fetching URL: " + urlString + " - " + e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            connectionLimiter.release(host);
+            return null;
+        }
+    }
+    
+    /**
+     * Turn a streamed response into the body stream handed to the caller,
+     * releasing the host's connection permit when it is closed
+     * 
+     * @param urlString The URL that was fetched
+     * @param response The response
+     * @return The body stream, or null if the response is not 200
+     */
+    private InputStream wrapStream(String urlString, HttpResponse<InputStream> response) {
+        String host = hostOf(response.request().uri());
+        try {
+            if (response.statusCode() != 200) {
+                logger.error("HTTP Error: " + response.statusCode() + " for URL: " + urlString);
+                closeQuietly(response.body());
+                connectionLimiter.release(host);
+                return null;
+            }
+            InputStream body = new FilterInputStream(response.body()) {
+                private boolean closed;
                 
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    // Check content type
-                    String contentType = connection.getContentType();
-                    if (contentType == null || !contentType.contains("text/html")) {
-                        logger.debug("Skipping non-HTML content: " + contentType);
-                        return null;
-                    }
-                    
-                    // Read the response
-                    BufferedReader reader;
-                    String encoding = connection.getContentEncoding();
-                    if (encoding != null && encoding.equalsIgnoreCase("gzip")) {
-                        reader = new BufferedReader(new InputStreamReader(
-                                new GZIPInputStream(connection.getInputStream()), "UTF-8"));
-                    } else {
-                        reader = new BufferedReader(new InputStreamReader(
-                                connection.getInputStream(), "UTF-8"));
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (!closed) {
+                            closed = true;
+                            connectionLimiter.release(host);
+                        }
                     }
-                    
-                    StringBuilder content = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        content.append(line).append("\n");
-                    }
-                    reader.close();
-                    
-                    logger.debug("Successfully fetched: " + urlString);
-                    return content.toString();
-                } else {
-                    logger.error("HTTP Error: " + responseCode + " for URL: " + urlString);
                 }
-            } catch (IOException e) {
-                logger.error("Error fetching URL: " + urlString + " - " + e.getMessage());
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
+            };
+            String encoding = header(response, "Content-Encoding");
+            if (encoding != null && encoding.equalsIgnoreCase("gzip")) {
+                return new GZIPInputStream(body);
+            }
+            return encoding != null && encoding.equalsIgnoreCase("deflate") ? new InflaterInputStream(body) : body;
+        } catch (IOException e) {
+            closeQuietly(response.body());
+            connectionLimiter.release(host);
+            logger.error("Error fetching URL: " + urlString + " - " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Shut down the HTTP client, waiting for requests still in flight, the
+     * threads it ran on and the DNS cache
+     */
+    @Override
+    public void close() {
+        client.close();
+        clientExecutor.close();
+        if (dnsCache != null) {
+            CachingResolverProvider.uninstall(dnsCache);
+            dnsCache.close();
+        }
+    }
+    
+    /**
+     * Get the request counts and latency histogram
+     * 
+     * @return The fetch statistics
+     */
+    public FetchStats getStats() {
+        return stats;
+    }
+    
+    /**
+     * Start resolving the host of a URL in the background, so its name is
+     * resolved by the time the URL is fetched
+     * 
+     * @param urlString The URL
+     */
+    public void prefetchDns(String urlString) {
+        if (dnsCache == null || isReplaying()) {
+            return;
+        }
+        String host = UrlCanonicalizer.getHost(urlString);
+        if (host != null && !host.isEmpty() && !isIpLiteral(host)) {
+            dnsCache.prefetch(host.toLowerCase());
+        }
+    }
+    
+    /**
+     * Get the time until which the host of a URL is parked by its circuit breaker
+     * 
+     * @param urlString The URL
+     * @return The time in milliseconds since the epoch, or 0 if the host may be contacted
+     */
+    public long getHostBlockedUntil(String urlString) {
+        String host = UrlCanonicalizer.getHost(urlString);
+        return circuitBreaker != null && host != null ? circuitBreaker.getBlockedUntil(host.toLowerCase()) : 0;
+    }
+    
+    /**
+     * Set a filter deciding which redirects page fetches follow. A fetch whose
+     * redirect is refused ends with a body-less result for the redirect target.
+     * 
+     * @param redirectFilter Predicate accepting the absolute redirect targets to follow, or null to follow all
+     */
+    public void setRedirectFilter(Predicate<String> redirectFilter) {
+        this.redirectFilter = redirectFilter;
+    }
+    
+    /**
+     * Attach an archive that responses are written to, or replayed from if the
+     * configuration asks for a replay
+     * 
+     * @param archive The response archive, or null to detach it
+     */
+    public void setArchive(ResponseArchive archive) {
+        this.archive = archive;
+    }
+    
+    /**
+     * Get the attached response archive
+     * 
+     * @return The archive, or null if none is attached
+     */
+    public ResponseArchive getArchive() {
+        return archive;
+    }
+    
+    /**
+     * Get the delay the rate controller currently allows between requests to the host of a URL
+     * 
+     * @param urlString The URL
+     * @return The delay in milliseconds, or -1 if adaptive request delays are disabled
+     */
+    public long getAdaptiveDelay(String urlString) {
+        String host = UrlCanonicalizer.getHost(urlString);
+        return rateController != null && host != null ? rateController.getDelay(host.toLowerCase()) : -1;
+    }
+    
+    /**
+     * Get the adaptive rate controller
+     * 
+     * @return The rate controller, or null if adaptive request delays are disabled
+     */
+    public AdaptiveRateController getRateController() {
+        return rateController;
+    }
+    
+    /**
+     * Get the cache of redirects seen so far
+     * 
+     * @return The redirect cache
+     */
+    public RedirectCache getRedirectCache() {
+        return redirectCache;
+    }
+    
+    /**
+     * Get the circuit breakers
+     * 
+     * @return The circuit breakers, or null if they are disabled
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+    
+    /**
+     * Get the DNS cache
+     * 
+     * @return The DNS cache, or null if DNS caching is disabled
+     */
+    public DnsCache getDnsCache() {
+        return dnsCache;
+    }
+    
+    /**
+     * Make one attempt at fetching a page, scheduling a retry if it fails
+     * 
+     * @param urlString The URL to fetch
+     * @param etag ETag from the previous response, or null
+     * @param lastModified Last-Modified from the previous response, or null
+     * @param attempt The attempt number, starting at 1
+     * @param redirects Number of redirects already followed by hand
+     * @return A future for the fetch result, or for null if the page could not be fetched
+     */
+    private CompletableFuture<FetchResult> attempt(String urlString, String etag, String lastModified,
+                                                   int attempt, int redirects) {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = newRequest(urlString)
+                    .header("Accept", "text/html,application/xhtml+xml,application/xml")
+                    .header("Accept-Language", "en-US,en;q=0.9");
+            if (etag != null) {
+                builder.header("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                builder.header("If-Modified-Since", lastModified);
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            logger.error("Error fetching URL: " + urlString + " - " + e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        // A parked host fails fast: waiting out its open time would hold a
+        // worker and its permit for minutes
+        String host = hostOf(request.uri());
+        if (circuitBreaker != null && !circuitBreaker.tryAcquire(host)) {
+            logger.debug("Host " + host + " is parked, not fetching " + urlString);
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        // Reads the body of a 200 HTML response and discards anything else, which
+        // leaves the connection reusable
+        BodyHandler<ChunkedBody> htmlBody = info -> info.statusCode() == 200 && isHtml(info.headers())
+                ? new BodyCollector(bufferPool, config.getMaxBodyBytes()) : BodySubscribers.replacing(null);
+        return exchange(request, htmlBody).handle((response, error) -> {
+            if (error != null) {
+                logger.error("Error fetching URL: " + urlString + " - " + rootMessage(error));
+                return retry(urlString, etag, lastModified, attempt, redirects,
+                             retryPolicy.isRetryable(error) ? retryPolicy.backoffMs(attempt) : -1);
+            }
+            
+            int responseCode = response.statusCode();
+            String location;
+            try {
+                location = redirectTarget(response);
+            } catch (IllegalArgumentException e) {
+                logger.error("Invalid redirect location " + header(response, "Location") + " for URL: " + urlString);
+                return CompletableFuture.completedFuture((FetchResult) null);
+            }
+            if (location != null) {
+                if (redirects >= config.getMaxRedirects()) {
+                    logger.error("Too many redirects for URL: " + urlString);
+                    return CompletableFuture.completedFuture((FetchResult) null);
+                }
+                redirectCache.record(urlString, location, responseCode);
+                if (!isRedirectAllowed(location)) {
+                    logger.debug("Not following redirect to: " + location);
+                    return CompletableFuture.completedFuture(new FetchResult(responseCode, null, null, null,
+                                                                             location, 0, 0));
                 }
+                // Validators come from the page at the end of the redirects, as
+                // with a cached redirect; the hop shares the retry budget
+                logger.debug("Redirecting to: " + location);
+                return attempt(location, etag, lastModified, attempt, redirects + 1);
+            }
+            
+            if (responseCode == 304) {
+                logger.debug("Not modified: " + urlString);
+                return CompletableFuture.completedFuture(new FetchResult(responseCode, null, etag, lastModified,
+                                                                         response.uri().toString(), 0, 0));
             }
             
-            // Retry logic
-            retries++;
-            if (retries < config.getMaxRetries()) {
-                int waitTime = retries * 1000; // Exponential backoff
-                logger.debug("Retrying (" + retries + "/" + config.getMaxRetries() + ") in " + waitTime + "ms: " + urlString);
+            if (responseCode == 200) {
+                if (response.body() == null) {
+                    logger.debug("Skipping non-HTML content: "
+                                 + response.headers().firstValue("Content-Type").orElse(null));
+                    return CompletableFuture.completedFuture((FetchResult) null);
+                }
                 try {
-                    Thread.sleep(waitTime);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
+                    long bytesRead = response.body().length();
+                    ChunkedBody body = bodyDecoder.decompress(response.body(), header(response, "Content-Encoding"));
+                    long bodyBytes = body.length();
+                    CharSequence content;
+                    try {
+                        content = bodyDecoder.decode(body,
+                                bodyDecoder.detectCharset(header(response, "Content-Type"), body));
+                        if (body.isTruncated()) {
+                            stats.recordTruncated();
+                            logger.debug("Body exceeds " + config.getMaxBodyBytes() + " bytes, truncated: " + urlString);
+                        }
+                    } finally {
+                        body.release();
+                    }
+                    logger.debug("Successfully fetched: " + urlString);
+                    return CompletableFuture.completedFuture(new FetchResult(responseCode, content,
+                            header(response, "ETag"), header(response, "Last-Modified"),
+                            response.uri().toString(), bytesRead, bodyBytes));
+                } catch (IOException e) {
+                    logger.error("Error fetching URL: " + urlString + " - " + e.getMessage());
+                    return retry(urlString, etag, lastModified, attempt, redirects, retryPolicy.backoffMs(attempt));
                 }
             }
+            
+            logger.error("HTTP Error: " + responseCode + " for URL: " + urlString);
+            if (!retryPolicy.isRetryable(responseCode)) {
+                return CompletableFuture.completedFuture((FetchResult) null);
+            }
+            long retryAfterMs = RetryPolicy.parseRetryAfter(header(response, "Retry-After"), System.currentTimeMillis());
+            if (retryAfterMs > 0 && circuitBreaker != null) {
+                // The server asked the whole host to slow down, not just this URL
+                circuitBreaker.openFor(host, retryAfterMs);
+            }
+            return retry(urlString, etag, lastModified, attempt, redirects,
+                         retryPolicy.retryDelayMs(attempt, retryAfterMs));
+        }).thenCompose(result -> result);
+    }
+    
+    /**
+     * Schedule the next attempt at a page after a delay, without blocking a thread
+     * 
+     * @param urlString The URL to fetch
+     * @param etag ETag from the previous response, or null
+     * @param lastModified Last-Modified from the previous response, or null
+     * @param attempt The attempt that just failed
+     * @param redirects Number of redirects followed to reach the URL, which still count on the retry
+     * @param delayMs The delay before the next attempt, or -1 to give up
+     * @return A future for the fetch result, or for null if no attempts are left
+     */
+    private CompletableFuture<FetchResult> retry(String urlString, String etag, String lastModified,
+                                                 int attempt, int redirects, long delayMs) {
+        // An archive gives the same answer every time
+        if (delayMs < 0 || isReplaying()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!retryPolicy.canRetry(attempt)) {
+            logger.error("Failed to fetch URL after " + config.getMaxRetries() + " retries: " + urlString);
+            return CompletableFuture.completedFuture(null);
+        }
+        stats.recordRetry();
+        logger.debug("Retrying (" + attempt + "/" + config.getMaxRetries() + ") in " + delayMs + "ms: " + urlString);
+        return CompletableFuture.runAsync(() -> { },
+                        CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS))
+                .thenCompose(ignored -> attempt(urlString, etag, lastModified, attempt + 1, redirects));
+    }
+    
+    /**
+     * Send a request, or answer it from the archive in replay mode
+     * 
+     * @param request The request
+     * @param bodyHandler Handler for the response body
+     * @return A future for the response
+     */
+    private <T> CompletableFuture<HttpResponse<T>> exchange(HttpRequest request, BodyHandler<T> bodyHandler) {
+        return isReplaying() ? replay(request, bodyHandler) : send(request, bodyHandler);
+    }
+    
+    /**
+     * Answer a request with its archived response, feeding the archived body to
+     * the body handler as if it had arrived over the network
+     * 
+     * @param request The request
+     * @param bodyHandler Handler for the response body
+     * @return A future for the response, failed if the URL is not in the archive
+     */
+    private <T> CompletableFuture<HttpResponse<T>> replay(HttpRequest request, BodyHandler<T> bodyHandler) {
+        long startTime = System.nanoTime();
+        ArchivedResponse archived = archive.read(request.uri().toString());
+        if (archived == null) {
+            stats.record(System.nanoTime() - startTime, 0, true);
+            return CompletableFuture.failedFuture(new IOException("Not in archive"));
+        }
+        HttpHeaders headers = HttpHeaders.of(archived.headers(), (name, value) -> true);
+        BodySubscriber<T> subscriber = bodyHandler.apply(
+                new ReplayedInfo(archived.statusCode(), headers, HttpClient.Version.HTTP_1_1));
+        subscriber.onSubscribe(new ReplaySubscription<>(subscriber, archived.body()));
+        return subscriber.getBody().toCompletableFuture().thenApply(body -> {
+            long bytes = body instanceof ChunkedBody chunked ? chunked.length() : 0;
+            stats.record(System.nanoTime() - startTime, bytes, false);
+            if (archived.truncated() && body instanceof ChunkedBody chunked) {
+                chunked.markTruncated();
+            }
+            return new ReplayedResponse<>(archived.statusCode(), request, headers, body);
+        });
+    }
+    
+    /**
+     * Write a response to the archive, if one is attached for writing
+     * 
+     * @param response The response, with its body still unread by the caller
+     */
+    private void archive(HttpResponse<?> response) {
+        ResponseArchive target = archive;
+        if (target == null || isReplaying()) {
+            return;
+        }
+        ChunkedBody body = response.body() instanceof ChunkedBody chunked ? chunked : null;
+        target.write(response.request().uri().toString(), response.statusCode(), response.headers().map(),
+                     body != null ? body.inputStream() : null, body != null && body.isTruncated());
+    }
+    
+    private boolean isReplaying() {
+        return archive != null && config.isReplayFromArchive();
+    }
+    
+    /**
+     * Send a request once its host is resolved and a connection permit for it
+     * is available, recording the DNS wait and the latency
+     * 
+     * @param request The request
+     * @param bodyHandler Handler for the response body
+     * @return A future for the response
+     */
+    private <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, BodyHandler<T> bodyHandler) {
+        String host = hostOf(request.uri());
+        long dnsStart = System.nanoTime();
+        return resolve(host).handle((addresses, dnsError) -> {
+            long dnsNanos = System.nanoTime() - dnsStart;
+            stats.recordDns(dnsNanos);
+            if (dnsError != null) {
+                stats.record(dnsNanos, 0, true);
+                return CompletableFuture.<HttpResponse<T>>failedFuture(dnsError);
+            }
+            return connectionLimiter.acquire(host).thenCompose(ignored -> {
+                long startTime = System.nanoTime();
+                // Time to the response headers, which unlike the time to the end of
+                // the body does not grow with the size of the page
+                AtomicLong headersAt = new AtomicLong();
+                BodyHandler<T> timedHandler = info -> {
+                    headersAt.set(System.nanoTime());
+                    return bodyHandler.apply(info);
+                };
+                return client.sendAsync(request, timedHandler).whenComplete((response, error) -> {
+                    long endTime = System.nanoTime();
+                    connectionLimiter.release(host);
+                    recordOutcome(host, response != null ? response.statusCode() : -1,
+                                  (headersAt.get() != 0 ? headersAt.get() : endTime) - startTime);
+                    long bytes = response != null && response.body() instanceof ChunkedBody body ? body.length() : 0;
+                    stats.record(endTime - startTime, bytes, error != null);
+                    if (response != null) {
+                        archive(response);
+                    }
+                });
+            });
+        }).thenCompose(response -> response);
+    }
+    
+    /**
+     * Resolve a host through the DNS cache, so the client's own lookup is a cache hit
+     * 
+     * @param host The host name
+     * @return A future that completes once the host is resolved
+     */
+    private CompletableFuture<?> resolve(String host) {
+        if (dnsCache == null || host.isEmpty() || isIpLiteral(host)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return dnsCache.resolveAsync(host);
+    }
+    
+    private HttpRequest.Builder newRequest(String urlString) {
+        return HttpRequest.newBuilder(URI.create(urlString))
+                .timeout(Duration.ofMillis(READ_TIMEOUT))
+                .header("User-Agent", USER_AGENT)
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET();
+    }
+    
+    private static boolean isHtml(HttpHeaders headers) {
+        String contentType = headers.firstValue("Content-Type").orElse(null);
+        return contentType != null && contentType.contains("text/html");
+    }
+    
+    /**
+     * Feed the outcome of a request to the host's circuit breaker and rate controller
+     * 
+     * @param host The host name
+     * @param statusCode The response status, or -1 if the request failed without one
+     * @param latencyNanos Time from sending the request to receiving the response headers
+     */
+    private void recordOutcome(String host, int statusCode, long latencyNanos) {
+        if (rateController != null) {
+            rateController.recordResponse(host, statusCode, latencyNanos);
+        }
+        if (circuitBreaker == null) {
+            return;
+        }
+        if (statusCode < 0 || statusCode >= 500 || statusCode == 429) {
+            circuitBreaker.recordFailure(host);
+        } else {
+            circuitBreaker.recordSuccess(host);
+        }
+    }
+    
+    private boolean isParked(String urlString) {
+        return getHostBlockedUntil(urlString) > 0;
+    }
+    
+    /**
+     * Check a redirect target against the redirect filter
+     * 
+     * @param target The absolute redirect target
+     * @return true if the redirect should be followed
+     */
+    private boolean isRedirectAllowed(String target) {
+        Predicate<String> filter = redirectFilter;
+        return filter == null || filter.test(target);
+    }
+    
+    /**
+     * Get the absolute URL a redirect response points to
+     * 
+     * @param response The response
+     * @return The redirect target, or null if the response is not a redirect with a Location
+     * @throws IllegalArgumentException If the Location is not a valid URI
+     */
+    private static String redirectTarget(HttpResponse<?> response) {
+        int status = response.statusCode();
+        if (status != 301 && status != 302 && status != 303 && status != 307 && status != 308) {
+            return null;
+        }
+        String location = header(response, "Location");
+        return location != null ? response.uri().resolve(location.trim()).toString() : null;
+    }
+    
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Nothing left to read from it
+        }
+    }
+    
+    private static boolean isIpLiteral(String host) {
+        // Top-level domains are never numeric
+        char last = host.charAt(host.length() - 1);
+        return host.indexOf(':') >= 0 || host.startsWith("[") || (last >= '0' && last <= '9');
+    }
+    
+    private static String header(HttpResponse<?> response, String name) {
+        return response.headers().firstValue(name).orElse(null);
+    }
+    
+    private static String hostOf(URI uri) {
+        String host = uri.getHost();
+        return host != null ? host.toLowerCase() : "";
+    }
+    
+    private static String rootMessage(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof UncheckedIOException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+    }
+    
+    private record ReplayedInfo(int statusCode, HttpHeaders headers, HttpClient.Version version)
+            implements ResponseInfo {
+    }
+    
+    /**
+     * A response answered from the archive
+     */
+    private record ReplayedResponse<T>(int statusCode, HttpRequest request, HttpHeaders headers, T body)
+            implements HttpResponse<T> {
+        @Override
+        public Optional<HttpResponse<T>> previousResponse() {
+            return Optional.empty();
+        }
+        
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+        
+        @Override
+        public URI uri() {
+            return request.uri();
+        }
+        
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_1_1;
+        }
+    }
+    
+    /**
+     * Hands an archived body to a body subscriber as a single buffer, then completes
+     */
+    private static class ReplaySubscription<T> implements Flow.Subscription {
+        private final BodySubscriber<T> subscriber;
+        private final byte[] body;
+        private boolean requested;
+        private boolean cancelled;
+        
+        ReplaySubscription(BodySubscriber<T> subscriber, byte[] body) {
+            this.subscriber = subscriber;
+            this.body = body;
+        }
+        
+        @Override
+        public void request(long n) {
+            // The subscriber may request more from within onNext
+            if (requested || cancelled || n <= 0) {
+                return;
+            }
+            requested = true;
+            subscriber.onNext(List.of(ByteBuffer.wrap(body)));
+            if (!cancelled) {
+                subscriber.onComplete();
+            }
         }
         
-        logger.error("Failed to fetch URL after " + config.getMaxRetries() + " retries: " + urlString);
-        return null;
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
     }
 }
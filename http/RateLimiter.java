@@ -7,7 +7,7 @@ import util.Logger;
  */
 public class RateLimiter {
     private long lastRequestTime;
-    private final long delayMs;
+    private volatile long delayMs;
     private final Logger logger;
     
     /**
@@ -49,6 +49,7 @@ public class RateLimiter {
     public void setDelay(long newDelayMs) {
         if (newDelayMs > 0) {
             logger.info("Changing rate limit delay from " + delayMs + "ms to " + newDelayMs + "ms");
+            delayMs = newDelayMs;
         }
     }
 }
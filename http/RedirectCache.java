@@ -0,0 +1,200 @@
+package http;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import util.Logger;
+
+/**
+ * Map from redirecting URLs to their targets, consulted before a fetch so a
+ * known redirect costs no request.
+ * <p>
+ * Permanent redirects (301, 308) are kept for good and, once a file is
+ * attached with {@link #open(Path)}, appended to it so later crawls know them
+ * too. Temporary redirects (302, 303, 307) are kept in memory for a TTL only.
+ */
+public class RedirectCache implements AutoCloseable {
+    private static final int MAX_ENTRIES = 1_000_000;
+    // Chains longer than this are treated as loops
+    private static final int MAX_HOPS = 10;
+    private static final long PERMANENT = Long.MAX_VALUE;
+    
+    private final long temporaryTtlMs;
+    private final Map<String, Entry> entries;
+    private final LongAdder hits;
+    private final Logger logger;
+    private Path path;
+    private BufferedWriter writer;
+    
+    /**
+     * Constructor for RedirectCache
+     * 
+     * @param temporaryTtlMs How long temporary redirects are remembered, or 0 to not remember them
+     */
+    public RedirectCache(long temporaryTtlMs) {
+        this.temporaryTtlMs = temporaryTtlMs;
+        this.entries = new ConcurrentHashMap<>();
+        this.hits = new LongAdder();
+        this.logger = new Logger(RedirectCache.class.getSimpleName());
+    }
+    
+    /**
+     * Load the permanent redirects stored in a file and append new ones to it
+     * from now on. A file mostly made of superseded lines is rewritten first.
+     * 
+     * @param file The file, created if it does not exist
+     * @throws IOException If the file cannot be read or opened for writing
+     */
+    public synchronized void open(Path file) throws IOException {
+        long lines = 0;
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0 && entries.size() < MAX_ENTRIES) {
+                        entries.put(line.substring(0, tab), new Entry(line.substring(tab + 1), PERMANENT));
+                        lines++;
+                    }
+                }
+            }
+        }
+        if (lines > 2L * entries.size()) {
+            compact(file);
+        }
+        this.path = file;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        logger.info("Loaded " + entries.size() + " permanent redirects from " + file);
+    }
+    
+    /**
+     * Follow the known redirects starting at a URL
+     * 
+     * @param url The URL
+     * @return The URL the chain of known redirects ends at, or null if no redirect from the URL is known
+     */
+    public String resolve(String url) {
+        String current = url;
+        long now = System.currentTimeMillis();
+        for (int hop = 0; hop < MAX_HOPS; hop++) {
+            Entry entry = entries.get(current);
+            if (entry == null || entry.expiresAt <= now) {
+                break;
+            }
+            current = entry.target;
+            if (current.equals(url)) {
+                // A loop back to the start; let the fetch run into it and fail
+                return null;
+            }
+        }
+        if (current.equals(url)) {
+            return null;
+        }
+        hits.increment();
+        return current;
+    }
+    
+    /**
+     * Remember a redirect
+     * 
+     * @param source The URL that was requested
+     * @param target The absolute URL it redirected to
+     * @param statusCode The redirect status; anything but 301, 302, 303, 307 and 308 is ignored
+     */
+    public void record(String source, String target, int statusCode) {
+        boolean permanent = statusCode == 301 || statusCode == 308;
+        if ((!permanent && statusCode != 302 && statusCode != 303 && statusCode != 307)
+                || (!permanent && temporaryTtlMs <= 0) || source.equals(target)) {
+            return;
+        }
+        if (entries.size() >= MAX_ENTRIES && !entries.containsKey(source)) {
+            return;
+        }
+        Entry previous = entries.put(source, new Entry(target,
+                permanent ? PERMANENT : System.currentTimeMillis() + temporaryTtlMs));
+        if (permanent && (previous == null || previous.expiresAt != PERMANENT || !previous.target.equals(target))) {
+            append(source, target);
+        }
+    }
+    
+    /**
+     * Get the number of lookups that found a known redirect
+     * 
+     * @return The hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+    
+    /**
+     * Get the number of redirects remembered, including expired temporary ones
+     * 
+     * @return The entry count
+     */
+    public int size() {
+        return entries.size();
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+    
+    private synchronized void append(String source, String target) {
+        // Lines are tab-separated, so a URL with a raw tab or line break is not stored
+        if (writer == null || !isStorable(source) || !isStorable(target)) {
+            return;
+        }
+        try {
+            writer.write(source);
+            writer.write('\t');
+            writer.write(target);
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            logger.error("Error writing redirect cache " + path + " - " + e.getMessage());
+        }
+    }
+    
+    private static boolean isStorable(String url) {
+        return url.indexOf('\t') < 0 && url.indexOf('\n') < 0 && url.indexOf('\r') < 0;
+    }
+    
+    /**
+     * Rewrite the file with one line per permanent redirect
+     * 
+     * @param file The file
+     * @throws IOException If the file cannot be written
+     */
+    private void compact(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (entry.getValue().expiresAt != PERMANENT) {
+                    continue;
+                }
+                out.write(entry.getKey());
+                out.write('\t');
+                out.write(entry.getValue().target);
+                out.newLine();
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private record Entry(String target, long expiresAt) {
+    }
+}
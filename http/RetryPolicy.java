@@ -0,0 +1,127 @@
+package http;
+
+import java.net.UnknownHostException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.net.ssl.SSLHandshakeException;
+
+/**
+ * Decides whether and when a failed request is retried.
+ * <p>
+ * Only failures that may go away are retried: network errors, 408 Request
+ * Timeout, 425 Too Early, 429 Too Many Requests and the 5xx statuses of
+ * overloaded or unreachable servers. Other 4xx statuses, unknown hosts and
+ * certificate errors fail at once. The delay grows exponentially from the
+ * base delay up to the maximum, with half of it randomized so that requests
+ * that failed together do not retry together, and a Retry-After header
+ * lengthens it.
+ */
+public class RetryPolicy {
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    
+    /**
+     * Constructor for RetryPolicy
+     * 
+     * @param maxAttempts Maximum number of attempts per request, including the first
+     * @param baseDelayMs Delay before the first retry, before jitter
+     * @param maxDelayMs Upper bound on any delay; a longer Retry-After gives up instead
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+    
+    /**
+     * Check whether another attempt is allowed
+     * 
+     * @param attempt The attempt that just failed, starting at 1
+     * @return true if the request may be retried
+     */
+    public boolean canRetry(int attempt) {
+        return attempt < maxAttempts;
+    }
+    
+    /**
+     * Check whether a response status is worth retrying
+     * 
+     * @param statusCode The HTTP status code
+     * @return true for statuses of temporary failures
+     */
+    public boolean isRetryable(int statusCode) {
+        return switch (statusCode) {
+            case 408, 425, 429, 500, 502, 503, 504 -> true;
+            default -> false;
+        };
+    }
+    
+    /**
+     * Check whether a request error is worth retrying
+     * 
+     * @param error The error the request failed with
+     * @return false for errors that a retry cannot fix
+     */
+    public boolean isRetryable(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return !(error instanceof UnknownHostException || error instanceof SSLHandshakeException
+                 || error instanceof IllegalArgumentException);
+    }
+    
+    /**
+     * Get the delay before retrying after an attempt
+     * 
+     * @param attempt The attempt that just failed, starting at 1
+     * @return The delay in milliseconds
+     */
+    public long backoffMs(int attempt) {
+        long delay = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt - 1, 30));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+    
+    /**
+     * Get the delay before retrying after a response that asked for a retry
+     * 
+     * @param attempt The attempt that just failed, starting at 1
+     * @param retryAfterMs The delay requested by a Retry-After header, or -1 if there was none
+     * @return The delay in milliseconds, or -1 if the server asked to wait longer than the maximum delay
+     */
+    public long retryDelayMs(int attempt, long retryAfterMs) {
+        if (retryAfterMs > maxDelayMs) {
+            return -1;
+        }
+        return Math.max(backoffMs(attempt), retryAfterMs);
+    }
+    
+    /**
+     * Parse a Retry-After header, given either in seconds or as an HTTP date
+     * 
+     * @param value The header value, or null
+     * @param nowMs The current time in milliseconds since the epoch
+     * @return The requested delay in milliseconds, or -1 if the header is missing or invalid
+     */
+    public static long parseRetryAfter(String value, long nowMs) {
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        String trimmed = value.trim();
+        try {
+            return Math.max(0, Math.min(Long.parseLong(trimmed), Long.MAX_VALUE / 1000) * 1000);
+        } catch (NumberFormatException e) {
+            // Not delta-seconds, try a date
+        }
+        try {
+            long at = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0, at - nowMs);
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
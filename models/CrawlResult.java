@@ -1,31 +1,49 @@
 package models;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
+import storage.VisitedUrlLog;
+
 /**
  * Model class representing the results of a crawl
  */
 public class CrawlResult {
-    private final Set<String> visitedUrls;
+    private final VisitedUrlLog visitedUrls;
     private final Set<WebPage> relevantPages;
+    private final Map<String, String> duplicatePages;
     
     /**
      * Constructor for CrawlResult
      * 
-     * @param visitedUrls Set of all URLs visited during the crawl
+     * @param visitedUrls On-disk log of all URLs visited during the crawl
      * @param relevantPages Set of relevant web pages found during the crawl
      */
-    public CrawlResult(Set<String> visitedUrls, Set<WebPage> relevantPages) {
+    public CrawlResult(VisitedUrlLog visitedUrls, Set<WebPage> relevantPages) {
+        this(visitedUrls, relevantPages, Collections.emptyMap());
+    }
+    
+    /**
+     * Constructor for CrawlResult
+     * 
+     * @param visitedUrls On-disk log of all URLs visited during the crawl
+     * @param relevantPages Set of relevant web pages found during the crawl
+     * @param duplicatePages Near-duplicate page URLs mapped to the URL of the page they duplicate
+     */
+    public CrawlResult(VisitedUrlLog visitedUrls, Set<WebPage> relevantPages, Map<String, String> duplicatePages) {
         this.visitedUrls = visitedUrls;
         this.relevantPages = relevantPages;
+        this.duplicatePages = duplicatePages;
     }
     
     /**
-     * Get the set of all URLs visited during the crawl
+     * Get the log of all URLs visited during the crawl.
+     * The URLs are streamed from disk rather than held in memory.
      * 
-     * @return Set of visited URLs
+     * @return Log of visited URLs
      */
-    public Set<String> getVisitedUrls() {
+    public VisitedUrlLog getVisitedUrls() {
         return visitedUrls;
     }
     
@@ -38,12 +56,21 @@ public class CrawlResult {
         return relevantPages;
     }
     
+    /**
+     * Get the pages skipped as near-duplicates of earlier pages
+     * 
+     * @return Map from each duplicate page URL to the URL of the page it duplicates
+     */
+    public Map<String, String> getDuplicatePages() {
+        return duplicatePages;
+    }
+    
     /**
      * Get the total number of URLs visited
      * 
      * @return Count of visited URLs
      */
-    public int getTotalVisited() {
+    public long getTotalVisited() {
         return visitedUrls.size();
     }
     
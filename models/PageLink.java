@@ -0,0 +1,50 @@
+package models;
+
+/**
+ * Model class representing a link discovered on a page, with the text around it
+ */
+public class PageLink {
+    private final String url;
+    private final String anchorText;
+    private final String context;
+    
+    /**
+     * Constructor for PageLink
+     * 
+     * @param url The absolute URL of the link target
+     * @param anchorText The visible text of the link
+     * @param context Text surrounding the link on the page
+     */
+    public PageLink(String url, String anchorText, String context) {
+        this.url = url;
+        this.anchorText = anchorText;
+        this.context = context;
+    }
+    
+    /**
+     * Get the absolute URL of the link target
+     * 
+     * @return The URL
+     */
+    public String getUrl() {
+        return url;
+    }
+    
+    /**
+     * Get the visible text of the link
+     * 
+     * @return The anchor text, or an empty string
+     */
+    public String getAnchorText() {
+        return anchorText;
+    }
+    
+    /**
+     * Get the text surrounding the link on the page
+     * 
+     * @return The surrounding text, or an empty string
+     */
+    public String getContext() {
+        return context;
+    }
+}
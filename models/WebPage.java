@@ -8,6 +8,7 @@ import java.util.Map;
  */
 public class WebPage {
     private final String url;
+    private final String finalUrl;
     private final String title;
     private final String content;
     private String aiAnalysis;
@@ -21,7 +22,20 @@ public class WebPage {
      * @param content The textual content of the web page
      */
     public WebPage(String url, String title, String content) {
+        this(url, url, title, content);
+    }
+    
+    /**
+     * Constructor for WebPage fetched through redirects
+     * 
+     * @param url The URL of the web page
+     * @param finalUrl The URL the page was served from after redirects
+     * @param title The title of the web page
+     * @param content The textual content of the web page
+     */
+    public WebPage(String url, String finalUrl, String title, String content) {
         this.url = url;
+        this.finalUrl = finalUrl != null ? finalUrl : url;
         this.title = title;
         this.content = content;
         this.aiAnalysis = null;
@@ -37,6 +51,15 @@ public class WebPage {
         return url;
     }
     
+    /**
+     * Get the URL the web page was served from after redirects
+     * 
+     * @return The final URL, equal to the URL if there were no redirects
+     */
+    public String getFinalUrl() {
+        return finalUrl;
+    }
+    
     /**
      * Get the title of the web page
      * 
@@ -1,22 +1,16 @@
 package parser;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import util.Logger;
 
 /**
- * Extracts and processes textual content from HTML
+ * Extracts and processes textual content from HTML, built on {@link HtmlTokenizer}
  */
 public class ContentExtractor {
-    private static final Pattern SCRIPT_PATTERN = Pattern.compile("<script[^>]*>.*?</script>", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-    private static final Pattern STYLE_PATTERN = Pattern.compile("<style[^>]*>.*?</style>", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-    private static final Pattern HTML_TAG_PATTERN = Pattern.compile("<[^>]+>");
-    private static final Pattern MULTIPLE_SPACES_PATTERN = Pattern.compile("\\s+");
-    
+    private final HtmlTokenizer tokenizer;
     private final Logger logger;
     
     public ContentExtractor() {
+        this.tokenizer = new HtmlTokenizer();
         this.logger = new Logger(ContentExtractor.class.getSimpleName());
     }
     
@@ -26,51 +20,15 @@ public class ContentExtractor {
      * @param html The HTML content to process
      * @return Cleaned textual content
      */
-    public String extractText(String html) {
+    public String extractText(CharSequence html) {
         if (html == null || html.isEmpty()) {
             return "";
         }
         
         try {
-            // Remove script tags and their content
-            String result = SCRIPT_PATTERN.matcher(html).replaceAll("");
-            
-            // Remove style tags and their content
-            result = STYLE_PATTERN.matcher(result).replaceAll("");
-            
-            // Extract paragraphs with better context (before removing all tags)
-            StringBuilder paragraphs = new StringBuilder();
-            Pattern paragraphPattern = Pattern.compile("<p[^>]*>(.*?)</p>", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-            Matcher paragraphMatcher = paragraphPattern.matcher(result);
-            
-            while (paragraphMatcher.find()) {
-                String paragraph = paragraphMatcher.group(1).trim();
-                // Remove inner tags
-                paragraph = HTML_TAG_PATTERN.matcher(paragraph).replaceAll(" ");
-                paragraphs.append(paragraph).append("\n\n");
-            }
-            
-            // If no paragraphs found, use all text
-            if (paragraphs.length() == 0) {
-                // Remove all HTML tags
-                result = HTML_TAG_PATTERN.matcher(result).replaceAll(" ");
-                
-                // Replace multiple spaces with a single space
-                result = MULTIPLE_SPACES_PATTERN.matcher(result).replaceAll(" ");
-                
-                // Decode HTML entities
-                result = decodeHtmlEntities(result);
-                
-                return result.trim();
-            } else {
-                // Decode HTML entities
-                String text = decodeHtmlEntities(paragraphs.toString());
-                
-                // Replace multiple spaces with a single space
-                text = MULTIPLE_SPACES_PATTERN.matcher(text).replaceAll(" ");
-                
-                return text.trim();
-            }
+            TextCollector collector = newTextCollector();
+            tokenizer.tokenize(html, collector);
+            return collector.getText();
         } catch (Exception e) {
             logger.error("Error extracting text: " + e.getMessage());
             return "";
@@ -78,43 +36,107 @@ public class ContentExtractor {
     }
     
     /**
-     * Basic HTML entity decoder
+     * Extracts meta description from HTML
      * 
-     * @param html The HTML string with entities
-     * @return Decoded string
+     * @param html The HTML content
+     * @return The meta description or empty string if not found
      */
-    private String decodeHtmlEntities(String html) {
-        return html.replaceAll("&amp;", "&")
-                   .replaceAll("&lt;", "<")
-                   .replaceAll("&gt;", ">")
-                   .replaceAll("&quot;", "\"")
-                   .replaceAll("&apos;", "'")
-                   .replaceAll("&#39;", "'")
-                   .replaceAll("&nbsp;", " ");
+    public String extractMetaDescription(CharSequence html) {
+        TextCollector collector = newTextCollector();
+        tokenizer.tokenize(html, collector);
+        return collector.getMetaDescription();
     }
     
     /**
-     * Extracts meta description from HTML
+     * Create a listener collecting the text of a page, so it can be extracted
+     * in the same pass over the HTML as its links
      * 
-     * @param html The HTML content
-     * @return The meta description or empty string if not found
+     * @return The collector, to be passed to {@link HtmlTokenizer#tokenize}
+     */
+    public TextCollector newTextCollector() {
+        return new TextCollector();
+    }
+    
+    /**
+     * Listener collecting the title, the meta description and the visible text
+     * of a page. The text is that of the paragraphs if the page has any with
+     * text in them, since they hold the content rather than the navigation;
+     * otherwise it is all visible text.
      */
-    public String extractMetaDescription(String html) {
-        Pattern pattern = Pattern.compile("<meta\\s+name=[\"']description[\"']\\s+content=[\"'](.*?)[\"']", 
-                                         Pattern.CASE_INSENSITIVE);
-        Matcher matcher = pattern.matcher(html);
-        if (matcher.find()) {
-            return matcher.group(1);
+    public static class TextCollector implements HtmlTokenizer.Listener {
+        private final StringBuilder paragraphs;
+        private final StringBuilder allText;
+        private boolean inParagraph;
+        private String title;
+        private String metaDescription;
+        
+        private TextCollector() {
+            this.paragraphs = new StringBuilder();
+            this.allText = new StringBuilder();
+            this.title = "";
+            this.metaDescription = "";
+        }
+        
+        @Override
+        public void onTitle(String title) {
+            this.title = title;
+        }
+        
+        @Override
+        public void onMetaDescription(String description) {
+            this.metaDescription = description;
+        }
+        
+        @Override
+        public void onText(CharSequence text) {
+            append(allText, text);
+            if (inParagraph) {
+                append(paragraphs, text);
+            }
+        }
+        
+        @Override
+        public void onParagraphStart() {
+            inParagraph = true;
         }
         
-        // Try alternate meta description format
-        pattern = Pattern.compile("<meta\\s+content=[\"'](.*?)[\"']\\s+name=[\"']description[\"']", 
-                                 Pattern.CASE_INSENSITIVE);
-        matcher = pattern.matcher(html);
-        if (matcher.find()) {
-            return matcher.group(1);
+        @Override
+        public void onParagraphEnd() {
+            inParagraph = false;
         }
         
-        return "";
+        /**
+         * Get the title of the page
+         * 
+         * @return The title, or an empty string if the page has none
+         */
+        public String getTitle() {
+            return title;
+        }
+        
+        /**
+         * Get the meta description of the page
+         * 
+         * @return The meta description, or an empty string if the page has none
+         */
+        public String getMetaDescription() {
+            return metaDescription;
+        }
+        
+        /**
+         * Get the text of the page, with whitespace collapsed
+         * 
+         * @return The text of the paragraphs, or all visible text if there are none
+         */
+        public String getText() {
+            return (paragraphs.length() > 0 ? paragraphs : allText).toString();
+        }
+        
+        private static void append(StringBuilder target, CharSequence text) {
+            if (target.length() > 0) {
+                target.append(' ');
+            }
+            target.append(text);
+        }
     }
 }
@@ -1,25 +1,43 @@
 package parser;
 
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.HashSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+import models.PageLink;
 import util.Logger;
-import util.UrlUtils;
+import util.UrlCanonicalizer;
 
 /**
- * Custom HTML parser implementation using regex patterns
+ * Custom HTML parser extracting links and the title, built on {@link HtmlTokenizer}
  */
 public class HtmlParser {
-    private static final Pattern LINK_PATTERN = Pattern.compile("<a\\s+(?:[^>]*?\\s+)?href=[\"']([^\"']*)[\"']", Pattern.CASE_INSENSITIVE);
-    private static final Pattern TITLE_PATTERN = Pattern.compile("<title>(.*?)</title>", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    // Visible text taken from either side of a link as its context
+    private static final int CONTEXT_CHARS = 120;
+    // Bound on the anchor text kept, so an unclosed <a> does not take the rest of the page
+    private static final int MAX_ANCHOR_CHARS = 300;
     
+    private final HtmlTokenizer tokenizer;
+    private final UrlCanonicalizer canonicalizer;
     private final Logger logger;
     
     public HtmlParser() {
+        this(new UrlCanonicalizer());
+    }
+    
+    /**
+     * Constructor for HtmlParser
+     * 
+     * @param canonicalizer Resolves links and brings them into canonical form
+     */
+    public HtmlParser(UrlCanonicalizer canonicalizer) {
+        this.tokenizer = new HtmlTokenizer();
+        this.canonicalizer = canonicalizer;
         this.logger = new Logger(HtmlParser.class.getSimpleName());
     }
     
@@ -30,42 +48,182 @@ public class HtmlParser {
      * @param baseUrl The base URL for resolving relative URLs
      * @return A set of absolute URLs found in the HTML
      */
-    public Set<String> extractLinks(String html, String baseUrl) {
-        Set<String> links = new HashSet<>();
-        
-        Matcher matcher = LINK_PATTERN.matcher(html);
-        while (matcher.find()) {
-            String link = matcher.group(1);
-            
-            // Convert relative URLs to absolute URLs
-            try {
-                String absoluteUrl = UrlUtils.resolveUrl(baseUrl, link);
-                
-                // Only add HTTP or HTTPS URLs
-                if (absoluteUrl != null && (absoluteUrl.startsWith("http://") || absoluteUrl.startsWith("https://"))) {
-                    links.add(absoluteUrl);
-                }
-            } catch (URISyntaxException e) {
-                logger.debug("Invalid URL: " + link + " - " + e.getMessage());
-            }
+    public Set<String> extractLinks(CharSequence html, String baseUrl) {
+        LinkCollector collector = newLinkCollector(baseUrl);
+        tokenizer.tokenize(html, collector);
+        Set<String> links = new LinkedHashSet<>();
+        for (PageLink link : collector.getLinks()) {
+            links.add(link.getUrl());
         }
-        
-        logger.debug("Extracted " + links.size() + " links from " + baseUrl);
         return links;
     }
     
+    /**
+     * Extract all links from HTML content together with their anchor text and
+     * the text surrounding them. A URL linked more than once is returned once,
+     * with the anchor texts and contexts of every occurrence combined.
+     * 
+     * @param html The HTML content to parse
+     * @param baseUrl The base URL for resolving relative URLs
+     * @return The links found in the HTML, in document order
+     */
+    public List<PageLink> extractPageLinks(CharSequence html, String baseUrl) {
+        LinkCollector collector = newLinkCollector(baseUrl);
+        tokenizer.tokenize(html, collector);
+        return collector.getLinks();
+    }
+    
     /**
      * Extract the title from HTML content
      * 
      * @param html The HTML content to parse
      * @return The title of the HTML page or an empty string if not found
      */
-    public String extractTitle(String html) {
-        Matcher matcher = TITLE_PATTERN.matcher(html);
-        if (matcher.find()) {
-            String title = matcher.group(1).trim();
-            return title;
+    public String extractTitle(CharSequence html) {
+        String[] title = { "" };
+        tokenizer.tokenize(html, new HtmlTokenizer.Listener() {
+            @Override
+            public void onTitle(String text) {
+                title[0] = text;
+            }
+        });
+        return title[0];
+    }
+    
+    /**
+     * Create a listener collecting the links of a page, so they can be
+     * extracted in the same pass over the HTML as its text
+     * 
+     * @param baseUrl The base URL for resolving relative URLs
+     * @return The collector, to be passed to {@link HtmlTokenizer#tokenize}
+     */
+    public LinkCollector newLinkCollector(String baseUrl) {
+        return new LinkCollector(baseUrl);
+    }
+    
+    /**
+     * Listener collecting the links of a page with their anchor text and the
+     * visible text on either side of them
+     */
+    public class LinkCollector implements HtmlTokenizer.Listener {
+        private final String baseUrl;
+        private final String base;
+        private final Map<String, StringBuilder[]> linkTexts;
+        // Links that have ended and still take text after them as context
+        private final Deque<Occurrence> awaitingContext;
+        // The latest visible text, the context before the next link
+        private final StringBuilder recentText;
+        private Occurrence currentLink;
+        
+        private LinkCollector(String baseUrl) {
+            this.baseUrl = baseUrl;
+            this.base = canonicalizer.canonicalize(baseUrl);
+            this.linkTexts = new LinkedHashMap<>();
+            this.awaitingContext = new ArrayDeque<>();
+            this.recentText = new StringBuilder(4 * CONTEXT_CHARS);
+        }
+        
+        @Override
+        public void onLinkStart(String href) {
+            // Relative URLs become canonical absolute URLs; only http(s) links resolve
+            String absoluteUrl = canonicalizer.resolve(base, href);
+            if (absoluteUrl == null) {
+                return;
+            }
+            int contextStart = Math.max(0, recentText.length() - CONTEXT_CHARS);
+            currentLink = new Occurrence(absoluteUrl, recentText.substring(contextStart));
+            // The entry is made now so links keep the order they appear in
+            linkTexts.computeIfAbsent(absoluteUrl, url -> new StringBuilder[] { new StringBuilder(), new StringBuilder() });
+        }
+        
+        @Override
+        public void onLinkEnd() {
+            if (currentLink != null) {
+                awaitingContext.add(currentLink);
+                currentLink = null;
+            }
+        }
+        
+        @Override
+        public void onText(CharSequence text) {
+            if (currentLink != null) {
+                appendBounded(currentLink.anchorText, text, MAX_ANCHOR_CHARS);
+            }
+            for (Occurrence link : awaitingContext) {
+                appendBounded(link.contextAfter, text, CONTEXT_CHARS);
+            }
+            while (!awaitingContext.isEmpty() && awaitingContext.peek().contextAfter.length() >= CONTEXT_CHARS) {
+                record(awaitingContext.poll());
+            }
+            appendBounded(recentText, text, Integer.MAX_VALUE);
+            if (recentText.length() > 3 * CONTEXT_CHARS) {
+                recentText.delete(0, recentText.length() - CONTEXT_CHARS);
+            }
+        }
+        
+        @Override
+        public void onEnd() {
+            onLinkEnd();
+            while (!awaitingContext.isEmpty()) {
+                record(awaitingContext.poll());
+            }
+        }
+        
+        /**
+         * Get the links collected, each URL once with the anchor texts and
+         * contexts of all its occurrences combined
+         * 
+         * @return The links in document order
+         */
+        public List<PageLink> getLinks() {
+            onEnd();
+            List<PageLink> links = new ArrayList<>(linkTexts.size());
+            for (Map.Entry<String, StringBuilder[]> entry : linkTexts.entrySet()) {
+                StringBuilder[] texts = entry.getValue();
+                links.add(new PageLink(entry.getKey(), texts[0].toString().trim(), texts[1].toString().trim()));
+            }
+            logger.debug("Extracted " + links.size() + " links with context from " + baseUrl);
+            return links;
+        }
+        
+        private void record(Occurrence link) {
+            StringBuilder[] texts = linkTexts.get(link.url);
+            texts[0].append(link.anchorText).append(' ');
+            texts[1].append(link.contextBefore).append(' ').append(link.contextAfter).append(' ');
+        }
+    }
+    
+    /**
+     * Append a text run, separated by a space, without growing past a limit
+     * 
+     * @param target The text to append to
+     * @param text The text run
+     * @param limit Length the target is not extended beyond
+     */
+    private static void appendBounded(StringBuilder target, CharSequence text, int limit) {
+        if (target.length() >= limit) {
+            return;
+        }
+        if (target.length() > 0) {
+            target.append(' ');
+        }
+        target.append(text, 0, Math.min(text.length(), limit - target.length()));
+    }
+    
+    /**
+     * One occurrence of a link on a page
+     */
+    private static class Occurrence {
+        private final String url;
+        private final String contextBefore;
+        private final StringBuilder anchorText;
+        private final StringBuilder contextAfter;
+        
+        Occurrence(String url, String contextBefore) {
+            this.url = url;
+            this.contextBefore = contextBefore;
+            this.anchorText = new StringBuilder();
+            this.contextAfter = new StringBuilder();
         }
-        return "";
     }
 }
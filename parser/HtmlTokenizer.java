@@ -0,0 +1,538 @@
+package parser;
+
+/**
+ * Single-pass HTML tokenizer reporting the parts of a page the crawler uses.
+ * <p>
+ * The document is read once from start to end, so the time taken is linear in
+ * its length whatever the markup looks like. Listeners are told about links,
+ * the title, the meta description, runs of visible text and where paragraphs
+ * start and end. Script and style contents, comments and declarations are
+ * skipped. Entities are decoded and whitespace is collapsed, and every tag
+ * separates words. The only strings created are the ones handed to the
+ * listeners: link targets, the title and the meta description. Text runs are
+ * passed through a buffer reused for the whole document.
+ * <p>
+ * A tokenizer holds no state between documents and may be shared by threads.
+ */
+public class HtmlTokenizer {
+    // Longest entity name recognized, e.g. "hellip"
+    private static final int MAX_ENTITY_LENGTH = 8;
+    private static final String[] ENTITY_NAMES = {
+        "amp", "lt", "gt", "quot", "apos", "nbsp", "copy", "reg", "trade",
+        "hellip", "mdash", "ndash", "lsquo", "rsquo", "ldquo", "rdquo", "laquo", "raquo"
+    };
+    private static final char[] ENTITY_CHARS = {
+        '&', '<', '>', '"', '\'', '\u00A0', '\u00A9', '\u00AE', '\u2122',
+        '\u2026', '\u2014', '\u2013', '\u2018', '\u2019', '\u201C', '\u201D', '\u00AB', '\u00BB'
+    };
+    // Elements whose start or end closes an open paragraph
+    private static final String[] BLOCK_TAGS = {
+        "address", "article", "aside", "blockquote", "body", "dd", "details", "div", "dl", "dt",
+        "fieldset", "figcaption", "figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6",
+        "header", "hgroup", "hr", "html", "li", "main", "menu", "nav", "ol", "pre", "section",
+        "table", "td", "th", "tr", "ul"
+    };
+    
+    /**
+     * Receiver of the parts of a document, in document order. All methods do
+     * nothing by default.
+     */
+    public interface Listener {
+        /**
+         * A link starts: an {@code <a>} element with an href attribute
+         * 
+         * @param href The decoded href value, not yet resolved
+         */
+        default void onLinkStart(String href) { }
+        
+        /**
+         * The current link ends
+         */
+        default void onLinkEnd() { }
+        
+        /**
+         * The title of the document; only the first title element is reported
+         * 
+         * @param title The title with entities decoded and whitespace collapsed
+         */
+        default void onTitle(String title) { }
+        
+        /**
+         * The meta description of the document; only the first is reported
+         * 
+         * @param description The description with entities decoded and whitespace collapsed
+         */
+        default void onMetaDescription(String description) { }
+        
+        /**
+         * A run of visible text between two tags
+         * 
+         * @param text The text with entities decoded, whitespace collapsed and no
+         *             whitespace at either end; only valid during the call
+         */
+        default void onText(CharSequence text) { }
+        
+        /**
+         * A paragraph starts
+         */
+        default void onParagraphStart() { }
+        
+        /**
+         * The current paragraph ends
+         */
+        default void onParagraphEnd() { }
+        
+        /**
+         * The end of the document is reached; open links and paragraphs have been ended
+         */
+        default void onEnd() { }
+    }
+    
+    /**
+     * Read a document and report its parts
+     * 
+     * @param html The HTML content
+     * @param listeners The listeners to report to, each told about every part
+     */
+    public void tokenize(CharSequence html, Listener... listeners) {
+        new Scan(html, listeners).run();
+    }
+    
+    /**
+     * State of the tokenization of one document
+     */
+    private static class Scan {
+        private final CharSequence html;
+        private final int length;
+        private final Listener[] listeners;
+        private final StringBuilder buffer;
+        private boolean inLink;
+        private boolean inParagraph;
+        private boolean titleSeen;
+        private boolean descriptionSeen;
+        // Position after the entity last decoded
+        private int entityEnd;
+        
+        Scan(CharSequence html, Listener[] listeners) {
+            this.html = html;
+            this.length = html.length();
+            this.listeners = listeners;
+            this.buffer = new StringBuilder(256);
+        }
+        
+        void run() {
+            int textStart = 0;
+            int pos = 0;
+            while (pos < length) {
+                if (html.charAt(pos) == '<' && isMarkup(pos)) {
+                    emitText(textStart, pos);
+                    pos = markup(pos);
+                    textStart = pos;
+                } else {
+                    pos++;
+                }
+            }
+            emitText(textStart, length);
+            endLink();
+            endParagraph();
+            for (Listener listener : listeners) {
+                listener.onEnd();
+            }
+        }
+        
+        /**
+         * Check whether a '<' starts a tag, comment or declaration rather than being text
+         */
+        private boolean isMarkup(int pos) {
+            if (pos + 1 >= length) {
+                return false;
+            }
+            char next = html.charAt(pos + 1);
+            if (isLetter(next) || next == '!' || next == '?') {
+                return true;
+            }
+            return next == '/' && pos + 2 < length && isLetter(html.charAt(pos + 2));
+        }
+        
+        /**
+         * Handle the markup starting at a '<'
+         * 
+         * @return The position after the markup
+         */
+        private int markup(int pos) {
+            char next = html.charAt(pos + 1);
+            if (next == '!' && startsWith(pos + 2, "--")) {
+                int end = indexOf("-->", pos + 4);
+                return end < 0 ? length : end + 3;
+            }
+            if (next == '!' || next == '?') {
+                int end = indexOf('>', pos + 2);
+                return end < 0 ? length : end + 1;
+            }
+            if (next == '/') {
+                int nameStart = pos + 2;
+                int nameEnd = nameEnd(nameStart);
+                endTag(nameStart, nameEnd);
+                int end = indexOf('>', nameEnd);
+                return end < 0 ? length : end + 1;
+            }
+            return startTag(pos + 1);
+        }
+        
+        private void endTag(int nameStart, int nameEnd) {
+            if (is(nameStart, nameEnd, "a")) {
+                endLink();
+            } else if (is(nameStart, nameEnd, "p") || isBlock(nameStart, nameEnd)) {
+                endParagraph();
+            }
+        }
+        
+        /**
+         * Read a start tag and its attributes, and skip the contents of elements
+         * that hold no visible markup
+         * 
+         * @param nameStart Position of the tag name
+         * @return The position after the tag, or after the skipped contents
+         */
+        private int startTag(int nameStart) {
+            int nameEnd = nameEnd(nameStart);
+            boolean link = is(nameStart, nameEnd, "a");
+            boolean meta = !link && !descriptionSeen && is(nameStart, nameEnd, "meta");
+            String href = null;
+            boolean description = false;
+            int contentStart = -1;
+            int contentEnd = -1;
+            
+            int pos = nameEnd;
+            while (pos < length) {
+                char c = html.charAt(pos);
+                if (c == '>') {
+                    pos++;
+                    break;
+                }
+                if (isSpace(c) || c == '/') {
+                    pos++;
+                    continue;
+                }
+                int attrStart = pos;
+                while (pos < length && !isSpace(c = html.charAt(pos)) && c != '=' && c != '>' && c != '/') {
+                    pos++;
+                }
+                int attrEnd = pos;
+                pos = skipSpaces(pos);
+                if (pos >= length || html.charAt(pos) != '=') {
+                    continue;
+                }
+                pos = skipSpaces(pos + 1);
+                int valueStart;
+                int valueEnd;
+                char quote = pos < length ? html.charAt(pos) : 0;
+                if (quote == '"' || quote == '\'') {
+                    valueStart = pos + 1;
+                    valueEnd = indexOf(quote, valueStart);
+                    valueEnd = valueEnd < 0 ? length : valueEnd;
+                    pos = Math.min(length, valueEnd + 1);
+                } else {
+                    valueStart = pos;
+                    while (pos < length && !isSpace(c = html.charAt(pos)) && c != '>') {
+                        pos++;
+                    }
+                    valueEnd = pos;
+                }
+                if (link && href == null && is(attrStart, attrEnd, "href")) {
+                    href = decode(valueStart, valueEnd, false);
+                } else if (meta && is(attrStart, attrEnd, "name")) {
+                    description = is(trimStart(valueStart, valueEnd), trimEnd(valueStart, valueEnd), "description");
+                } else if (meta && is(attrStart, attrEnd, "content")) {
+                    contentStart = valueStart;
+                    contentEnd = valueEnd;
+                }
+            }
+            
+            if (link) {
+                endLink();
+                if (href != null) {
+                    inLink = true;
+                    for (Listener listener : listeners) {
+                        listener.onLinkStart(href);
+                    }
+                }
+            } else if (meta) {
+                if (description && contentStart >= 0) {
+                    descriptionSeen = true;
+                    String text = decode(contentStart, contentEnd, true);
+                    for (Listener listener : listeners) {
+                        listener.onMetaDescription(text);
+                    }
+                }
+            } else if (is(nameStart, nameEnd, "p")) {
+                endParagraph();
+                inParagraph = true;
+                for (Listener listener : listeners) {
+                    listener.onParagraphStart();
+                }
+            } else if (is(nameStart, nameEnd, "script") || is(nameStart, nameEnd, "style")) {
+                return findEndTag(pos, nameStart, nameEnd);
+            } else if (is(nameStart, nameEnd, "title")) {
+                int end = findEndTag(pos, nameStart, nameEnd);
+                if (!titleSeen) {
+                    titleSeen = true;
+                    String title = decode(pos, end, true);
+                    for (Listener listener : listeners) {
+                        listener.onTitle(title);
+                    }
+                }
+                return end;
+            } else if (isBlock(nameStart, nameEnd)) {
+                endParagraph();
+            }
+            return pos;
+        }
+        
+        private void endLink() {
+            if (inLink) {
+                inLink = false;
+                for (Listener listener : listeners) {
+                    listener.onLinkEnd();
+                }
+            }
+        }
+        
+        private void endParagraph() {
+            if (inParagraph) {
+                inParagraph = false;
+                for (Listener listener : listeners) {
+                    listener.onParagraphEnd();
+                }
+            }
+        }
+        
+        private void emitText(int start, int end) {
+            if (start >= end) {
+                return;
+            }
+            appendDecoded(start, end, true);
+            if (buffer.length() > 0) {
+                for (Listener listener : listeners) {
+                    listener.onText(buffer);
+                }
+            }
+        }
+        
+        private String decode(int start, int end, boolean collapse) {
+            appendDecoded(start, end, collapse);
+            return buffer.toString();
+        }
+        
+        /**
+         * Decode a range of the document into the buffer, replacing its contents
+         * 
+         * @param collapse Whether to collapse whitespace and trim both ends
+         */
+        private void appendDecoded(int start, int end, boolean collapse) {
+            buffer.setLength(0);
+            int pos = start;
+            while (pos < end) {
+                int codePoint = html.charAt(pos);
+                int next = pos + 1;
+                if (codePoint == '&') {
+                    int decoded = decodeEntity(pos, end);
+                    if (decoded >= 0) {
+                        codePoint = decoded;
+                        next = entityEnd;
+                    }
+                }
+                pos = next;
+                if (collapse && codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT && isSpace((char) codePoint)) {
+                    if (buffer.length() > 0 && buffer.charAt(buffer.length() - 1) != ' ') {
+                        buffer.append(' ');
+                    }
+                } else {
+                    buffer.appendCodePoint(codePoint);
+                }
+            }
+            if (collapse && buffer.length() > 0 && buffer.charAt(buffer.length() - 1) == ' ') {
+                buffer.setLength(buffer.length() - 1);
+            }
+        }
+        
+        /**
+         * Decode the entity at an '&' and note where it ends in {@link #entityEnd}
+         * 
+         * @return The code point of the entity, or -1 if there is no entity there
+         */
+        private int decodeEntity(int pos, int end) {
+            int p = pos + 1;
+            if (p < end && html.charAt(p) == '#') {
+                p++;
+                boolean hex = p < end && (html.charAt(p) == 'x' || html.charAt(p) == 'X');
+                if (hex) {
+                    p++;
+                }
+                int digitsStart = p;
+                int codePoint = 0;
+                while (p < end && p - digitsStart < 7) {
+                    int digit = Character.digit(html.charAt(p), hex ? 16 : 10);
+                    if (digit < 0) {
+                        break;
+                    }
+                    codePoint = codePoint * (hex ? 16 : 10) + digit;
+                    p++;
+                }
+                if (p == digitsStart) {
+                    return -1;
+                }
+                entityEnd = p < end && html.charAt(p) == ';' ? p + 1 : p;
+                if (codePoint == 0 || codePoint > Character.MAX_CODE_POINT
+                        || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+                    return '\uFFFD';
+                }
+                return codePoint;
+            }
+            int nameStart = p;
+            while (p < end && p - nameStart <= MAX_ENTITY_LENGTH && isLetterOrDigit(html.charAt(p))) {
+                p++;
+            }
+            if (p == nameStart || p >= end || html.charAt(p) != ';') {
+                return -1;
+            }
+            for (int i = 0; i < ENTITY_NAMES.length; i++) {
+                if (isExactly(nameStart, p, ENTITY_NAMES[i])) {
+                    entityEnd = p + 1;
+                    return ENTITY_CHARS[i];
+                }
+            }
+            return -1;
+        }
+        
+        /**
+         * Find the end tag of an element whose contents are not markup
+         * 
+         * @return The position of the '<' of the end tag, or the end of the document
+         */
+        private int findEndTag(int from, int nameStart, int nameEnd) {
+            int nameLength = nameEnd - nameStart;
+            for (int pos = indexOf('<', from); pos >= 0; pos = indexOf('<', pos + 1)) {
+                if (pos + 2 + nameLength <= length && html.charAt(pos + 1) == '/') {
+                    int end = pos + 2 + nameLength;
+                    if (sameIgnoreCase(pos + 2, nameStart, nameLength)
+                            && (end == length || !isLetterOrDigit(html.charAt(end)))) {
+                        return pos;
+                    }
+                }
+            }
+            return length;
+        }
+        
+        private int nameEnd(int pos) {
+            while (pos < length && isLetterOrDigit(html.charAt(pos))) {
+                pos++;
+            }
+            return pos;
+        }
+        
+        private int skipSpaces(int pos) {
+            while (pos < length && isSpace(html.charAt(pos))) {
+                pos++;
+            }
+            return pos;
+        }
+        
+        private int trimStart(int start, int end) {
+            while (start < end && isSpace(html.charAt(start))) {
+                start++;
+            }
+            return start;
+        }
+        
+        private int trimEnd(int start, int end) {
+            while (end > start && isSpace(html.charAt(end - 1))) {
+                end--;
+            }
+            return end;
+        }
+        
+        private int indexOf(char c, int from) {
+            for (int pos = from; pos < length; pos++) {
+                if (html.charAt(pos) == c) {
+                    return pos;
+                }
+            }
+            return -1;
+        }
+        
+        private int indexOf(String s, int from) {
+            for (int pos = indexOf(s.charAt(0), from); pos >= 0; pos = indexOf(s.charAt(0), pos + 1)) {
+                if (startsWith(pos, s)) {
+                    return pos;
+                }
+            }
+            return -1;
+        }
+        
+        private boolean startsWith(int pos, String s) {
+            if (pos + s.length() > length) {
+                return false;
+            }
+            for (int i = 0; i < s.length(); i++) {
+                if (html.charAt(pos + i) != s.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        /**
+         * Check whether a range of the document is a lower case name, ignoring case
+         */
+        private boolean is(int start, int end, String name) {
+            if (end - start != name.length()) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                char c = html.charAt(start + i);
+                if (c != name.charAt(i) && (c | 0x20) != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        /**
+         * Check whether a range of the document is a name, respecting case
+         */
+        private boolean isExactly(int start, int end, String name) {
+            return end - start == name.length() && startsWith(start, name);
+        }
+        
+        private boolean isBlock(int start, int end) {
+            for (String tag : BLOCK_TAGS) {
+                if (is(start, end, tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        private boolean sameIgnoreCase(int pos, int other, int count) {
+            for (int i = 0; i < count; i++) {
+                if ((html.charAt(pos + i) | 0x20) != (html.charAt(other + i) | 0x20)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+    
+    private static boolean isLetterOrDigit(char c) {
+        return isLetter(c) || (c >= '0' && c <= '9');
+    }
+    
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f' || c == '\u00A0';
+    }
+}
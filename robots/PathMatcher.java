@@ -0,0 +1,190 @@
+package robots;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiled Allow/Disallow rules of one robots.txt group.
+ * <p>
+ * Plain prefix patterns, the vast majority in practice, are stored in a
+ * character trie: matching a path is a single walk down the trie, one node per
+ * character, remembering the longest pattern passed on the way. Patterns with
+ * {@code *} or a trailing {@code $} are split into literal segments that are
+ * located with {@code startsWith}/{@code indexOf}; they are kept longest first,
+ * so once the trie has found a match only the longer wildcard patterns that
+ * could still beat it are tried, and most of those are rejected by their
+ * leading literal. As in RFC 9309 the longest matching pattern decides, and
+ * Allow wins a tie.
+ */
+public class PathMatcher {
+    private final Node root = new Node();
+    private final List<WildcardRule> wildcardRules = new ArrayList<>();
+    private int ruleCount;
+    
+    /**
+     * Add a rule
+     * 
+     * @param pattern The path pattern, e.g. "/private/" or "/*.pdf$"
+     * @param allow true for an Allow rule, false for Disallow
+     */
+    public void add(String pattern, boolean allow) {
+        // Length of the original pattern is its priority
+        Rule rule = new Rule(pattern.length(), allow);
+        ruleCount++;
+        
+        if (pattern.endsWith("$") || pattern.indexOf('*') >= 0) {
+            WildcardRule wildcardRule = new WildcardRule(pattern, rule);
+            int index = 0;
+            while (index < wildcardRules.size() && wildcardRules.get(index).rule.length >= rule.length) {
+                index++;
+            }
+            wildcardRules.add(index, wildcardRule);
+            return;
+        }
+        
+        Node node = root;
+        for (int i = 0; i < pattern.length(); i++) {
+            node = node.child(pattern.charAt(i), true);
+        }
+        node.rule = better(node.rule, rule);
+    }
+    
+    /**
+     * Check whether a path may be crawled
+     * 
+     * @param path The path including any query string, starting with "/"
+     * @return true if no rule matches or the best match is an Allow rule
+     */
+    public boolean isAllowed(String path) {
+        Rule best = matchPrefix(path);
+        for (int i = 0; i < wildcardRules.size(); i++) {
+            WildcardRule candidate = wildcardRules.get(i);
+            if (best != null && candidate.rule.length < best.length) {
+                // Remaining rules are shorter than the current match and cannot beat it
+                break;
+            }
+            if (candidate.matches(path)) {
+                best = better(best, candidate.rule);
+            }
+        }
+        return best == null || best.allow;
+    }
+    
+    /**
+     * Get the number of rules
+     * 
+     * @return The rule count
+     */
+    public int size() {
+        return ruleCount;
+    }
+    
+    private Rule matchPrefix(String path) {
+        Rule best = root.rule;
+        Node node = root;
+        for (int i = 0; i < path.length(); i++) {
+            node = node.child(path.charAt(i), false);
+            if (node == null) {
+                break;
+            }
+            best = better(best, node.rule);
+        }
+        return best;
+    }
+    
+    private static Rule better(Rule current, Rule candidate) {
+        if (candidate == null) {
+            return current;
+        }
+        if (current == null || candidate.length > current.length
+                || (candidate.length == current.length && candidate.allow)) {
+            return candidate;
+        }
+        return current;
+    }
+    
+    private static class Rule {
+        private final int length;
+        private final boolean allow;
+        
+        Rule(int length, boolean allow) {
+            this.length = length;
+            this.allow = allow;
+        }
+    }
+    
+    /**
+     * Pattern with wildcards, split into the literal segments between the {@code *}s
+     */
+    private static class WildcardRule {
+        private final String[] segments;
+        private final boolean anchored;
+        private final Rule rule;
+        
+        WildcardRule(String pattern, Rule rule) {
+            this.anchored = pattern.endsWith("$");
+            String body = anchored ? pattern.substring(0, pattern.length() - 1) : pattern;
+            // Empty segments from leading, trailing or repeated "*" match anywhere
+            this.segments = body.split("\\*", -1);
+            this.rule = rule;
+        }
+        
+        /**
+         * Match segments left to right, each at its earliest position; the first
+         * segment is anchored at the start of the path, and with a trailing
+         * {@code $} the last one at its end
+         */
+        boolean matches(String path) {
+            if (!path.startsWith(segments[0])) {
+                return false;
+            }
+            int last = segments.length - 1;
+            int end = path.length();
+            if (anchored && last > 0) {
+                if (!path.endsWith(segments[last]) || end - segments[last].length() < segments[0].length()) {
+                    return false;
+                }
+                end -= segments[last].length();
+            } else if (anchored) {
+                return path.length() == segments[0].length();
+            }
+            
+            int position = segments[0].length();
+            int middleEnd = anchored ? last : segments.length;
+            for (int i = 1; i < middleEnd; i++) {
+                int found = path.indexOf(segments[i], position);
+                if (found < 0 || found + segments[i].length() > end) {
+                    return false;
+                }
+                position = found + segments[i].length();
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Trie node; children are kept in small parallel arrays since fan-out is low
+     */
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private Rule rule;
+        
+        Node child(char ch, boolean create) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == ch) {
+                    return children[i];
+                }
+            }
+            if (!create) {
+                return null;
+            }
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = ch;
+            children[children.length - 1] = new Node();
+            return children[children.length - 1];
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package robots;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import http.FetchResult;
+import http.HttpRequester;
+import util.Logger;
+
+/**
+ * Per-host cache of parsed robots.txt rules.
+ * <p>
+ * Each origin's robots.txt is fetched once and kept until its TTL expires or
+ * it is evicted as the least recently used entry. Concurrent requests for the
+ * same origin wait for a single fetch. Following RFC 9309, a missing file
+ * (4xx) allows everything, while a server error or an unreachable server
+ * disallows everything until a shorter retry TTL has passed.
+ * <p>
+ * Lookups only slice the origin and path out of the URL string, so checking
+ * a discovered link against already cached rules costs a map lookup and a
+ * trie walk.
+ */
+public class RobotsCache {
+    /** Product token matched against User-agent lines */
+    public static final String AGENT_TOKEN = "JavaWebCrawlerBot";
+    
+    private static final int MAX_ROBOTS_BYTES = 500 * 1024;
+    private static final long DEFAULT_TTL_MS = TimeUnit.HOURS.toMillis(24);
+    private static final long ERROR_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final int DEFAULT_MAX_HOSTS = 10_000;
+    
+    private final HttpRequester httpRequester;
+    private final RobotsParser parser;
+    private final long ttlMs;
+    private final Map<String, Entry> entries;
+    private final Map<String, CompletableFuture<RobotsRules>> inFlight;
+    private final Logger logger;
+    
+    /**
+     * Constructor for RobotsCache with the default TTL and size
+     * 
+     * @param httpRequester The requester used to fetch robots.txt
+     */
+    public RobotsCache(HttpRequester httpRequester) {
+        this(httpRequester, DEFAULT_MAX_HOSTS, DEFAULT_TTL_MS);
+    }
+    
+    /**
+     * Constructor for RobotsCache
+     * 
+     * @param httpRequester The requester used to fetch robots.txt
+     * @param maxHosts Maximum number of origins to keep rules for
+     * @param ttlMs How long fetched rules stay valid in milliseconds
+     */
+    public RobotsCache(HttpRequester httpRequester, int maxHosts, long ttlMs) {
+        this.httpRequester = httpRequester;
+        this.parser = new RobotsParser(AGENT_TOKEN);
+        this.ttlMs = ttlMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxHosts;
+            }
+        };
+        this.inFlight = new ConcurrentHashMap<>();
+        this.logger = new Logger(RobotsCache.class.getSimpleName());
+    }
+    
+    /**
+     * Check a URL against its host's rules, fetching robots.txt if they are not cached
+     * 
+     * @param url The absolute URL
+     * @return true if the URL may be crawled
+     */
+    public boolean isAllowed(String url) {
+        String origin = origin(url);
+        if (origin == null) {
+            return true;
+        }
+        return getRules(url).isAllowed(pathAndQuery(url, origin.length()));
+    }
+    
+    /**
+     * Check a URL against its host's rules only if they are already cached.
+     * Used on discovered links, where fetching robots.txt would stall the page.
+     * 
+     * @param url The absolute URL
+     * @return false if cached rules disallow the URL, true if they allow it or are not cached
+     */
+    public boolean isAllowedIfKnown(String url) {
+        String origin = origin(url);
+        if (origin == null) {
+            return true;
+        }
+        RobotsRules rules = getCachedRules(origin);
+        return rules == null || rules.isAllowed(pathAndQuery(url, origin.length()));
+    }
+    
+    /**
+     * Get the rules for a URL's host, fetching robots.txt if they are not cached
+     * 
+     * @param url The absolute URL
+     * @return The rules, {@link RobotsRules#ALLOW_ALL} if the URL has no host
+     */
+    public RobotsRules getRules(String url) {
+        String origin = origin(url);
+        if (origin == null) {
+            return RobotsRules.ALLOW_ALL;
+        }
+        RobotsRules rules = getCachedRules(origin);
+        if (rules != null) {
+            return rules;
+        }
+        
+        CompletableFuture<RobotsRules> future = new CompletableFuture<>();
+        CompletableFuture<RobotsRules> existing = inFlight.putIfAbsent(origin, future);
+        if (existing != null) {
+            return existing.join();
+        }
+        try {
+            // Another thread may have finished the fetch just before we registered
+            rules = getCachedRules(origin);
+            if (rules == null) {
+                rules = fetchRules(origin);
+            }
+            future.complete(rules);
+            return rules;
+        } catch (RuntimeException e) {
+            future.complete(RobotsRules.ALLOW_ALL);
+            throw e;
+        } finally {
+            inFlight.remove(origin);
+        }
+    }
+    
+    /**
+     * Get the number of origins with cached rules
+     * 
+     * @return The origin count
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    private synchronized RobotsRules getCachedRules(String origin) {
+        Entry entry = entries.get(origin);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(origin);
+            return null;
+        }
+        return entry.rules;
+    }
+    
+    private synchronized void putRules(String origin, RobotsRules rules, long ttl) {
+        entries.put(origin, new Entry(rules, System.currentTimeMillis() + ttl));
+    }
+    
+    private RobotsRules fetchRules(String origin) {
+        FetchResult result = httpRequester.fetchText(origin + "/robots.txt", MAX_ROBOTS_BYTES);
+        RobotsRules rules;
+        long ttl = ttlMs;
+        if (result == null || result.getStatusCode() >= 500) {
+            logger.info("robots.txt unavailable for " + origin + ", not crawling it for now");
+            rules = RobotsRules.DISALLOW_ALL;
+            ttl = Math.min(ttlMs, ERROR_TTL_MS);
+        } else if (result.getStatusCode() >= 400 || result.getBody() == null) {
+            rules = RobotsRules.ALLOW_ALL;
+        } else {
+            rules = parser.parse(result.getBody().toString());
+            logger.debug("Loaded robots.txt for " + origin);
+        }
+        putRules(origin, rules, ttl);
+        return rules;
+    }
+    
+    /**
+     * Get the lowercase scheme and authority of an absolute URL
+     * 
+     * @param url The URL
+     * @return The origin, e.g. "https://example.com:8080", or null if the URL has no authority
+     */
+    static String origin(String url) {
+        int scheme = url.indexOf("://");
+        if (scheme <= 0) {
+            return null;
+        }
+        int end = url.length();
+        for (int i = scheme + 3; i < end; i++) {
+            char ch = url.charAt(i);
+            if (ch == '/' || ch == '?' || ch == '#') {
+                end = i;
+                break;
+            }
+        }
+        if (end == scheme + 3) {
+            return null;
+        }
+        String origin = url.substring(0, end);
+        for (int i = 0; i < origin.length(); i++) {
+            if (Character.isUpperCase(origin.charAt(i))) {
+                return origin.toLowerCase();
+            }
+        }
+        return origin;
+    }
+    
+    /**
+     * Get the path and query that robots.txt rules are matched against
+     * 
+     * @param url The URL
+     * @param start Index where the path starts (the length of the origin)
+     * @return The path and query without the fragment, "/" if the path is empty
+     */
+    static String pathAndQuery(String url, int start) {
+        int end = url.indexOf('#', start);
+        if (end < 0) {
+            end = url.length();
+        }
+        if (start == end) {
+            return "/";
+        }
+        String path = url.substring(start, end);
+        return path.charAt(0) == '/' ? path : "/" + path;
+    }
+    
+    private static class Entry {
+        private final RobotsRules rules;
+        private final long expiresAt;
+        
+        Entry(RobotsRules rules, long expiresAt) {
+            this.rules = rules;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package robots;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses robots.txt (RFC 9309) into the rules for one user agent.
+ * <p>
+ * The crawler obeys the groups whose User-agent line matches its product token,
+ * or the "*" groups if none does. Consecutive User-agent lines share the rules
+ * that follow them, and several groups for the same agent are merged. Sitemap
+ * lines apply to every agent.
+ */
+public class RobotsParser {
+    private final String agentToken;
+    
+    /**
+     * Constructor for RobotsParser
+     * 
+     * @param agentToken The crawler's product token, e.g. "JavaWebCrawlerBot"
+     */
+    public RobotsParser(String agentToken) {
+        this.agentToken = agentToken.toLowerCase();
+    }
+    
+    /**
+     * Parse a robots.txt file
+     * 
+     * @param content The file content
+     * @return The rules that apply to this crawler
+     */
+    public RobotsRules parse(String content) {
+        PathMatcher specificRules = new PathMatcher();
+        PathMatcher defaultRules = new PathMatcher();
+        long specificDelay = -1;
+        long defaultDelay = -1;
+        boolean specificGroupFound = false;
+        List<String> sitemaps = new ArrayList<>();
+        
+        // Whether the current group applies to us specifically or through "*"
+        boolean inSpecificGroup = false;
+        boolean inDefaultGroup = false;
+        boolean lastLineWasAgent = false;
+        
+        for (String rawLine : content.split("\r\n|\r|\n")) {
+            int comment = rawLine.indexOf('#');
+            String line = (comment >= 0 ? rawLine.substring(0, comment) : rawLine).trim();
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase();
+            String value = line.substring(colon + 1).trim();
+            
+            switch (field) {
+                case "user-agent":
+                    if (!lastLineWasAgent) {
+                        inSpecificGroup = false;
+                        inDefaultGroup = false;
+                    }
+                    String agent = value.toLowerCase();
+                    if (agent.equals("*")) {
+                        inDefaultGroup = true;
+                    } else if (agent.equals(agentToken)) {
+                        inSpecificGroup = true;
+                        specificGroupFound = true;
+                    }
+                    lastLineWasAgent = true;
+                    continue;
+                case "allow":
+                case "disallow":
+                    // An empty Disallow allows everything and adds no rule
+                    if (!value.isEmpty()) {
+                        boolean allow = field.equals("allow");
+                        if (inSpecificGroup) {
+                            specificRules.add(value, allow);
+                        }
+                        if (inDefaultGroup) {
+                            defaultRules.add(value, allow);
+                        }
+                    }
+                    break;
+                case "crawl-delay":
+                    long delay = parseDelay(value);
+                    if (inSpecificGroup) {
+                        specificDelay = delay;
+                    }
+                    if (inDefaultGroup) {
+                        defaultDelay = delay;
+                    }
+                    break;
+                case "sitemap":
+                    if (!value.isEmpty()) {
+                        sitemaps.add(value);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            lastLineWasAgent = false;
+        }
+        
+        return specificGroupFound
+                ? new RobotsRules(specificRules, specificDelay, sitemaps)
+                : new RobotsRules(defaultRules, defaultDelay, sitemaps);
+    }
+    
+    /**
+     * Parse a Crawl-delay value in (possibly fractional) seconds
+     * 
+     * @return The delay in milliseconds, or -1 if the value is invalid
+     */
+    private static long parseDelay(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            return seconds >= 0 ? (long) (seconds * 1000) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package robots;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parts of a host's robots.txt that apply to this crawler
+ */
+public class RobotsRules {
+    /** Rules used when robots.txt does not exist: everything is allowed */
+    public static final RobotsRules ALLOW_ALL = new RobotsRules(new PathMatcher(), -1, Collections.emptyList());
+    
+    private static final PathMatcher DISALLOW_EVERYTHING = new PathMatcher();
+    static {
+        DISALLOW_EVERYTHING.add("/", false);
+    }
+    
+    /** Rules used while robots.txt is unreachable: nothing is allowed */
+    public static final RobotsRules DISALLOW_ALL = new RobotsRules(DISALLOW_EVERYTHING, -1, Collections.emptyList());
+    
+    private final PathMatcher matcher;
+    private final long crawlDelayMs;
+    private final List<String> sitemaps;
+    
+    /**
+     * Constructor for RobotsRules
+     * 
+     * @param matcher The compiled Allow/Disallow rules
+     * @param crawlDelayMs The requested delay between requests in milliseconds, or -1 if none
+     * @param sitemaps Sitemap URLs listed in the file
+     */
+    public RobotsRules(PathMatcher matcher, long crawlDelayMs, List<String> sitemaps) {
+        this.matcher = matcher;
+        this.crawlDelayMs = crawlDelayMs;
+        this.sitemaps = Collections.unmodifiableList(sitemaps);
+    }
+    
+    /**
+     * Check whether a path may be crawled
+     * 
+     * @param path The path including any query string
+     * @return true if the path is allowed
+     */
+    public boolean isAllowed(String path) {
+        return matcher.isAllowed(path);
+    }
+    
+    /**
+     * Get the Crawl-delay requested by the host
+     * 
+     * @return The delay in milliseconds, or -1 if none was given
+     */
+    public long getCrawlDelayMs() {
+        return crawlDelayMs;
+    }
+    
+    /**
+     * Get the Sitemap URLs listed in robots.txt
+     * 
+     * @return The sitemap URLs
+     */
+    public List<String> getSitemaps() {
+        return sitemaps;
+    }
+}
@@ -0,0 +1,171 @@
+package sitemap;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming parser for sitemap and sitemap index files.
+ * <p>
+ * The document is read with a StAX pull parser and every entry is handed to
+ * the listener as soon as its closing tag is seen, so memory use does not
+ * depend on the size of the file. Gzip-compressed files are detected by their
+ * magic bytes. DTDs and external entities are disabled.
+ */
+public class SitemapParser {
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+    
+    /** Value passed to the listener for entries without a valid lastmod */
+    public static final long NO_LASTMOD = Long.MIN_VALUE;
+    
+    private final XMLInputFactory factory;
+    
+    /**
+     * Receives the entries of a sitemap
+     */
+    public interface Listener {
+        /**
+         * Called for every {@code <url>} entry of a sitemap
+         * 
+         * @param loc The page URL
+         * @param lastModDay The lastmod date as days since the epoch, or {@link #NO_LASTMOD}
+         */
+        void onUrl(String loc, long lastModDay);
+        
+        /**
+         * Called for every {@code <sitemap>} entry of a sitemap index
+         * 
+         * @param loc The URL of the nested sitemap
+         */
+        void onSitemap(String loc);
+    }
+    
+    /**
+     * Constructor for SitemapParser
+     */
+    public SitemapParser() {
+        this.factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+    
+    /**
+     * Parse a sitemap or sitemap index, decompressing it first if it is gzipped
+     * 
+     * @param in The raw file content; not closed by this method
+     * @param listener Receives the entries
+     * @return The number of entries passed to the listener
+     * @throws IOException If the content cannot be read or is not well-formed XML
+     */
+    public long parse(InputStream in, Listener listener) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(2);
+        boolean gzipped = buffered.read() == GZIP_MAGIC_1 && buffered.read() == GZIP_MAGIC_2;
+        buffered.reset();
+        InputStream content = gzipped ? new GZIPInputStream(buffered) : buffered;
+        
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(content);
+            return parseEntries(reader, listener);
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed sitemap: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Nothing to release beyond the stream the caller closes
+                }
+            }
+        }
+    }
+    
+    private long parseEntries(XMLStreamReader reader, Listener listener) throws XMLStreamException {
+        long entries = 0;
+        int depth = 0;
+        // Depth of the open <url> or <sitemap> element, or -1 outside of one.
+        // Only its direct children count, so extensions such as <image:loc> are ignored
+        int entryDepth = -1;
+        String loc = null;
+        String lastMod = null;
+        
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String name = reader.getLocalName();
+                if (entryDepth < 0 && (name.equals("url") || name.equals("sitemap"))) {
+                    entryDepth = depth;
+                    loc = null;
+                    lastMod = null;
+                } else if (depth == entryDepth + 1 && name.equals("loc")) {
+                    loc = reader.getElementText().trim();
+                    depth--;
+                } else if (depth == entryDepth + 1 && name.equals("lastmod")) {
+                    lastMod = reader.getElementText().trim();
+                    depth--;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == entryDepth) {
+                    if (loc != null && !loc.isEmpty()) {
+                        if (reader.getLocalName().equals("url")) {
+                            listener.onUrl(loc, parseDay(lastMod));
+                        } else {
+                            listener.onSitemap(loc);
+                        }
+                        entries++;
+                    }
+                    entryDepth = -1;
+                }
+                depth--;
+            }
+        }
+        return entries;
+    }
+    
+    /**
+     * Parse the date part of a W3C datetime such as "2024-05-01" or "2024-05-01T10:00:00+00:00"
+     * 
+     * @param value The lastmod value, or null
+     * @return Days since the epoch, or {@link #NO_LASTMOD} if the value is missing or invalid
+     */
+    static long parseDay(String value) {
+        if (value == null || value.length() < 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            return NO_LASTMOD;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 7);
+        int day = digits(value, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return NO_LASTMOD;
+        }
+        // Days from civil date (proleptic Gregorian), avoiding a java.time allocation per entry
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+    
+    private static int digits(String value, int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            char ch = value.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return -1;
+            }
+            result = result * 10 + (ch - '0');
+        }
+        return result;
+    }
+}
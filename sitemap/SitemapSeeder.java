@@ -0,0 +1,211 @@
+package sitemap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import http.HttpRequester;
+import util.Logger;
+
+/**
+ * Seeds the crawl frontier from sitemaps.
+ * <p>
+ * Sitemaps and nested sitemap indexes are streamed one at a time. Page URLs
+ * are spilled to temporary files bucketed by the age of their lastmod date,
+ * then handed out newest bucket first and in sitemap order within a bucket,
+ * up to a limit. Memory use is therefore constant no matter how many entries
+ * the sitemaps have, and recently changed pages are queued before stale ones.
+ */
+public class SitemapSeeder {
+    // Upper bounds of the lastmod age buckets in days; entries without a
+    // lastmod go into a final bucket after all dated ones
+    private static final long[] BUCKET_MAX_AGE_DAYS = {1, 7, 30, 365, Long.MAX_VALUE};
+    private static final int MAX_SITEMAPS = 50_000;
+    
+    private final HttpRequester httpRequester;
+    private final SitemapParser parser;
+    private final Logger logger;
+    private long sitemapsRead;
+    private long urlsRead;
+    
+    /**
+     * Constructor for SitemapSeeder
+     * 
+     * @param httpRequester The requester used to download sitemaps
+     */
+    public SitemapSeeder(HttpRequester httpRequester) {
+        this.httpRequester = httpRequester;
+        this.parser = new SitemapParser();
+        this.logger = new Logger(SitemapSeeder.class.getSimpleName());
+    }
+    
+    /**
+     * Read the sitemaps and offer their page URLs, most recently modified first
+     * 
+     * @param sitemapUrls URLs of sitemaps or sitemap indexes
+     * @param enqueue Called for each page URL; returns true if the URL was queued
+     * @param limit Maximum number of URLs to queue
+     * @return The number of URLs queued
+     */
+    public long seed(List<String> sitemapUrls, Predicate<String> enqueue, long limit) {
+        Path spoolDir = null;
+        BufferedWriter[] buckets = new BufferedWriter[BUCKET_MAX_AGE_DAYS.length + 1];
+        try {
+            spoolDir = Files.createTempDirectory("sitemap-seed");
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = Files.newBufferedWriter(spoolDir.resolve("bucket-" + i), StandardCharsets.UTF_8);
+            }
+            spill(sitemapUrls, buckets);
+            for (BufferedWriter bucket : buckets) {
+                bucket.close();
+            }
+            
+            long queued = 0;
+            for (int i = 0; i < buckets.length && queued < limit; i++) {
+                try (BufferedReader reader = Files.newBufferedReader(spoolDir.resolve("bucket-" + i),
+                        StandardCharsets.UTF_8)) {
+                    String url;
+                    while (queued < limit && (url = reader.readLine()) != null) {
+                        if (enqueue.test(url)) {
+                            queued++;
+                        }
+                    }
+                }
+            }
+            logger.info("Read " + urlsRead + " URLs from " + sitemapsRead + " sitemaps, queued " + queued);
+            return queued;
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("Error seeding from sitemaps: " + e.getMessage());
+            return 0;
+        } finally {
+            for (BufferedWriter bucket : buckets) {
+                closeQuietly(bucket);
+            }
+            deleteDirectory(spoolDir);
+        }
+    }
+    
+    /**
+     * Get the number of sitemap files read by the last {@link #seed} call
+     * 
+     * @return The sitemap count
+     */
+    public long getSitemapsRead() {
+        return sitemapsRead;
+    }
+    
+    /**
+     * Get the number of page URLs found by the last {@link #seed} call
+     * 
+     * @return The URL count
+     */
+    public long getUrlsRead() {
+        return urlsRead;
+    }
+    
+    /**
+     * Stream every sitemap, following indexes breadth-first, and write page URLs to their age bucket
+     */
+    private void spill(List<String> sitemapUrls, BufferedWriter[] buckets) {
+        long today = LocalDate.now(ZoneOffset.UTC).toEpochDay();
+        Deque<String> pending = new ArrayDeque<>(sitemapUrls);
+        Set<String> seen = new HashSet<>(sitemapUrls);
+        sitemapsRead = 0;
+        urlsRead = 0;
+        
+        SitemapParser.Listener listener = new SitemapParser.Listener() {
+            @Override
+            public void onUrl(String loc, long lastModDay) {
+                if (loc.indexOf('\n') >= 0) {
+                    return;
+                }
+                try {
+                    BufferedWriter bucket = buckets[bucketFor(lastModDay, today)];
+                    bucket.write(loc);
+                    bucket.newLine();
+                    urlsRead++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            
+            @Override
+            public void onSitemap(String loc) {
+                if (seen.size() < MAX_SITEMAPS && seen.add(loc)) {
+                    pending.add(loc);
+                }
+            }
+        };
+        
+        String sitemapUrl;
+        while ((sitemapUrl = pending.poll()) != null) {
+            try (InputStream in = httpRequester.openStream(sitemapUrl)) {
+                if (in == null) {
+                    continue;
+                }
+                long entries = parser.parse(in, listener);
+                sitemapsRead++;
+                logger.debug("Read " + entries + " entries from sitemap " + sitemapUrl);
+            } catch (IOException e) {
+                logger.error("Error reading sitemap " + sitemapUrl + " - " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Get the bucket for an entry
+     * 
+     * @param lastModDay The lastmod date as days since the epoch, or {@link SitemapParser#NO_LASTMOD}
+     * @param today Today as days since the epoch
+     * @return The bucket index, lower is fresher
+     */
+    private static int bucketFor(long lastModDay, long today) {
+        if (lastModDay == SitemapParser.NO_LASTMOD) {
+            return BUCKET_MAX_AGE_DAYS.length;
+        }
+        long age = today - lastModDay;
+        for (int i = 0; i < BUCKET_MAX_AGE_DAYS.length; i++) {
+            if (age <= BUCKET_MAX_AGE_DAYS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_MAX_AGE_DAYS.length - 1;
+    }
+    
+    private void closeQuietly(BufferedWriter writer) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.debug("Error closing sitemap spool file: " + e.getMessage());
+        }
+    }
+    
+    private void deleteDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.debug("Error deleting sitemap spool directory: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,498 @@
+package storage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import crawler.CrawlStrategy;
+import crawler.FingerprintVisitedSet;
+import crawler.VisitedUrlSet;
+import models.WebPage;
+import util.Logger;
+
+/**
+ * Crash-safe checkpoint of a running crawl.
+ * <p>
+ * Crawl threads record enqueued URLs, completed URLs and relevant pages into
+ * a bounded in-memory queue, waiting only when the writer falls far behind. A
+ * background thread appends relevant pages to {@code pages.log} and the other
+ * records to {@code journal.log}. Once the journal holds
+ * {@code snapshotInterval} records, or as many as the snapshot if that is
+ * more, the writer seals it and starts an empty one, and a separate thread
+ * compacts the previous snapshot plus the sealed journal into a new
+ * {@code snapshot.log}, dropping enqueue records for URLs that have a visited
+ * record. The writer never waits for a compaction, and since the journal has
+ * to grow as large as the snapshot before the next one, a record is rewritten
+ * only a few times on average however long the crawl runs. Pages are never
+ * compacted, so a compaction only rewrites the small URL records. Resuming
+ * replays the snapshot, any sealed journal, the journal and the pages, so a
+ * crash at any point loses at most the records still queued in memory. A URL
+ * is only recorded as visited once its page has been fully processed, so
+ * pages that were in flight during a crash are fetched again.
+ */
+public class CrawlCheckpoint implements AutoCloseable {
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String SNAPSHOT_FILE = "snapshot.log";
+    private static final String SNAPSHOT_TEMP_FILE = "snapshot.tmp";
+    private static final String SEALED_JOURNAL_FILE = "journal.sealed";
+    private static final String PAGES_FILE = "pages.log";
+    
+    private static final char ENQUEUED = 'E';
+    private static final char VISITED = 'V';
+    private static final char REDIRECT_TARGET = 'R';
+    private static final char PAGE = 'P';
+    // Queued by close; compared by identity, so no record can be mistaken for it
+    private static final String END_OF_RECORDS = new String("end of records");
+    private static final int WRITE_BATCH_SIZE = 4096;
+    // Records waiting for the writer before crawl threads have to wait
+    private static final int MAX_QUEUED_RECORDS = 64 * 1024;
+    private static final long QUEUE_POLL_MS = 100;
+    
+    private final Path directory;
+    private final Path journalPath;
+    private final Path snapshotPath;
+    private final Path sealedJournalPath;
+    private final Path pagesPath;
+    private final int snapshotInterval;
+    private final BlockingQueue<String> records;
+    private final Thread writerThread;
+    private final Logger logger;
+    
+    private BufferedWriter journal;
+    private BufferedWriter pages;
+    private Thread compactor;
+    private long recordsSinceSnapshot;
+    private volatile long snapshotRecords;
+    private volatile boolean compactionFailed;
+    private volatile boolean closed;
+    
+    /**
+     * Constructor for CrawlCheckpoint. Existing checkpoint files are kept so they
+     * can be restored; call {@link #clear()} to start a fresh crawl instead.
+     * 
+     * @param directory Directory holding the checkpoint files
+     * @param snapshotInterval Minimum number of journal records between compacted snapshots
+     * @throws IOException If the directory cannot be created
+     */
+    public CrawlCheckpoint(Path directory, int snapshotInterval) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.journalPath = directory.resolve(JOURNAL_FILE);
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        this.sealedJournalPath = directory.resolve(SEALED_JOURNAL_FILE);
+        this.pagesPath = directory.resolve(PAGES_FILE);
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+        this.records = new LinkedBlockingQueue<>(MAX_QUEUED_RECORDS);
+        this.logger = new Logger(CrawlCheckpoint.class.getSimpleName());
+        this.writerThread = new Thread(this::writeLoop, "checkpoint-writer");
+        this.writerThread.setDaemon(true);
+    }
+    
+    /**
+     * Delete any existing checkpoint files
+     * 
+     * @throws IOException If the files cannot be deleted
+     */
+    public void clear() throws IOException {
+        Files.deleteIfExists(journalPath);
+        Files.deleteIfExists(snapshotPath);
+        Files.deleteIfExists(sealedJournalPath);
+        Files.deleteIfExists(pagesPath);
+        Files.deleteIfExists(directory.resolve(SNAPSHOT_TEMP_FILE));
+    }
+    
+    /**
+     * Start the background writer. Must be called after any restore and before recording.
+     * 
+     * @throws IOException If the journal cannot be opened or a journal sealed
+     *         before a crash cannot be compacted
+     */
+    public void start() throws IOException {
+        // A crash interrupted the compaction of this journal; finish it so the next one can be sealed
+        if (Files.exists(sealedJournalPath)) {
+            compact(snapshotInterval, sealedJournalPath);
+        }
+        this.journal = Files.newBufferedWriter(journalPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.pages = Files.newBufferedWriter(pagesPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        writerThread.start();
+        logger.info("Checkpointing crawl to " + directory);
+    }
+    
+    /**
+     * Record that a URL was added to the frontier
+     * 
+     * @param url The URL
+     */
+    public void recordEnqueued(String url) {
+        record(ENQUEUED + "\t" + escape(url));
+    }
+    
+    /**
+     * Record that a URL has been fully processed
+     * 
+     * @param url The URL
+     */
+    public void recordVisited(String url) {
+        record(VISITED + "\t" + escape(url));
+    }
+    
+    /**
+     * Record the final URL of a fully processed page that was reached through
+     * redirects. It is restored as claimed but not as a visited page.
+     * 
+     * @param url The canonical final URL
+     */
+    public void recordRedirectTarget(String url) {
+        record(REDIRECT_TARGET + "\t" + escape(url));
+    }
+    
+    /**
+     * Record a relevant page
+     * 
+     * @param page The page, including any AI analysis
+     */
+    public void recordRelevantPage(WebPage page) {
+        StringBuilder line = new StringBuilder();
+        line.append(PAGE)
+            .append('\t').append(escape(page.getUrl()))
+            .append('\t').append(escape(page.getTitle()))
+            .append('\t').append(escape(page.getContent()))
+            .append('\t').append(page.getAiAnalysis() != null ? "1" + escape(page.getAiAnalysis()) : "0");
+        for (Map.Entry<String, String> entry : page.getMetadata().entrySet()) {
+            line.append('\t').append(escape(entry.getKey()))
+                .append('\t').append(escape(entry.getValue()));
+        }
+        record(line.toString());
+    }
+    
+    /**
+     * Restore visited URLs and relevant pages from the checkpoint.
+     * Call before the strategy is initialized.
+     * 
+     * @param visitedUrls Receives the URLs already crawled and the final URLs of redirected pages
+     * @param visitedLog Receives the URLs already crawled, without redirect targets, for export
+     * @param relevantPages Receives the relevant pages found so far
+     * @return The number of visited URLs restored
+     * @throws IOException If the checkpoint cannot be read
+     */
+    public long restoreVisited(VisitedUrlSet visitedUrls, VisitedUrlLog visitedLog,
+                               Set<WebPage> relevantPages) throws IOException {
+        long[] restored = {0};
+        replay((type, fields) -> {
+            if (type == VISITED && visitedUrls.add(fields[1])) {
+                visitedLog.append(fields[1]);
+                restored[0]++;
+            } else if (type == REDIRECT_TARGET) {
+                visitedUrls.add(fields[1]);
+            } else if (type == PAGE && fields.length >= 5) {
+                relevantPages.add(parsePage(fields));
+            }
+        }, snapshotPath, sealedJournalPath, journalPath, pagesPath);
+        return restored[0];
+    }
+    
+    /**
+     * Restore the frontier from the checkpoint, in the order URLs were originally enqueued.
+     * Call after the strategy is initialized.
+     * 
+     * @param strategy The initialized strategy to refill
+     * @param visitedUrls The restored visited set
+     * @return The number of enqueue records replayed
+     * @throws IOException If the checkpoint cannot be read
+     */
+    public long restoreFrontier(CrawlStrategy strategy, VisitedUrlSet visitedUrls) throws IOException {
+        long[] restored = {0};
+        replay((type, fields) -> {
+            if (type == ENQUEUED && !visitedUrls.contains(fields[1])) {
+                strategy.addUrl(fields[1]);
+                restored[0]++;
+            }
+        }, snapshotPath, sealedJournalPath, journalPath);
+        return restored[0];
+    }
+    
+    /**
+     * Write all queued records, compact the journal into a final snapshot and stop the writer
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // A writer that failed no longer drains the queue
+            while (writerThread.isAlive() && !records.offer(END_OF_RECORDS, QUEUE_POLL_MS, TimeUnit.MILLISECONDS)) {
+                continue;
+            }
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void record(String line) {
+        try {
+            while (!closed && !records.offer(line, QUEUE_POLL_MS, TimeUnit.MILLISECONDS)) {
+                continue;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Background loop: append records in batches, flushing whenever the queue runs dry
+     */
+    private void writeLoop() {
+        List<String> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+        try {
+            boolean finished = false;
+            while (!finished) {
+                batch.add(records.take());
+                records.drainTo(batch, WRITE_BATCH_SIZE - 1);
+                for (String line : batch) {
+                    if (line == END_OF_RECORDS) {
+                        finished = true;
+                        break;
+                    }
+                    if (line.charAt(0) == PAGE) {
+                        pages.write(line);
+                        pages.newLine();
+                        continue;
+                    }
+                    journal.write(line);
+                    journal.newLine();
+                    if (++recordsSinceSnapshot >= Math.max(snapshotInterval, snapshotRecords)) {
+                        startCompaction();
+                    }
+                }
+                batch.clear();
+                if (records.isEmpty()) {
+                    pages.flush();
+                    journal.flush();
+                }
+            }
+            if (compactor != null) {
+                compactor.join();
+            }
+            journal.close();
+            pages.close();
+            compact(recordsSinceSnapshot + snapshotInterval, sealedJournalPath, journalPath);
+        } catch (IOException e) {
+            logger.error("Checkpoint writer failed, checkpointing stopped: " + e.getMessage());
+            closed = true;
+            records.clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Seal the journal and compact it into the snapshot on a separate thread,
+     * so the writer keeps draining the queue meanwhile. Skipped while the
+     * previous compaction is still running, or for the rest of the crawl once
+     * one has failed; the journal then just grows until the crawl ends.
+     */
+    private void startCompaction() throws IOException {
+        if (compactionFailed || (compactor != null && compactor.isAlive())) {
+            return;
+        }
+        journal.close();
+        Files.move(journalPath, sealedJournalPath, StandardCopyOption.ATOMIC_MOVE);
+        journal = Files.newBufferedWriter(journalPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        long sealedRecords = recordsSinceSnapshot;
+        recordsSinceSnapshot = 0;
+        
+        compactor = new Thread(() -> {
+            try {
+                compact(sealedRecords, sealedJournalPath);
+            } catch (IOException e) {
+                logger.error("Checkpoint compaction failed, retrying when the crawl ends: " + e.getMessage());
+                compactionFailed = true;
+            }
+        }, "checkpoint-compactor");
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+    
+    /**
+     * Merge the snapshot and the given journals into a new snapshot and delete
+     * the journals. An enqueue record is dropped only if the same records hold
+     * a visited record for its URL: URLs claimed by the crawler but still
+     * waiting or in flight have none, and must stay in the frontier of a
+     * resumed crawl. The snapshot is replaced atomically, so a crash during
+     * compaction leaves the old snapshot and journals intact; a crash after the
+     * rename but before the journals are deleted only replays some records
+     * twice, which is harmless.
+     * 
+     * @param journalRecords Approximate number of records in the journals
+     * @param journals The journals to merge, oldest first; missing ones are skipped
+     */
+    private void compact(long journalRecords, Path... journals) throws IOException {
+        Path[] sources = new Path[journals.length + 1];
+        sources[0] = snapshotPath;
+        System.arraycopy(journals, 0, sources, 1, journals.length);
+        Path tempPath = directory.resolve(SNAPSHOT_TEMP_FILE);
+        long expected = snapshotRecords + journalRecords;
+        VisitedUrlSet visited = new FingerprintVisitedSet(expected);
+        VisitedUrlSet enqueued = new FingerprintVisitedSet(expected);
+        long kept = 0;
+        
+        // First pass: the URLs with a visited record, wherever it comes
+        readRecords(line -> {
+            if (line.charAt(0) == VISITED || line.charAt(0) == REDIRECT_TARGET) {
+                visited.add(unescape(line.substring(2)));
+            }
+        }, sources);
+        try (BufferedWriter out = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+            long[] written = {0};
+            readRecords(line -> {
+                if (line.charAt(0) == ENQUEUED) {
+                    String url = unescape(line.substring(2));
+                    if (visited.contains(url) || !enqueued.add(url)) {
+                        return;
+                    }
+                }
+                out.write(line);
+                out.newLine();
+                written[0]++;
+            }, sources);
+            kept = written[0];
+        }
+        
+        Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (Path journalFile : journals) {
+            Files.deleteIfExists(journalFile);
+        }
+        snapshotRecords = kept;
+        logger.debug("Compacted checkpoint snapshot to " + kept + " records");
+    }
+    
+    /**
+     * Callback for replayed checkpoint records
+     */
+    private interface RecordHandler {
+        void handle(char type, String[] fields);
+    }
+    
+    /**
+     * Callback for the raw lines read while compacting
+     */
+    private interface LineHandler {
+        void handle(String line) throws IOException;
+    }
+    
+    /**
+     * Read the well-formed records of the given files in order
+     */
+    private void readRecords(LineHandler handler, Path... sources) throws IOException {
+        for (Path source : sources) {
+            if (!Files.exists(source)) {
+                continue;
+            }
+            try (BufferedReader in = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.length() >= 3 && line.charAt(1) == '\t') {
+                        handler.handle(line);
+                    }
+                }
+            }
+        }
+    }
+    
+    private void replay(RecordHandler handler, Path... sources) throws IOException {
+        for (Path source : sources) {
+            if (!Files.exists(source)) {
+                continue;
+            }
+            try (BufferedReader in = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    // Skip blank lines and a record torn by a crash
+                    if (line.length() < 3 || line.charAt(1) != '\t') {
+                        continue;
+                    }
+                    String[] fields = line.split("\t", -1);
+                    for (int i = 1; i < fields.length; i++) {
+                        fields[i] = unescape(fields[i]);
+                    }
+                    handler.handle(line.charAt(0), fields);
+                }
+            }
+        }
+    }
+    
+    private static WebPage parsePage(String[] fields) {
+        WebPage page = new WebPage(fields[1], fields[2], fields[3]);
+        if (fields[4].startsWith("1")) {
+            page.setAiAnalysis(fields[4].substring(1));
+        }
+        for (int i = 5; i + 1 < fields.length; i += 2) {
+            page.addMetadata(fields[i], fields[i + 1]);
+        }
+        return page;
+    }
+    
+    /**
+     * Escape backslashes, tabs and line breaks so a record stays on one line
+     */
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '\\':
+                    result.append("\\\\");
+                    break;
+                case '\t':
+                    result.append("\\t");
+                    break;
+                case '\n':
+                    result.append("\\n");
+                    break;
+                case '\r':
+                    result.append("\\r");
+                    break;
+                default:
+                    result.append(ch);
+            }
+        }
+        return result.toString();
+    }
+    
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                result.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                result.append(ch);
+            }
+        }
+        return result.toString();
+    }
+}
@@ -1,5 +1,6 @@
 package storage;
 
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Map;
@@ -59,7 +60,7 @@ public class CsvExporter implements DataExporter {
             
             // Write summary at the end
             writer.write("\n\nSummary\n");
-            writer.write("Total Pages Visited," + result.getVisitedUrls().size() + "\n");
+            writer.write("Total Pages Visited," + result.getTotalVisited() + "\n");
             writer.write("Total Relevant Pages," + result.getRelevantPages().size() + "\n");
             
             logger.info("Successfully exported results to CSV file: " + filePath);
@@ -72,7 +73,7 @@ public class CsvExporter implements DataExporter {
     }
     
     /**
-     * Write a separate file with all visited URLs
+     * Write a separate file with all visited URLs, streamed from the crawl's visited URL log
      * 
      * @param result The crawl result
      * @param filePath The base file path (will append "_urls.csv")
@@ -80,12 +81,10 @@ public class CsvExporter implements DataExporter {
     public boolean exportVisitedUrls(CrawlResult result, String filePath) {
         String urlsFilePath = filePath.replace(".csv", "_urls.csv");
         
-        try (FileWriter writer = new FileWriter(urlsFilePath)) {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(urlsFilePath))) {
             writer.write("Visited URLs\n");
             
-            for (String url : result.getVisitedUrls()) {
-                writer.write("\"" + escapeCSV(url) + "\"\n");
-            }
+            result.getVisitedUrls().forEach(url -> writer.write("\"" + escapeCSV(url) + "\"\n"));
             
             logger.info("Successfully exported visited URLs to CSV file: " + urlsFilePath);
             return true;
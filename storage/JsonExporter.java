@@ -1,5 +1,6 @@
 package storage;
 
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Map;
@@ -20,27 +21,33 @@ public class JsonExporter implements DataExporter {
     
     @Override
     public boolean export(CrawlResult result, String filePath) {
-        try (FileWriter fileWriter = new FileWriter(filePath)) {
+        try (BufferedWriter fileWriter = new BufferedWriter(new FileWriter(filePath))) {
             StringBuilder json = new StringBuilder();
             
             // Start the JSON object
             json.append("{\n");
             
             // Add summary data
-            json.append("  \"total_pages_visited\": ").append(result.getVisitedUrls().size()).append(",\n");
+            json.append("  \"total_pages_visited\": ").append(result.getTotalVisited()).append(",\n");
             json.append("  \"total_relevant_pages\": ").append(result.getRelevantPages().size()).append(",\n");
             
-            // Add visited URLs
+            // Add visited URLs, streamed straight from the visited URL log
             json.append("  \"visited_urls\": [\n");
-            int urlCount = 0;
-            for (String url : result.getVisitedUrls()) {
-                json.append("    \"").append(escapeJsonString(url)).append("\"");
-                if (urlCount < result.getVisitedUrls().size() - 1) {
-                    json.append(",");
+            fileWriter.write(json.toString());
+            json.setLength(0);
+            
+            long totalVisited = result.getTotalVisited();
+            long[] urlCount = {0};
+            result.getVisitedUrls().forEach(url -> {
+                fileWriter.write("    \"");
+                fileWriter.write(escapeJsonString(url));
+                fileWriter.write("\"");
+                if (urlCount[0] < totalVisited - 1) {
+                    fileWriter.write(",");
                 }
-                json.append("\n");
-                urlCount++;
-            }
+                fileWriter.write("\n");
+                urlCount[0]++;
+            });
             json.append("  ],\n");
             
             // Add relevant pages with details
@@ -49,6 +56,9 @@ public class JsonExporter implements DataExporter {
             for (WebPage page : result.getRelevantPages()) {
                 json.append("    {\n");
                 json.append("      \"url\": \"").append(escapeJsonString(page.getUrl())).append("\",\n");
+                if (!page.getFinalUrl().equals(page.getUrl())) {
+                    json.append("      \"final_url\": \"").append(escapeJsonString(page.getFinalUrl())).append("\",\n");
+                }
                 json.append("      \"title\": \"").append(escapeJsonString(page.getTitle() != null ? page.getTitle() : "")).append("\",\n");
                 json.append("      \"content_length\": ").append(page.getContent() != null ? page.getContent().length() : 0).append(",\n");
                 
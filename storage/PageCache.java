@@ -0,0 +1,397 @@
+package storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import models.PageLink;
+import util.Logger;
+
+/**
+ * Persistent cache of fetched pages for incremental recrawls.
+ * <p>
+ * For every URL it keeps the HTTP validators (ETag, Last-Modified), a hash of
+ * the body and the parse results, so a page the server reports as unchanged
+ * can be processed without downloading or parsing it again. Entries are
+ * appended to a single data file as length-prefixed records; only the offset
+ * of each URL's latest record is held in memory and entries are read back on
+ * demand. Superseded records are dropped by rewriting the file on close once
+ * they make up more than half of it.
+ */
+public class PageCache implements AutoCloseable {
+    private static final String DATA_FILE = "pages.dat";
+    private static final String COMPACT_FILE = "pages.tmp";
+    private static final int MAX_URL_BYTES = 65536;
+    
+    private final Path dataPath;
+    private final Map<String, Long> offsets;
+    private final Logger logger;
+    private FileChannel channel;
+    private long liveBytes;
+    
+    /**
+     * Constructor for PageCache. Opens the cache in the directory, creating it if needed.
+     * 
+     * @param directory Directory holding the cache
+     * @throws IOException If the cache cannot be opened
+     */
+    public PageCache(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.dataPath = directory.resolve(DATA_FILE);
+        this.offsets = new ConcurrentHashMap<>();
+        this.logger = new Logger(PageCache.class.getSimpleName());
+        this.channel = FileChannel.open(dataPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        loadIndex();
+    }
+    
+    /**
+     * Look up the cached copy of a page
+     * 
+     * @param url The URL
+     * @return The cached page, or null if the URL is not cached or its record is unreadable
+     */
+    public CachedPage get(String url) {
+        Long offset = offsets.get(url);
+        if (offset == null) {
+            return null;
+        }
+        try {
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+            readFully(header, offset);
+            ByteBuffer record = ByteBuffer.allocate(header.flip().getInt());
+            readFully(record, offset + Integer.BYTES);
+            return decode(record.flip());
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error reading cached page for " + url + " - " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Store or replace the cached copy of a page
+     * 
+     * @param page The page to cache
+     */
+    public void put(CachedPage page) {
+        byte[] record = encode(page);
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + record.length);
+        buffer.putInt(record.length).put(record).flip();
+        synchronized (this) {
+            try {
+                long offset = channel.size();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, offset + buffer.position());
+                }
+                Long previous = offsets.put(page.getUrl(), offset);
+                if (previous == null) {
+                    liveBytes += buffer.limit();
+                } else {
+                    liveBytes += buffer.limit() - recordSize(previous);
+                }
+            } catch (IOException e) {
+                logger.error("Error caching page " + page.getUrl() + " - " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Get the number of cached URLs
+     * 
+     * @return The URL count
+     */
+    public int size() {
+        return offsets.size();
+    }
+    
+    /**
+     * Compact the data file if it is mostly superseded records, then close it
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (channel.size() > 2 * liveBytes) {
+                compact();
+            }
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Error closing page cache: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Scan the data file and remember the offset of each URL's latest record.
+     * A record torn by a crash ends the scan and is cut off.
+     */
+    private void loadIndex() throws IOException {
+        long size = channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        while (offset + Integer.BYTES <= size) {
+            header.clear();
+            readFully(header, offset);
+            int length = header.flip().getInt();
+            if (length <= 0 || offset + Integer.BYTES + length > size) {
+                break;
+            }
+            ByteBuffer urlBuffer = ByteBuffer.allocate(Math.min(length, Integer.BYTES + MAX_URL_BYTES));
+            readFully(urlBuffer, offset + Integer.BYTES);
+            String url = readString(urlBuffer.flip());
+            Long previous = offsets.put(url, offset);
+            liveBytes += Integer.BYTES + length - (previous != null ? recordSize(previous) : 0);
+            offset += Integer.BYTES + length;
+        }
+        if (offset < size) {
+            logger.error("Truncating damaged page cache record at offset " + offset);
+            channel.truncate(offset);
+        }
+        logger.info("Loaded page cache with " + offsets.size() + " pages");
+    }
+    
+    private void compact() throws IOException {
+        Path compactPath = dataPath.resolveSibling(COMPACT_FILE);
+        long newSize = 0;
+        try (FileChannel out = FileChannel.open(compactPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+                int size = recordSize(entry.getValue());
+                long copied = 0;
+                while (copied < size) {
+                    copied += channel.transferTo(entry.getValue() + copied, size - copied, out);
+                }
+                entry.setValue(newSize);
+                newSize += size;
+            }
+        }
+        channel.close();
+        Files.move(compactPath, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logger.debug("Compacted page cache to " + newSize + " bytes");
+    }
+    
+    private int recordSize(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        readFully(header, offset);
+        return Integer.BYTES + header.flip().getInt();
+    }
+    
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of page cache");
+            }
+        }
+    }
+    
+    private static byte[] encode(CachedPage page) {
+        try {
+            int textLength = page.getText() != null ? page.getText().length() : 0;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + textLength);
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, page.getUrl());
+            writeString(out, page.getEtag());
+            writeString(out, page.getLastModified());
+            out.writeLong(page.getContentHash());
+            out.writeLong(page.getBodyBytes());
+            out.writeLong(page.getParseNanos());
+            writeString(out, page.getTitle());
+            writeString(out, page.getText());
+            out.writeInt(page.getLinks().size());
+            for (PageLink link : page.getLinks()) {
+                writeString(out, link.getUrl());
+                writeString(out, link.getAnchorText());
+                writeString(out, link.getContext());
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static CachedPage decode(ByteBuffer in) {
+        String url = readString(in);
+        String etag = readString(in);
+        String lastModified = readString(in);
+        long contentHash = in.getLong();
+        long bodyBytes = in.getLong();
+        long parseNanos = in.getLong();
+        String title = readString(in);
+        String text = readString(in);
+        int linkCount = in.getInt();
+        List<PageLink> links = new ArrayList<>(linkCount);
+        for (int i = 0; i < linkCount; i++) {
+            links.add(new PageLink(readString(in), readString(in), readString(in)));
+        }
+        return new CachedPage(url, etag, lastModified, contentHash, bodyBytes, parseNanos, title, text, links);
+    }
+    
+    /**
+     * Strings are stored as a length (-1 for null) followed by UTF-8 bytes
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+    
+    /**
+     * Validators and parse results of one cached page
+     */
+    public static class CachedPage {
+        private final String url;
+        private final String etag;
+        private final String lastModified;
+        private final long contentHash;
+        private final long bodyBytes;
+        private final long parseNanos;
+        private final String title;
+        private final String text;
+        private final List<PageLink> links;
+        
+        /**
+         * Constructor for CachedPage
+         * 
+         * @param url The URL
+         * @param etag The ETag response header, or null
+         * @param lastModified The Last-Modified response header, or null
+         * @param contentHash Hash of the HTML body
+         * @param bodyBytes Number of bytes the body took on the wire
+         * @param parseNanos Time it took to parse the body
+         * @param title The extracted title
+         * @param text The extracted text
+         * @param links The extracted links
+         */
+        public CachedPage(String url, String etag, String lastModified, long contentHash, long bodyBytes,
+                          long parseNanos, String title, String text, List<PageLink> links) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.bodyBytes = bodyBytes;
+            this.parseNanos = parseNanos;
+            this.title = title;
+            this.text = text;
+            this.links = Collections.unmodifiableList(links);
+        }
+        
+        /**
+         * Get a copy of this page with new validators, e.g. after a 200 response with an unchanged body
+         * 
+         * @param etag The new ETag, or null
+         * @param lastModified The new Last-Modified value, or null
+         * @param bodyBytes The new wire size
+         * @return The updated page
+         */
+        public CachedPage withValidators(String etag, String lastModified, long bodyBytes) {
+            return new CachedPage(url, etag, lastModified, contentHash, bodyBytes, parseNanos, title, text, links);
+        }
+        
+        /**
+         * Get the URL
+         * 
+         * @return The URL
+         */
+        public String getUrl() {
+            return url;
+        }
+        
+        /**
+         * Get the ETag of the cached response
+         * 
+         * @return The ETag, or null
+         */
+        public String getEtag() {
+            return etag;
+        }
+        
+        /**
+         * Get the Last-Modified value of the cached response
+         * 
+         * @return The Last-Modified value, or null
+         */
+        public String getLastModified() {
+            return lastModified;
+        }
+        
+        /**
+         * Get the hash of the HTML body
+         * 
+         * @return The content hash
+         */
+        public long getContentHash() {
+            return contentHash;
+        }
+        
+        /**
+         * Get the number of bytes the body took on the wire
+         * 
+         * @return The byte count
+         */
+        public long getBodyBytes() {
+            return bodyBytes;
+        }
+        
+        /**
+         * Get the time it took to parse the body
+         * 
+         * @return The parse time in nanoseconds
+         */
+        public long getParseNanos() {
+            return parseNanos;
+        }
+        
+        /**
+         * Get the extracted title
+         * 
+         * @return The title
+         */
+        public String getTitle() {
+            return title;
+        }
+        
+        /**
+         * Get the extracted text
+         * 
+         * @return The text
+         */
+        public String getText() {
+            return text;
+        }
+        
+        /**
+         * Get the extracted links
+         * 
+         * @return The links
+         */
+        public List<PageLink> getLinks() {
+            return links;
+        }
+    }
+}
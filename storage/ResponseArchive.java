@@ -0,0 +1,415 @@
+package storage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import util.Logger;
+
+/**
+ * Archive of raw HTTP responses in WARC format, for re-running a crawl offline.
+ * <p>
+ * Each response is stored as a WARC/1.1 response record holding the status
+ * line, the headers and the body as received, still in its Content-Encoding.
+ * Every record is compressed as a gzip member of its own, so the files are
+ * regular {@code .warc.gz} files and any record can be read on its own. A
+ * crawl writes to a new file, rolled over to the next one at a size limit.
+ * <p>
+ * An index file maps each URL to the file, offset and length of its latest
+ * record. It is loaded into memory on open, so looking up a response costs
+ * one positional read. Index lines whose record did not make it to disk are
+ * ignored.
+ */
+public class ResponseArchive implements AutoCloseable {
+    private static final String FILE_PREFIX = "responses-";
+    private static final String FILE_SUFFIX = ".warc.gz";
+    private static final String INDEX_FILE = "responses.idx";
+    private static final byte[] CRLF = {'\r', '\n'};
+    
+    private final Path directory;
+    private final long maxFileBytes;
+    private final Map<String, Location> index;
+    private final Map<Integer, FileChannel> readers;
+    private final LongAdder replayed;
+    private final LongAdder notFound;
+    private final Logger logger;
+    private int fileNumber;
+    private FileChannel writer;
+    private BufferedWriter indexWriter;
+    private long responsesWritten;
+    private long bytesWritten;
+    
+    /**
+     * Constructor for ResponseArchive. Loads the index of the archive in the
+     * directory, creating the directory if needed; the first response written
+     * starts a new file.
+     * 
+     * @param directory Directory holding the archive files and their index
+     * @param maxFileBytes Size above which a new archive file is started
+     * @throws IOException If the directory or the index cannot be read
+     */
+    public ResponseArchive(Path directory, long maxFileBytes) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.index = new ConcurrentHashMap<>();
+        this.readers = new ConcurrentHashMap<>();
+        this.replayed = new LongAdder();
+        this.notFound = new LongAdder();
+        this.logger = new Logger(ResponseArchive.class.getSimpleName());
+        this.fileNumber = lastFileNumber();
+        loadIndex();
+    }
+    
+    /**
+     * Append a response to the archive
+     * 
+     * @param url The requested URL
+     * @param statusCode The response status
+     * @param headers The response headers
+     * @param body The body as received, or null if it was not read
+     * @param truncated Whether the body was cut off at the size limit
+     */
+    public void write(String url, int statusCode, Map<String, List<String>> headers, InputStream body,
+                      boolean truncated) {
+        byte[] record;
+        try {
+            record = encode(url, statusCode, headers, body, truncated);
+        } catch (IOException e) {
+            logger.error("Error archiving response for " + url + " - " + e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            try {
+                if (writer == null || (writer.size() > 0 && writer.size() + record.length > maxFileBytes)) {
+                    rollOver();
+                }
+                long offset = writer.size();
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining()) {
+                    writer.write(buffer, offset + buffer.position());
+                }
+                // URLs with raw tabs or line breaks cannot be indexed
+                if (url.indexOf('\t') < 0 && url.indexOf('\n') < 0 && url.indexOf('\r') < 0) {
+                    indexWriter.write(url + '\t' + fileNumber + '\t' + offset + '\t' + record.length);
+                    indexWriter.newLine();
+                    indexWriter.flush();
+                    index.put(url, new Location(fileNumber, offset, record.length));
+                }
+                responsesWritten++;
+                bytesWritten += record.length;
+            } catch (IOException e) {
+                logger.error("Error archiving response for " + url + " - " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Read the latest archived response for a URL
+     * 
+     * @param url The requested URL
+     * @return The response, or null if the URL is not in the archive or its record is unreadable
+     */
+    public ArchivedResponse read(String url) {
+        Location location = index.get(url);
+        if (location == null) {
+            notFound.increment();
+            return null;
+        }
+        try {
+            FileChannel channel = readers.computeIfAbsent(location.file(), this::openReader);
+            ByteBuffer buffer = ByteBuffer.allocate(location.length());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, location.offset() + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of archive file");
+                }
+            }
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(buffer.array()))) {
+                ArchivedResponse response = decode(in.readAllBytes());
+                replayed.increment();
+                return response;
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error reading archived response for " + url + " - " + e.getMessage());
+            notFound.increment();
+            return null;
+        }
+    }
+    
+    /**
+     * Get the number of URLs with an archived response
+     * 
+     * @return The URL count
+     */
+    public int size() {
+        return index.size();
+    }
+    
+    /**
+     * Get a one-line summary of the archive for logging
+     * 
+     * @return The summary
+     */
+    public synchronized String getSummary() {
+        return String.format("%d URLs indexed; %d responses written (%,d bytes compressed), "
+                             + "%d replayed, %d not found",
+                             index.size(), responsesWritten, bytesWritten, replayed.sum(), notFound.sum());
+    }
+    
+    /**
+     * Close the archive and index files
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (writer != null) {
+                writer.close();
+                indexWriter.close();
+                writer = null;
+            }
+            for (FileChannel channel : readers.values()) {
+                channel.close();
+            }
+            readers.clear();
+        } catch (IOException e) {
+            logger.error("Error closing response archive: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Start the next archive file, opening the index for appending on the first call
+     */
+    private void rollOver() throws IOException {
+        if (writer != null) {
+            writer.close();
+        } else {
+            indexWriter = Files.newBufferedWriter(directory.resolve(INDEX_FILE), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        }
+        fileNumber++;
+        writer = FileChannel.open(filePath(fileNumber), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        logger.info("Archiving responses to " + filePath(fileNumber));
+    }
+    
+    /**
+     * Read the index, keeping the latest record of each URL that lies within its file
+     */
+    private void loadIndex() throws IOException {
+        Path indexPath = directory.resolve(INDEX_FILE);
+        if (!Files.exists(indexPath)) {
+            return;
+        }
+        Map<Integer, Long> fileSizes = new HashMap<>();
+        long skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                try {
+                    Location location = new Location(Integer.parseInt(fields[1]), Long.parseLong(fields[2]),
+                                                     Integer.parseInt(fields[3]));
+                    long fileSize = fileSizes.computeIfAbsent(location.file(), this::fileSize);
+                    if (location.offset() + location.length() <= fileSize) {
+                        index.put(fields[0], location);
+                        continue;
+                    }
+                } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                    // A line torn by a crash
+                }
+                skipped++;
+            }
+        }
+        if (skipped > 0) {
+            logger.error("Skipped " + skipped + " response archive index entries without a complete record");
+        }
+        logger.info("Loaded response archive index with " + index.size() + " URLs");
+    }
+    
+    private long fileSize(int file) {
+        try {
+            return Files.size(filePath(file));
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+    
+    private FileChannel openReader(int file) {
+        try {
+            return FileChannel.open(filePath(file), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Find the highest number of the archive files in the directory
+     * 
+     * @return The file number, or 0 if there are none
+     */
+    private int lastFileNumber() throws IOException {
+        int last = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    last = Math.max(last, Integer.parseInt(
+                            name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        return last;
+    }
+    
+    private Path filePath(int file) {
+        return directory.resolve(String.format("%s%05d%s", FILE_PREFIX, file, FILE_SUFFIX));
+    }
+    
+    /**
+     * Build a gzip-compressed WARC response record
+     */
+    private static byte[] encode(String url, int statusCode, Map<String, List<String>> headers, InputStream body,
+                                 boolean truncated) throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream(1024);
+        writeLine(block, "HTTP/1.1 " + statusCode);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            String name = header.getKey();
+            // Pseudo-headers belong to HTTP/2 framing, and the body is stored de-chunked
+            if (name.startsWith(":") || name.equalsIgnoreCase("Transfer-Encoding")) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                writeLine(block, name + ": " + value);
+            }
+        }
+        block.write(CRLF);
+        if (body != null) {
+            body.transferTo(block);
+        }
+        
+        ByteArrayOutputStream record = new ByteArrayOutputStream(block.size() / 4 + 256);
+        try (OutputStream out = new GZIPOutputStream(record)) {
+            writeLine(out, "WARC/1.1");
+            writeLine(out, "WARC-Type: response");
+            writeLine(out, "WARC-Record-ID: <urn:uuid:" + UUID.randomUUID() + ">");
+            writeLine(out, "WARC-Date: " + Instant.now().truncatedTo(ChronoUnit.SECONDS));
+            writeLine(out, "WARC-Target-URI: " + url);
+            if (truncated) {
+                writeLine(out, "WARC-Truncated: length");
+            }
+            writeLine(out, "Content-Type: application/http;msgtype=response");
+            writeLine(out, "Content-Length: " + block.size());
+            out.write(CRLF);
+            block.writeTo(out);
+            out.write(CRLF);
+            out.write(CRLF);
+        }
+        return record.toByteArray();
+    }
+    
+    /**
+     * Parse a decompressed WARC response record
+     */
+    private static ArchivedResponse decode(byte[] record) throws IOException {
+        int[] position = {0};
+        String url = null;
+        boolean truncated = false;
+        long blockLength = -1;
+        String line;
+        while (!(line = readLine(record, position)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("WARC-Target-URI")) {
+                url = value;
+            } else if (name.equalsIgnoreCase("WARC-Truncated")) {
+                truncated = true;
+            } else if (name.equalsIgnoreCase("Content-Length")) {
+                blockLength = Long.parseLong(value);
+            }
+        }
+        int blockEnd = blockLength >= 0 ? (int) Math.min(record.length, position[0] + blockLength) : record.length;
+        
+        String[] statusLine = readLine(record, position).split(" ");
+        if (statusLine.length < 2 || !statusLine[0].startsWith("HTTP/")) {
+            throw new IOException("Malformed status line in archived response");
+        }
+        int statusCode = Integer.parseInt(statusLine[1]);
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        while (!(line = readLine(record, position)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.computeIfAbsent(line.substring(0, colon).trim(), name -> new ArrayList<>())
+                        .add(line.substring(colon + 1).trim());
+            }
+        }
+        byte[] body = Arrays.copyOfRange(record, Math.min(position[0], blockEnd), blockEnd);
+        return new ArchivedResponse(url, statusCode, headers, body, truncated);
+    }
+    
+    private static void writeLine(OutputStream out, String line) throws IOException {
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write(CRLF);
+    }
+    
+    /**
+     * Read a CRLF- or LF-terminated line, advancing the position past it
+     */
+    private static String readLine(byte[] bytes, int[] position) {
+        int start = position[0];
+        int end = start;
+        while (end < bytes.length && bytes[end] != '\n') {
+            end++;
+        }
+        position[0] = Math.min(bytes.length, end + 1);
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+    
+    private record Location(int file, long offset, int length) {
+    }
+    
+    /**
+     * A response read back from the archive
+     * 
+     * @param url The requested URL
+     * @param statusCode The response status
+     * @param headers The response headers
+     * @param body The body as received, empty if it was not read
+     * @param truncated Whether the body was cut off at the size limit when it was archived
+     */
+    public record ArchivedResponse(String url, int statusCode, Map<String, List<String>> headers, byte[] body,
+                                   boolean truncated) {
+    }
+}
@@ -0,0 +1,127 @@
+package storage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import util.Logger;
+
+/**
+ * Append-only file of visited URLs, one per line.
+ * <p>
+ * The crawler only keeps fingerprints of visited URLs in memory, so the URL
+ * strings needed for export are streamed to this log as they are claimed and
+ * read back from disk by the exporters.
+ */
+public class VisitedUrlLog implements AutoCloseable {
+    private final Path path;
+    private final BufferedWriter writer;
+    private final Logger logger;
+    private long count;
+    private boolean closed;
+    
+    /**
+     * Callback for streaming URLs out of the log
+     */
+    public interface UrlConsumer {
+        /**
+         * Receive one URL from the log
+         * 
+         * @param url The URL
+         * @throws IOException If handling the URL fails
+         */
+        void accept(String url) throws IOException;
+    }
+    
+    /**
+     * Create a log in a temporary file that is deleted on exit
+     * 
+     * @return The new log
+     * @throws IOException If the file cannot be created
+     */
+    public static VisitedUrlLog createTemporary() throws IOException {
+        Path path = Files.createTempFile("visited-urls", ".log");
+        path.toFile().deleteOnExit();
+        return new VisitedUrlLog(path);
+    }
+    
+    /**
+     * Constructor for VisitedUrlLog. An existing file at the path is truncated.
+     * 
+     * @param path The file to write
+     * @throws IOException If the file cannot be opened
+     */
+    public VisitedUrlLog(Path path) throws IOException {
+        this.path = path;
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.logger = new Logger(VisitedUrlLog.class.getSimpleName());
+    }
+    
+    /**
+     * Append a visited URL
+     * 
+     * @param url The URL
+     */
+    public synchronized void append(String url) {
+        if (closed) {
+            logger.error("Visited URL log is closed, dropping: " + url);
+            return;
+        }
+        try {
+            writer.write(url);
+            writer.newLine();
+            count++;
+        } catch (IOException e) {
+            logger.error("Error writing visited URL log " + path + " - " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Get the number of URLs appended
+     * 
+     * @return The URL count
+     */
+    public synchronized long size() {
+        return count;
+    }
+    
+    /**
+     * Stream every logged URL, in the order they were appended
+     * 
+     * @param consumer Receives each URL
+     * @throws IOException If the log cannot be read or the consumer fails
+     */
+    public void forEach(UrlConsumer consumer) throws IOException {
+        synchronized (this) {
+            if (!closed) {
+                writer.flush();
+            }
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                consumer.accept(line);
+            }
+        }
+    }
+    
+    /**
+     * Get the path of the log file
+     * 
+     * @return The file path
+     */
+    public Path getPath() {
+        return path;
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        writer.close();
+    }
+}
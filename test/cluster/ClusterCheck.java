@@ -0,0 +1,403 @@
+package cluster;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import config.CrawlConfig;
+import crawler.BreadthFirstCrawler;
+import crawler.WebCrawler;
+import models.CrawlResult;
+import storage.VisitedUrlLog;
+import util.Logger;
+import util.UrlUtils;
+
+/**
+ * Runnable check of multi-node crawling with several local node processes.
+ * <p>
+ * The parent process serves a site of {@link #HOSTS} hosts from a local
+ * {@link HttpServer}; the hosts are the loopback addresses 127.0.0.1,
+ * 127.0.0.2 and so on, which all reach the same server. Pages link within
+ * their host and across hosts. Each node is a child JVM running a clustered
+ * crawl, which reports the URLs it visited. Three scenarios are checked:
+ * <ul>
+ *   <li>Partitioning: three nodes start together. Every page is fetched
+ *       exactly once, and all pages of a host are fetched by the same node.</li>
+ *   <li>Leaving: one of three nodes stops early at its maxPages and leaves.
+ *       The others take over its hosts and frontier, and still every page is
+ *       fetched exactly once.</li>
+ *   <li>Joining: a third node joins two running nodes and takes over some
+ *       hosts. Every page is fetched exactly once, and the new node crawls.</li>
+ * </ul>
+ * Before them, two {@link ClusterNode}s in this process check the leave
+ * handshake: a link still buffered for a node when it leaves must come back to
+ * the surviving node instead of being lost.
+ * Compile it together with the main sources and run it with
+ * {@code java -cp <classes> cluster.ClusterCheck}; the exit status is non-zero
+ * if any check fails.
+ */
+public class ClusterCheck {
+    private static final int HOSTS = 12;
+    private static final int PAGES_PER_HOST = 25;
+    private static final long REQUEST_DELAY_MS = 300;
+    private static final long IDLE_TIMEOUT_MS = 3000;
+    private static final long PAGE_DELAY_MS = 10;
+    private static final long NODE_TIMEOUT_SECONDS = 90;
+    private static final int UNLIMITED_PAGES = 100_000;
+    
+    private final Map<String, AtomicInteger> fetches = new ConcurrentHashMap<>();
+    private final List<String> failures = new ArrayList<>();
+    private HttpServer server;
+    private int port;
+    
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("node")) {
+            runNode(args);
+            return;
+        }
+        
+        Logger.setLogLevel(2);
+        ClusterCheck check = new ClusterCheck();
+        check.startServer();
+        try {
+            check.checkLeaveHandshake();
+            check.checkPartitioning();
+            check.checkLeaving();
+            check.checkJoining();
+        } finally {
+            check.server.stop(0);
+        }
+        
+        if (!check.failures.isEmpty()) {
+            for (String failure : check.failures) {
+                System.out.println("FAIL: " + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("OK: all cluster checks passed");
+        System.exit(0);
+    }
+    
+    /**
+     * A link buffered for a node that leaves is sent to it before the
+     * acknowledgement, and the leaving node forwards it back to the survivor
+     */
+    private void checkLeaveHandshake() throws Exception {
+        String name = "leave handshake";
+        List<String> members = members("a", "b");
+        ClusterMember a = ClusterMember.parse(members.get(0));
+        ClusterMember b = ClusterMember.parse(members.get(1));
+        // Batches are never full and never flushed on a timer, so the link stays buffered until the leave
+        ClusterNode survivor = new ClusterNode(a, List.of(b), UNLIMITED_PAGES, TimeUnit.HOURS.toMillis(1));
+        ClusterNode leaver = new ClusterNode(b, List.of(a), UNLIMITED_PAGES, TimeUnit.HOURS.toMillis(1));
+        Set<String> received = ConcurrentHashMap.newKeySet();
+        survivor.start(received::add, VisitedUrlLog.createTemporary());
+        // A link the survivor sends while handing off to the joining leaver is the leaver's to crawl, not lost
+        leaver.start(received::add, VisitedUrlLog.createTemporary());
+        // The survivor dropped the leaver if it was not listening yet; wait for its HELLO
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (survivor.getNodeCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        String link = null;
+        try {
+            for (int host = 1; host <= HOSTS && link == null; host++) {
+                if (!survivor.isLocal(pageUrl(host, 0))) {
+                    link = pageUrl(host, 0);
+                }
+            }
+            if (link != null) {
+                survivor.forward(link);
+                leaver.leave();
+            }
+        } finally {
+            // Returns once the survivor has acknowledged, sending back what it forwarded
+            leaver.close();
+        }
+        
+        deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (link != null && !received.contains(link) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        survivor.close();
+        expect(link != null, name + ": no host is owned by the leaving node");
+        expect(link == null || received.contains(link), name + ": link buffered for the leaving node was lost");
+    }
+    
+    /**
+     * Three nodes crawl the site together; each host belongs to one of them
+     */
+    private void checkPartitioning() throws Exception {
+        String name = "partitioning";
+        fetches.clear();
+        List<String> members = members("a", "b", "c");
+        List<Node> nodes = new ArrayList<>();
+        for (String member : members) {
+            nodes.add(startNode(member, members, UNLIMITED_PAGES));
+        }
+        Map<String, List<String>> visited = await(nodes);
+        
+        expectEveryPageFetchedOnce(name);
+        Map<String, String> hostOwner = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : visited.entrySet()) {
+            for (String url : entry.getValue()) {
+                String owner = hostOwner.putIfAbsent(UrlUtils.getDomain(url), entry.getKey());
+                expect(owner == null || owner.equals(entry.getKey()),
+                       name + ": host of " + url + " crawled by " + owner + " and " + entry.getKey());
+            }
+        }
+        for (Map.Entry<String, List<String>> entry : visited.entrySet()) {
+            expect(!entry.getValue().isEmpty(), name + ": node " + entry.getKey() + " crawled nothing");
+        }
+    }
+    
+    /**
+     * A node that reaches its maxPages leaves, and the others finish its work
+     */
+    private void checkLeaving() throws Exception {
+        String name = "leaving";
+        fetches.clear();
+        List<String> members = members("a", "b", "c");
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(startNode(members.get(0), members, UNLIMITED_PAGES));
+        nodes.add(startNode(members.get(1), members, UNLIMITED_PAGES));
+        nodes.add(startNode(members.get(2), members, PAGES_PER_HOST / 2));
+        Map<String, List<String>> visited = await(nodes);
+        
+        expectEveryPageFetchedOnce(name);
+        expect(visited.get("c").size() <= PAGES_PER_HOST / 2,
+               name + ": leaving node crawled " + visited.get("c").size() + " pages");
+    }
+    
+    /**
+     * A node joins while two others are crawling and takes over some hosts
+     */
+    private void checkJoining() throws Exception {
+        String name = "joining";
+        fetches.clear();
+        List<String> members = members("a", "b", "d");
+        List<String> founders = members.subList(0, 2);
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(startNode(members.get(0), founders, UNLIMITED_PAGES));
+        nodes.add(startNode(members.get(1), founders, UNLIMITED_PAGES));
+        // Join once the founders are under way
+        long deadline = System.currentTimeMillis() + NODE_TIMEOUT_SECONDS * 1000;
+        while (totalFetches() < HOSTS * PAGES_PER_HOST / 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        nodes.add(startNode(members.get(2), members, UNLIMITED_PAGES));
+        Map<String, List<String>> visited = await(nodes);
+        
+        expectEveryPageFetchedOnce(name);
+        expect(!visited.get("d").isEmpty(), name + ": joining node crawled nothing");
+    }
+    
+    private void expectEveryPageFetchedOnce(String name) {
+        int missing = 0;
+        for (int host = 1; host <= HOSTS; host++) {
+            for (int page = 0; page < PAGES_PER_HOST; page++) {
+                AtomicInteger count = fetches.get(pageKey(host, page));
+                if (count == null) {
+                    missing++;
+                } else {
+                    expect(count.get() == 1, name + ": " + pageKey(host, page) + " fetched " + count.get() + " times");
+                }
+            }
+        }
+        expect(missing == 0, name + ": " + missing + " pages never fetched");
+    }
+    
+    private int totalFetches() {
+        return fetches.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+    
+    /**
+     * Get member specifications with free ports
+     * 
+     * @param ids The node ids
+     * @return The members as id@host:port
+     */
+    private static List<String> members(String... ids) throws IOException {
+        List<String> members = new ArrayList<>();
+        for (String id : ids) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                members.add(id + "@127.0.0.1:" + socket.getLocalPort());
+            }
+        }
+        return members;
+    }
+    
+    /**
+     * Start a node process seeded with the first page of the first host
+     * 
+     * @param member This node as id@host:port
+     * @param members All nodes it knows at startup, possibly including itself
+     * @param maxPages The node's page budget
+     * @return The running node
+     */
+    private Node startNode(String member, List<String> members, int maxPages) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ClusterCheck.class.getName(), "node", member, String.join(",", members),
+                pageUrl(1, 0), String.valueOf(maxPages));
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+        
+        String id = member.substring(0, member.indexOf('@'));
+        List<String> visited = new ArrayList<>();
+        Thread reader = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("VISITED ")) {
+                        visited.add(line.substring("VISITED ".length()));
+                    } else {
+                        System.out.println("[" + id + "] " + line);
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("[" + id + "] output lost - " + e.getMessage());
+            }
+        });
+        reader.start();
+        return new Node(id, process, visited, reader);
+    }
+    
+    /**
+     * Wait for nodes to finish and collect the URLs they visited
+     * 
+     * @param nodes The running nodes
+     * @return Visited URLs by node id
+     */
+    private Map<String, List<String>> await(List<Node> nodes) throws InterruptedException {
+        Map<String, List<String>> visited = new HashMap<>();
+        for (Node node : nodes) {
+            if (!node.process().waitFor(NODE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                node.process().destroyForcibly();
+                failures.add("node " + node.id() + " did not finish");
+            } else if (node.process().exitValue() != 0) {
+                failures.add("node " + node.id() + " exited with " + node.process().exitValue());
+            }
+            node.reader().join();
+            visited.put(node.id(), node.visited());
+        }
+        return visited;
+    }
+    
+    /**
+     * Entry point of a node process: crawl as part of the cluster and print
+     * every visited URL
+     */
+    private static void runNode(String[] args) throws IOException {
+        Logger.setLogLevel(2);
+        String self = args[1];
+        List<String> peers = new ArrayList<>();
+        for (String member : args[2].split(",")) {
+            if (!member.equals(self)) {
+                peers.add(member);
+            }
+        }
+        CrawlConfig config = new CrawlConfig.Builder()
+                .setSeedUrl(args[3])
+                .setKeywords(new String[]{"cluster"})
+                .setMaxPages(Integer.parseInt(args[4]))
+                .setParallelism(4)
+                .setRequestDelay(REQUEST_DELAY_MS)
+                .setRespectRobotsTxt(false)
+                .setClusterNode(self)
+                .setClusterPeers(peers.toArray(new String[0]))
+                .setClusterIdleTimeout(IDLE_TIMEOUT_MS)
+                .build();
+        CrawlResult result = new WebCrawler(new BreadthFirstCrawler(), config).crawl();
+        result.getVisitedUrls().forEach(url -> System.out.println("VISITED " + url));
+        System.out.flush();
+        System.exit(0);
+    }
+    
+    private void startServer() throws IOException {
+        // The wildcard address also accepts connections to 127.0.0.2 and up
+        server = HttpServer.create(new InetSocketAddress(0), 64);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", this::handle);
+        server.start();
+        port = server.getAddress().getPort();
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        String hostHeader = exchange.getRequestHeaders().getFirst("Host");
+        String path = exchange.getRequestURI().getPath();
+        if (hostHeader == null || !path.startsWith("/p")) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        String hostName = hostHeader.substring(0, hostHeader.lastIndexOf(':'));
+        int host = Integer.parseInt(hostName.substring(hostName.lastIndexOf('.') + 1));
+        int page = Integer.parseInt(path.substring(2));
+        fetches.computeIfAbsent(pageKey(host, page), key -> new AtomicInteger()).incrementAndGet();
+        try {
+            Thread.sleep(PAGE_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        // Two pages further on the same host, plus the same page of two other hosts
+        Set<String> links = new HashSet<>();
+        for (int next = page + 1; next <= page + 2 && next < PAGES_PER_HOST; next++) {
+            links.add(pageUrl(host, next));
+        }
+        links.add(pageUrl(host % HOSTS + 1, page));
+        links.add(pageUrl((host * 7) % HOSTS + 1, page));
+        StringBuilder html = new StringBuilder("<html><head><title>Cluster check</title></head><body>");
+        for (String link : links) {
+            html.append("<a href=\"").append(link).append("\">").append(link).append("</a>");
+        }
+        html.append("</body></html>");
+        byte[] body = html.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    private String pageUrl(int host, int page) {
+        return "http://127.0.0." + host + ":" + port + "/p" + page;
+    }
+    
+    private static String pageKey(int host, int page) {
+        return "127.0.0." + host + "/p" + page;
+    }
+    
+    private void expect(boolean condition, String failure) {
+        if (!condition) {
+            failures.add(failure);
+        }
+    }
+    
+    /**
+     * A running node process and the URLs it reported, which are complete once
+     * the reader thread has finished
+     */
+    private record Node(String id, Process process, List<String> visited, Thread reader) {
+    }
+}
@@ -0,0 +1,340 @@
+package crawler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import config.CrawlConfig;
+import models.CrawlResult;
+import util.Logger;
+
+/**
+ * Runnable check of the maxPages cap and the BFS/DFS ordering guarantees
+ * documented on {@link WebCrawler}, crawling a site served from a local
+ * {@link HttpServer}.
+ * <p>
+ * The site is a tree: "/t" links to "/t/a1", "/t/b1" and "/t/c1", each of those
+ * links to three children of its own ("/t/a1/a2" and so on), down to
+ * {@link #TREE_DEPTH}. For the redirect case of the maxPages check, every
+ * "c" child answers with a 301 to the same page under "/r", so the crawl claims
+ * a second, final URL for a third of its pages.
+ * Ordering is checked on the crawl's visited log, which is in claim order,
+ * against a log of the calls made to the strategy, replayed through a plain
+ * queue or stack. The server's request log is used to check that no page was
+ * fetched twice and that the cap held on the wire. Each scenario runs
+ * sequentially (parallelism 1) and concurrently.
+ * <p>
+ * Compile it together with the main sources and run it with
+ * {@code java -cp <classes> crawler.CrawlOrderingCheck}; the exit status is
+ * non-zero if any check fails.
+ */
+public class CrawlOrderingCheck {
+    private static final int TREE_DEPTH = 12;
+    private static final int BRANCHING = 3;
+    private static final int MAX_PAGES = 60;
+    private static final int CONCURRENT_PARALLELISM = 8;
+    private static final long PAGE_DELAY_MS = 5;
+    
+    private final List<String> requestedPaths = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger redirectsSent = new AtomicInteger();
+    private final List<String> failures = new ArrayList<>();
+    private HttpServer server;
+    private String baseUrl;
+    private volatile boolean redirecting;
+    
+    public static void main(String[] args) throws Exception {
+        Logger.setLogLevel(2);
+        CrawlOrderingCheck check = new CrawlOrderingCheck();
+        check.startServer();
+        try {
+            check.checkMaxPagesCap(1, false);
+            check.checkMaxPagesCap(CONCURRENT_PARALLELISM, false);
+            check.checkMaxPagesCap(1, true);
+            check.checkMaxPagesCap(CONCURRENT_PARALLELISM, true);
+            check.checkStrategyOrder(new BreadthFirstCrawler(), false, 1);
+            check.checkStrategyOrder(new BreadthFirstCrawler(), false, CONCURRENT_PARALLELISM);
+            check.checkStrategyOrder(new DepthFirstCrawler(), true, 1);
+            check.checkStrategyOrder(new DepthFirstCrawler(), true, CONCURRENT_PARALLELISM);
+            check.checkBreadthFirstRuns(1);
+            check.checkBreadthFirstRuns(CONCURRENT_PARALLELISM);
+        } finally {
+            check.server.stop(0);
+        }
+        
+        if (!check.failures.isEmpty()) {
+            for (String failure : check.failures) {
+                System.out.println("FAIL: " + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("OK: all crawl ordering checks passed");
+        System.exit(0);
+    }
+    
+    /**
+     * The crawl claims exactly maxPages URLs on a larger site, the server sees
+     * no more page requests than that and no page is fetched twice. With
+     * redirects, the final URLs of redirected pages are neither logged nor
+     * counted, so every claimed URL is still a page served.
+     * 
+     * @param parallelism The crawl parallelism
+     * @param withRedirects true to redirect every "c" child
+     */
+    private void checkMaxPagesCap(int parallelism, boolean withRedirects) throws IOException {
+        String name = "maxPages cap (parallelism " + parallelism + (withRedirects ? ", redirects" : "") + ")";
+        redirecting = withRedirects;
+        List<String> claimed;
+        try {
+            claimed = crawl(new BreadthFirstCrawler(), parallelism);
+        } finally {
+            redirecting = false;
+        }
+        
+        expect(claimed.size() == MAX_PAGES, name + ": claimed " + claimed.size() + " URLs, expected " + MAX_PAGES);
+        List<String> fetched = new ArrayList<>(requestedPaths);
+        expect(fetched.size() <= MAX_PAGES, name + ": server saw " + fetched.size() + " page requests");
+        expect(new HashSet<>(fetched).size() == fetched.size(), name + ": a page was fetched more than once");
+        expect(new HashSet<>(claimed).size() == claimed.size(), name + ": a URL was claimed more than once");
+        if (parallelism > 1) {
+            expect(maxInFlight.get() > 1, name + ": requests never overlapped");
+        }
+        if (withRedirects) {
+            expect(redirectsSent.get() > 0, name + ": no page was redirected");
+            expect(fetched.size() == MAX_PAGES, name + ": served " + fetched.size() + " pages, expected " + MAX_PAGES);
+            expect(claimed.stream().noneMatch(path -> path.startsWith("/r/")),
+                   name + ": a redirect target was logged as visited");
+        }
+    }
+    
+    /**
+     * The crawler claims exactly the URLs the strategy hands out, in that
+     * order, and the strategy hands them out in FIFO (BFS) or LIFO (DFS) order
+     * of the calls made to it, however the workers interleave
+     * 
+     * @param strategy The strategy under test
+     * @param lifo true if the strategy should behave as a stack
+     * @param parallelism The crawl parallelism
+     */
+    private void checkStrategyOrder(CrawlStrategy strategy, boolean lifo, int parallelism) throws IOException {
+        String name = (lifo ? "DFS" : "BFS") + " order (parallelism " + parallelism + ")";
+        RecordingStrategy recorder = new RecordingStrategy(strategy);
+        List<String> claimed = crawl(recorder, parallelism);
+        
+        List<String> handedOut = new ArrayList<>();
+        Deque<String> model = new ArrayDeque<>();
+        Set<String> seen = new HashSet<>();
+        for (String event : recorder.events) {
+            String url = event.substring(2);
+            if (event.startsWith("+ ")) {
+                if (seen.add(url)) {
+                    if (lifo) {
+                        model.addFirst(url);
+                    } else {
+                        model.addLast(url);
+                    }
+                }
+            } else {
+                String expected = model.pollFirst();
+                expect(url.equals(expected), name + ": handed out " + url + " where the model expected " + expected);
+                handedOut.add(url.substring(baseUrl.length()));
+            }
+        }
+        expect(claimed.equals(handedOut), name + ": claim order differs from the order the strategy handed URLs out");
+    }
+    
+    /**
+     * BFS links of one page are queued together by the single sink thread, so
+     * every page's children are claimed as one contiguous run. Sequentially,
+     * depths never decrease.
+     * 
+     * @param parallelism The crawl parallelism
+     */
+    private void checkBreadthFirstRuns(int parallelism) throws IOException {
+        String name = "BFS runs (parallelism " + parallelism + ")";
+        List<String> claimed = crawl(new BreadthFirstCrawler(), parallelism);
+        
+        Map<String, Integer> position = positions(claimed);
+        Set<String> startedParents = new HashSet<>();
+        int runLength = 0;
+        for (int i = 1; i < claimed.size(); i++) {
+            String path = claimed.get(i);
+            String parent = parentOf(path);
+            expect(position.getOrDefault(parent, Integer.MAX_VALUE) < i,
+                   name + ": " + path + " claimed before its parent");
+            if (startedParents.add(parent)) {
+                expect(i == 1 || runLength == BRANCHING,
+                       name + ": run before " + path + " has " + runLength + " pages");
+                runLength = 1;
+            } else {
+                expect(parent.equals(parentOf(claimed.get(i - 1))),
+                       name + ": children of " + parent + " are not contiguous at " + path);
+                runLength++;
+            }
+            if (parallelism == 1) {
+                expect(depthOf(path) >= depthOf(claimed.get(i - 1)), name + ": depth decreased at " + path);
+            }
+        }
+    }
+    
+    /**
+     * Crawl the tree from its root and return the claimed paths in claim order
+     * 
+     * @param strategy The crawl strategy
+     * @param parallelism The crawl parallelism
+     * @return Paths of the claimed URLs
+     */
+    private List<String> crawl(CrawlStrategy strategy, int parallelism) throws IOException {
+        requestedPaths.clear();
+        maxInFlight.set(0);
+        redirectsSent.set(0);
+        CrawlConfig config = new CrawlConfig.Builder()
+                .setSeedUrl(baseUrl + "/t")
+                .setKeywords(new String[]{"tree"})
+                .setMaxPages(MAX_PAGES)
+                .setRequestDelay(0)
+                .setParallelism(parallelism)
+                .build();
+        CrawlResult result = new WebCrawler(strategy, config).crawl();
+        
+        List<String> claimed = new ArrayList<>();
+        result.getVisitedUrls().forEach(url -> claimed.add(url.substring(baseUrl.length())));
+        return claimed;
+    }
+    
+    private void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (redirecting && path.startsWith("/r/t/")) {
+            path = path.substring(2);
+        } else if (!path.equals("/t") && !path.startsWith("/t/")) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        } else if (redirecting && path.substring(path.lastIndexOf('/') + 1).startsWith("c")) {
+            redirectsSent.incrementAndGet();
+            exchange.getResponseHeaders().add("Location", "/r" + path);
+            exchange.sendResponseHeaders(301, -1);
+            exchange.close();
+            return;
+        }
+        
+        requestedPaths.add(path);
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            Thread.sleep(PAGE_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        StringBuilder html = new StringBuilder("<html><head><title>")
+                .append(path).append("</title></head><body><p>A tree page at depth ")
+                .append(depthOf(path)).append("</p>");
+        if (depthOf(path) < TREE_DEPTH) {
+            for (int i = 0; i < BRANCHING; i++) {
+                // Segments never repeat, so no child looks like a crawler trap
+                String segment = (char) ('a' + i) + String.valueOf(depthOf(path) + 1);
+                html.append("<a href=\"").append(path).append('/').append(segment).append("\">child ")
+                    .append(segment).append("</a>");
+            }
+        }
+        html.append("</body></html>");
+        
+        byte[] body = html.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        inFlight.decrementAndGet();
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    private void expect(boolean condition, String failure) {
+        if (!condition) {
+            failures.add(failure);
+        }
+    }
+    
+    private static Map<String, Integer> positions(List<String> claimed) {
+        Map<String, Integer> position = new HashMap<>();
+        for (int i = 0; i < claimed.size(); i++) {
+            position.put(claimed.get(i), i);
+        }
+        return position;
+    }
+    
+    private static String parentOf(String path) {
+        return path.substring(0, path.lastIndexOf('/'));
+    }
+    
+    private static int depthOf(String path) {
+        return (int) path.chars().filter(c -> c == '/').count() - 1;
+    }
+    
+    /**
+     * Strategy wrapper that logs, in one global order, every URL offered to the
+     * strategy ("+ url") and every URL it hands out ("- url")
+     */
+    private static class RecordingStrategy implements CrawlStrategy {
+        private final CrawlStrategy delegate;
+        private final List<String> events = new ArrayList<>();
+        
+        RecordingStrategy(CrawlStrategy delegate) {
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public synchronized void initialize(Set<String> frontier, VisitedUrlSet visitedUrls, int maxPages) {
+            for (String url : frontier) {
+                events.add("+ " + url);
+            }
+            delegate.initialize(frontier, visitedUrls, maxPages);
+        }
+        
+        @Override
+        public synchronized String next() {
+            String url = delegate.next();
+            if (url != null) {
+                events.add("- " + url);
+            }
+            return url;
+        }
+        
+        @Override
+        public synchronized boolean hasNext() {
+            return delegate.hasNext();
+        }
+        
+        @Override
+        public synchronized void addUrl(String url) {
+            events.add("+ " + url);
+            delegate.addUrl(url);
+        }
+    }
+}
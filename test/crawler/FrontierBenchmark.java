@@ -0,0 +1,124 @@
+package crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import util.Logger;
+
+/**
+ * Runnable benchmark of frontier operations per second in
+ * {@link BreadthFirstCrawler} and {@link DepthFirstCrawler}.
+ * <p>
+ * For each frontier size N, a fresh strategy gets N distinct URLs, then the
+ * same N URLs again, which must all be rejected as already queued, and is
+ * then drained. Adds (distinct and duplicate) and takes are timed separately.
+ * The visited set is empty, so only the frontier itself is measured. With a
+ * linear membership scan the larger sizes would not finish. Each run must
+ * hand out every URL exactly once.
+ * <p>
+ * Compile it together with the main sources and run it with
+ * {@code java -Xmx4g -cp <classes> crawler.FrontierBenchmark [sizes...]}; the
+ * default sizes are 10,000 and 1,000,000, and 10,000,000 needs the larger heap.
+ * The exit status is non-zero if any check fails.
+ */
+public class FrontierBenchmark {
+    private static final int[] DEFAULT_SIZES = {10_000, 1_000_000};
+    
+    private final List<String> failures = new ArrayList<>();
+    
+    public static void main(String[] args) {
+        Logger.setLogLevel(2);
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        
+        FrontierBenchmark benchmark = new FrontierBenchmark();
+        System.out.println("       N   strategy   add (M ops/s)   next (M ops/s)");
+        for (int size : sizes) {
+            String[] urls = urls(size);
+            benchmark.run("BFS", new BreadthFirstCrawler(), urls);
+            benchmark.run("DFS", new DepthFirstCrawler(), urls);
+        }
+        
+        if (!benchmark.failures.isEmpty()) {
+            for (String failure : benchmark.failures) {
+                System.out.println("FAIL: " + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("OK: all frontier benchmark runs passed");
+        System.exit(0);
+    }
+    
+    /**
+     * Fill a strategy with URLs and their duplicates, then drain it
+     * 
+     * @param name The strategy name to report
+     * @param strategy A fresh strategy
+     * @param urls The distinct URLs to queue
+     */
+    private void run(String name, CrawlStrategy strategy, String[] urls) {
+        strategy.initialize(Set.of(), new EmptyVisitedSet(), Integer.MAX_VALUE);
+        
+        long addStart = System.nanoTime();
+        for (String url : urls) {
+            strategy.addUrl(url);
+        }
+        for (String url : urls) {
+            strategy.addUrl(url);
+        }
+        long addNanos = System.nanoTime() - addStart;
+        
+        long nextStart = System.nanoTime();
+        int taken = 0;
+        while (strategy.hasNext()) {
+            if (strategy.next() != null) {
+                taken++;
+            }
+        }
+        long nextNanos = System.nanoTime() - nextStart;
+        
+        System.out.println(String.format("%,10d   %-8s   %13.2f   %14.2f", urls.length, name,
+                                         2.0 * urls.length / addNanos * 1000, (double) taken / nextNanos * 1000));
+        expect(taken == urls.length, name + " with " + urls.length + " URLs: handed out " + taken);
+    }
+    
+    private static String[] urls(int count) {
+        String[] urls = new String[count];
+        for (int i = 0; i < count; i++) {
+            urls[i] = "https://host" + (i % 1000) + ".example.com/page/" + i;
+        }
+        return urls;
+    }
+    
+    private void expect(boolean condition, String failure) {
+        if (!condition) {
+            failures.add(failure);
+        }
+    }
+    
+    /**
+     * Visited set that never holds anything, so every add reaches the frontier
+     */
+    private static class EmptyVisitedSet implements VisitedUrlSet {
+        @Override
+        public boolean add(String url) {
+            return true;
+        }
+        
+        @Override
+        public boolean contains(String url) {
+            return false;
+        }
+        
+        @Override
+        public long size() {
+            return 0;
+        }
+    }
+}
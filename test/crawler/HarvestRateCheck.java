@@ -0,0 +1,148 @@
+package crawler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import config.CrawlConfig;
+import models.CrawlResult;
+import util.Logger;
+
+/**
+ * Runnable check of the harvest rate of {@link BestFirstCrawler}, the number
+ * of relevant pages found per 1,000 fetches, against
+ * {@link BreadthFirstCrawler} on a synthetic site served from a local
+ * {@link HttpServer}.
+ * <p>
+ * The site has {@link #SITE_PAGES} pages. Every {@link #RELEVANT_EVERY}th page
+ * is about the keyword, and links to such pages mention it in their anchor
+ * text, which is the signal a focused crawl can follow. Each strategy crawls
+ * {@link #MAX_PAGES} pages at parallelism {@link #PARALLELISM}. Best-first
+ * must harvest at least {@link #MIN_IMPROVEMENT} times as many relevant pages
+ * as breadth-first.
+ * <p>
+ * Compile it together with the main sources and run it with
+ * {@code java -cp <classes> crawler.HarvestRateCheck}; the exit status is
+ * non-zero if any check fails.
+ */
+public class HarvestRateCheck {
+    private static final String KEYWORD = "java";
+    private static final int SITE_PAGES = 2000;
+    private static final int RELEVANT_EVERY = 5;
+    private static final int LINKS_PER_PAGE = 5;
+    private static final int MAX_PAGES = 200;
+    private static final int PARALLELISM = 16;
+    private static final long PAGE_DELAY_MS = 5;
+    private static final double MIN_IMPROVEMENT = 2.0;
+    
+    private final List<String> failures = new ArrayList<>();
+    private HttpServer server;
+    private String baseUrl;
+    
+    public static void main(String[] args) throws Exception {
+        Logger.setLogLevel(2);
+        HarvestRateCheck check = new HarvestRateCheck();
+        check.startServer();
+        try {
+            double breadthFirst = check.harvestRate("BFS", new BreadthFirstCrawler());
+            double bestFirst = check.harvestRate("best-first", new BestFirstCrawler(new String[]{KEYWORD}));
+            check.expect(bestFirst >= MIN_IMPROVEMENT * breadthFirst,
+                         String.format("best-first harvested %.0f relevant pages per 1,000 fetches, BFS %.0f",
+                                       bestFirst, breadthFirst));
+        } finally {
+            check.server.stop(0);
+        }
+        
+        if (!check.failures.isEmpty()) {
+            for (String failure : check.failures) {
+                System.out.println("FAIL: " + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("OK: all harvest rate checks passed");
+        System.exit(0);
+    }
+    
+    /**
+     * Crawl the site from its first page and report the harvest rate
+     * 
+     * @param name The strategy name to report
+     * @param strategy The crawl strategy
+     * @return Relevant pages per 1,000 fetches
+     */
+    private double harvestRate(String name, CrawlStrategy strategy) {
+        CrawlConfig config = new CrawlConfig.Builder()
+                .setSeedUrl(baseUrl + "/p1")
+                .setKeywords(new String[]{KEYWORD})
+                .setMaxPages(MAX_PAGES)
+                .setRequestDelay(0)
+                .setParallelism(PARALLELISM)
+                .build();
+        CrawlResult result = new WebCrawler(strategy, config).crawl();
+        
+        double rate = result.getTotalVisited() > 0 ? result.getTotalRelevant() * 1000.0 / result.getTotalVisited() : 0;
+        System.out.println(String.format("%-10s %d fetches, %d relevant, %.0f relevant pages per 1,000 fetches",
+                                         name, result.getTotalVisited(), result.getTotalRelevant(), rate));
+        expect(result.getTotalVisited() == MAX_PAGES,
+               name + ": fetched " + result.getTotalVisited() + " pages, expected " + MAX_PAGES);
+        return rate;
+    }
+    
+    private void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", this::handle);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (!path.matches("/p\\d+")) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        int id = Integer.parseInt(path.substring(2)) % SITE_PAGES;
+        try {
+            Thread.sleep(PAGE_DELAY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        StringBuilder html = new StringBuilder("<html><head><title>Page ").append(id).append("</title></head><body>")
+                .append("<p>This is page ").append(id)
+                .append(isRelevant(id) ? " about " + KEYWORD + " crawling" : " about nothing in particular")
+                .append("</p>");
+        for (int i = 1; i <= LINKS_PER_PAGE; i++) {
+            int target = (id * 7 + i * 13) % SITE_PAGES;
+            html.append("<a href=\"/p").append(target).append("\">page ").append(target)
+                .append(isRelevant(target) ? " on " + KEYWORD : "").append("</a> ");
+        }
+        html.append("</body></html>");
+        
+        byte[] body = html.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    private static boolean isRelevant(int id) {
+        return id % RELEVANT_EVERY == 0;
+    }
+    
+    private void expect(boolean condition, String failure) {
+        if (!condition) {
+            failures.add(failure);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import config.CrawlConfig;
+import crawler.BreadthFirstCrawler;
+import crawler.WebCrawler;
+import util.Logger;
+
+/**
+ * Runnable check that adaptive request delays converge to the capacity of a
+ * local {@link HttpServer} and back off when it slows down or sheds load.
+ * <p>
+ * The server handles one request at a time with a fixed service time, so its
+ * capacity is known and any request the crawler sends faster than that waits
+ * in the server's queue. Each scenario crawls it with 8 workers, starting from
+ * a slow 250 ms request delay:
+ * <ul>
+ *   <li>Convergence and slowdown: the service time is 25 ms (40 requests/s)
+ *       and rises to 100 ms (10 requests/s) partway through. In the last
+ *       seconds of each phase the crawl must use most of the capacity without
+ *       building a queue.</li>
+ *   <li>Load shedding: the server answers 503 whenever another request is
+ *       already queued, and the crawl must settle with few rejections.</li>
+ * </ul>
+ * Compile it together with the main sources and run it with
+ * {@code java -cp <classes> http.AdaptiveRateCheck}; the exit status is
+ * non-zero if any check fails. It takes about a minute.
+ */
+public class AdaptiveRateCheck {
+    private static final int PARALLELISM = 8;
+    private static final long START_DELAY_MS = 250;
+    private static final long FAST_SERVICE_MS = 25;
+    private static final long SLOW_SERVICE_MS = 100;
+    private static final int FAST_PHASE_REQUESTS = 450;
+    private static final int SLOW_PHASE_REQUESTS = 150;
+    private static final int SHEDDING_REQUESTS = 400;
+    private static final long WINDOW_MS = 4000;
+    
+    private final List<Request> requests = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger pageIds = new AtomicInteger();
+    private final List<String> failures = new ArrayList<>();
+    private volatile boolean shedLoad;
+    private volatile int slowAfter;
+    private HttpServer server;
+    private String baseUrl;
+    
+    public static void main(String[] args) throws Exception {
+        Logger.setLogLevel(2);
+        AdaptiveRateCheck check = new AdaptiveRateCheck();
+        check.startServer();
+        try {
+            check.checkConvergenceAndSlowdown();
+            check.checkLoadShedding();
+        } finally {
+            check.server.stop(0);
+        }
+        
+        if (!check.failures.isEmpty()) {
+            for (String failure : check.failures) {
+                System.out.println("FAIL: " + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("OK: all adaptive rate checks passed");
+        System.exit(0);
+    }
+    
+    /**
+     * Ramp up to a fast server, then follow it down when it slows to a quarter
+     * of its capacity
+     */
+    private void checkConvergenceAndSlowdown() {
+        shedLoad = false;
+        slowAfter = FAST_PHASE_REQUESTS;
+        crawl(FAST_PHASE_REQUESTS + SLOW_PHASE_REQUESTS);
+        
+        List<Request> fast = new ArrayList<>(requests.subList(0, FAST_PHASE_REQUESTS));
+        List<Request> slow = new ArrayList<>(requests.subList(FAST_PHASE_REQUESTS, requests.size()));
+        Window fastEnd = Window.last(fast, WINDOW_MS);
+        Window slowEnd = Window.last(slow, WINDOW_MS);
+        System.out.println("fast phase end: " + fastEnd + "; slow phase end: " + slowEnd);
+        
+        expect(fastEnd.perSecond() >= 0.6 * 1000 / FAST_SERVICE_MS,
+               "fast phase: " + fastEnd.perSecond() + " requests/s, capacity " + 1000 / FAST_SERVICE_MS);
+        expect(fastEnd.meanQueued() <= 1.5, "fast phase: " + fastEnd.meanQueued() + " requests queued on average");
+        expect(slowEnd.perSecond() >= 0.5 * 1000 / SLOW_SERVICE_MS,
+               "slow phase: " + slowEnd.perSecond() + " requests/s, capacity " + 1000 / SLOW_SERVICE_MS);
+        expect(slowEnd.meanQueued() <= 1.5, "slow phase: " + slowEnd.meanQueued() + " requests queued on average");
+    }
+    
+    /**
+     * Settle below the point where the server starts rejecting requests
+     */
+    private void checkLoadShedding() {
+        shedLoad = true;
+        slowAfter = Integer.MAX_VALUE;
+        crawl(SHEDDING_REQUESTS);
+        
+        Window end = Window.last(new ArrayList<>(requests), WINDOW_MS);
+        System.out.println("load shedding end: " + end);
+        expect(end.rejected() <= 0.25 * end.count(),
+               "shedding: " + end.rejected() + " of " + end.count() + " requests rejected");
+        expect(end.perSecond() - end.rejectedPerSecond() >= 0.4 * 1000 / FAST_SERVICE_MS,
+               "shedding: " + (end.perSecond() - end.rejectedPerSecond()) + " successful requests/s");
+    }
+    
+    /**
+     * Crawl the endless site from a fresh page until the server has seen a
+     * number of page requests
+     * 
+     * @param pages The number of pages to crawl
+     */
+    private void crawl(int pages) {
+        requests.clear();
+        CrawlConfig config = new CrawlConfig.Builder()
+                .setSeedUrl(baseUrl + "/p" + pageIds.incrementAndGet())
+                .setKeywords(new String[]{"rate"})
+                .setMaxPages(pages)
+                .setParallelism(PARALLELISM)
+                .setRequestDelay(START_DELAY_MS)
+                .setAdaptiveRequestDelay(true)
+                .setMinRequestDelay(0)
+                .setMaxRequestDelay(5000)
+                .setRespectRobotsTxt(false)
+                .build();
+        new WebCrawler(new BreadthFirstCrawler(), config).crawl();
+    }
+    
+    private void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        // One request at a time, counting the ones waiting for their turn
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        server.setExecutor(task -> {
+            queued.incrementAndGet();
+            worker.execute(() -> {
+                queued.decrementAndGet();
+                task.run();
+            });
+        });
+        server.createContext("/", this::handle);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        int waiting = queued.get();
+        long startTime = System.currentTimeMillis();
+        if (shedLoad && waiting > 0) {
+            requests.add(new Request(startTime, waiting, true));
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+        requests.add(new Request(startTime, waiting, false));
+        
+        long service = requests.size() > slowAfter ? SLOW_SERVICE_MS : FAST_SERVICE_MS;
+        try {
+            Thread.sleep(service);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        // Every page links to fresh pages, so the frontier never runs dry
+        StringBuilder html = new StringBuilder("<html><head><title>Rate check</title></head><body>");
+        for (int i = 0; i < 3; i++) {
+            int id = pageIds.incrementAndGet();
+            html.append("<a href=\"/p").append(id).append("\">page ").append(id).append("</a>");
+        }
+        html.append("</body></html>");
+        byte[] body = html.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    private void expect(boolean condition, String failure) {
+        if (!condition) {
+            failures.add(failure);
+        }
+    }
+    
+    /**
+     * A request as the server saw it
+     * 
+     * @param startTime When the server started handling it
+     * @param queuedBehind Requests waiting behind it at that moment
+     * @param rejected true if it was answered with 503
+     */
+    private record Request(long startTime, int queuedBehind, boolean rejected) {
+    }
+    
+    /**
+     * Requests handled during the last part of a phase
+     */
+    private record Window(List<Request> requests, long durationMs) {
+        static Window last(List<Request> phase, long durationMs) {
+            long end = phase.get(phase.size() - 1).startTime();
+            List<Request> inWindow = new ArrayList<>();
+            for (Request request : phase) {
+                if (request.startTime() > end - durationMs) {
+                    inWindow.add(request);
+                }
+            }
+            long span = Math.min(durationMs, end - phase.get(0).startTime());
+            return new Window(inWindow, Math.max(1, span));
+        }
+        
+        int count() {
+            return requests.size();
+        }
+        
+        int rejected() {
+            return (int) requests.stream().filter(Request::rejected).count();
+        }
+        
+        double perSecond() {
+            return count() * 1000.0 / durationMs;
+        }
+        
+        double rejectedPerSecond() {
+            return rejected() * 1000.0 / durationMs;
+        }
+        
+        double meanQueued() {
+            return requests.stream().mapToInt(Request::queuedBehind).average().orElse(0);
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%.1f requests/s, %.1f rejected/s, %.2f queued", perSecond(), rejectedPerSecond(),
+                                 meanQueued());
+        }
+    }
+}
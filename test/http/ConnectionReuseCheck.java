@@ -0,0 +1,184 @@
+package http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import config.CrawlConfig;
+import util.Logger;
+
+/**
+ * Runnable check of connection reuse and fetch latency reporting in
+ * {@link HttpRequester} against a local {@link HttpServer}.
+ * <p>
+ * The server counts the distinct client connections it sees, so connections
+ * per page is the number of TCP handshakes per page. Pages take
+ * {@link #SERVICE_MS} to serve, and every {@link #SLOW_EVERY}th page takes
+ * {@link #SLOW_SERVICE_MS}, which puts a known tail into the latency
+ * percentiles. Sequential fetches must all share one connection. Concurrent
+ * fetches must stay within the per-host connection limit. The p50 and p99
+ * reported by {@link FetchStats} must match the injected service times. With
+ * retries turned off, a page must still be fetched exactly once.
+ * <p>
+ * Compile it together with the main sources and run it with
+ * {@code java -cp <classes> http.ConnectionReuseCheck}; the exit status is
+ * non-zero if any check fails.
+ */
+public class ConnectionReuseCheck {
+    private static final long SERVICE_MS = 10;
+    private static final long SLOW_SERVICE_MS = 150;
+    private static final int SLOW_EVERY = 40;
+    private static final int SEQUENTIAL_PAGES = 50;
+    private static final int CONCURRENT_PAGES = 400;
+    
+    private final Set<String> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pagesServed = new AtomicInteger();
+    private final List<String> failures = new ArrayList<>();
+    private HttpServer server;
+    private String baseUrl;
+    
+    public static void main(String[] args) throws Exception {
+        Logger.setLogLevel(2);
+        // Without it the server's Nagle delay, not the service time, dominates the latency
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        ConnectionReuseCheck check = new ConnectionReuseCheck();
+        check.startServer();
+        try {
+            check.checkSequentialReuse();
+            check.checkConcurrentReuseAndLatency();
+            check.checkSingleAttemptWithoutRetries();
+        } finally {
+            check.server.stop(0);
+        }
+        
+        if (!check.failures.isEmpty()) {
+            for (String failure : check.failures) {
+                System.out.println("FAIL: " + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("OK: all connection reuse checks passed");
+        System.exit(0);
+    }
+    
+    /**
+     * Pages fetched one after another all go over the first connection
+     */
+    private void checkSequentialReuse() {
+        connections.clear();
+        int fetched = 0;
+        try (HttpRequester requester = new HttpRequester(config())) {
+            for (int i = 0; i < SEQUENTIAL_PAGES; i++) {
+                if (requester.fetch(baseUrl + "/s" + i, null, null) != null) {
+                    fetched++;
+                }
+            }
+        }
+        System.out.println("sequential: " + fetched + " pages over " + connections.size() + " connections");
+        expect(fetched == SEQUENTIAL_PAGES, "sequential: fetched " + fetched + " of " + SEQUENTIAL_PAGES + " pages");
+        expect(connections.size() == 1, "sequential: " + connections.size() + " connections");
+    }
+    
+    /**
+     * Pages fetched all at once share at most the per-host connection limit,
+     * and the reported percentiles reflect the server's service times
+     */
+    private void checkConcurrentReuseAndLatency() {
+        connections.clear();
+        CrawlConfig config = config();
+        int fetched = 0;
+        FetchStats stats;
+        try (HttpRequester requester = new HttpRequester(config)) {
+            List<CompletableFuture<FetchResult>> pages = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_PAGES; i++) {
+                pages.add(requester.fetchAsync(baseUrl + "/c" + i, null, null));
+            }
+            for (CompletableFuture<FetchResult> page : pages) {
+                if (page.join() != null) {
+                    fetched++;
+                }
+            }
+            stats = requester.getStats();
+        }
+        
+        double p50 = stats.getLatencyPercentileMs(50);
+        double p99 = stats.getLatencyPercentileMs(99);
+        System.out.println("concurrent: " + fetched + " pages over " + connections.size() + " connections ("
+                           + String.format("%.3f", (double) connections.size() / fetched) + " handshakes per page); "
+                           + String.format("p50 %.1f ms, p99 %.1f ms", p50, p99));
+        expect(fetched == CONCURRENT_PAGES, "concurrent: fetched " + fetched + " of " + CONCURRENT_PAGES + " pages");
+        expect(connections.size() <= config.getMaxConnectionsPerHost(),
+               "concurrent: " + connections.size() + " connections, limit " + config.getMaxConnectionsPerHost());
+        expect(p50 >= SERVICE_MS && p50 < SLOW_SERVICE_MS / 2.0,
+               "concurrent: p50 " + p50 + " ms for a " + SERVICE_MS + " ms service time");
+        expect(p99 >= SLOW_SERVICE_MS * 0.8, "concurrent: p99 " + p99 + " ms misses the " + SLOW_SERVICE_MS + " ms tail");
+    }
+    
+    /**
+     * Without retries a page is still fetched once, and the future completes normally
+     */
+    private void checkSingleAttemptWithoutRetries() {
+        CrawlConfig config = new CrawlConfig.Builder()
+                .setSeedUrl(baseUrl + "/")
+                .setKeywords(new String[]{"reuse"})
+                .setMaxRetries(0)
+                .build();
+        int served = pagesServed.get();
+        try (HttpRequester requester = new HttpRequester(config)) {
+            CompletableFuture<FetchResult> page = requester.fetchAsync(baseUrl + "/once", null, null);
+            expect(page != null && page.join() != null, "no retries: page not fetched");
+        }
+        expect(pagesServed.get() == served + 1, "no retries: " + (pagesServed.get() - served) + " requests sent");
+    }
+    
+    private CrawlConfig config() {
+        return new CrawlConfig.Builder()
+                .setSeedUrl(baseUrl + "/")
+                .setKeywords(new String[]{"reuse"})
+                .build();
+    }
+    
+    private void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", this::handle);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        // Each client connection has its own source port
+        connections.add(exchange.getRemoteAddress().toString());
+        boolean slow = pagesServed.incrementAndGet() % SLOW_EVERY == 0;
+        try {
+            Thread.sleep(slow ? SLOW_SERVICE_MS : SERVICE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        byte[] body = "<html><head><title>Reuse check</title></head><body><p>page</p></body></html>"
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    private void expect(boolean condition, String failure) {
+        if (!condition) {
+            failures.add(failure);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.net.spi.InetAddressResolver;
+import java.net.spi.InetAddressResolver.LookupPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import util.Logger;
+
+/**
+ * Runnable offline check of {@link DnsCache} against a fake resolver: positive
+ * and negative caching with their TTLs, sharing one query between concurrent
+ * lookups, prefetching, address-family filtering and lookups after the cache
+ * was closed.
+ * <p>
+ * Compile it together with the main sources and run it with
+ * {@code java -cp <classes> http.DnsCacheCheck}; the exit status is non-zero
+ * if any check fails.
+ */
+public class DnsCacheCheck {
+    private static final long TTL_MS = 200;
+    private static final long NEGATIVE_TTL_MS = 100;
+    private static final long SLOW_LOOKUP_MS = 100;
+    
+    private final List<String> failures = new ArrayList<>();
+    
+    public static void main(String[] args) throws Exception {
+        Logger.setLogLevel(2);
+        DnsCacheCheck check = new DnsCacheCheck();
+        check.checkPositiveCaching();
+        check.checkNegativeCaching();
+        check.checkConcurrentLookupsShareOneQuery();
+        check.checkPrefetch();
+        check.checkAddressFamilies();
+        check.checkClosed();
+        
+        if (!check.failures.isEmpty()) {
+            for (String failure : check.failures) {
+                System.out.println("FAIL: " + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("OK: all DNS cache checks passed");
+        System.exit(0);
+    }
+    
+    /**
+     * A resolved host is answered from the cache until its TTL passes
+     */
+    private void checkPositiveCaching() throws Exception {
+        FakeResolver resolver = new FakeResolver();
+        DnsCache cache = new DnsCache(resolver, TTL_MS, NEGATIVE_TTL_MS);
+        
+        List<InetAddress> first = cache.lookupByName("a.example", LookupPolicy.of(LookupPolicy.IPV4)).toList();
+        List<InetAddress> second = cache.lookupByName("a.example", LookupPolicy.of(LookupPolicy.IPV4)).toList();
+        expect(first.equals(second), "positive: cached answer differs from the first one");
+        expect(resolver.count("a.example") == 1, "positive: resolved " + resolver.count("a.example") + " times within the TTL");
+        expect(cache.getHitCount() == 1 && cache.getMissCount() == 1,
+               "positive: expected 1 hit and 1 miss, got " + cache.getHitCount() + " and " + cache.getMissCount());
+        
+        Thread.sleep(TTL_MS + 50);
+        cache.lookupByName("a.example", LookupPolicy.of(LookupPolicy.IPV4)).toList();
+        expect(resolver.count("a.example") == 2, "positive: not resolved again after the TTL");
+    }
+    
+    /**
+     * A failed lookup fails fast from the cache until the negative TTL passes
+     */
+    private void checkNegativeCaching() throws Exception {
+        FakeResolver resolver = new FakeResolver();
+        DnsCache cache = new DnsCache(resolver, TTL_MS, NEGATIVE_TTL_MS);
+        
+        expect(failsToResolve(cache, "missing.example"), "negative: unknown host resolved");
+        expect(failsToResolve(cache, "missing.example"), "negative: cached failure resolved");
+        expect(resolver.count("missing.example") == 1, "negative: failure not cached");
+        
+        Thread.sleep(NEGATIVE_TTL_MS + 50);
+        failsToResolve(cache, "missing.example");
+        expect(resolver.count("missing.example") == 2, "negative: not retried after the negative TTL");
+        
+        DnsCache uncached = new DnsCache(resolver, TTL_MS, 0);
+        failsToResolve(uncached, "missing.example");
+        failsToResolve(uncached, "missing.example");
+        expect(resolver.count("missing.example") == 4, "negative: failure cached with a negative TTL of 0");
+    }
+    
+    /**
+     * Lookups of a host that is already being resolved wait for that query
+     */
+    private void checkConcurrentLookupsShareOneQuery() {
+        FakeResolver resolver = new FakeResolver();
+        DnsCache cache = new DnsCache(resolver, TTL_MS, NEGATIVE_TTL_MS);
+        
+        List<CompletableFuture<List<InetAddress>>> lookups = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            lookups.add(cache.resolveAsync("slow.example"));
+        }
+        for (CompletableFuture<List<InetAddress>> lookup : lookups) {
+            expect(!lookup.join().isEmpty(), "shared: a waiting lookup got no addresses");
+        }
+        expect(resolver.count("slow.example") == 1,
+               "shared: " + resolver.count("slow.example") + " queries for 10 concurrent lookups");
+    }
+    
+    /**
+     * A prefetched host is answered from the cache without waiting
+     */
+    private void checkPrefetch() throws Exception {
+        FakeResolver resolver = new FakeResolver();
+        DnsCache cache = new DnsCache(resolver, TTL_MS, NEGATIVE_TTL_MS);
+        
+        cache.prefetch("slow.example");
+        cache.prefetch("slow.example");
+        Thread.sleep(SLOW_LOOKUP_MS + 50);
+        CompletableFuture<List<InetAddress>> lookup = cache.resolveAsync("slow.example");
+        expect(lookup.isDone() && !lookup.isCompletedExceptionally(), "prefetch: lookup had to wait");
+        expect(resolver.count("slow.example") == 1, "prefetch: host queried " + resolver.count("slow.example") + " times");
+        cache.prefetch("slow.example");
+        expect(resolver.count("slow.example") == 1, "prefetch: cached host prefetched again");
+    }
+    
+    /**
+     * Only addresses of the requested families are returned, in the requested order
+     */
+    private void checkAddressFamilies() throws Exception {
+        FakeResolver resolver = new FakeResolver();
+        DnsCache cache = new DnsCache(resolver, TTL_MS, NEGATIVE_TTL_MS);
+        
+        List<InetAddress> ipv4 = cache.lookupByName("dual.example", LookupPolicy.of(LookupPolicy.IPV4)).toList();
+        expect(ipv4.size() == 1 && ipv4.get(0).getAddress().length == 4, "families: IPv4 lookup returned " + ipv4);
+        List<InetAddress> ipv6First = cache.lookupByName("dual.example",
+                LookupPolicy.of(LookupPolicy.IPV4 | LookupPolicy.IPV6 | LookupPolicy.IPV6_FIRST)).toList();
+        expect(ipv6First.size() == 2 && ipv6First.get(0).getAddress().length == 16,
+               "families: IPv6-first lookup returned " + ipv6First);
+        expect(failsToResolve(cache, "a.example", LookupPolicy.of(LookupPolicy.IPV6)),
+               "families: IPv6 lookup of an IPv4-only host resolved");
+        expect(resolver.count("dual.example") == 1, "families: filtering re-queried the resolver");
+    }
+    
+    /**
+     * A closed cache still resolves, on the calling thread
+     */
+    private void checkClosed() throws Exception {
+        FakeResolver resolver = new FakeResolver();
+        DnsCache cache = new DnsCache(resolver, TTL_MS, NEGATIVE_TTL_MS);
+        cache.close();
+        
+        CompletableFuture<List<InetAddress>> lookup = cache.resolveAsync("a.example");
+        expect(lookup.isDone() && !lookup.isCompletedExceptionally(), "closed: lookup did not resolve");
+        cache.prefetch("dual.example");
+        expect(resolver.count("dual.example") == 1, "closed: prefetch was dropped");
+    }
+    
+    private static boolean failsToResolve(DnsCache cache, String host) {
+        return failsToResolve(cache, host, LookupPolicy.of(LookupPolicy.IPV4 | LookupPolicy.IPV6));
+    }
+    
+    private static boolean failsToResolve(DnsCache cache, String host, LookupPolicy policy) {
+        try {
+            cache.lookupByName(host, policy).toList();
+            return false;
+        } catch (UnknownHostException e) {
+            return true;
+        }
+    }
+    
+    private void expect(boolean condition, String failure) {
+        if (!condition) {
+            failures.add(failure);
+        }
+    }
+    
+    /**
+     * Resolver that answers from a fixed table without touching the network
+     * and counts the queries per host. "slow.example" takes a while to answer
+     * and hosts not in the table are unknown.
+     */
+    private static class FakeResolver implements InetAddressResolver {
+        private final Map<String, AtomicInteger> queries = new ConcurrentHashMap<>();
+        
+        @Override
+        public Stream<InetAddress> lookupByName(String host, LookupPolicy lookupPolicy) throws UnknownHostException {
+            queries.computeIfAbsent(host, key -> new AtomicInteger()).incrementAndGet();
+            switch (host) {
+                case "a.example":
+                    return Stream.of(InetAddress.getByAddress(host, new byte[]{10, 0, 0, 1}));
+                case "dual.example":
+                    return Stream.of(InetAddress.getByAddress(host, new byte[]{10, 0, 0, 2}),
+                                     InetAddress.getByAddress(host, new byte[16]));
+                case "slow.example":
+                    try {
+                        Thread.sleep(SLOW_LOOKUP_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Stream.of(InetAddress.getByAddress(host, new byte[]{10, 0, 0, 3}));
+                default:
+                    throw new UnknownHostException(host);
+            }
+        }
+        
+        @Override
+        public String lookupByAddress(byte[] address) throws UnknownHostException {
+            throw new UnknownHostException();
+        }
+        
+        int count(String host) {
+            AtomicInteger count = queries.get(host);
+            return count != null ? count.get() : 0;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package parser;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import models.PageLink;
+import util.Logger;
+import util.UrlCanonicalizer;
+
+/**
+ * Runnable benchmark of the single-pass {@link HtmlTokenizer} against the
+ * regex parsers it replaced, in throughput and bytes allocated.
+ * <p>
+ * Both sides extract the links, title, meta description and visible text of
+ * every page in a corpus: the tokenizer in one call with the crawler's
+ * {@link HtmlParser.LinkCollector} and {@link ContentExtractor.TextCollector},
+ * the regex side with the patterns and replaceAll passes that HtmlParser and
+ * ContentExtractor used before. Links are resolved by the same
+ * {@link UrlCanonicalizer} on both sides. By default the corpus is generated
+ * and both sides must find the same links on every page. Directories given as
+ * arguments are searched for .html files to use instead. Pathological inputs
+ * (unclosed comments, attributes, scripts and entities) must tokenize in
+ * linear time.
+ * <p>
+ * Compile it together with the main sources and run it with
+ * {@code java -cp <classes> parser.HtmlTokenizerBenchmark [html directories...]};
+ * the exit status is non-zero if any check fails.
+ */
+public class HtmlTokenizerBenchmark {
+    private static final Pattern LINK_PATTERN = Pattern.compile("<a\\s+(?:[^>]*?\\s+)?href=[\"']([^\"']*)[\"']",
+                                                                Pattern.CASE_INSENSITIVE);
+    private static final Pattern TITLE_PATTERN = Pattern.compile("<title>(.*?)</title>",
+                                                                 Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern SCRIPT_PATTERN = Pattern.compile("<script[^>]*>.*?</script>",
+                                                                  Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+    private static final Pattern STYLE_PATTERN = Pattern.compile("<style[^>]*>.*?</style>",
+                                                                 Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+    private static final Pattern HTML_TAG_PATTERN = Pattern.compile("<[^>]+>");
+    private static final Pattern MULTIPLE_SPACES_PATTERN = Pattern.compile("\\s+");
+    private static final int GENERATED_PAGES = 100;
+    private static final int SECTIONS_PER_PAGE = 40;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int TIMED_ROUNDS = 10;
+    private static final int PATHOLOGICAL_CHARS = 2_000_000;
+    private static final long PATHOLOGICAL_LIMIT_MS = 2000;
+    
+    private final List<String> failures = new ArrayList<>();
+    private final List<String> bases = new ArrayList<>();
+    private final List<String> pages = new ArrayList<>();
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer();
+    private final HtmlTokenizer tokenizer = new HtmlTokenizer();
+    private final HtmlParser htmlParser = new HtmlParser(canonicalizer);
+    private final ContentExtractor contentExtractor = new ContentExtractor();
+    private long checksum;
+    
+    public static void main(String[] args) throws IOException {
+        Logger.setLogLevel(2);
+        HtmlTokenizerBenchmark benchmark = new HtmlTokenizerBenchmark();
+        boolean generated = args.length == 0;
+        if (generated) {
+            benchmark.generatePages();
+        } else {
+            for (String dir : args) {
+                benchmark.loadPages(Path.of(dir));
+            }
+        }
+        long chars = benchmark.pages.stream().mapToLong(String::length).sum();
+        System.out.println(String.format("%d pages, %.1f M chars", benchmark.pages.size(), chars / 1e6));
+        
+        benchmark.checkPathologicalInputs();
+        Result regex = benchmark.measure("regex", chars, benchmark::parseWithRegex);
+        Result tokenizer = benchmark.measure("tokenizer", chars, benchmark::parseWithTokenizer);
+        System.out.println(String.format("speedup %.1fx, %.0f%% less allocated", regex.seconds() / tokenizer.seconds(),
+                                         100 * (1 - (double) tokenizer.allocatedBytes() / regex.allocatedBytes())));
+        if (generated) {
+            benchmark.checkSameLinks();
+        }
+        
+        if (!benchmark.failures.isEmpty()) {
+            for (String failure : benchmark.failures) {
+                System.out.println("FAIL: " + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("OK: all tokenizer benchmark checks passed");
+        System.exit(0);
+    }
+    
+    /**
+     * Parse every page, first to warm up and then timed
+     * 
+     * @param name The parser name to report
+     * @param chars The size of the corpus in chars
+     * @param parser The parser
+     * @return The time and allocation of one pass over the corpus
+     */
+    private Result measure(String name, long chars, Parser parser) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            parseAll(parser);
+        }
+        
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long startTime = System.nanoTime();
+        for (int round = 0; round < TIMED_ROUNDS; round++) {
+            parseAll(parser);
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9 / TIMED_ROUNDS;
+        long allocated = (threads.getThreadAllocatedBytes(threadId) - allocatedBefore) / TIMED_ROUNDS;
+        
+        System.out.println(String.format("%-10s %6.3f s per pass %7.1f MB/s %8.1f MB allocated", name, seconds,
+                                         chars / seconds / 1e6, allocated / 1e6));
+        return new Result(seconds, allocated);
+    }
+    
+    private void parseAll(Parser parser) {
+        for (int i = 0; i < pages.size(); i++) {
+            checksum += parser.parse(pages.get(i), bases.get(i)).size();
+        }
+    }
+    
+    /**
+     * Links, title, meta description and text in one tokenizer pass
+     */
+    private Set<String> parseWithTokenizer(String html, String baseUrl) {
+        HtmlParser.LinkCollector links = htmlParser.newLinkCollector(baseUrl);
+        ContentExtractor.TextCollector text = contentExtractor.newTextCollector();
+        tokenizer.tokenize(html, links, text);
+        checksum += text.getTitle().length() + text.getMetaDescription().length() + text.getText().length();
+        Set<String> urls = new LinkedHashSet<>();
+        for (PageLink link : links.getLinks()) {
+            urls.add(link.getUrl());
+        }
+        return urls;
+    }
+    
+    /**
+     * Links, title, meta description and text the way the regex parsers did it
+     */
+    private Set<String> parseWithRegex(String html, String baseUrl) {
+        String base = canonicalizer.canonicalize(baseUrl);
+        Set<String> urls = new LinkedHashSet<>();
+        Matcher links = LINK_PATTERN.matcher(html);
+        while (links.find()) {
+            String url = canonicalizer.resolve(base, links.group(1));
+            if (url != null) {
+                urls.add(url);
+            }
+        }
+        Matcher title = TITLE_PATTERN.matcher(html);
+        String titleText = title.find() ? title.group(1).trim() : "";
+        checksum += titleText.length() + regexMetaDescription(html).length() + regexText(html).length();
+        return urls;
+    }
+    
+    private static String regexText(String html) {
+        String result = SCRIPT_PATTERN.matcher(html).replaceAll("");
+        result = STYLE_PATTERN.matcher(result).replaceAll("");
+        StringBuilder paragraphs = new StringBuilder();
+        Pattern paragraphPattern = Pattern.compile("<p[^>]*>(.*?)</p>", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+        Matcher paragraphMatcher = paragraphPattern.matcher(result);
+        while (paragraphMatcher.find()) {
+            String paragraph = paragraphMatcher.group(1).trim();
+            paragraph = HTML_TAG_PATTERN.matcher(paragraph).replaceAll(" ");
+            paragraphs.append(paragraph).append("\n\n");
+        }
+        if (paragraphs.length() == 0) {
+            result = HTML_TAG_PATTERN.matcher(result).replaceAll(" ");
+            result = MULTIPLE_SPACES_PATTERN.matcher(result).replaceAll(" ");
+            return decodeEntities(result).trim();
+        }
+        String text = decodeEntities(paragraphs.toString());
+        return MULTIPLE_SPACES_PATTERN.matcher(text).replaceAll(" ").trim();
+    }
+    
+    private static String decodeEntities(String html) {
+        return html.replaceAll("&amp;", "&")
+                   .replaceAll("&lt;", "<")
+                   .replaceAll("&gt;", ">")
+                   .replaceAll("&quot;", "\"")
+                   .replaceAll("&apos;", "'")
+                   .replaceAll("&#39;", "'")
+                   .replaceAll("&nbsp;", " ");
+    }
+    
+    private static String regexMetaDescription(String html) {
+        Pattern pattern = Pattern.compile("<meta\\s+name=[\"']description[\"']\\s+content=[\"'](.*?)[\"']",
+                                          Pattern.CASE_INSENSITIVE);
+        Matcher matcher = pattern.matcher(html);
+        if (matcher.find()) {
+            return matcher.group(1);
+        }
+        pattern = Pattern.compile("<meta\\s+content=[\"'](.*?)[\"']\\s+name=[\"']description[\"']",
+                                  Pattern.CASE_INSENSITIVE);
+        matcher = pattern.matcher(html);
+        return matcher.find() ? matcher.group(1) : "";
+    }
+    
+    /**
+     * On the generated pages both parsers find the same links
+     */
+    private void checkSameLinks() {
+        for (int i = 0; i < pages.size(); i++) {
+            Set<String> regex = parseWithRegex(pages.get(i), bases.get(i));
+            Set<String> tokenizer = parseWithTokenizer(pages.get(i), bases.get(i));
+            if (!regex.equals(tokenizer)) {
+                failures.add("links: " + bases.get(i) + " has " + regex.size() + " links by regex and "
+                             + tokenizer.size() + " by tokenizer");
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Inputs that never close what they open take time linear in their length
+     */
+    private void checkPathologicalInputs() {
+        String[][] inputs = {
+            {"unclosed comment", "<p>text<!-- ", "a -- b > c "},
+            {"unclosed attribute", "<a href=\"", "/path?x=1 > y "},
+            {"unclosed script", "<script>", "if (a < b) { c = '</scr' + 'ipt'; } "},
+            {"unclosed entity", "<p>", "&amp&#x&#99999999999;&unknown "}
+        };
+        for (String[] input : inputs) {
+            StringBuilder html = new StringBuilder(PATHOLOGICAL_CHARS + 64).append(input[1]);
+            while (html.length() < PATHOLOGICAL_CHARS) {
+                html.append(input[2]);
+            }
+            long startTime = System.nanoTime();
+            parseWithTokenizer(html.toString(), "http://fixtures.example/");
+            long millis = (System.nanoTime() - startTime) / 1_000_000;
+            System.out.println(String.format("%-20s %,d chars in %d ms", input[0], html.length(), millis));
+            if (millis > PATHOLOGICAL_LIMIT_MS) {
+                failures.add("pathological: " + input[0] + " took " + millis + " ms");
+            }
+        }
+    }
+    
+    private void loadPages(Path dir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(file -> file.toString().endsWith(".html")).sorted().toList();
+        }
+        for (Path file : files) {
+            bases.add(canonicalizer.canonicalize("http://fixtures.example/" + dir.relativize(file)));
+            pages.add(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        }
+    }
+    
+    private void generatePages() {
+        for (int page = 0; page < GENERATED_PAGES; page++) {
+            StringBuilder html = new StringBuilder("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\">\n")
+                    .append("<title>Guide ").append(page).append(" &amp; reference</title>\n")
+                    .append("<meta name=\"description\" content=\"Part ").append(page).append(" of the guide\">\n")
+                    .append("<style>body { font: 14px sans-serif; } p > a { color: #333; }</style>\n")
+                    .append("<script>var sections = [1, 2, 3]; if (sections.length < 4) { init(); }</script>\n")
+                    .append("</head><body><nav><ul>");
+            for (int i = 0; i < 20; i++) {
+                html.append("<li><a href=\"/guide/").append(i).append(".html\" class=\"nav\">Chapter ").append(i)
+                    .append("</a></li>");
+            }
+            html.append("</ul></nav>\n<main>");
+            for (int section = 0; section < SECTIONS_PER_PAGE; section++) {
+                int target = (page * 13 + section * 7) % 400;
+                html.append("<h2 id=\"s").append(section).append("\">Section ").append(section).append("</h2>\n")
+                    .append("<p>The <em>crawler</em> reads pages &amp; follows links; see <a href=\"../topics/t")
+                    .append(target).append(".html\">topic ").append(target)
+                    .append("</a> for details &lt;and caveats&gt;. It keeps going until the frontier is empty ")
+                    .append("or the page budget is spent, whichever comes first.</p>\n")
+                    .append("<!-- editor note: revise section ").append(section).append(" -->\n")
+                    .append("<div class=\"example\"><pre>fetch(url) -&gt; parse(body)</pre>")
+                    .append("<a href=\"https://www.example.org/ref/").append(target)
+                    .append("?utm_source=guide#top\">external reference</a></div>\n");
+            }
+            html.append("</main><footer><p>&copy; Example &nbsp;&#39;docs&#39;</p></footer></body></html>\n");
+            bases.add(canonicalizer.canonicalize("https://docs.example.com/guide/" + page + ".html"));
+            pages.add(html.toString());
+        }
+    }
+    
+    private interface Parser {
+        Set<String> parse(String html, String baseUrl);
+    }
+    
+    private record Result(double seconds, long allocatedBytes) {
+    }
+}
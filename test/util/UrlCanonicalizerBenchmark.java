@@ -0,0 +1,249 @@
+package util;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Runnable benchmark of {@link UrlCanonicalizer} against the URI/URL
+ * round-trips that {@link UrlUtils} used before, in links per second and bytes
+ * allocated per link.
+ * <p>
+ * The links are the href values of a corpus of HTML pages, each resolved
+ * against the URL of its page. By default the corpus is generated: pages with
+ * the mix of links found on real sites (relative and root-relative paths, dot
+ * segments, fragments, tracking parameters, mixed-case hosts, default ports,
+ * percent-escapes, mailto: and javascript: links). Directories given as
+ * arguments are searched for .html files to use instead. Every canonical URL
+ * must canonicalize to itself.
+ * <p>
+ * Compile it together with the main sources and run it with
+ * {@code java -cp <classes> util.UrlCanonicalizerBenchmark [html directories...]};
+ * the exit status is non-zero if any check fails.
+ */
+public class UrlCanonicalizerBenchmark {
+    private static final Pattern HREF_PATTERN = Pattern.compile("href\\s*=\\s*[\"']([^\"']*)[\"']",
+                                                                Pattern.CASE_INSENSITIVE);
+    private static final int GENERATED_PAGES = 60;
+    private static final int LINKS_PER_PAGE = 800;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int TIMED_ROUNDS = 10;
+    
+    private final List<String> failures = new ArrayList<>();
+    private final List<String> bases = new ArrayList<>();
+    private final List<String> hrefs = new ArrayList<>();
+    
+    public static void main(String[] args) throws IOException {
+        Logger.setLogLevel(2);
+        UrlCanonicalizerBenchmark benchmark = new UrlCanonicalizerBenchmark();
+        if (args.length > 0) {
+            for (String dir : args) {
+                benchmark.loadPages(Path.of(dir));
+            }
+        } else {
+            benchmark.generatePages();
+        }
+        System.out.println(benchmark.hrefs.size() + " links");
+        
+        UrlCanonicalizer canonicalizer = new UrlCanonicalizer();
+        Result legacy = benchmark.measure("URI/URL round-trip", UrlCanonicalizerBenchmark::legacyResolve);
+        Result canonical = benchmark.measure("UrlCanonicalizer", canonicalizer::resolve);
+        System.out.println(String.format("speedup %.1fx, %.0f%% fewer bytes per link",
+                                         canonical.linksPerSecond() / legacy.linksPerSecond(),
+                                         100 * (1 - canonical.bytesPerLink() / legacy.bytesPerLink())));
+        benchmark.checkIdempotent(canonicalizer);
+        
+        if (!benchmark.failures.isEmpty()) {
+            for (String failure : benchmark.failures) {
+                System.out.println("FAIL: " + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("OK: all canonicalizer benchmark checks passed");
+        System.exit(0);
+    }
+    
+    /**
+     * Resolve every link, first to warm up and then timed
+     * 
+     * @param name The implementation name to report
+     * @param resolver The implementation
+     * @return The throughput and allocation
+     */
+    private Result measure(String name, Resolver resolver) {
+        Set<String> distinct = new HashSet<>();
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            resolveAll(resolver, round == 0 ? distinct : null);
+        }
+        
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long startTime = System.nanoTime();
+        for (int round = 0; round < TIMED_ROUNDS; round++) {
+            resolveAll(resolver, null);
+        }
+        long nanos = System.nanoTime() - startTime;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        
+        long links = (long) hrefs.size() * TIMED_ROUNDS;
+        Result result = new Result(links * 1e9 / nanos, (double) allocated / links);
+        System.out.println(String.format("%-20s %,12.0f links/s %8.0f bytes/link %,8d distinct URLs", name,
+                                         result.linksPerSecond(), result.bytesPerLink(), distinct.size()));
+        return result;
+    }
+    
+    private void resolveAll(Resolver resolver, Set<String> distinct) {
+        for (int i = 0; i < hrefs.size(); i++) {
+            String url = resolver.resolve(bases.get(i), hrefs.get(i));
+            if (distinct != null && url != null) {
+                distinct.add(url);
+            }
+        }
+    }
+    
+    /**
+     * Canonical URLs are a fixed point of canonicalization
+     * 
+     * @param canonicalizer The canonicalizer
+     */
+    private void checkIdempotent(UrlCanonicalizer canonicalizer) {
+        for (int i = 0; i < hrefs.size(); i++) {
+            String url = canonicalizer.resolve(bases.get(i), hrefs.get(i));
+            if (url != null && !url.equals(canonicalizer.canonicalize(url))) {
+                failures.add("idempotence: " + url + " canonicalizes to " + canonicalizer.canonicalize(url));
+                return;
+            }
+        }
+    }
+    
+    private void loadPages(Path dir) throws IOException {
+        UrlCanonicalizer canonicalizer = new UrlCanonicalizer();
+        List<Path> pages;
+        try (Stream<Path> files = Files.walk(dir)) {
+            pages = files.filter(file -> file.toString().endsWith(".html")).sorted().toList();
+        }
+        for (Path page : pages) {
+            String base = canonicalizer.canonicalize("http://fixtures.example/" + dir.relativize(page));
+            String html = new String(Files.readAllBytes(page), StandardCharsets.UTF_8);
+            addLinks(base, html);
+        }
+    }
+    
+    private void generatePages() {
+        UrlCanonicalizer canonicalizer = new UrlCanonicalizer();
+        for (int page = 0; page < GENERATED_PAGES; page++) {
+            String base = canonicalizer.canonicalize("https://www.example.com/docs/section" + page % 7
+                                                     + "/page" + page + ".html");
+            StringBuilder html = new StringBuilder("<html><body>");
+            for (int i = 0; i < LINKS_PER_PAGE; i++) {
+                html.append("<a href=\"").append(generatedLink(page, i)).append("\">link</a>\n");
+            }
+            addLinks(base, html.append("</body></html>").toString());
+        }
+    }
+    
+    private static String generatedLink(int page, int i) {
+        int target = (page * 31 + i * 17) % 500;
+        switch (i % 12) {
+            case 0:
+                return "page" + target + ".html";
+            case 1:
+                return "../section" + target % 7 + "/page" + target + ".html";
+            case 2:
+                return "/docs/section" + target % 7 + "/page" + target + ".html#part" + i % 5;
+            case 3:
+                return "#top";
+            case 4:
+                return "https://WWW.Example.com:443/docs/./section" + target % 7 + "/page" + target + ".html";
+            case 5:
+                return "/search?q=item+" + target + "&utm_source=newsletter&utm_medium=email";
+            case 6:
+                return "https://cdn.example.net/assets/img" + target + ".png";
+            case 7:
+                return "/docs/section" + target % 7 + "/caf%c3%a9%20menu" + target + ".html";
+            case 8:
+                return "mailto:team@example.com";
+            case 9:
+                return "javascript:void(0)";
+            case 10:
+                return "//static.example.org/lib/v" + target % 3 + "/index.html?ref=" + target;
+            default:
+                return "./page" + target + ".html?b=2&a=1";
+        }
+    }
+    
+    private void addLinks(String base, String html) {
+        if (base == null) {
+            return;
+        }
+        Matcher matcher = HREF_PATTERN.matcher(html);
+        while (matcher.find()) {
+            bases.add(base);
+            hrefs.add(matcher.group(1));
+        }
+    }
+    
+    /**
+     * The link resolution of {@link UrlUtils} before {@link UrlCanonicalizer}
+     * replaced it
+     */
+    private static String legacyResolve(String baseUrl, String relativeUrl) {
+        if (relativeUrl == null || relativeUrl.isEmpty()) {
+            return null;
+        }
+        if (relativeUrl.toLowerCase().startsWith("http://") || relativeUrl.toLowerCase().startsWith("https://")) {
+            return legacyNormalize(relativeUrl);
+        }
+        if (relativeUrl.startsWith("#")) {
+            return baseUrl;
+        }
+        if (relativeUrl.toLowerCase().startsWith("javascript:")
+                || relativeUrl.toLowerCase().startsWith("data:")
+                || relativeUrl.toLowerCase().startsWith("mailto:")) {
+            return null;
+        }
+        try {
+            URI baseUri = new URI(baseUrl);
+            URI resolvedUri = baseUri.resolve(relativeUrl);
+            URL url = resolvedUri.toURL();
+            return url.toString();
+        } catch (URISyntaxException | MalformedURLException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    private static String legacyNormalize(String url) {
+        try {
+            int fragmentIndex = url.indexOf('#');
+            if (fragmentIndex > 0) {
+                url = url.substring(0, fragmentIndex);
+            }
+            URI uri = new URI(url);
+            URL normalizedUrl = uri.toURL();
+            return normalizedUrl.toString();
+        } catch (URISyntaxException | MalformedURLException | IllegalArgumentException e) {
+            return url;
+        }
+    }
+    
+    private interface Resolver {
+        String resolve(String baseUrl, String href);
+    }
+    
+    private record Result(double linksPerSecond, double bytesPerLink) {
+    }
+}
@@ -1,18 +1,19 @@
 package util;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 
 /**
  * Simple logging utility class
  */
 public class Logger {
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    // DateTimeFormatter is immutable, so it can be shared by concurrent crawl workers
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
     private static final int INFO = 0;
     private static final int DEBUG = 1;
     private static final int ERROR = 2;
     
-    private static int logLevel = INFO; // Default to INFO level
+    private static volatile int logLevel = INFO; // Default to INFO level
     private final String className;
     
     /**
@@ -75,7 +76,7 @@ public class Logger {
      * @param message The message to log
      */
     private void log(String level, String message) {
-        String timestamp = DATE_FORMAT.format(new Date());
+        String timestamp = DATE_FORMAT.format(LocalDateTime.now());
         String threadName = Thread.currentThread().getName();
         System.out.println(String.format("[%s] [%s] [%s] [%s] %s", 
                             timestamp, threadName, level, className, message));
@@ -0,0 +1,165 @@
+package util;
+
+/**
+ * Computes 64-bit SimHash fingerprints of text.
+ * <p>
+ * The text is split into lowercase words, and every run of three consecutive
+ * words (a shingle) votes on each bit of the fingerprint with its own hash.
+ * Texts that share most of their shingles end up with fingerprints that differ
+ * in only a few bits, so near-duplicate pages can be found by Hamming distance.
+ */
+public final class SimHash {
+    private static final int SHINGLE_WORDS = 3;
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long PRIME = 0x100000001B3L;
+    // Bit counts are accumulated in 8-bit lanes and flushed before they can overflow
+    private static final int MAX_PENDING_SHINGLES = 255;
+    // For every byte value, a long with bit i of the byte in the lowest bit of byte i
+    private static final long[] SPREAD = new long[256];
+    
+    static {
+        for (int value = 0; value < 256; value++) {
+            for (int bit = 0; bit < 8; bit++) {
+                if ((value & (1 << bit)) != 0) {
+                    SPREAD[value] |= 1L << (bit * 8);
+                }
+            }
+        }
+    }
+    
+    private SimHash() {
+    }
+    
+    /**
+     * Compute the SimHash of a text without allocating per word
+     * 
+     * @param text The text, e.g. the output of ContentExtractor
+     * @return The fingerprint, 0 for a text without words
+     */
+    public static long of(CharSequence text) {
+        Votes votes = new Votes();
+        long previous2 = 0;
+        long previous1 = 0;
+        int words = 0;
+        int length = text.length();
+        int i = 0;
+        
+        while (i < length) {
+            while (i < length && !isWordChar(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            long word = SEED;
+            char ch;
+            while (i < length && isWordChar(ch = text.charAt(i))) {
+                word = (word ^ toLowerCase(ch)) * PRIME;
+                i++;
+            }
+            words++;
+            if (words >= SHINGLE_WORDS) {
+                votes.add(shingle(previous2, previous1, word));
+            }
+            previous2 = previous1;
+            previous1 = word;
+        }
+        
+        // Texts shorter than a shingle still get a fingerprint from their words
+        if (words > 0 && words < SHINGLE_WORDS) {
+            votes.add(shingle(0, previous2, previous1));
+        }
+        return votes.majority();
+    }
+    
+    /**
+     * Get the number of differing bits between two fingerprints
+     * 
+     * @param a The first fingerprint
+     * @param b The second fingerprint
+     * @return The Hamming distance, 0 to 64
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+    
+    private static boolean isWordChar(char ch) {
+        if (ch < 128) {
+            return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9');
+        }
+        return Character.isLetterOrDigit(ch);
+    }
+    
+    private static char toLowerCase(char ch) {
+        if (ch < 128) {
+            return ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch;
+        }
+        return Character.toLowerCase(ch);
+    }
+    
+    private static long shingle(long first, long second, long third) {
+        return mix(Long.rotateLeft(first, 42) ^ Long.rotateLeft(second, 21) ^ third);
+    }
+    
+    /**
+     * Final avalanche step (from MurmurHash3's fmix64)
+     * 
+     * @param hash The intermediate hash
+     * @return The mixed hash
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+    
+    /**
+     * Per-bit count of the shingle hashes that have the bit set. Instead of
+     * 64 increments per shingle, each byte of the hash is spread over the eight
+     * 8-bit lanes of a long and added in one step.
+     */
+    private static class Votes {
+        private final long[] lanes = new long[8];
+        private final int[] ones = new int[64];
+        private int pending;
+        private int total;
+        
+        void add(long hash) {
+            for (int i = 0; i < 8; i++) {
+                lanes[i] += SPREAD[(int) (hash >>> (i * 8)) & 0xFF];
+            }
+            total++;
+            if (++pending == MAX_PENDING_SHINGLES) {
+                flush();
+            }
+        }
+        
+        /**
+         * Get the fingerprint with every bit set that more than half of the shingles have set
+         */
+        long majority() {
+            flush();
+            long fingerprint = 0;
+            for (int bit = 0; bit < 64; bit++) {
+                if (ones[bit] * 2 > total) {
+                    fingerprint |= 1L << bit;
+                }
+            }
+            return fingerprint;
+        }
+        
+        private void flush() {
+            // Lane i holds the counts of bits i*8 .. i*8+7 of the hash, one per byte
+            for (int i = 0; i < 8; i++) {
+                for (int bit = 0; bit < 8; bit++) {
+                    ones[i * 8 + bit] += (int) (lanes[i] >>> (bit * 8)) & 0xFF;
+                }
+                lanes[i] = 0;
+            }
+            pending = 0;
+        }
+    }
+}
@@ -0,0 +1,604 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass URL resolver and canonicalizer for http and https links.
+ * <p>
+ * A reference is resolved against its base URL as described in RFC 3986
+ * section 5.2 while being written, character by character, into one output
+ * buffer, so a link costs a StringBuilder and the resulting String. On the way
+ * the URL is brought into canonical form, so different spellings of the same
+ * resource become equal strings:
+ * <ul>
+ *   <li>the scheme and host are lowercased, a trailing dot is removed from the
+ *       host, and a default or empty port is dropped;</li>
+ *   <li>an empty path becomes "/", "." and ".." segments are removed and a
+ *       backslash is read as "/", as browsers do;</li>
+ *   <li>percent-escapes get uppercase hex digits, escaped unreserved characters
+ *       are decoded, and characters that may not appear in a URL (spaces,
+ *       non-ASCII) are UTF-8 percent-encoded;</li>
+ *   <li>empty and tracking query parameters are removed and, optionally, the
+ *       remaining parameters are sorted;</li>
+ *   <li>the fragment is dropped.</li>
+ * </ul>
+ * Instances are immutable and thread-safe.
+ */
+public class UrlCanonicalizer {
+    /** Query parameters that only track campaigns and clicks; names ending in "*" are prefixes */
+    public static final String[] DEFAULT_STRIPPED_PARAMETERS = {
+        "utm_*", "gclid", "dclid", "fbclid", "msclkid", "yclid", "mc_cid", "mc_eid", "_ga", "_gl",
+        "igshid", "ref_src", "spm"
+    };
+    
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    // ASCII characters copied unchanged into a path or query: unreserved, sub-delims, ":" and "@",
+    // plus "/" and "?" in the query. "%", "/" and "\\" in paths are handled separately
+    private static final boolean[] PATH_CHARS = new boolean[128];
+    private static final boolean[] QUERY_CHARS = new boolean[128];
+    
+    static {
+        String allowed = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-._~!$&'()*+,;=:@";
+        for (int i = 0; i < allowed.length(); i++) {
+            PATH_CHARS[allowed.charAt(i)] = true;
+            QUERY_CHARS[allowed.charAt(i)] = true;
+        }
+        QUERY_CHARS['/'] = true;
+        QUERY_CHARS['?'] = true;
+    }
+    
+    private final boolean sortQuery;
+    private final String[] strippedNames;
+    private final String[] strippedPrefixes;
+    
+    /**
+     * Constructor for UrlCanonicalizer that strips the default tracking parameters
+     * and keeps the query order
+     */
+    public UrlCanonicalizer() {
+        this(false, DEFAULT_STRIPPED_PARAMETERS);
+    }
+    
+    /**
+     * Constructor for UrlCanonicalizer
+     * 
+     * @param sortQuery true to sort query parameters, so their order does not matter
+     * @param strippedParameters Names of query parameters to remove; a name ending
+     *                           in "*" removes every parameter starting with it
+     */
+    public UrlCanonicalizer(boolean sortQuery, String[] strippedParameters) {
+        this.sortQuery = sortQuery;
+        this.strippedNames = Arrays.stream(strippedParameters)
+                .filter(name -> !name.endsWith("*")).map(String::toLowerCase).toArray(String[]::new);
+        this.strippedPrefixes = Arrays.stream(strippedParameters)
+                .filter(name -> name.endsWith("*"))
+                .map(name -> name.substring(0, name.length() - 1).toLowerCase()).toArray(String[]::new);
+    }
+    
+    /**
+     * Canonicalize an absolute URL
+     * 
+     * @param url The URL
+     * @return The canonical URL, or null if it is not a valid http or https URL
+     */
+    public String canonicalize(CharSequence url) {
+        return resolve(null, url);
+    }
+    
+    /**
+     * Resolve a link against the URL of the page it appears on and canonicalize the result
+     * 
+     * @param baseUrl The page URL in canonical form (as returned by this class), or null
+     *                if only absolute references are accepted
+     * @param reference The link, e.g. the value of an href attribute
+     * @return The canonical absolute URL, or null if the link is empty, not http or
+     *         https (javascript:, mailto:, ...), or invalid
+     */
+    public String resolve(String baseUrl, CharSequence reference) {
+        int start = 0;
+        int end = reference.length();
+        while (start < end && reference.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && reference.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return null;
+        }
+        
+        // The fragment never takes part in resolution
+        int fragment = indexOf(reference, '#', start, end);
+        if (fragment >= 0) {
+            end = fragment;
+        }
+        if (start == end) {
+            // A fragment-only link points back at the base document
+            return baseUrl;
+        }
+        int schemeEnd = schemeEnd(reference, start, end);
+        StringBuilder out = new StringBuilder(end - start + (baseUrl != null ? baseUrl.length() : 0) + 8);
+        
+        if (schemeEnd >= 0) {
+            // Absolute reference: scheme "://" authority path query
+            boolean https = schemeEnd - start == 5 && regionMatchesLower(reference, start, "https");
+            if (!https && !(schemeEnd - start == 4 && regionMatchesLower(reference, start, "http"))) {
+                return null;
+            }
+            int authorityStart = schemeEnd + 1;
+            if (!startsWithSlashes(reference, authorityStart, end)) {
+                return null;
+            }
+            out.append(https ? "https://" : "http://");
+            return appendNetworkPath(out, reference, authorityStart + 2, end, https);
+        }
+        
+        if (baseUrl == null) {
+            return null;
+        }
+        int baseAuthority = baseUrl.indexOf("://");
+        if (baseAuthority < 0) {
+            return null;
+        }
+        baseAuthority += 3;
+        int basePath = indexOfAny(baseUrl, "/?", baseAuthority, baseUrl.length());
+        if (basePath < 0) {
+            basePath = baseUrl.length();
+        }
+        
+        if (startsWithSlashes(reference, start, end)) {
+            // Network-path reference "//host/path": only the scheme comes from the base
+            out.append(baseUrl, 0, baseAuthority);
+            return appendNetworkPath(out, reference, start + 2, end, baseUrl.startsWith("https"));
+        }
+        
+        out.append(baseUrl, 0, basePath);
+        int pathStart = out.length();
+        char first = reference.charAt(start);
+        if (first == '?') {
+            // Same path as the base with a new query
+            appendBasePath(out, baseUrl, basePath);
+            return appendQueryAndFinish(out, reference, start + 1, end);
+        }
+        if (first == '/' || first == '\\') {
+            int queryStart = indexOf(reference, '?', start, end);
+            int pathEnd = queryStart >= 0 ? queryStart : end;
+            appendPath(out, pathStart, reference, start, pathEnd);
+            return finish(out, reference, queryStart, end);
+        }
+        
+        // Relative path: merge with the directory of the base path
+        int baseQuery = baseUrl.indexOf('?', basePath);
+        int baseDirEnd = baseUrl.lastIndexOf('/', (baseQuery >= 0 ? baseQuery : baseUrl.length()) - 1);
+        if (baseDirEnd < basePath) {
+            out.append('/');
+        } else {
+            out.append(baseUrl, basePath, baseDirEnd + 1);
+        }
+        int queryStart = indexOf(reference, '?', start, end);
+        int pathEnd = queryStart >= 0 ? queryStart : end;
+        appendPathSegments(out, pathStart, out.length(), reference, start, pathEnd);
+        return finish(out, reference, queryStart, end);
+    }
+    
+    /**
+     * Get the host of an absolute URL without parsing the rest of it
+     * 
+     * @param url The URL
+     * @return The host as written (without user info or port), or null if there is none
+     */
+    public static String getHost(String url) {
+        int authority = url.indexOf("://");
+        if (authority < 0) {
+            return null;
+        }
+        authority += 3;
+        int authorityEnd = indexOfAny(url, "/?#", authority, url.length());
+        if (authorityEnd < 0) {
+            authorityEnd = url.length();
+        }
+        int at = url.lastIndexOf('@', authorityEnd - 1);
+        int hostStart = at >= authority ? at + 1 : authority;
+        int hostEnd = authorityEnd;
+        if (hostStart < authorityEnd && url.charAt(hostStart) == '[') {
+            int bracket = url.indexOf(']', hostStart);
+            hostEnd = bracket > 0 && bracket < authorityEnd ? bracket + 1 : authorityEnd;
+        } else {
+            int colon = url.indexOf(':', hostStart);
+            if (colon >= 0 && colon < authorityEnd) {
+                hostEnd = colon;
+            }
+        }
+        return hostEnd > hostStart ? url.substring(hostStart, hostEnd) : null;
+    }
+    
+    /**
+     * Append authority, path and query of a reference that starts with an authority
+     */
+    private String appendNetworkPath(StringBuilder out, CharSequence src, int from, int end, boolean https) {
+        int authorityEnd = indexOfAny(src, "/\\?", from, end);
+        if (authorityEnd < 0) {
+            authorityEnd = end;
+        }
+        if (!appendAuthority(out, src, from, authorityEnd, https)) {
+            return null;
+        }
+        int pathStart = out.length();
+        int queryStart = indexOf(src, '?', authorityEnd, end);
+        int pathEnd = queryStart >= 0 ? queryStart : end;
+        if (pathEnd == authorityEnd) {
+            out.append('/');
+        } else {
+            appendPath(out, pathStart, src, authorityEnd, pathEnd);
+        }
+        return finish(out, src, queryStart, end);
+    }
+    
+    /**
+     * Append user info, lowercased host and non-default port
+     * 
+     * @return false if the authority is invalid
+     */
+    private static boolean appendAuthority(StringBuilder out, CharSequence src, int from, int to, boolean https) {
+        int at = lastIndexOf(src, '@', from, to);
+        if (at >= 0) {
+            out.append(src, from, at + 1);
+            from = at + 1;
+        }
+        
+        int hostEnd = to;
+        if (from < to && src.charAt(from) == '[') {
+            int bracket = indexOf(src, ']', from, to);
+            if (bracket < 0) {
+                return false;
+            }
+            hostEnd = bracket + 1;
+        } else {
+            int colon = indexOf(src, ':', from, to);
+            if (colon >= 0) {
+                hostEnd = colon;
+            }
+        }
+        int hostStart = out.length();
+        out.append(src, from, hostEnd);
+        for (int i = hostStart; i < out.length(); i++) {
+            char ch = out.charAt(i);
+            if (ch >= 'A' && ch <= 'Z') {
+                out.setCharAt(i, (char) (ch + ('a' - 'A')));
+            }
+        }
+        if (out.length() > hostStart && out.charAt(out.length() - 1) == '.') {
+            out.setLength(out.length() - 1);
+        }
+        if (out.length() == hostStart) {
+            return false;
+        }
+        
+        if (hostEnd < to) {
+            if (src.charAt(hostEnd) != ':') {
+                return false;
+            }
+            int port = 0;
+            for (int i = hostEnd + 1; i < to; i++) {
+                char ch = src.charAt(i);
+                if (ch < '0' || ch > '9' || port > 65535) {
+                    return false;
+                }
+                port = port * 10 + (ch - '0');
+            }
+            if (port > 65535) {
+                return false;
+            }
+            // An empty port or the scheme's default port is the same as no port
+            if (hostEnd + 1 < to && port != (https ? 443 : 80)) {
+                out.append(':').append(port);
+            }
+        }
+        return true;
+    }
+    
+    private static void appendBasePath(StringBuilder out, String baseUrl, int basePath) {
+        int baseQuery = baseUrl.indexOf('?', basePath);
+        int basePathEnd = baseQuery >= 0 ? baseQuery : baseUrl.length();
+        if (basePathEnd == basePath) {
+            out.append('/');
+        } else {
+            out.append(baseUrl, basePath, basePathEnd);
+        }
+    }
+    
+    /**
+     * Append an absolute path, starting with its leading slash
+     */
+    private static void appendPath(StringBuilder out, int pathStart, CharSequence src, int from, int to) {
+        out.append('/');
+        appendPathSegments(out, pathStart, out.length(), src, from + 1, to);
+    }
+    
+    /**
+     * Append path characters, normalizing escapes and removing dot segments as they complete.
+     * 
+     * @param out The output, ending in the directory the segments are relative to
+     * @param pathStart Position of the path's leading slash in the output; ".." never goes above it
+     * @param segmentStart Position where the first segment starts in the output
+     */
+    private static void appendPathSegments(StringBuilder out, int pathStart, int segmentStart,
+                                           CharSequence src, int from, int to) {
+        // Runs of characters that need no change are copied in bulk
+        int run = from;
+        for (int i = from; i < to; i++) {
+            char ch = src.charAt(i);
+            if (ch < 128 && PATH_CHARS[ch]) {
+                continue;
+            }
+            out.append(src, run, i);
+            if (ch == '/' || ch == '\\') {
+                if (!removeDotSegment(out, pathStart, segmentStart)) {
+                    out.append('/');
+                }
+                segmentStart = out.length();
+            } else {
+                i = appendChar(out, src, i, to, false);
+            }
+            run = i + 1;
+        }
+        out.append(src, run, to);
+        removeDotSegment(out, pathStart, segmentStart);
+    }
+    
+    /**
+     * Remove the segment just written if it is "." or "..", along with the
+     * preceding segment for "..". The slash before the segment is kept.
+     * 
+     * @return true if a dot segment was removed
+     */
+    private static boolean removeDotSegment(StringBuilder out, int pathStart, int segmentStart) {
+        int length = out.length() - segmentStart;
+        if (length == 1 && out.charAt(segmentStart) == '.') {
+            out.setLength(segmentStart);
+            return true;
+        }
+        if (length == 2 && out.charAt(segmentStart) == '.' && out.charAt(segmentStart + 1) == '.') {
+            int previous = segmentStart - 1;
+            if (previous > pathStart) {
+                previous = lastIndexOf(out, '/', pathStart, previous) + 1;
+            } else {
+                previous = pathStart + 1;
+            }
+            out.setLength(previous);
+            return true;
+        }
+        return false;
+    }
+    
+    private String finish(StringBuilder out, CharSequence src, int queryStart, int end) {
+        if (queryStart < 0) {
+            return out.toString();
+        }
+        return appendQueryAndFinish(out, src, queryStart + 1, end);
+    }
+    
+    /**
+     * Append the query without empty and stripped parameters, sorted if configured
+     */
+    private String appendQueryAndFinish(StringBuilder out, CharSequence src, int from, int to) {
+        int queryStart = out.length();
+        out.append('?');
+        int kept = 0;
+        int paramStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i < to && src.charAt(i) != '&') {
+                continue;
+            }
+            if (i > paramStart) {
+                int outStart = out.length();
+                if (kept > 0) {
+                    out.append('&');
+                    outStart++;
+                }
+                int run = paramStart;
+                for (int j = paramStart; j < i; j++) {
+                    char ch = src.charAt(j);
+                    if (ch >= 128 || !QUERY_CHARS[ch]) {
+                        out.append(src, run, j);
+                        j = appendChar(out, src, j, i, true);
+                        run = j + 1;
+                    }
+                }
+                out.append(src, run, i);
+                if (isStripped(out, outStart)) {
+                    out.setLength(kept > 0 ? outStart - 1 : outStart);
+                } else {
+                    kept++;
+                }
+            }
+            paramStart = i + 1;
+        }
+        
+        if (kept == 0) {
+            out.setLength(queryStart);
+        } else if (sortQuery && kept > 1) {
+            String[] params = out.substring(queryStart + 1).split("&");
+            Arrays.sort(params);
+            out.setLength(queryStart + 1);
+            out.append(String.join("&", params));
+        }
+        return out.toString();
+    }
+    
+    /**
+     * Check whether the parameter written at the end of the output is a stripped one
+     */
+    private boolean isStripped(StringBuilder out, int paramStart) {
+        int nameEnd = indexOf(out, '=', paramStart, out.length());
+        if (nameEnd < 0) {
+            nameEnd = out.length();
+        }
+        int nameLength = nameEnd - paramStart;
+        for (String name : strippedNames) {
+            if (name.length() == nameLength && regionMatchesLower(out, paramStart, name)) {
+                return true;
+            }
+        }
+        for (String prefix : strippedPrefixes) {
+            if (prefix.length() <= nameLength && regionMatchesLower(out, paramStart, prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Append one source character in canonical form
+     * 
+     * @param inQuery true in the query, where "?" and "/" need no escaping
+     * @return The index of the last source character consumed
+     */
+    private static int appendChar(StringBuilder out, CharSequence src, int i, int to, boolean inQuery) {
+        char ch = src.charAt(i);
+        if (ch == '\t' || ch == '\n' || ch == '\r') {
+            // Browsers drop line breaks and tabs inside attribute values
+            return i;
+        }
+        if (ch == '%') {
+            int high = i + 2 < to ? hexValue(src.charAt(i + 1)) : -1;
+            int low = high >= 0 ? hexValue(src.charAt(i + 2)) : -1;
+            if (low < 0) {
+                // A lone "%" is escaped itself
+                out.append("%25");
+                return i;
+            }
+            int value = (high << 4) | low;
+            if (isUnreserved(value)) {
+                out.append((char) value);
+            } else {
+                out.append('%').append(HEX[high]).append(HEX[low]);
+            }
+            return i + 2;
+        }
+        if (ch < 128 && (inQuery ? QUERY_CHARS[ch] : PATH_CHARS[ch])) {
+            out.append(ch);
+            return i;
+        }
+        
+        // Percent-encode anything else as UTF-8
+        int codePoint = ch;
+        int consumed = i;
+        if (Character.isHighSurrogate(ch) && i + 1 < to && Character.isLowSurrogate(src.charAt(i + 1))) {
+            codePoint = Character.toCodePoint(ch, src.charAt(i + 1));
+            consumed = i + 1;
+        }
+        if (codePoint < 0x80) {
+            appendEscaped(out, codePoint);
+        } else if (codePoint < 0x800) {
+            appendEscaped(out, 0xC0 | (codePoint >> 6));
+            appendEscaped(out, 0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            appendEscaped(out, 0xE0 | (codePoint >> 12));
+            appendEscaped(out, 0x80 | ((codePoint >> 6) & 0x3F));
+            appendEscaped(out, 0x80 | (codePoint & 0x3F));
+        } else {
+            appendEscaped(out, 0xF0 | (codePoint >> 18));
+            appendEscaped(out, 0x80 | ((codePoint >> 12) & 0x3F));
+            appendEscaped(out, 0x80 | ((codePoint >> 6) & 0x3F));
+            appendEscaped(out, 0x80 | (codePoint & 0x3F));
+        }
+        return consumed;
+    }
+    
+    private static void appendEscaped(StringBuilder out, int value) {
+        out.append('%').append(HEX[value >> 4]).append(HEX[value & 0xF]);
+    }
+    
+    private static boolean isUnreserved(int ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9')
+                || ch == '-' || ch == '.' || ch == '_' || ch == '~';
+    }
+    
+    private static int hexValue(char ch) {
+        if (ch >= '0' && ch <= '9') {
+            return ch - '0';
+        }
+        if (ch >= 'a' && ch <= 'f') {
+            return ch - 'a' + 10;
+        }
+        if (ch >= 'A' && ch <= 'F') {
+            return ch - 'A' + 10;
+        }
+        return -1;
+    }
+    
+    /**
+     * Find the end of a scheme ("http:") at the start of a reference
+     * 
+     * @return The index of the colon, or -1 if the reference has no scheme
+     */
+    private static int schemeEnd(CharSequence src, int start, int end) {
+        char first = src.charAt(start);
+        if (!((first >= 'a' && first <= 'z') || (first >= 'A' && first <= 'Z'))) {
+            return -1;
+        }
+        for (int i = start + 1; i < end; i++) {
+            char ch = src.charAt(i);
+            if (ch == ':') {
+                return i;
+            }
+            if (!((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9')
+                    || ch == '+' || ch == '-' || ch == '.')) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+    
+    private static boolean startsWithSlashes(CharSequence src, int from, int end) {
+        return from + 1 < end && isSlash(src.charAt(from)) && isSlash(src.charAt(from + 1));
+    }
+    
+    private static boolean isSlash(char ch) {
+        return ch == '/' || ch == '\\';
+    }
+    
+    /**
+     * Compare a region with a lowercase string, ignoring the case of ASCII letters in the region
+     */
+    private static boolean regionMatchesLower(CharSequence src, int from, String lower) {
+        for (int i = 0; i < lower.length(); i++) {
+            char ch = src.charAt(from + i);
+            if (ch >= 'A' && ch <= 'Z') {
+                ch = (char) (ch + ('a' - 'A'));
+            }
+            if (ch != lower.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static int indexOf(CharSequence src, char target, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (src.charAt(i) == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static int lastIndexOf(CharSequence src, char target, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (src.charAt(i) == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static int indexOfAny(CharSequence src, String targets, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (targets.indexOf(src.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
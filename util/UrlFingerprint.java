@@ -0,0 +1,56 @@
+package util;
+
+/**
+ * Computes 64-bit fingerprints of URLs.
+ * <p>
+ * Fingerprints are used wherever the crawler needs to remember very many URLs
+ * without keeping the strings themselves. With 64 bits the chance of any
+ * collision among 100 million URLs is roughly 1 in 3,700.
+ */
+public final class UrlFingerprint {
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long MULTIPLIER = 0xC2B2AE3D27D4EB4FL;
+    
+    private UrlFingerprint() {
+    }
+    
+    /**
+     * Compute the fingerprint of a URL without allocating
+     * 
+     * @param url The URL (or any character sequence)
+     * @return A well-mixed 64-bit fingerprint
+     */
+    public static long of(CharSequence url) {
+        long hash = SEED ^ url.length();
+        int length = url.length();
+        int i = 0;
+        
+        // Fold four chars at a time into the state
+        for (; i + 4 <= length; i += 4) {
+            long block = url.charAt(i)
+                    | ((long) url.charAt(i + 1) << 16)
+                    | ((long) url.charAt(i + 2) << 32)
+                    | ((long) url.charAt(i + 3) << 48);
+            hash = Long.rotateLeft(hash ^ (block * MULTIPLIER), 27) * SEED;
+        }
+        for (; i < length; i++) {
+            hash = Long.rotateLeft(hash ^ (url.charAt(i) * MULTIPLIER), 27) * SEED;
+        }
+        return mix(hash);
+    }
+    
+    /**
+     * Final avalanche step (from MurmurHash3's fmix64)
+     * 
+     * @param hash The intermediate hash
+     * @return The mixed hash
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
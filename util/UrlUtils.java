@@ -1,86 +1,51 @@
 package util;
 
-import java.net.MalformedURLException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.util.Arrays;
+import java.util.Set;
 
 /**
- * Utility class for URL operations
+ * Utility class for URL operations.
+ * <p>
+ * Resolution and normalization delegate to a {@link UrlCanonicalizer} with the
+ * default settings; host lookups slice the URL string instead of parsing it.
  */
 public class UrlUtils {
-    private static final Logger logger = new Logger(UrlUtils.class.getSimpleName());
+    private static final UrlCanonicalizer CANONICALIZER = new UrlCanonicalizer();
+    private static final Set<String> SECOND_LEVEL_LABELS = Set.of(
+            "ac", "co", "com", "edu", "gov", "net", "org", "ne", "or", "go", "gob", "mil");
+    // Hosting domains whose subdomains belong to unrelated tenants
+    private static final Set<String> MULTI_TENANT_SUFFIXES = Set.of(
+            "github.io", "gitlab.io", "blogspot.com", "herokuapp.com", "appspot.com", "netlify.app", "vercel.app",
+            "pages.dev", "workers.dev", "web.app", "firebaseapp.com", "azurewebsites.net", "cloudfront.net",
+            "wordpress.com", "tumblr.com", "neocities.org", "glitch.me", "onrender.com", "fly.dev");
     
     /**
      * Resolves a relative URL against a base URL
      * 
      * @param baseUrl The base URL
      * @param relativeUrl The relative URL to resolve
-     * @return The resolved absolute URL, or null if invalid
-     * @throws URISyntaxException If the URL is invalid
+     * @return The resolved, canonical absolute URL, or null if invalid or not http(s)
      */
-    public static String resolveUrl(String baseUrl, String relativeUrl) throws URISyntaxException {
+    public static String resolveUrl(String baseUrl, String relativeUrl) {
         if (relativeUrl == null || relativeUrl.isEmpty()) {
             return null;
         }
-        
-        // Check if it's already an absolute URL
-        if (relativeUrl.toLowerCase().startsWith("http://") || relativeUrl.toLowerCase().startsWith("https://")) {
-            return normalizeUrl(relativeUrl);
-        }
-        
-        // Handle fragment URLs (starting with #)
-        if (relativeUrl.startsWith("#")) {
-            return baseUrl;
-        }
-        
-        // Handle javascript: and data: URLs
-        if (relativeUrl.toLowerCase().startsWith("javascript:") || 
-            relativeUrl.toLowerCase().startsWith("data:") ||
-            relativeUrl.toLowerCase().startsWith("mailto:")) {
-            return null;
-        }
-        
-        try {
-            URI baseUri = new URI(baseUrl);
-            URI resolvedUri = baseUri.resolve(relativeUrl);
-            
-            // Convert to URL and back to normalize
-            URL url = resolvedUri.toURL();
-            return url.toString();
-        } catch (MalformedURLException e) {
-            logger.debug("Malformed URL: " + relativeUrl + " - " + e.getMessage());
-            return null;
-        }
+        String base = baseUrl != null ? CANONICALIZER.canonicalize(baseUrl) : null;
+        return CANONICALIZER.resolve(base, relativeUrl);
     }
     
     /**
-     * Normalizes a URL by removing fragments and normalizing the path
+     * Normalizes a URL into its canonical form (see {@link UrlCanonicalizer})
      * 
      * @param url The URL to normalize
-     * @return Normalized URL
+     * @return Normalized URL, or the URL unchanged if it is not a valid http(s) URL
      */
     public static String normalizeUrl(String url) {
         if (url == null || url.isEmpty()) {
             return null;
         }
-        
-        try {
-            // Remove fragments
-            int fragmentIndex = url.indexOf('#');
-            if (fragmentIndex > 0) {
-                url = url.substring(0, fragmentIndex);
-            }
-            
-            // Convert to URI and back to normalize
-            URI uri = new URI(url);
-            URL normalizedUrl = uri.toURL();
-            
-            return normalizedUrl.toString();
-        } catch (URISyntaxException | MalformedURLException e) {
-            logger.debug("Error normalizing URL: " + url + " - " + e.getMessage());
-            return url;  // Return original if normalization fails
-        }
+        String canonical = CANONICALIZER.canonicalize(url);
+        return canonical != null ? canonical : url;
     }
     
     /**
@@ -91,29 +56,49 @@ public class UrlUtils {
      * @return true if the URL is within the same domain
      */
     public static boolean isSameDomain(String baseUrl, String url) {
-        try {
-            URI baseUri = new URI(baseUrl);
-            URI uri = new URI(url);
-            
-            return baseUri.getHost().equalsIgnoreCase(uri.getHost());
-        } catch (URISyntaxException e) {
-            return false;
-        }
+        String baseHost = getDomain(baseUrl);
+        return baseHost != null && baseHost.equalsIgnoreCase(getDomain(url));
     }
     
     /**
      * Gets the domain from a URL
      * 
      * @param url The URL
-     * @return The domain
+     * @return The domain, or null if the URL has none
      */
     public static String getDomain(String url) {
-        try {
-            URI uri = new URI(url);
-            return uri.getHost();
-        } catch (URISyntaxException e) {
-            return null;
+        return url != null ? UrlCanonicalizer.getHost(url) : null;
+    }
+    
+    /**
+     * Gets the registrable domain of a host, e.g. "example.com" for
+     * "www.blog.example.com" and "example.co.uk" for "shop.example.co.uk".
+     * <p>
+     * This is a heuristic rather than a public suffix list lookup: the last two
+     * labels are kept, or three when the host ends in a two-letter country code
+     * preceded by a generic second-level label such as "co" or "org". On
+     * known multi-tenant hosting domains such as "github.io" one more label is
+     * kept, so each tenant is its own domain. IP literals and single-label hosts
+     * are returned unchanged.
+     * 
+     * @param host The host name
+     * @return The registrable domain, or null if the host is null
+     */
+    public static String getRegistrableDomain(String host) {
+        if (host == null || host.isEmpty() || host.startsWith("[")
+                || host.chars().allMatch(c -> c == '.' || (c >= '0' && c <= '9'))) {
+            return host;
+        }
+        String[] labels = host.toLowerCase().split("\\.");
+        int n = labels.length;
+        if (n <= 2) {
+            return String.join(".", labels);
+        }
+        int keep = labels[n - 1].length() == 2 && SECOND_LEVEL_LABELS.contains(labels[n - 2]) ? 3 : 2;
+        if (keep == 2 && MULTI_TENANT_SUFFIXES.contains(labels[n - 2] + "." + labels[n - 1])) {
+            keep = 3;
         }
+        return String.join(".", Arrays.copyOfRange(labels, n - keep, n));
     }
     
     /**